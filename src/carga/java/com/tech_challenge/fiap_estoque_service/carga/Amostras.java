@@ -0,0 +1,56 @@
+package com.tech_challenge.fiap_estoque_service.carga;
+
+import java.util.Arrays;
+
+// Latências (em nanossegundos) e contadores de um endpoint. Cada worker tem as suas; são somadas no final.
+class Amostras {
+
+    private long[] latencias = new long[1024];
+    private int total;
+    private long rejeitadas;
+    private long erros;
+
+    void registrar(long latenciaNs, int status) {
+        if (total == latencias.length) {
+            latencias = Arrays.copyOf(latencias, total * 2);
+        }
+        latencias[total++] = latenciaNs;
+        if (status >= 500 || status < 0) {
+            erros++;
+        } else if (status >= 400) {
+            rejeitadas++;
+        }
+    }
+
+    void somar(Amostras outras) {
+        for (int i = 0; i < outras.total; i++) {
+            registrar(outras.latencias[i], 200);
+        }
+        rejeitadas += outras.rejeitadas;
+        erros += outras.erros;
+    }
+
+    int total() {
+        return total;
+    }
+
+    long rejeitadas() {
+        return rejeitadas;
+    }
+
+    long erros() {
+        return erros;
+    }
+
+    // Percentis em milissegundos, pelo método nearest-rank.
+    double[] percentisMs(double... percentis) {
+        long[] ordenadas = Arrays.copyOf(latencias, total);
+        Arrays.sort(ordenadas);
+        double[] resultado = new double[percentis.length];
+        for (int i = 0; i < percentis.length; i++) {
+            int indice = (int) Math.ceil(percentis[i] * total) - 1;
+            resultado[i] = total == 0 ? 0 : ordenadas[Math.max(0, indice)] / 1_000_000.0;
+        }
+        return resultado;
+    }
+}
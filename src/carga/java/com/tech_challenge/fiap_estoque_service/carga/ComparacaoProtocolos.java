@@ -0,0 +1,381 @@
+package com.tech_challenge.fiap_estoque_service.carga;
+
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.grpc.ServidorGrpc;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.EstoqueGrpc;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.ItemPedido;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.Pedido;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.ResultadoPedido;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.ResultadoPedidoStatus;
+
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compara, com o serviço no mesmo processo, cinco formas de um cliente síncrono reservar pedidos de um item: um
+ * POST /estoque por pedido em HTTP/1.1, o mesmo POST em HTTP/2 sem TLS (h2c, todos os workers multiplexados numa
+ * conexão), o POST /estoque/stream, em que cada worker mantém um fluxo aberto e manda o pedido seguinte só depois
+ * de ler o resultado do anterior, e as mesmas duas ideias em gRPC: uma chamada Reservar por pedido e um
+ * ReservarStream por worker, todos num canal. Para cada nível de {@code carga.concorrencia} e cada forma: pedidos/s e
+ * latência por pedido (p50/p99/p999), na saída padrão e em {@code target/protocolos-resultado.csv}.
+ *
+ * Usa as propriedades {@code carga.*} do profile {@code carga}:
+ * {@code mvn -Pcarga test-compile exec:exec -Dcarga.classe=ComparacaoProtocolos -Dcarga.concorrencia=1,32,256}.
+ */
+public class ComparacaoProtocolos {
+
+    private static final String REST_HTTP1 = "REST HTTP/1.1";
+    private static final String REST_H2C = "REST h2c";
+    private static final String STREAM_HTTP1 = "stream HTTP/1.1";
+    private static final String GRPC_UNARIO = "gRPC unário";
+    private static final String GRPC_STREAM = "gRPC stream";
+    // Streams simultâneos por conexão HTTP/2 aceitos pelo Tomcat (maxConcurrentStreams).
+    private static final int STREAMS_POR_CONEXAO = 100;
+
+    private final List<Integer> concorrencias = Arrays
+            .stream(System.getProperty("carga.concorrencia", "32").split(","))
+            .map(String::trim)
+            .map(Integer::valueOf)
+            .toList();
+    private final Duration aquecimento = Duration.parse(System.getProperty("carga.aquecimento", "PT5S"));
+    private final Duration duracao = Duration.parse(System.getProperty("carga.duracao", "PT30S"));
+    private final int skus = Integer.getInteger("carga.skus", 1000);
+    private final String argumentosApp = System.getProperty("carga.app-args", "");
+
+    private String urlBase;
+    private int portaGrpc;
+
+    public static void main(String[] args) throws Exception {
+        new ComparacaoProtocolos().executar();
+        System.exit(0);
+    }
+
+    private void executar() throws Exception {
+        // TTL longo: as reservas não confirmadas não devem expirar durante a medição.
+        try (PedidoServiceStub pedidoService = new PedidoServiceStub(Duration.ZERO);
+                ConfigurableApplicationContext context = TesteDeCarga.iniciarServico(pedidoService,
+                        Duration.ofHours(1), argumentosApp + " --estoque.grpc.enabled=true --estoque.grpc.porta=0")) {
+            urlBase = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/estoque";
+            portaGrpc = context.getBean(ServidorGrpc.class).getPorta();
+            TesteDeCarga.cadastrarProdutos(context.getBean(EstoqueRepository.class), skus);
+
+            System.out.printf(Locale.ROOT, "Protocolos: workers %s, aquecimento %s, medição %s, %d SKUs%n",
+                    concorrencias, aquecimento, duracao, skus);
+
+            Map<String, Amostras> resultados = new LinkedHashMap<>();
+            for (int concorrencia : concorrencias) {
+                for (String forma : List.of(REST_HTTP1, REST_H2C, STREAM_HTTP1, GRPC_UNARIO, GRPC_STREAM)) {
+                    resultados.put(concorrencia + "," + forma, medir(forma, concorrencia));
+                }
+            }
+            relatar(resultados);
+        }
+    }
+
+    private Amostras medir(String forma, int concorrencia) throws Exception {
+        long inicioMedicao = System.nanoTime() + aquecimento.toNanos();
+        long fim = inicioMedicao + duracao.toNanos();
+        if (forma.equals(GRPC_UNARIO) || forma.equals(GRPC_STREAM)) {
+            return medirGrpc(forma, concorrencia, inicioMedicao, fim);
+        }
+        Amostras resultado = new Amostras();
+        // Um cliente por nível e forma: no h2c todos os workers dividem a conexão aberta por ele.
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+                HttpClient httpClient = novoCliente(forma)) {
+            abrirConexao(httpClient);
+            // O cliente do JDK falha a requisição acima do limite de streams em vez de esperar; um cliente gRPC
+            // enfileira as chamadas excedentes, e o semáforo faz o mesmo. A espera entra na latência.
+            Semaphore streams = new Semaphore(forma.equals(REST_H2C) ? STREAMS_POR_CONEXAO : Integer.MAX_VALUE);
+            List<Future<Amostras>> futuros = new ArrayList<>();
+            for (int i = 0; i < concorrencia; i++) {
+                futuros.add(workers.submit(() -> forma.equals(STREAM_HTTP1)
+                        ? workerStream(inicioMedicao, fim)
+                        : workerRest(httpClient, streams, inicioMedicao, fim)));
+            }
+            for (Future<Amostras> futuro : futuros) {
+                resultado.somar(futuro.get());
+            }
+        }
+        return resultado;
+    }
+
+    // Um canal por nível e forma, como o cliente h2c: as chamadas de todos os workers multiplexadas numa conexão. O
+    // canal enfileira sozinho as chamadas acima do limite de streams.
+    private Amostras medirGrpc(String forma, int concorrencia, long inicioMedicao, long fim) throws Exception {
+        Amostras resultado = new Amostras();
+        ManagedChannel canal = Grpc.newChannelBuilderForAddress("localhost", portaGrpc,
+                InsecureChannelCredentials.create()).build();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Amostras>> futuros = new ArrayList<>();
+            for (int i = 0; i < concorrencia; i++) {
+                futuros.add(workers.submit(() -> forma.equals(GRPC_STREAM)
+                        ? workerGrpcStream(canal, inicioMedicao, fim)
+                        : workerGrpcUnario(canal, inicioMedicao, fim)));
+            }
+            for (Future<Amostras> futuro : futuros) {
+                resultado.somar(futuro.get());
+            }
+        } finally {
+            canal.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        return resultado;
+    }
+
+    private HttpClient novoCliente(String forma) {
+        return HttpClient.newBuilder()
+                .version(forma.equals(REST_H2C) ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    // O upgrade para h2c acontece num GET sem corpo; as requisições seguintes já vão multiplexadas nessa conexão.
+    private void abrirConexao(HttpClient httpClient) throws IOException, InterruptedException {
+        HttpResponse<Void> resposta = httpClient.send(
+                HttpRequest.newBuilder(URI.create(urlBase + "/" + TesteDeCarga.sku(0))).GET().build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (httpClient.version() == HttpClient.Version.HTTP_2 && resposta.version() != HttpClient.Version.HTTP_2) {
+            throw new IllegalStateException("O serviço não aceitou h2c; confira server.http2.enabled.");
+        }
+    }
+
+    private Amostras workerRest(HttpClient httpClient, Semaphore streams, long inicioMedicao, long fim) {
+        Amostras amostras = new Amostras();
+        while (System.nanoTime() < fim) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(urlBase))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(pedido()))
+                    .build();
+            long inicio = System.nanoTime();
+            int status;
+            try {
+                streams.acquire();
+                try {
+                    status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                } finally {
+                    streams.release();
+                }
+            } catch (IOException ex) {
+                status = -1;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (inicio >= inicioMedicao) {
+                amostras.registrar(System.nanoTime() - inicio, status);
+            }
+        }
+        return amostras;
+    }
+
+    // Um fluxo por worker numa conexão HTTP/1.1 própria, com o corpo em chunks: o cliente HTTP do JDK só lê a
+    // resposta depois de enviar o corpo inteiro, então o fluxo é escrito e lido direto no socket.
+    private Amostras workerStream(long inicioMedicao, long fim) throws IOException {
+        Amostras amostras = new Amostras();
+        URI uri = URI.create(urlBase + "/stream");
+        try (Socket socket = new Socket(uri.getHost(), uri.getPort())) {
+            socket.setTcpNoDelay(true);
+            OutputStream saida = new BufferedOutputStream(socket.getOutputStream());
+            BufferedReader entrada = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            saida.write(("POST " + uri.getPath() + " HTTP/1.1\r\nHost: " + uri.getHost() + ":" + uri.getPort()
+                    + "\r\nContent-Type: application/x-ndjson\r\nTransfer-Encoding: chunked\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+
+            // Os cabeçalhos da resposta só chegam com o primeiro resultado.
+            long inicio = System.nanoTime();
+            enviarChunk(saida, pedido() + "\n");
+            String linha;
+            while (!(linha = entrada.readLine()).isEmpty()) {
+                if (linha.startsWith("HTTP/1.1 ") && !linha.startsWith("HTTP/1.1 200")) {
+                    throw new IllegalStateException("Fluxo recusado: " + linha);
+                }
+            }
+
+            while (true) {
+                String resultado = lerLinhaChunked(entrada);
+                if (inicio >= inicioMedicao) {
+                    amostras.registrar(System.nanoTime() - inicio, resultado.contains("\"SUCESSO\"") ? 200 : 409);
+                }
+                if (System.nanoTime() >= fim) {
+                    break;
+                }
+                inicio = System.nanoTime();
+                enviarChunk(saida, pedido() + "\n");
+            }
+            enviarChunk(saida, "");
+        }
+        return amostras;
+    }
+
+    private Amostras workerGrpcUnario(ManagedChannel canal, long inicioMedicao, long fim) {
+        Amostras amostras = new Amostras();
+        EstoqueGrpc.EstoqueBlockingStub stub = EstoqueGrpc.newBlockingStub(canal);
+        while (System.nanoTime() < fim) {
+            Pedido pedido = pedidoGrpc();
+            long inicio = System.nanoTime();
+            int status;
+            try {
+                stub.reservar(pedido);
+                status = 200;
+            } catch (StatusRuntimeException ex) {
+                status = statusHttp(ex);
+            }
+            if (inicio >= inicioMedicao) {
+                amostras.registrar(System.nanoTime() - inicio, status);
+            }
+        }
+        return amostras;
+    }
+
+    // Um ReservarStream por worker, com o pedido seguinte enviado só depois de chegar o resultado do anterior.
+    private Amostras workerGrpcStream(ManagedChannel canal, long inicioMedicao, long fim) throws InterruptedException {
+        Amostras amostras = new Amostras();
+        BlockingQueue<ResultadoPedido> resultados = new LinkedBlockingQueue<>();
+        AtomicReference<Throwable> erro = new AtomicReference<>();
+        StreamObserver<Pedido> envio = EstoqueGrpc.newStub(canal).reservarStream(new StreamObserver<>() {
+            @Override
+            public void onNext(ResultadoPedido resultado) {
+                resultados.add(resultado);
+            }
+
+            // Acorda o worker parado esperando um resultado.
+            @Override
+            public void onError(Throwable ex) {
+                erro.set(ex);
+                resultados.add(ResultadoPedido.getDefaultInstance());
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+
+        while (System.nanoTime() < fim) {
+            long inicio = System.nanoTime();
+            envio.onNext(pedidoGrpc());
+            ResultadoPedido resultado = resultados.poll(30, TimeUnit.SECONDS);
+            if (erro.get() != null) {
+                throw new IllegalStateException("Fluxo gRPC encerrado pelo serviço.", erro.get());
+            }
+            if (resultado == null) {
+                throw new IllegalStateException("Fluxo gRPC sem resultado em 30 s.");
+            }
+            if (inicio >= inicioMedicao) {
+                amostras.registrar(System.nanoTime() - inicio,
+                        resultado.getStatus() == ResultadoPedidoStatus.SUCESSO ? 200 : 409);
+            }
+        }
+        envio.onCompleted();
+        return amostras;
+    }
+
+    // Os mesmos códigos que o REST responderia, para as colunas de erro das formas serem comparáveis.
+    private static int statusHttp(StatusRuntimeException ex) {
+        return switch (ex.getStatus().getCode()) {
+            case FAILED_PRECONDITION -> 409;
+            case NOT_FOUND -> 404;
+            case UNAVAILABLE -> 503;
+            default -> 500;
+        };
+    }
+
+    private static void enviarChunk(OutputStream saida, String conteudo) throws IOException {
+        byte[] bytes = conteudo.getBytes(StandardCharsets.UTF_8);
+        saida.write((Integer.toHexString(bytes.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        saida.write(bytes);
+        saida.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        saida.flush();
+    }
+
+    // Cada resultado vem num chunk próprio, porque o serviço dá flush a cada grupo de pedidos.
+    private static String lerLinhaChunked(BufferedReader entrada) throws IOException {
+        StringBuilder linha = new StringBuilder();
+        while (linha.isEmpty() || linha.charAt(linha.length() - 1) != '\n') {
+            int tamanho = Integer.parseInt(entrada.readLine().trim(), 16);
+            char[] dados = new char[tamanho];
+            int lidos = 0;
+            while (lidos < tamanho) {
+                lidos += entrada.read(dados, lidos, tamanho - lidos);
+            }
+            linha.append(dados);
+            entrada.readLine();
+        }
+        return linha.toString().trim();
+    }
+
+    private String pedido() {
+        return "{\"pedidoId\":\"" + UUID.randomUUID() + "\",\"pedidos\":[{\"productSKU\":\""
+                + TesteDeCarga.sku(ThreadLocalRandom.current().nextInt(skus)) + "\",\"qtd\":1}]}";
+    }
+
+    private Pedido pedidoGrpc() {
+        return Pedido.newBuilder()
+                .setPedidoId(UUID.randomUUID().toString())
+                .addPedidos(ItemPedido.newBuilder()
+                        .setProductSku(TesteDeCarga.sku(ThreadLocalRandom.current().nextInt(skus)))
+                        .setQtd(1))
+                .build();
+    }
+
+    private void relatar(Map<String, Amostras> resultados) throws IOException {
+        double segundos = duracao.toNanos() / 1e9;
+        List<String> linhas = new ArrayList<>();
+
+        System.out.printf(Locale.ROOT, "%n%8s %-14s %11s %10s %9s %9s %9s %7s%n", "workers", "forma",
+                "pedidos", "pedidos/s", "p50 ms", "p99 ms", "p999 ms", "erros");
+        resultados.forEach((chave, amostras) -> {
+            String[] partes = chave.split(",");
+            double[] p = amostras.percentisMs(0.50, 0.99, 0.999);
+            double porSegundo = amostras.total() / segundos;
+            System.out.printf(Locale.ROOT, "%8s %-14s %11d %10.1f %9.2f %9.2f %9.2f %7d%n", partes[0], partes[1],
+                    amostras.total(), porSegundo, p[0], p[1], p[2], amostras.erros() + amostras.rejeitadas());
+            linhas.add(String.format(Locale.ROOT, "%s,%s,%d,%.1f,%.3f,%.3f,%.3f,%d", partes[0], partes[1],
+                    amostras.total(), porSegundo, p[0], p[1], p[2], amostras.erros() + amostras.rejeitadas()));
+        });
+
+        Path arquivo = Path.of("target", "protocolos-resultado.csv");
+        Files.createDirectories(arquivo.getParent());
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(arquivo))) {
+            writer.println("concorrencia,forma,pedidos,pedidos_s,p50_ms,p99_ms,p999_ms,erros");
+            linhas.forEach(writer::println);
+        }
+        System.out.println("\nResultado gravado em " + arquivo.toAbsolutePath());
+    }
+}
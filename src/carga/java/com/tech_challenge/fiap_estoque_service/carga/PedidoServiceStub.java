@@ -0,0 +1,54 @@
+package com.tech_challenge.fiap_estoque_service.carga;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+// Substitui o pedido-service durante a carga: aceita qualquer PUT em /pedido/* e conta as chamadas por caminho.
+// A latência simula um pedido-service lento, para medir as notificações bloqueando em chamadas Feign.
+class PedidoServiceStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final Map<String, LongAdder> chamadas = new ConcurrentHashMap<>();
+
+    PedidoServiceStub(Duration latencia) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/pedido/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            if (!latencia.isZero()) {
+                try {
+                    Thread.sleep(latencia);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            chamadas.computeIfAbsent(exchange.getRequestURI().getPath(), caminho -> new LongAdder()).increment();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    String url() {
+        return "http://localhost:" + server.getAddress().getPort() + "/pedido";
+    }
+
+    Map<String, Long> chamadas() {
+        Map<String, Long> resultado = new TreeMap<>();
+        chamadas.forEach((caminho, total) -> resultado.put(caminho, total.sum()));
+        return resultado;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,51 @@
+package com.tech_challenge.fiap_estoque_service.carga;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+// Picos de heap usado e de threads de plataforma durante a medição de um nível, amostrados a cada 100 ms. Os workers
+// da carga são threads virtuais e não entram na contagem de threads; o heap é o do processo inteiro, com a carga junto.
+class Recursos implements AutoCloseable {
+
+    private static final long INTERVALO_MS = 100;
+
+    private final MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Thread amostrador;
+    private volatile long heapPico;
+    private volatile int threadsPico;
+
+    Recursos() {
+        // Parte de um heap limpo, para o pico refletir o nível medido e não o lixo dos anteriores.
+        System.gc();
+        threads.resetPeakThreadCount();
+        amostrador = Thread.ofPlatform().daemon().name("carga-recursos").start(this::amostrar);
+    }
+
+    private void amostrar() {
+        while (!Thread.currentThread().isInterrupted()) {
+            heapPico = Math.max(heapPico, memoria.getHeapMemoryUsage().getUsed());
+            try {
+                Thread.sleep(INTERVALO_MS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    double heapPicoMb() {
+        return heapPico / (1024.0 * 1024.0);
+    }
+
+    int threadsPico() {
+        return threadsPico;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        amostrador.interrupt();
+        amostrador.join();
+        threadsPico = threads.getPeakThreadCount();
+    }
+}
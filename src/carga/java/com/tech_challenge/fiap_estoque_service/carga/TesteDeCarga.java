@@ -0,0 +1,255 @@
+package com.tech_challenge.fiap_estoque_service.carga;
+
+import com.tech_challenge.fiap_estoque_service.FiapEstoqueServiceApplication;
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Teste de carga de ponta a ponta do EstoqueController. Sobe o serviço numa porta livre, com o pedido-service
+ * trocado por um {@link PedidoServiceStub}, e roda workers concorrentes com o ciclo de vida de um pedido: reserva
+ * (com parte dos itens concentrada em poucos SKUs quentes), consultas de saldo e depois confirmação, cancelamento
+ * ou abandono até a reserva expirar pelo TTL curto.
+ *
+ * Configuração por propriedades de sistema {@code carga.*} (ver o profile {@code carga} no pom.xml).
+ * {@code carga.concorrencia} aceita uma lista ({@code 32,256,1024}) para medir como o serviço escala; o resultado
+ * por nível e endpoint (ops/s, p50/p99/p999) vai para a saída padrão e para {@code target/carga-resultado.csv},
+ * junto com o pico de heap usado e de threads de plataforma de cada nível. Rodar de novo com
+ * {@code -Dcarga.app-args=--spring.threads.virtual.enabled=true} dá a comparação entre thread por requisição e
+ * threads virtuais no mesmo hardware.
+ */
+public class TesteDeCarga {
+
+    private static final String RESERVAR = "POST /estoque";
+    private static final String CONSULTAR = "GET /estoque/{sku}";
+    private static final String CONFIRMAR = "POST /estoque/confirm";
+    private static final String CANCELAR = "POST /estoque/cancel";
+
+    private final List<Integer> concorrencias = Arrays
+            .stream(System.getProperty("carga.concorrencia", "32").split(","))
+            .map(String::trim)
+            .map(Integer::valueOf)
+            .toList();
+    private final Duration aquecimento = Duration.parse(System.getProperty("carga.aquecimento", "PT5S"));
+    private final Duration duracao = Duration.parse(System.getProperty("carga.duracao", "PT30S"));
+    private final Duration ttl = Duration.parse(System.getProperty("carga.ttl", "PT2S"));
+    private final int skus = Integer.getInteger("carga.skus", 1000);
+    private final int skusQuentes = Integer.getInteger("carga.skus-quentes", 10);
+    private final double fracaoQuente = Double.parseDouble(System.getProperty("carga.fracao-quente", "0.8"));
+    private final int itensPorPedido = Integer.getInteger("carga.itens-por-pedido", 3);
+    private final int consultasPorPedido = Integer.getInteger("carga.consultas-por-pedido", 2);
+    private final double fracaoConfirmar = Double.parseDouble(System.getProperty("carga.fracao-confirmar", "0.5"));
+    private final double fracaoCancelar = Double.parseDouble(System.getProperty("carga.fracao-cancelar", "0.3"));
+    private final Duration latenciaPedido = Duration.parse(System.getProperty("carga.latencia-pedido", "PT0S"));
+    private final String argumentosApp = System.getProperty("carga.app-args", "");
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    private String urlBase;
+
+    public static void main(String[] args) throws Exception {
+        new TesteDeCarga().executar();
+        System.exit(0);
+    }
+
+    private void executar() throws Exception {
+        try (PedidoServiceStub pedidoService = new PedidoServiceStub(latenciaPedido);
+                ConfigurableApplicationContext context = iniciarServico(pedidoService, ttl, argumentosApp)) {
+            urlBase = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/estoque";
+            cadastrarProdutos(context.getBean(EstoqueRepository.class), skus);
+
+            System.out.printf(Locale.ROOT, "Carga: workers %s, aquecimento %s, medição %s, TTL %s, %d SKUs "
+                    + "(%d quentes com %.0f%% dos itens), threads virtuais %s%n", concorrencias, aquecimento,
+                    duracao, ttl, skus, skusQuentes, fracaoQuente * 100,
+                    context.getEnvironment().getProperty("spring.threads.virtual.enabled", "false"));
+
+            // Um nível de concorrência por vez, cada um com o seu aquecimento, sobre o mesmo serviço.
+            Map<Integer, Map<String, Amostras>> resultados = new TreeMap<>();
+            Map<Integer, Recursos> recursos = new TreeMap<>();
+            for (int concorrencia : concorrencias) {
+                try (Recursos recursosNivel = new Recursos()) {
+                    resultados.put(concorrencia, medir(concorrencia));
+                    recursos.put(concorrencia, recursosNivel);
+                }
+            }
+
+            // Dá tempo para as reservas abandonadas expirarem e o outbox avisar o stub.
+            Thread.sleep(ttl.plusSeconds(3).toMillis());
+            relatar(resultados, recursos, context.getEnvironment()
+                    .getProperty("spring.threads.virtual.enabled", "false"), pedidoService.chamadas());
+        }
+    }
+
+    private Map<String, Amostras> medir(int concorrencia) throws Exception {
+        long inicioMedicao = System.nanoTime() + aquecimento.toNanos();
+        long fim = inicioMedicao + duracao.toNanos();
+        Map<String, Amostras> resultado = new TreeMap<>();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Map<String, Amostras>>> futuros = new ArrayList<>();
+            for (int i = 0; i < concorrencia; i++) {
+                futuros.add(workers.submit(() -> worker(inicioMedicao, fim)));
+            }
+            for (Future<Map<String, Amostras>> futuro : futuros) {
+                futuro.get().forEach((endpoint, amostras) -> resultado
+                        .computeIfAbsent(endpoint, e -> new Amostras()).somar(amostras));
+            }
+        }
+        return resultado;
+    }
+
+    static ConfigurableApplicationContext iniciarServico(PedidoServiceStub pedidoService, Duration ttl,
+            String argumentosApp) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--spring.datasource.url=jdbc:h2:mem:carga;DB_CLOSE_ON_EXIT=FALSE",
+                "--pedido.service.url=" + pedidoService.url(),
+                "--estoque.reserva.ttl=" + ttl));
+        if (!argumentosApp.isBlank()) {
+            args.addAll(Arrays.asList(argumentosApp.trim().split("\\s+")));
+        }
+        return new SpringApplicationBuilder(FiapEstoqueServiceApplication.class).run(args.toArray(String[]::new));
+    }
+
+    static void cadastrarProdutos(EstoqueRepository estoqueRepository, int skus) {
+        estoqueRepository.saveAll(IntStream.range(0, skus)
+                .mapToObj(i -> Estoque.builder()
+                        .productSKU(sku(i))
+                        .quantidadeDisponivel(1_000_000)
+                        .quantidadeReal(1_000_000)
+                        .updatedAt(LocalDateTime.now())
+                        .build())
+                .toList());
+    }
+
+    private Map<String, Amostras> worker(long inicioMedicao, long fim) {
+        Map<String, Amostras> amostras = new TreeMap<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while (System.nanoTime() < fim) {
+            String pedidoId = UUID.randomUUID().toString();
+            Set<String> itens = new LinkedHashSet<>();
+            while (itens.size() < Math.min(itensPorPedido, skus)) {
+                itens.add(random.nextDouble() < fracaoQuente ? sku(random.nextInt(skusQuentes))
+                        : sku(random.nextInt(skus)));
+            }
+
+            String pedido = itens.stream()
+                    .map(sku -> "{\"productSKU\":\"" + sku + "\",\"qtd\":1}")
+                    .collect(Collectors.joining(",", "{\"pedidoId\":\"" + pedidoId + "\",\"pedidos\":[", "]}"));
+            int status = chamar(amostras, inicioMedicao, RESERVAR, post("", pedido));
+
+            for (int i = 0; i < consultasPorPedido; i++) {
+                chamar(amostras, inicioMedicao, CONSULTAR,
+                        HttpRequest.newBuilder(URI.create(urlBase + "/" + sku(random.nextInt(skus)))).GET().build());
+            }
+
+            if (status != 201) {
+                continue;
+            }
+            double destino = random.nextDouble();
+            String corpo = "{\"pedidoId\":\"" + pedidoId + "\"}";
+            if (destino < fracaoConfirmar) {
+                chamar(amostras, inicioMedicao, CONFIRMAR, post("/confirm", corpo));
+            } else if (destino < fracaoConfirmar + fracaoCancelar) {
+                chamar(amostras, inicioMedicao, CANCELAR, post("/cancel", corpo));
+            }
+            // Senão o pedido é abandonado e a reserva expira pelo TTL.
+        }
+        return amostras;
+    }
+
+    private int chamar(Map<String, Amostras> amostras, long inicioMedicao, String endpoint, HttpRequest request) {
+        long inicio = System.nanoTime();
+        int status;
+        try {
+            status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException ex) {
+            status = -1;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        if (inicio >= inicioMedicao) {
+            amostras.computeIfAbsent(endpoint, e -> new Amostras()).registrar(System.nanoTime() - inicio, status);
+        }
+        return status;
+    }
+
+    private HttpRequest post(String caminho, String corpo) {
+        return HttpRequest.newBuilder(URI.create(urlBase + caminho))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(corpo))
+                .build();
+    }
+
+    static String sku(int indice) {
+        return "carga-" + indice;
+    }
+
+    private void relatar(Map<Integer, Map<String, Amostras>> resultados, Map<Integer, Recursos> recursos,
+            String threadsVirtuais, Map<String, Long> notificacoes) throws IOException {
+        double segundos = duracao.toNanos() / 1e9;
+        String cabecalho = "threads_virtuais,concorrencia,endpoint,requisicoes,ops_s,p50_ms,p99_ms,p999_ms,"
+                + "rejeitadas_4xx,erros,heap_pico_mb,threads_pico";
+        List<String> linhas = new ArrayList<>();
+
+        System.out.printf(Locale.ROOT, "%n%8s %-24s %11s %10s %9s %9s %9s %9s %7s%n", "workers", "endpoint",
+                "requisicoes", "ops/s", "p50 ms", "p99 ms", "p999 ms", "4xx", "erros");
+        resultados.forEach((concorrencia, resultado) -> resultado.forEach((endpoint, amostras) -> {
+            double[] p = amostras.percentisMs(0.50, 0.99, 0.999);
+            double opsPorSegundo = amostras.total() / segundos;
+            Recursos recursosNivel = recursos.get(concorrencia);
+            System.out.printf(Locale.ROOT, "%8d %-24s %11d %10.1f %9.2f %9.2f %9.2f %9d %7d%n", concorrencia,
+                    endpoint, amostras.total(), opsPorSegundo, p[0], p[1], p[2], amostras.rejeitadas(),
+                    amostras.erros());
+            linhas.add(String.format(Locale.ROOT, "%s,%d,%s,%d,%.1f,%.3f,%.3f,%.3f,%d,%d,%.1f,%d", threadsVirtuais,
+                    concorrencia, endpoint, amostras.total(), opsPorSegundo, p[0], p[1], p[2],
+                    amostras.rejeitadas(), amostras.erros(), recursosNivel.heapPicoMb(),
+                    recursosNivel.threadsPico()));
+        }));
+
+        System.out.printf(Locale.ROOT, "%n%8s %14s %14s%n", "workers", "heap pico MB", "threads pico");
+        recursos.forEach((concorrencia, recursosNivel) -> System.out.printf(Locale.ROOT, "%8d %14.1f %14d%n",
+                concorrencia, recursosNivel.heapPicoMb(), recursosNivel.threadsPico()));
+        System.out.println("\nNotificações recebidas pelo stub do pedido-service: " + notificacoes);
+
+        Path arquivo = Path.of("target", "carga-resultado.csv");
+        Files.createDirectories(arquivo.getParent());
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(arquivo))) {
+            writer.println(cabecalho);
+            linhas.forEach(writer::println);
+        }
+        System.out.println("Resultado gravado em " + arquivo.toAbsolutePath());
+    }
+}
@@ -0,0 +1,76 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Agregação das quantidades por SKU sobre listas grandes de reservas, como nos lotes da expiração e nos
+// cancelamentos/confirmações.
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AgregacaoReservasBenchmark {
+
+    @Param({ "1000", "100000" })
+    private int reservas;
+
+    @Param({ "10", "1000" })
+    private int skus;
+
+    private List<ReservaEstoque> lista;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime expiresAt = LocalDateTime.now();
+        ReservaStatus[] status = { ReservaStatus.PENDENTE, ReservaStatus.EXPIRADA, ReservaStatus.CANCELADA };
+        lista = IntStream.range(0, reservas)
+                .mapToObj(i -> ReservaEstoque.builder()
+                        .id(Integer.toString(i))
+                        .pedidoId("pedido-" + i / 3)
+                        .productSKU("sku-" + i % skus)
+                        .quantidadeReservada(1 + i % 5)
+                        .status(status[i % status.length])
+                        .expiresAt(expiresAt)
+                        .build())
+                .toList();
+    }
+
+    // Mesma agregação do ReservaExpirationScheduler.
+    @Benchmark
+    public Map<String, Integer> agruparPorSkuHashMap() {
+        return lista.stream()
+                .collect(Collectors.groupingBy(ReservaEstoque::getProductSKU,
+                        Collectors.summingInt(ReservaEstoque::getQuantidadeReservada)));
+    }
+
+    @Benchmark
+    public Map<String, Integer> quantidadesReservadas() {
+        return ReservaEstoqueRegras.quantidadesReservadas(lista);
+    }
+
+    @Benchmark
+    public Map<String, Integer> quantidadesParaDevolver() {
+        return ReservaEstoqueRegras.quantidadesParaDevolver(lista);
+    }
+}
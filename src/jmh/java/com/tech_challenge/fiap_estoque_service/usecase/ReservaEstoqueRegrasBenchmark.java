@@ -0,0 +1,70 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Validação do pedido e criação das reservas, sem banco, para pedidos de 1 a 500 itens.
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReservaEstoqueRegrasBenchmark {
+
+    private static final Duration TTL = Duration.ofMinutes(1);
+
+    @Param({ "1", "10", "100", "500" })
+    private int itens;
+
+    private PedidoDTO pedido;
+    private List<ReservaEstoque> reservas;
+
+    @Setup
+    public void setUp() {
+        pedido = new PedidoDTO(IntStream.range(0, itens)
+                .mapToObj(i -> new ItemPedidoDTO("sku-" + i, 1 + i % 5))
+                .toList(), UUID.randomUUID().toString());
+        reservas = ReservaEstoqueRegras.novasReservas(pedido, TTL);
+    }
+
+    @Benchmark
+    public Map<String, Integer> quantidadesPorSku() {
+        return ReservaEstoqueRegras.quantidadesPorSku(pedido);
+    }
+
+    @Benchmark
+    public List<ReservaEstoque> novasReservas() {
+        return ReservaEstoqueRegras.novasReservas(pedido, TTL);
+    }
+
+    @Benchmark
+    public boolean validarConfirmacao() {
+        return ReservaEstoqueRegras.validarConfirmacao(pedido.pedidoId(), reservas);
+    }
+
+    @Benchmark
+    public boolean validarCancelamento() {
+        return ReservaEstoqueRegras.validarCancelamento(pedido.pedidoId(), reservas);
+    }
+}
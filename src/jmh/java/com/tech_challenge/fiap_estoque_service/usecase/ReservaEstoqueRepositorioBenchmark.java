@@ -0,0 +1,94 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.FiapEstoqueServiceApplication;
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+// Caminho completo do EstoqueUseCase (JPA + Flyway + H2 embarcado). Cada operação reserva e depois cancela ou
+// confirma o pedido, para que o saldo não se esgote durante a medição.
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReservaEstoqueRepositorioBenchmark {
+
+    @Param({ "1", "10", "50" })
+    private int itens;
+
+    private ConfigurableApplicationContext context;
+    private EstoqueUseCase estoqueUseCase;
+    private List<ItemPedidoDTO> itensDoPedido;
+    private final AtomicLong sequencia = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        // Sem web e com os jobs agendados espaçados, para medir só a requisição.
+        context = new SpringApplicationBuilder(FiapEstoqueServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_ON_EXIT=FALSE",
+                        "--estoque.expiracao.varredura-ms=3600000",
+                        "--estoque.outbox.intervalo-ms=3600000",
+                        "--pedido.service.url=http://localhost:1/pedido");
+        estoqueUseCase = context.getBean(EstoqueUseCase.class);
+
+        EstoqueRepository estoqueRepository = context.getBean(EstoqueRepository.class);
+        itensDoPedido = IntStream.range(0, itens)
+                .mapToObj(i -> {
+                    estoqueRepository.save(Estoque.builder()
+                            .productSKU("bench-" + i)
+                            .quantidadeDisponivel(Integer.MAX_VALUE)
+                            .quantidadeReal(Integer.MAX_VALUE)
+                            .updatedAt(LocalDateTime.now())
+                            .build());
+                    return new ItemPedidoDTO("bench-" + i, 1);
+                })
+                .toList();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void reservarECancelar() {
+        String pedidoId = "bench-" + sequencia.incrementAndGet();
+        estoqueUseCase.updateEstoque(new PedidoDTO(itensDoPedido, pedidoId));
+        estoqueUseCase.updateStatusToCancel(pedidoId);
+    }
+
+    @Benchmark
+    public void reservarEConfirmar() {
+        String pedidoId = "bench-" + sequencia.incrementAndGet();
+        estoqueUseCase.updateEstoque(new PedidoDTO(itensDoPedido, pedidoId));
+        estoqueUseCase.updateStatusToConfirmed(pedidoId);
+    }
+}
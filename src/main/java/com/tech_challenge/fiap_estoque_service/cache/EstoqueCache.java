@@ -0,0 +1,97 @@
+package com.tech_challenge.fiap_estoque_service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tech_challenge.fiap_estoque_service.dto.EstoquePublicDTO;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache do saldo público por SKU, limitado por tamanho e por tempo desde a gravação. Quem altera
+ * {@code quantidadeDisponivel} chama {@link #invalidar(Collection)}; dentro de uma transação a invalidação roda
+ * depois do commit. Uma leitura que começou antes do commit segura a chave até terminar de carregar, então a
+ * invalidação sempre acontece depois dela e o valor antigo não sobrevive.
+ *
+ * Acertos, faltas e despejos ficam disponíveis no actuator como {@code cache.gets}/{@code cache.evictions}
+ * com a tag {@code cache=estoque}.
+ */
+@Component
+public class EstoqueCache {
+
+    private final Cache<String, EstoquePublicDTO> cache;
+    // Conta as invalidações; muda antes de cada uma remover as chaves.
+    private final AtomicLong geracao = new AtomicLong();
+
+    public EstoqueCache(MeterRegistry meterRegistry,
+            @Value("${estoque.cache.tamanho-maximo:10000}") long tamanhoMaximo,
+            @Value("${estoque.cache.expiracao:PT5S}") Duration expiracao) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(tamanhoMaximo)
+                .expireAfterWrite(expiracao)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "estoque");
+    }
+
+    public EstoquePublicDTO buscar(String productSKU, Function<String, EstoquePublicDTO> carregar) {
+        return cache.get(productSKU, carregar);
+    }
+
+    // Uma única chamada de carregamento para todas as faltas; SKUs que ela não devolver ficam fora do resultado.
+    // O carregamento em lote não segura as chaves como o buscar, então o que ele leu só entra no cache se nenhuma
+    // invalidação aconteceu desde antes da leitura; senão o valor é devolvido a quem pediu e não fica guardado.
+    public Map<String, EstoquePublicDTO> buscarTodos(Collection<String> productSKUs,
+            Function<Set<String>, Map<String, EstoquePublicDTO>> carregar) {
+        Map<String, EstoquePublicDTO> encontrados = new HashMap<>(cache.getAllPresent(productSKUs));
+        Set<String> faltantes = new HashSet<>(productSKUs);
+        faltantes.removeAll(encontrados.keySet());
+        if (faltantes.isEmpty()) {
+            return encontrados;
+        }
+
+        long geracaoLida = geracao.get();
+        Map<String, EstoquePublicDTO> carregados = carregar.apply(Set.copyOf(faltantes));
+        carregados.forEach((sku, estoque) -> cache.asMap().compute(sku,
+                (chave, atual) -> geracao.get() == geracaoLida ? estoque : atual));
+        encontrados.putAll(carregados);
+        return encontrados;
+    }
+
+    public void invalidar(Collection<String> productSKUs) {
+        List<String> skus = List.copyOf(productSKUs);
+        if (skus.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            remover(skus);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                remover(skus);
+            }
+        });
+    }
+
+    private void remover(List<String> skus) {
+        geracao.incrementAndGet();
+        cache.invalidateAll(skus);
+    }
+}
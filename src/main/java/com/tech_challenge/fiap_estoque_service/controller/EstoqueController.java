@@ -3,25 +3,75 @@ package com.tech_challenge.fiap_estoque_service.controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+import com.tech_challenge.fiap_estoque_service.usecase.EstoqueExportUseCase;
 import com.tech_challenge.fiap_estoque_service.usecase.EstoqueUseCase;
+import com.tech_challenge.fiap_estoque_service.usecase.ReservaStreamUseCase;
+import com.tech_challenge.fiap_estoque_service.dto.ConsultaEstoqueDTO;
 import com.tech_challenge.fiap_estoque_service.dto.EstoquePublicDTO;
+import com.tech_challenge.fiap_estoque_service.dto.FormatoExport;
 import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
 import com.tech_challenge.fiap_estoque_service.dto.PedidoIdRequestDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
 
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/estoque")
 public class EstoqueController {
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
     private EstoqueUseCase estoqueUseCase;
+    private EstoqueExportUseCase estoqueExportUseCase;
+    private EstoqueMetricas estoqueMetricas;
+    private ReservaStreamUseCase reservaStreamUseCase;
 
-    public EstoqueController(EstoqueUseCase estoqueUseCase) {
+    public EstoqueController(EstoqueUseCase estoqueUseCase, EstoqueExportUseCase estoqueExportUseCase,
+            EstoqueMetricas estoqueMetricas, ReservaStreamUseCase reservaStreamUseCase) {
         this.estoqueUseCase = estoqueUseCase;
+        this.estoqueExportUseCase = estoqueExportUseCase;
+        this.estoqueMetricas = estoqueMetricas;
+        this.reservaStreamUseCase = reservaStreamUseCase;
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportarEstoque(
+            @RequestParam(name = "formato", defaultValue = "NDJSON") FormatoExport formato,
+            @RequestParam(name = "aPartirDe", required = false) String aPartirDe,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        StreamingResponseBody corpo = saida -> {
+            if (!gzip) {
+                this.estoqueExportUseCase.exportar(formato, aPartirDe, saida);
+                return;
+            }
+            try (GZIPOutputStream saidaGzip = new GZIPOutputStream(saida, 64 * 1024)) {
+                this.estoqueExportUseCase.exportar(formato, aPartirDe, saidaGzip);
+            }
+        };
+
+        var resposta = ResponseEntity.ok()
+                .contentType(formato == FormatoExport.CSV ? TEXT_CSV : APPLICATION_NDJSON);
+        if (gzip) {
+            resposta.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return resposta.body(corpo);
     }
 
     @GetMapping("/{product_sku}")
@@ -30,22 +80,65 @@ public class EstoqueController {
         return ResponseEntity.ok().body(estoque);
     }
 
+    @GetMapping
+    public ResponseEntity<ConsultaEstoqueDTO> getEstoqueByProductSKUs(@RequestParam("skus") List<String> productSKUs) {
+        return ResponseEntity.ok().body(this.estoqueUseCase.getEstoqueByProductSKUs(productSKUs));
+    }
+
+    @PostMapping("/consulta")
+    public ResponseEntity<ConsultaEstoqueDTO> consultarEstoque(@RequestBody List<String> productSKUs) {
+        return ResponseEntity.ok().body(this.estoqueUseCase.getEstoqueByProductSKUs(productSKUs));
+    }
+
     @PostMapping
     public ResponseEntity<Void> reserveStock(@RequestBody PedidoDTO pedidoDTO) {
-        this.estoqueUseCase.updateEstoque(pedidoDTO);
+        this.estoqueMetricas.medirAcao("updateEstoque", () -> this.estoqueUseCase.updateEstoque(pedidoDTO));
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
     @PostMapping("/cancel")
     public ResponseEntity<Void> changeToCancelStatus(@RequestBody PedidoIdRequestDTO pedidoIdRequestDTO) {
-        this.estoqueUseCase.updateStatusToCancel(pedidoIdRequestDTO.pedidoId());
+        this.estoqueMetricas.medirAcao("updateStatusToCancel",
+                () -> this.estoqueUseCase.updateStatusToCancel(pedidoIdRequestDTO.pedidoId()));
         return ResponseEntity.noContent().build();
     }
 
     @PostMapping("/confirm")
     public ResponseEntity<Void> changeToConfirmedStatus(@RequestBody PedidoIdRequestDTO pedidoIdRequestDTO) {
-        this.estoqueUseCase.updateStatusToConfirmed(pedidoIdRequestDTO.pedidoId());
+        this.estoqueMetricas.medirAcao("updateStatusToConfirmed",
+                () -> this.estoqueUseCase.updateStatusToConfirmed(pedidoIdRequestDTO.pedidoId()));
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<List<ResultadoPedidoDTO>> reserveStockEmLote(@RequestBody List<PedidoDTO> pedidos) {
+        return ResponseEntity.ok().body(this.estoqueMetricas.medirLote("updateEstoqueEmLote",
+                () -> this.estoqueUseCase.updateEstoqueEmLote(pedidos)));
+    }
+
+    // Pedidos em NDJSON no corpo e um resultado por linha na resposta, escritos enquanto o corpo ainda chega.
+    @PostMapping(path = "/stream", consumes = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> reserveStockStream(HttpServletRequest request) {
+        StreamingResponseBody corpo = saida -> this.reservaStreamUseCase.reservar(request.getInputStream(), saida);
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(corpo);
+    }
+
+    @PostMapping("/cancel/batch")
+    public ResponseEntity<List<ResultadoPedidoDTO>> changeToCancelStatusEmLote(
+            @RequestBody List<PedidoIdRequestDTO> pedidos) {
+        return ResponseEntity.ok().body(this.estoqueMetricas.medirLote("updateStatusToCancelEmLote",
+                () -> this.estoqueUseCase.updateStatusToCancelEmLote(pedidoIds(pedidos))));
+    }
+
+    @PostMapping("/confirm/batch")
+    public ResponseEntity<List<ResultadoPedidoDTO>> changeToConfirmedStatusEmLote(
+            @RequestBody List<PedidoIdRequestDTO> pedidos) {
+        return ResponseEntity.ok().body(this.estoqueMetricas.medirLote("updateStatusToConfirmedEmLote",
+                () -> this.estoqueUseCase.updateStatusToConfirmedEmLote(pedidoIds(pedidos))));
+    }
+
+    private List<String> pedidoIds(List<PedidoIdRequestDTO> pedidos) {
+        return pedidos.stream().map(PedidoIdRequestDTO::pedidoId).toList();
+    }
+
 }
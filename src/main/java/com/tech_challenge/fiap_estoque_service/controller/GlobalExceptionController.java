@@ -1,5 +1,7 @@
 package com.tech_challenge.fiap_estoque_service.controller;
 
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -9,6 +11,7 @@ import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
 import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
 import com.tech_challenge.fiap_estoque_service.exception.ReservationCannotBeCancelledException;
 import com.tech_challenge.fiap_estoque_service.exception.ReservationNotFoundException;
+import com.tech_challenge.fiap_estoque_service.exception.StockEngineUnavailableException;
 
 @RestControllerAdvice
 public class GlobalExceptionController {
@@ -32,4 +35,22 @@ public class GlobalExceptionController {
             ReservationCannotBeCancelledException ex) {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
+
+    // Exports e fluxos de reservas abertos ocupam todas as threads do executor assíncrono do MVC: o cliente tenta
+    // de novo depois, em vez de esperar atrás de conexões que podem durar horas.
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<String> handleTaskRejectedException(TaskRejectedException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body("Limite de exports e fluxos de reservas simultâneos atingido.");
+    }
+
+    // Shard de estoque parado ou sem responder dentro da espera máxima: o comando pode nem ter sido aplicado, e o
+    // cliente repete o pedido, que é idempotente.
+    @ExceptionHandler(StockEngineUnavailableException.class)
+    public ResponseEntity<String> handleStockEngineUnavailableException(StockEngineUnavailableException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(ex.getMessage());
+    }
 }
@@ -0,0 +1,35 @@
+package com.tech_challenge.fiap_estoque_service.domain.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Parte do disponível de um SKU retirada da tabela estoque por uma instância no modo escrow. A quantidade é o
+// total concedido menos o que já foi devolvido; o que sobra dela é a quantidade menos as reservas com este lease.
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LeaseEstoque {
+    @Id
+    private String id;
+
+    private String instancia;
+
+    @Column(name = "product_sku")
+    private String productSKU;
+
+    private int quantidade;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
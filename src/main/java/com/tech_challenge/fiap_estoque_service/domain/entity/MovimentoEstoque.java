@@ -0,0 +1,50 @@
+package com.tech_challenge.fiap_estoque_service.domain.entity;
+
+import java.time.LocalDateTime;
+
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Movimento do ledger de estoque: só é inserido, e a compactação apenas o marca como já somado na tabela estoque.
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class MovimentoEstoque {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimento_estoque_seq")
+    @SequenceGenerator(name = "movimento_estoque_seq", sequenceName = "movimento_estoque_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "product_sku")
+    private String productSKU;
+
+    private int deltaDisponivel;
+
+    private int deltaReal;
+
+    @Enumerated(EnumType.STRING)
+    private MotivoMovimento motivo;
+
+    private String reservaId;
+
+    private boolean compactado;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,43 @@
+package com.tech_challenge.fiap_estoque_service.domain.entity;
+
+import java.time.LocalDateTime;
+
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Notificação para o pedido-service gravada na mesma transação da mudança de status (outbox).
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class NotificacaoPedido {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    private String pedidoId;
+
+    @Enumerated(EnumType.STRING)
+    private TipoNotificacao tipo;
+
+    private int tentativas;
+
+    private LocalDateTime proximaTentativa;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
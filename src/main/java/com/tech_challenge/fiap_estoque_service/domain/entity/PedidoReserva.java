@@ -0,0 +1,27 @@
+package com.tech_challenge.fiap_estoque_service.domain.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Um registro por pedido já reservado: a chave primária é o que torna a reserva idempotente por pedidoId.
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class PedidoReserva {
+    @Id
+    private String pedidoId;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
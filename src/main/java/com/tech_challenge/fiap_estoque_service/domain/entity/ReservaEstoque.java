@@ -41,4 +41,7 @@ public class ReservaEstoque {
     @Column(name = "expires_at", nullable = false, updatable = false)
     private LocalDateTime expiresAt; // cria a possibilidade de tirar a reserva do pedido após algum determinado
                                      // período de tempo.
+
+    // Lease do modo escrow de onde a quantidade saiu; nulo quando a reserva decrementou a tabela estoque.
+    private String leaseId;
 }
@@ -0,0 +1,44 @@
+package com.tech_challenge.fiap_estoque_service.domain.entity;
+
+import java.time.LocalDateTime;
+
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Reserva em status final movida da reserva_estoque pelo ArquivamentoReservasScheduler; só é lida.
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ReservaEstoqueHistorico {
+    @Id
+    private String id;
+
+    @Column(name = "product_sku")
+    private String productSKU;
+
+    private int quantidadeReservada;
+
+    @Enumerated(EnumType.STRING)
+    private ReservaStatus status;
+
+    private String pedidoId;
+
+    private LocalDateTime expiresAt;
+
+    private String leaseId;
+
+    private LocalDateTime arquivadaEm;
+}
@@ -0,0 +1,26 @@
+package com.tech_challenge.fiap_estoque_service.dto;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public record ConsultaEstoqueDTO(
+        List<EstoquePublicDTO> encontrados,
+        List<String> naoEncontrados) {
+
+    // Mantém a ordem dos SKUs pedidos; os que não estão no mapa vão para naoEncontrados.
+    public static ConsultaEstoqueDTO de(Collection<String> productSKUs, Map<String, EstoquePublicDTO> porSku) {
+        List<EstoquePublicDTO> encontrados = new ArrayList<>(porSku.size());
+        List<String> naoEncontrados = new ArrayList<>();
+        for (String productSKU : productSKUs) {
+            EstoquePublicDTO estoque = porSku.get(productSKU);
+            if (estoque != null) {
+                encontrados.add(estoque);
+            } else {
+                naoEncontrados.add(productSKU);
+            }
+        }
+        return new ConsultaEstoqueDTO(encontrados, naoEncontrados);
+    }
+}
@@ -0,0 +1,9 @@
+package com.tech_challenge.fiap_estoque_service.dto;
+
+import java.time.LocalDateTime;
+
+public record EstoqueExportDTO(
+        String productSKU,
+        int quantidadeDisponivel,
+        LocalDateTime updatedAt) {
+}
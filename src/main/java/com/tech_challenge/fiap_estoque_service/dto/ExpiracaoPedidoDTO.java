@@ -0,0 +1,6 @@
+package com.tech_challenge.fiap_estoque_service.dto;
+
+import java.time.LocalDateTime;
+
+public record ExpiracaoPedidoDTO(String pedidoId, LocalDateTime expiresAt) {
+}
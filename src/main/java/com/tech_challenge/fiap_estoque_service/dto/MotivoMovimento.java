@@ -0,0 +1,27 @@
+package com.tech_challenge.fiap_estoque_service.dto;
+
+// Motivo de um movimento do ledger de estoque e o sinal que ele aplica em cada quantidade.
+public enum MotivoMovimento {
+    RESERVA(-1, 0),
+    CANCELAMENTO(1, 0),
+    EXPIRACAO(1, 0),
+    CONFIRMACAO(0, -1),
+    // Devolução de uma reserva feita pelo shard antes de as reservas do pedido serem gravadas.
+    ESTORNO(1, 0);
+
+    private final int sinalDisponivel;
+    private final int sinalReal;
+
+    MotivoMovimento(int sinalDisponivel, int sinalReal) {
+        this.sinalDisponivel = sinalDisponivel;
+        this.sinalReal = sinalReal;
+    }
+
+    public int deltaDisponivel(int quantidade) {
+        return sinalDisponivel * quantidade;
+    }
+
+    public int deltaReal(int quantidade) {
+        return sinalReal * quantidade;
+    }
+}
@@ -0,0 +1,11 @@
+package com.tech_challenge.fiap_estoque_service.dto;
+
+public record ResultadoPedidoDTO(
+        String pedidoId,
+        ResultadoPedidoStatus status,
+        String mensagem) {
+
+    public static ResultadoPedidoDTO sucesso(String pedidoId) {
+        return new ResultadoPedidoDTO(pedidoId, ResultadoPedidoStatus.SUCESSO, null);
+    }
+}
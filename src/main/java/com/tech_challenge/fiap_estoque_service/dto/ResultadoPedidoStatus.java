@@ -0,0 +1,10 @@
+package com.tech_challenge.fiap_estoque_service.dto;
+
+public enum ResultadoPedidoStatus {
+    SUCESSO,
+    SEM_ESTOQUE,
+    NAO_ENCONTRADO,
+    NAO_CANCELAVEL,
+    STATUS_INVALIDO,
+    ERRO
+}
@@ -0,0 +1,7 @@
+package com.tech_challenge.fiap_estoque_service.dto;
+
+public record SaldoEstoqueDTO(
+        String productSKU,
+        long quantidadeDisponivel,
+        long quantidadeReal) {
+}
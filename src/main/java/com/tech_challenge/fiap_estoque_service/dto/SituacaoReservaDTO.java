@@ -0,0 +1,6 @@
+package com.tech_challenge.fiap_estoque_service.dto;
+
+public record SituacaoReservaDTO(
+        String productSKU,
+        ReservaStatus status) {
+}
@@ -0,0 +1,6 @@
+package com.tech_challenge.fiap_estoque_service.dto;
+
+public enum TipoNotificacao {
+    EXPIRADO,
+    SUCESSO
+}
@@ -0,0 +1,162 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
+import com.tech_challenge.fiap_estoque_service.dto.SaldoEstoqueDTO;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import com.tech_challenge.fiap_estoque_service.gateway.MovimentoEstoqueRepository;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saldo de estoque em memória, fonte da verdade para reservas quando
+ * {@code estoque.engine.memoria.enabled=true}. Cada transação que muda o saldo grava também os movimentos dela com
+ * {@link #registrar(List, MotivoMovimento)}, e a tabela estoque é atualizada de forma assíncrona pelo
+ * {@link EstoqueWriteBehind}, que soma esses movimentos. A carga lê a tabela mais os movimentos ainda não somados,
+ * então o que foi confirmado antes de uma queda da instância continua valendo depois dela.
+ */
+@Component
+@ConditionalOnProperty(name = "estoque.engine.memoria.enabled", havingValue = "true")
+public class EstoqueEmMemoria {
+
+    private static final Logger logger = LoggerFactory.getLogger(EstoqueEmMemoria.class);
+
+    private final MovimentoEstoqueRepository movimentoRepository;
+    private final MovimentosEstoque movimentosEstoque;
+    private final Map<String, SaldoSku> saldos = new ConcurrentHashMap<>();
+
+    public EstoqueEmMemoria(MovimentoEstoqueRepository movimentoRepository, MovimentosEstoque movimentosEstoque) {
+        this.movimentoRepository = movimentoRepository;
+        this.movimentosEstoque = movimentosEstoque;
+    }
+
+    @PostConstruct
+    public void carregar() {
+        for (SaldoEstoqueDTO saldo : movimentoRepository.saldosDeTodos()) {
+            saldos.put(saldo.productSKU(), novoSaldo(saldo));
+        }
+        logger.info("Estoque em memória carregado com {} produtos.", saldos.size());
+    }
+
+    public int disponivel(String productSKU) {
+        return saldo(productSKU).disponivel();
+    }
+
+    // SKUs ainda fora do mapa são buscados de uma vez no banco; os que também não existem lá ficam de fora.
+    public Map<String, Integer> disponiveis(Collection<String> productSKUs) {
+        Map<String, Integer> disponiveis = new HashMap<>();
+        List<String> ausentes = new ArrayList<>();
+        for (String productSKU : productSKUs) {
+            SaldoSku saldo = saldos.get(productSKU);
+            if (saldo != null) {
+                disponiveis.put(productSKU, saldo.disponivel());
+            } else {
+                ausentes.add(productSKU);
+            }
+        }
+        if (ausentes.isEmpty()) {
+            return disponiveis;
+        }
+
+        for (SaldoEstoqueDTO lido : movimentoRepository.saldos(ausentes)) {
+            SaldoSku saldo = saldos.computeIfAbsent(lido.productSKU(), sku -> novoSaldo(lido));
+            disponiveis.put(lido.productSKU(), saldo.disponivel());
+        }
+        return disponiveis;
+    }
+
+    /**
+     * Reserva todas as quantidades ou nenhuma. Dentro de uma transação, a reserva é desfeita em memória se a
+     * transação não for confirmada.
+     */
+    public void reservar(Map<String, Integer> quantidadesPorSku) {
+        Map<String, Integer> reservadas = new HashMap<>();
+        for (Map.Entry<String, Integer> item : quantidadesPorSku.entrySet()) {
+            SaldoSku saldo;
+            try {
+                saldo = saldo(item.getKey());
+            } catch (ProductNotFoundException ex) {
+                devolverAgora(reservadas);
+                throw ex;
+            }
+            if (!saldo.tentarReservar(item.getValue())) {
+                devolverAgora(reservadas);
+                throw new OutOfStockException(item.getKey());
+            }
+            reservadas.put(item.getKey(), item.getValue());
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        devolverAgora(reservadas);
+                    }
+                }
+            });
+        }
+    }
+
+    // Devoluções e baixas só valem depois do commit, para que o saldo em memória nunca fique maior do que o
+    // que as reservas gravadas permitem.
+    public void devolver(Map<String, Integer> quantidadesPorSku) {
+        aposCommit(() -> devolverAgora(quantidadesPorSku));
+    }
+
+    public void baixar(Map<String, Integer> quantidadesPorSku) {
+        aposCommit(() -> quantidadesPorSku.forEach((sku, qtd) -> saldo(sku).baixarReal(qtd)));
+    }
+
+    // Grava, na transação de quem chama, os movimentos que as reservas aplicaram ou vão aplicar em memória.
+    public void registrar(List<ReservaEstoque> reservas, MotivoMovimento motivo) {
+        movimentosEstoque.registrar(reservas, motivo);
+    }
+
+    private void devolverAgora(Map<String, Integer> quantidadesPorSku) {
+        quantidadesPorSku.forEach((sku, qtd) -> saldo(sku).devolver(qtd));
+    }
+
+    // Produtos cadastrados depois da carga inicial são lidos do banco no primeiro acesso.
+    private SaldoSku saldo(String productSKU) {
+        SaldoSku saldo = saldos.get(productSKU);
+        if (saldo != null) {
+            return saldo;
+        }
+        SaldoEstoqueDTO lido = movimentoRepository.saldo(productSKU)
+                .orElseThrow(() -> new ProductNotFoundException(productSKU));
+        return saldos.computeIfAbsent(productSKU, sku -> novoSaldo(lido));
+    }
+
+    private static SaldoSku novoSaldo(SaldoEstoqueDTO saldo) {
+        return new SaldoSku((int) saldo.quantidadeDisponivel(), (int) saldo.quantidadeReal());
+    }
+
+    private void aposCommit(Runnable acao) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            acao.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                acao.run();
+            }
+        });
+    }
+}
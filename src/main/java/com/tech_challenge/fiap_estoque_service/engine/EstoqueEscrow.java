@@ -0,0 +1,315 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
+import com.tech_challenge.fiap_estoque_service.domain.entity.LeaseEstoque;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.LeaseEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Modo escrow ({@code estoque.engine.escrow.enabled=true}): cada instância retira da tabela estoque, num único
+ * UPDATE condicional, um lote do disponível de cada SKU que vende e passa a reservar desse lease local, sem disputar
+ * a linha do estoque com as outras réplicas. O lease é completado quando acaba, renovado a cada
+ * {@code estoque.engine.escrow.renovacao-ms} e, nessa renovação, o que passa do dobro da demanda do último ciclo
+ * volta para o estoque. No desligamento tudo o que sobrou é devolvido.
+ *
+ * Não há venda além do estoque: o que está num lease já saiu do disponível da tabela, e cada reserva grava o id do
+ * lease de onde saiu. Se a instância cair, qualquer outra recupera os leases vencidos há mais de
+ * {@code estoque.engine.escrow.duracao}, devolvendo a quantidade do lease menos as reservas gravadas com ele. A dona
+ * para de usar um lease assim que ele vence sem renovação, então a carência cobre as transações em andamento.
+ */
+@Component
+@ConditionalOnProperty(name = "estoque.engine.escrow.enabled", havingValue = "true")
+public class EstoqueEscrow {
+
+    private static final Logger logger = LoggerFactory.getLogger(EstoqueEscrow.class);
+
+    private final EstoqueRepository estoqueRepository;
+    private final LeaseEstoqueRepository leaseRepository;
+    private final ReservaEstoqueRepository reservaRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final EstoqueCache estoqueCache;
+    private final String instancia;
+    private final Duration duracao;
+    private final int loteMinimo;
+    private final int loteMaximo;
+    private final Map<String, LeaseSku> leases = new ConcurrentHashMap<>();
+
+    public EstoqueEscrow(EstoqueRepository estoqueRepository, LeaseEstoqueRepository leaseRepository,
+            ReservaEstoqueRepository reservaRepository, TransactionTemplate transactionTemplate,
+            EstoqueCache estoqueCache,
+            @Value("${estoque.engine.escrow.instancia:}") String instancia,
+            @Value("${estoque.engine.escrow.duracao:PT30S}") Duration duracao,
+            @Value("${estoque.engine.escrow.lote-minimo:20}") int loteMinimo,
+            @Value("${estoque.engine.escrow.lote-maximo:1000}") int loteMaximo) {
+        this.estoqueRepository = estoqueRepository;
+        this.leaseRepository = leaseRepository;
+        this.reservaRepository = reservaRepository;
+        // Concessões e devoluções são confirmadas na hora, independentes da transação da reserva que as provocou.
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.estoqueCache = estoqueCache;
+        this.instancia = instancia.isBlank() ? UUID.randomUUID().toString() : instancia;
+        this.duracao = duracao;
+        this.loteMinimo = loteMinimo;
+        this.loteMaximo = loteMaximo;
+    }
+
+    /**
+     * Reserva todas as quantidades ou nenhuma e devolve o id do lease usado por SKU, para ser gravado nas reservas.
+     * Dentro de uma transação, as quantidades voltam para o lease se ela não for confirmada.
+     *
+     * Completar um lease abre uma transação própria enquanto segura a trava do SKU; chamado dentro da transação de
+     * quem reserva, cada thread na fila da trava prende uma conexão esperando outra. Quem reserva com o pool
+     * disputado usa {@link #retirar(Map)} antes da própria transação e {@link #concluir(Map, Map, boolean)} depois.
+     */
+    public Map<String, String> reservar(Map<String, Integer> quantidadesPorSku) {
+        Map<String, String> leaseIds = retirar(quantidadesPorSku);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            concluir(quantidadesPorSku, leaseIds, true);
+            return leaseIds;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                concluir(quantidadesPorSku, leaseIds, status == STATUS_COMMITTED);
+            }
+        });
+        return leaseIds;
+    }
+
+    /**
+     * Tira as quantidades dos leases, todas ou nenhuma, sem depender de transação. Até o
+     * {@link #concluir(Map, Map, boolean)} elas ficam em andamento e o lease não é apagado.
+     */
+    public Map<String, String> retirar(Map<String, Integer> quantidadesPorSku) {
+        Map<String, String> leaseIds = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> item : quantidadesPorSku.entrySet()) {
+            try {
+                leaseIds.put(item.getKey(), consumir(item.getKey(), item.getValue()));
+            } catch (RuntimeException ex) {
+                concluir(quantidadesPorSku, leaseIds, false);
+                throw ex;
+            }
+        }
+        return leaseIds;
+    }
+
+    // Encerra uma retirada: confirmada, as quantidades viraram reservas; senão voltam para o lease.
+    public void concluir(Map<String, Integer> quantidadesPorSku, Map<String, String> leaseIds, boolean confirmada) {
+        leaseIds.forEach((sku, leaseId) -> finalizar(sku, leaseId, quantidadesPorSku.get(sku), confirmada));
+    }
+
+    // O que esta instância ainda pode reservar do SKU sem ir ao banco.
+    public int saldoLocal(String productSKU) {
+        LeaseSku lease = leases.get(productSKU);
+        if (lease == null) {
+            return 0;
+        }
+        lease.lock.lock();
+        try {
+            return lease.vigente(LocalDateTime.now()) ? lease.saldo : 0;
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.engine.escrow.renovacao-ms:10000}")
+    public void renovar() {
+        leases.forEach((sku, lease) -> {
+            lease.lock.lock();
+            try {
+                if (lease.id != null) {
+                    // Mantém o dobro da demanda do último ciclo; um SKU sem venda devolve o lease inteiro.
+                    devolver(sku, lease, Math.max(lease.saldo - 2 * lease.demanda(), 0));
+                }
+                lease.fecharCiclo();
+            } catch (RuntimeException ex) {
+                logger.error("Erro ao renovar o lease do produto {}.", sku, ex);
+            } finally {
+                lease.lock.unlock();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void devolverTudo() {
+        leases.forEach((sku, lease) -> {
+            lease.lock.lock();
+            try {
+                if (lease.id != null) {
+                    devolver(sku, lease, lease.saldo);
+                }
+            } catch (RuntimeException ex) {
+                // O lease continua gravado e é recuperado por outra instância depois de vencer.
+                logger.error("Erro ao devolver o lease do produto {}.", sku, ex);
+            } finally {
+                lease.lock.unlock();
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.engine.escrow.recuperacao-ms:30000}")
+    public void recuperarVencidos() {
+        LocalDateTime limite = LocalDateTime.now().minus(duracao);
+        for (LeaseEstoque vencido : leaseRepository.findByExpiresAtBefore(limite)) {
+            try {
+                recuperar(vencido, limite);
+            } catch (RuntimeException ex) {
+                logger.error("Erro ao recuperar o lease {} do produto {}.", vencido.getId(), vencido.getProductSKU(),
+                        ex);
+            }
+        }
+    }
+
+    private String consumir(String productSKU, int quantidade) {
+        LeaseSku lease = leases.computeIfAbsent(productSKU, sku -> new LeaseSku());
+        lease.lock.lock();
+        try {
+            LocalDateTime agora = LocalDateTime.now();
+            if (lease.id != null && !lease.vigente(agora)) {
+                // Venceu sem renovação: o saldo pode já ter voltado ao estoque pelas mãos de outra instância.
+                lease.descartar();
+            }
+            while (lease.saldo < quantidade) {
+                completar(productSKU, lease, quantidade - lease.saldo, agora);
+            }
+            lease.saldo -= quantidade;
+            lease.emAndamento += quantidade;
+            lease.consumoNoCiclo += quantidade;
+            return lease.id;
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    // Pede ao estoque um lote do tamanho da demanda recente; sem isso disponível, pede só o que falta.
+    private void completar(String productSKU, LeaseSku lease, int falta, LocalDateTime agora) {
+        int lote = Math.max(falta, Math.min(loteMaximo, Math.max(loteMinimo, lease.demanda())));
+        LocalDateTime expiresAt = agora.plus(duracao);
+        Concessao concessao = transactionTemplate.execute(status -> {
+            // O lease é tocado antes do estoque, na mesma ordem da renovação e da recuperação.
+            boolean novo = lease.id == null || leaseRepository.ajustar(lease.id, 0, expiresAt) == 0;
+            int quantidade = tirarDoEstoque(productSKU, lote, falta, agora);
+            String leaseId = novo ? UUID.randomUUID().toString() : lease.id;
+            if (novo) {
+                leaseRepository.criar(leaseId, instancia, productSKU, quantidade, expiresAt);
+            } else {
+                leaseRepository.ajustar(leaseId, quantidade, expiresAt);
+            }
+            return new Concessao(leaseId, quantidade, novo);
+        });
+
+        if (concessao.novo()) {
+            // Um lease antigo que não existe mais no banco já teve o saldo recuperado por outra instância.
+            lease.iniciar(concessao.leaseId());
+        }
+        lease.saldo += concessao.quantidade();
+        lease.expiresAt = expiresAt;
+        estoqueCache.invalidar(List.of(productSKU));
+    }
+
+    private int tirarDoEstoque(String productSKU, int lote, int falta, LocalDateTime agora) {
+        if (estoqueRepository.reservarQuantidade(productSKU, lote, agora) > 0) {
+            return lote;
+        }
+        if (lote > falta && estoqueRepository.reservarQuantidade(productSKU, falta, agora) > 0) {
+            return falta;
+        }
+        if (!estoqueRepository.existsById(productSKU)) {
+            throw new ProductNotFoundException(productSKU);
+        }
+        throw new OutOfStockException(productSKU);
+    }
+
+    // Devolve parte do saldo e renova o vencimento; o lease é apagado quando fica vazio e sem reservas em andamento.
+    private void devolver(String productSKU, LeaseSku lease, int quantidade) {
+        LocalDateTime agora = LocalDateTime.now();
+        LocalDateTime expiresAt = agora.plus(duracao);
+        boolean apagar = quantidade == lease.saldo && lease.emAndamento == 0;
+        String leaseId = lease.id;
+        boolean recuperado = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (leaseRepository.ajustar(leaseId, -quantidade, expiresAt) == 0) {
+                return true;
+            }
+            if (quantidade > 0) {
+                estoqueRepository.aplicarDelta(productSKU, quantidade, 0, agora);
+            }
+            if (apagar) {
+                leaseRepository.remover(leaseId);
+            }
+            return false;
+        }));
+
+        if (recuperado || apagar) {
+            lease.descartar();
+        } else {
+            lease.saldo -= quantidade;
+            lease.expiresAt = expiresAt;
+        }
+        if (quantidade > 0 && !recuperado) {
+            estoqueCache.invalidar(List.of(productSKU));
+        }
+    }
+
+    private void recuperar(LeaseEstoque vencido, LocalDateTime limite) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // A quantidade lida antes continua valendo: ela só muda junto com o vencimento, e um lease renovado
+            // não é removido.
+            if (leaseRepository.removerVencido(vencido.getId(), limite) == 0) {
+                return;
+            }
+            long restante = vencido.getQuantidade() - reservaRepository.somarPorLease(vencido.getId());
+            if (restante > 0) {
+                estoqueRepository.aplicarDelta(vencido.getProductSKU(), (int) restante, 0, LocalDateTime.now());
+            }
+            logger.warn("Lease {} da instância {} vencido: {} unidades do produto {} devolvidas ao estoque.",
+                    vencido.getId(), vencido.getInstancia(), restante, vencido.getProductSKU());
+        });
+        estoqueCache.invalidar(List.of(vencido.getProductSKU()));
+    }
+
+    private void finalizar(String productSKU, String leaseId, int quantidade, boolean confirmada) {
+        LeaseSku lease = leases.get(productSKU);
+        lease.lock.lock();
+        try {
+            // Se o lease foi trocado nesse meio tempo, o saldo antigo já foi acertado com o banco.
+            if (!leaseId.equals(lease.id)) {
+                return;
+            }
+            lease.emAndamento -= quantidade;
+            if (!confirmada) {
+                lease.saldo += quantidade;
+                lease.consumoNoCiclo -= quantidade;
+            }
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    private record Concessao(String leaseId, int quantidade, boolean novo) {
+    }
+}
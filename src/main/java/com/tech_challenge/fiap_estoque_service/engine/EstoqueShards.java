@@ -0,0 +1,437 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import com.tech_challenge.fiap_estoque_service.exception.StockEngineUnavailableException;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Saldo de estoque dividido em shards por hash do SKU, ativo com {@code estoque.engine.shards.enabled=true}. Cada
+ * shard tem uma fila limitada de comandos (reservar, devolver, baixar) e uma única thread escritora, dona do saldo
+ * dos seus SKUs: ela aplica os comandos em memória, sem locks, e grava os deltas somados por SKU na tabela estoque
+ * num único commit por grupo de comandos. Só ela escreve nessas linhas, então nenhuma requisição espera trava de
+ * outra; a disputa num SKU quente vira fila, e a latência passa a depender do tamanho da fila e não de quem pega
+ * a trava primeiro.
+ *
+ * Um pedido com SKUs de vários shards é reservado em todos ao mesmo tempo; se algum shard recusar, os que
+ * reservaram recebem a devolução. Nesse meio-tempo outro pedido pode ver o saldo já reservado e ser recusado.
+ *
+ * Toda mudança que atravessa dois commits fica em movimento_estoque, sem marca, até a escritora somá-la na tabela
+ * estoque e marcá-la no mesmo commit. A reserva grava junto com o saldo o estorno dela, que a transação das reservas
+ * do pedido descarta; devoluções e baixas são registradas na transação de quem mudou as reservas e aplicadas depois
+ * do commit. Na partida, antes de qualquer shard ler um saldo, os movimentos sem marca deixados por uma queda são
+ * somados na tabela.
+ *
+ * Quem envia um comando espera no máximo {@code estoque.engine.shards.espera-maxima}, somando a vaga na fila e a
+ * gravação, e recebe {@link StockEngineUnavailableException} depois disso ou com os shards parados. O que já foi
+ * registrado em movimento_estoque não se perde com a desistência: a escritora ainda aplica o comando ou a próxima
+ * partida o soma na tabela.
+ *
+ * Exige uma única instância com {@code estoque.engine.shards.enabled=true}: o saldo em memória não vê a escritora
+ * de outra instância, e a recuperação na partida somaria movimentos que ela ainda vai aplicar.
+ */
+@Component
+@ConditionalOnProperty(name = "estoque.engine.shards.enabled", havingValue = "true")
+public class EstoqueShards {
+
+    private static final Logger logger = LoggerFactory.getLogger(EstoqueShards.class);
+
+    private final EstoqueRepository estoqueRepository;
+    private final MovimentosEstoque movimentosEstoque;
+    private final TransactionTemplate transactionTemplate;
+    private final EstoqueCache estoqueCache;
+    private final DistributionSummary comandosPorCommit;
+    private final int loteMaximo;
+    private final long esperaMaximaMs;
+    private final List<Shard> shards = new ArrayList<>();
+    private volatile boolean ativo = true;
+
+    public EstoqueShards(EstoqueRepository estoqueRepository, MovimentosEstoque movimentosEstoque,
+            TransactionTemplate transactionTemplate, EstoqueCache estoqueCache, MeterRegistry meterRegistry,
+            @Value("${estoque.engine.shards.quantidade:8}") int quantidade,
+            @Value("${estoque.engine.shards.capacidade:4096}") int capacidade,
+            @Value("${estoque.engine.shards.lote-maximo:256}") int loteMaximo,
+            @Value("${estoque.engine.shards.espera-maxima:PT5S}") Duration esperaMaxima) {
+        this.estoqueRepository = estoqueRepository;
+        this.movimentosEstoque = movimentosEstoque;
+        this.transactionTemplate = transactionTemplate;
+        this.estoqueCache = estoqueCache;
+        this.loteMaximo = loteMaximo;
+        this.esperaMaximaMs = esperaMaxima.toMillis();
+        this.comandosPorCommit = DistributionSummary.builder("estoque.shards.commit.comandos")
+                .description("Comandos gravados por commit de um shard")
+                .register(meterRegistry);
+        for (int i = 0; i < quantidade; i++) {
+            Shard shard = new Shard(i, capacidade);
+            Gauge.builder("estoque.shards.fila", shard.fila, BlockingQueue::size)
+                    .description("Comandos esperando a thread escritora do shard")
+                    .tag("shard", String.valueOf(i))
+                    .register(meterRegistry);
+            shards.add(shard);
+        }
+    }
+
+    // Soma na tabela os movimentos que uma queda deixou sem marca. Nenhum comando chega antes disso, então os
+    // saldos que os shards leem depois já os incluem.
+    @PostConstruct
+    public void recuperar() {
+        int total = 0;
+        int compactados;
+        do {
+            compactados = transactionTemplate.execute(status -> movimentosEstoque.compactarLote(loteMaximo));
+            total += compactados;
+        } while (compactados == loteMaximo);
+        if (total > 0) {
+            logger.info("Recuperados {} movimentos de estoque não gravados pelos shards.", total);
+        }
+    }
+
+    /**
+     * Reserva todas as quantidades ou nenhuma, esperando a gravação de cada shard envolvido. Chamado fora de
+     * transação, para não segurar uma conexão enquanto o pedido está na fila. Retorna o estorno já gravado da
+     * reserva: quem reservou o descarta na transação que grava as reservas ({@link #descartar(Pendencia)}) ou o
+     * aplica se ela não gravar ({@link #aplicar(Pendencia)}); sem nenhum dos dois, a próxima partida devolve o saldo.
+     * Um shard que não responde a tempo conta como recusa, e a reserva que ele ainda gravar é estornada em seguida.
+     */
+    public Pendencia reservar(Map<String, Integer> quantidadesPorSku) {
+        Map<Shard, Map<String, Integer>> porShard = porShard(quantidadesPorSku);
+        Map<Shard, CompletableFuture<Map<String, Long>>> envios = new HashMap<>();
+        porShard.forEach((shard, quantidades) -> envios.put(shard, shard.enviar(Tipo.RESERVAR, quantidades,
+                List.of())));
+
+        RuntimeException falha = null;
+        Map<String, Integer> reservadas = new HashMap<>();
+        Map<String, Long> estornos = new HashMap<>();
+        for (Map.Entry<Shard, CompletableFuture<Map<String, Long>>> envio : envios.entrySet()) {
+            try {
+                estornos.putAll(aguardar(envio.getValue()));
+                reservadas.putAll(porShard.get(envio.getKey()));
+            } catch (RuntimeException ex) {
+                falha = falha == null ? ex : falha;
+                estornarQuandoGravar(envio.getValue(), porShard.get(envio.getKey()));
+            }
+        }
+        if (falha == null) {
+            return new Pendencia(MotivoMovimento.ESTORNO, quantidadesPorSku, estornos);
+        }
+        aplicar(new Pendencia(MotivoMovimento.ESTORNO, reservadas, estornos));
+        throw falha;
+    }
+
+    // Fora da thread escritora, que não pode esperar vaga na própria fila.
+    private void estornarQuandoGravar(CompletableFuture<Map<String, Long>> resultado,
+            Map<String, Integer> quantidades) {
+        if (resultado.isDone()) {
+            return;
+        }
+        resultado.thenAcceptAsync(estornos -> enviar(new Pendencia(MotivoMovimento.ESTORNO, quantidades, estornos)));
+    }
+
+    // Na transação que grava as reservas do pedido: a reserva fica e o estorno dela deixa de existir.
+    public void descartar(Pendencia estorno) {
+        movimentosEstoque.descartar(estorno.movimentosPorSku().values());
+    }
+
+    // Na transação de quem mudou as reservas: a devolução ou a baixa fica gravada antes do commit, e uma queda antes
+    // de aplicá-la não a perde.
+    public Pendencia registrar(Map<String, Integer> quantidadesPorSku, MotivoMovimento motivo) {
+        if (quantidadesPorSku.isEmpty()) {
+            return new Pendencia(motivo, Map.of(), Map.of());
+        }
+        return new Pendencia(motivo, quantidadesPorSku, movimentosEstoque.registrar(quantidadesPorSku, motivo));
+    }
+
+    // Fora de transação: aplica a pendência nos shards e espera a gravação.
+    public void aplicar(Pendencia pendencia) {
+        enviar(pendencia).forEach(this::aguardar);
+    }
+
+    // Dentro de uma transação: a devolução é registrada nela e enviada aos shards depois do commit, sem esperar a
+    // gravação.
+    public void devolver(Map<String, Integer> quantidadesPorSku, MotivoMovimento motivo) {
+        Pendencia pendencia = registrar(quantidadesPorSku, motivo);
+        if (pendencia.quantidadesPorSku().isEmpty()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                enviar(pendencia);
+            }
+        });
+    }
+
+    private List<CompletableFuture<Map<String, Long>>> enviar(Pendencia pendencia) {
+        Tipo tipo = pendencia.motivo().deltaReal(1) < 0 ? Tipo.BAIXAR : Tipo.DEVOLVER;
+        List<CompletableFuture<Map<String, Long>>> envios = new ArrayList<>();
+        porShard(pendencia.quantidadesPorSku()).forEach((shard, quantidades) -> envios.add(shard.enviar(tipo,
+                quantidades, quantidades.keySet().stream()
+                        .map(pendencia.movimentosPorSku()::get)
+                        .filter(Objects::nonNull)
+                        .toList())));
+        return envios;
+    }
+
+    private Map<Shard, Map<String, Integer>> porShard(Map<String, Integer> quantidadesPorSku) {
+        Map<Shard, Map<String, Integer>> porShard = new HashMap<>();
+        quantidadesPorSku.forEach((sku, quantidade) -> porShard
+                .computeIfAbsent(shards.get(Math.floorMod(sku.hashCode(), shards.size())), s -> new HashMap<>())
+                .put(sku, quantidade));
+        return porShard;
+    }
+
+    private <T> T aguardar(CompletableFuture<T> resultado) {
+        try {
+            return resultado.get(esperaMaximaMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (TimeoutException ex) {
+            throw new StockEngineUnavailableException("Shard de estoque não respondeu em " + esperaMaximaMs + " ms.");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StockEngineUnavailableException("Interrompido esperando o shard de estoque.", ex);
+        }
+    }
+
+    // Os comandos já na fila são gravados antes de as threads pararem; depois disso, novos envios são recusados e
+    // qualquer comando que tenha entrado na fila no meio da parada falha em vez de ficar sem resposta.
+    @PreDestroy
+    public void parar() throws InterruptedException {
+        ativo = false;
+        for (Shard shard : shards) {
+            shard.escritora.join();
+        }
+        shards.forEach(Shard::recusarPendentes);
+    }
+
+    private static StockEngineUnavailableException parado() {
+        return new StockEngineUnavailableException("Shards de estoque parados.");
+    }
+
+    private enum Tipo {
+        RESERVAR, DEVOLVER, BAIXAR
+    }
+
+    /**
+     * Mudança gravada em movimento_estoque e ainda não aplicada pelos shards: as quantidades por SKU e o movimento de
+     * cada uma, marcado no commit da escritora que a aplicar.
+     */
+    public record Pendencia(MotivoMovimento motivo, Map<String, Integer> quantidadesPorSku,
+            Map<String, Long> movimentosPorSku) {
+    }
+
+    // Os movimentos do comando são marcados no commit que o aplica; o resultado de uma reserva são os estornos dela.
+    private record Comando(Tipo tipo, Map<String, Integer> quantidadesPorSku, List<Long> movimentos,
+            CompletableFuture<Map<String, Long>> resultado) {
+    }
+
+    // Saldo de um SKU, lido e escrito só pela thread escritora do shard.
+    private static final class Saldo {
+        private int disponivel;
+        private int real;
+
+        private Saldo(int disponivel, int real) {
+            this.disponivel = disponivel;
+            this.real = real;
+        }
+    }
+
+    private final class Shard {
+        private final BlockingQueue<Comando> fila;
+        private final Map<String, Saldo> saldos = new HashMap<>();
+        private final Thread escritora;
+
+        private Shard(int indice, int capacidade) {
+            this.fila = new ArrayBlockingQueue<>(capacidade);
+            this.escritora = Thread.ofPlatform().daemon().name("estoque-shard-" + indice).start(this::executar);
+        }
+
+        // Fila cheia segura quem envia até a escritora abrir espaço, no máximo pela espera máxima.
+        private CompletableFuture<Map<String, Long>> enviar(Tipo tipo, Map<String, Integer> quantidadesPorSku,
+                List<Long> movimentos) {
+            Comando comando = new Comando(tipo, quantidadesPorSku, movimentos, new CompletableFuture<>());
+            if (!ativo) {
+                comando.resultado().completeExceptionally(parado());
+                return comando.resultado();
+            }
+            try {
+                if (!fila.offer(comando, esperaMaximaMs, TimeUnit.MILLISECONDS)) {
+                    comando.resultado().completeExceptionally(new StockEngineUnavailableException(
+                            "Fila do shard de estoque cheia por mais de " + esperaMaximaMs + " ms."));
+                } else if (!escritora.isAlive() && fila.remove(comando)) {
+                    comando.resultado().completeExceptionally(parado());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                comando.resultado().completeExceptionally(new StockEngineUnavailableException(
+                        "Interrompido enviando comando ao shard de estoque.", ex));
+            }
+            return comando.resultado();
+        }
+
+        private void recusarPendentes() {
+            List<Comando> pendentes = new ArrayList<>();
+            fila.drainTo(pendentes);
+            pendentes.forEach(comando -> comando.resultado().completeExceptionally(parado()));
+        }
+
+        private void executar() {
+            List<Comando> grupo = new ArrayList<>(loteMaximo);
+            while (ativo || !fila.isEmpty()) {
+                try {
+                    Comando primeiro = fila.poll(100, TimeUnit.MILLISECONDS);
+                    if (primeiro == null) {
+                        continue;
+                    }
+                    grupo.add(primeiro);
+                    fila.drainTo(grupo, loteMaximo - 1);
+                    gravar(grupo);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    recusarPendentes();
+                    return;
+                } catch (RuntimeException ex) {
+                    // Nenhum erro derruba a escritora: o grupo falha e os próximos comandos seguem.
+                    grupo.forEach(comando -> comando.resultado().completeExceptionally(ex));
+                    logger.error("Erro ao aplicar um grupo de comandos no shard de estoque.", ex);
+                } finally {
+                    grupo.clear();
+                }
+            }
+        }
+
+        private void gravar(List<Comando> grupo) {
+            carregarAusentes(grupo);
+
+            Map<String, int[]> deltas = new TreeMap<>();
+            List<Comando> aplicados = new ArrayList<>(grupo.size());
+            for (Comando comando : grupo) {
+                try {
+                    aplicar(comando, deltas);
+                    aplicados.add(comando);
+                } catch (RuntimeException ex) {
+                    comando.resultado().completeExceptionally(ex);
+                }
+            }
+            deltas.values().removeIf(delta -> delta[0] == 0 && delta[1] == 0);
+            List<Long> movimentos = aplicados.stream().flatMap(comando -> comando.movimentos().stream()).toList();
+            List<Comando> reservas = aplicados.stream().filter(comando -> comando.tipo() == Tipo.RESERVAR).toList();
+            Map<Comando, Map<String, Long>> estornos = new IdentityHashMap<>();
+
+            if (!deltas.isEmpty() || !movimentos.isEmpty() || !reservas.isEmpty()) {
+                try {
+                    // Um UPDATE por SKU alterado no grupo, em ordem de SKU, qualquer que seja o número de comandos;
+                    // as marcas e os estornos do grupo vão no mesmo commit, em lotes JDBC.
+                    transactionTemplate.executeWithoutResult(status -> {
+                        LocalDateTime agora = LocalDateTime.now();
+                        deltas.forEach((sku, delta) -> estoqueRepository.aplicarDelta(sku, delta[0], delta[1], agora));
+                        movimentosEstoque.marcarCompactados(movimentos);
+                        reservas.forEach(comando -> estornos.put(comando, movimentosEstoque.registrar(
+                                comando.quantidadesPorSku(), MotivoMovimento.ESTORNO)));
+                    });
+                } catch (RuntimeException ex) {
+                    // O saldo em memória volta ao que está na tabela e todos os comandos do grupo falham.
+                    deltas.forEach((sku, delta) -> {
+                        Saldo saldo = saldos.get(sku);
+                        saldo.disponivel -= delta[0];
+                        saldo.real -= delta[1];
+                    });
+                    aplicados.forEach(comando -> comando.resultado().completeExceptionally(ex));
+                    logger.error("Erro ao gravar um grupo de {} comandos do shard de estoque.", aplicados.size(), ex);
+                    return;
+                }
+                if (!deltas.isEmpty()) {
+                    estoqueCache.invalidar(deltas.keySet());
+                }
+            }
+            comandosPorCommit.record(aplicados.size());
+            aplicados.forEach(comando -> comando.resultado().complete(estornos.getOrDefault(comando, Map.of())));
+        }
+
+        // SKUs vistos pela primeira vez são lidos da tabela numa consulta por grupo; os que não existem lá
+        // continuam fora do mapa e fazem o comando falhar.
+        private void carregarAusentes(List<Comando> grupo) {
+            List<String> ausentes = grupo.stream()
+                    .flatMap(comando -> comando.quantidadesPorSku().keySet().stream())
+                    .filter(sku -> !saldos.containsKey(sku))
+                    .distinct()
+                    .toList();
+            if (ausentes.isEmpty()) {
+                return;
+            }
+            for (Estoque estoque : estoqueRepository.findAllById(ausentes)) {
+                saldos.put(estoque.getProductSKU(),
+                        new Saldo(estoque.getQuantidadeDisponivel(), estoque.getQuantidadeReal()));
+            }
+        }
+
+        // Valida o comando inteiro antes de mudar qualquer saldo, então um comando recusado não deixa resto.
+        private void aplicar(Comando comando, Map<String, int[]> deltas) {
+            for (Map.Entry<String, Integer> item : comando.quantidadesPorSku().entrySet()) {
+                Saldo saldo = saldos.get(item.getKey());
+                if (saldo == null) {
+                    throw new ProductNotFoundException(item.getKey());
+                }
+                if (comando.tipo() == Tipo.RESERVAR && saldo.disponivel < item.getValue()) {
+                    throw new OutOfStockException(item.getKey());
+                }
+            }
+
+            comando.quantidadesPorSku().forEach((sku, quantidade) -> {
+                Saldo saldo = saldos.get(sku);
+                int[] delta = deltas.computeIfAbsent(sku, s -> new int[2]);
+                switch (comando.tipo()) {
+                    case RESERVAR -> {
+                        saldo.disponivel -= quantidade;
+                        delta[0] -= quantidade;
+                    }
+                    case DEVOLVER -> {
+                        saldo.disponivel += quantidade;
+                        delta[0] += quantidade;
+                    }
+                    case BAIXAR -> {
+                        saldo.real -= quantidade;
+                        delta[1] -= quantidade;
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// Grava na tabela estoque os movimentos registrados pelo estoque em memória, um UPDATE por SKU alterado em cada
+// lote, com o lote marcado como somado na mesma transação.
+@Component
+@ConditionalOnProperty(name = "estoque.engine.memoria.enabled", havingValue = "true")
+public class EstoqueWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(EstoqueWriteBehind.class);
+
+    private final MovimentosEstoque movimentosEstoque;
+    private final TransactionTemplate transactionTemplate;
+    private final int tamanhoLote;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public EstoqueWriteBehind(MovimentosEstoque movimentosEstoque, TransactionTemplate transactionTemplate,
+            @Value("${estoque.engine.memoria.flush-lote:1000}") int tamanhoLote) {
+        this.movimentosEstoque = movimentosEstoque;
+        this.transactionTemplate = transactionTemplate;
+        this.tamanhoLote = tamanhoLote;
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.engine.memoria.flush-ms:200}")
+    public void gravarPendencias() {
+        lock.lock();
+        try {
+            int gravados;
+            do {
+                gravados = transactionTemplate.execute(status -> movimentosEstoque.compactarLote(tamanhoLote));
+            } while (gravados == tamanhoLote);
+        } catch (RuntimeException ex) {
+            // Os movimentos continuam sem marca e entram no próximo ciclo junto com os novos.
+            logger.error("Erro ao gravar o estoque em memória no banco.", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void gravarAoDesligar() {
+        gravarPendencias();
+    }
+}
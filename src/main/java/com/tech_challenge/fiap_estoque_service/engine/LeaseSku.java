@@ -0,0 +1,43 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Lease de um SKU mantido por esta instância. Todos os campos são lidos e alterados com o lock, que só é disputado
+// pelas threads desta instância; o banco é acessado apenas para completar, devolver ou renovar o lease.
+class LeaseSku {
+    final ReentrantLock lock = new ReentrantLock();
+
+    // Nulo quando a instância não tem lease gravado para o SKU.
+    String id;
+    LocalDateTime expiresAt;
+    int saldo;
+    // Já descontado do saldo por transações de reserva que ainda não terminaram.
+    int emAndamento;
+    int consumoNoCiclo;
+    int consumoCicloAnterior;
+
+    void iniciar(String id) {
+        this.id = id;
+        this.saldo = 0;
+        this.emAndamento = 0;
+    }
+
+    void descartar() {
+        iniciar(null);
+        this.expiresAt = null;
+    }
+
+    boolean vigente(LocalDateTime agora) {
+        return id != null && agora.isBefore(expiresAt);
+    }
+
+    int demanda() {
+        return Math.max(consumoNoCiclo, consumoCicloAnterior);
+    }
+
+    void fecharCiclo() {
+        consumoCicloAnterior = consumoNoCiclo;
+        consumoNoCiclo = 0;
+    }
+}
@@ -0,0 +1,145 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
+import com.tech_challenge.fiap_estoque_service.dto.SaldoEstoqueDTO;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import com.tech_challenge.fiap_estoque_service.gateway.MovimentoEstoqueRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ledger de estoque ({@code estoque.engine.ledger.enabled=true}): reservas, cancelamentos, confirmações e
+ * expirações viram linhas de movimento_estoque, só com INSERT, e a linha do estoque deixa de ser atualizada a cada
+ * requisição. A cada {@code estoque.engine.ledger.compactacao-ms} os movimentos novos são somados por SKU na
+ * tabela estoque, que passa a ser um snapshot; o saldo é sempre o snapshot mais a cauda ainda não compactada.
+ *
+ * Só a reserva precisa de verificação de saldo. Ela é feita com um lock por SKU desta instância, mantido apenas
+ * durante a consulta do saldo, e com a quantidade reservada por transações ainda abertas descontada até o commit.
+ * Por isso o modo vale para uma instância escrevendo no ledger; com várias réplicas o modo escrow é o indicado.
+ */
+@Component
+@ConditionalOnProperty(name = "estoque.engine.ledger.enabled", havingValue = "true")
+public class LedgerEstoque {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerEstoque.class);
+
+    private final MovimentoEstoqueRepository movimentoRepository;
+    private final MovimentosEstoque movimentosEstoque;
+    private final TransactionTemplate transactionTemplate;
+    private final int tamanhoLote;
+    private final Map<String, PendenciaSku> pendencias = new ConcurrentHashMap<>();
+    private final ReentrantLock lockCompactacao = new ReentrantLock();
+
+    public LedgerEstoque(MovimentoEstoqueRepository movimentoRepository, MovimentosEstoque movimentosEstoque,
+            TransactionTemplate transactionTemplate,
+            @Value("${estoque.engine.ledger.compactacao-lote:1000}") int tamanhoLote) {
+        this.movimentoRepository = movimentoRepository;
+        this.movimentosEstoque = movimentosEstoque;
+        this.transactionTemplate = transactionTemplate;
+        this.tamanhoLote = tamanhoLote;
+    }
+
+    public Map<String, Integer> disponiveis(Collection<String> productSKUs) {
+        Map<String, Integer> disponiveis = new LinkedHashMap<>();
+        for (SaldoEstoqueDTO saldo : movimentoRepository.saldos(productSKUs)) {
+            disponiveis.put(saldo.productSKU(), (int) saldo.quantidadeDisponivel());
+        }
+        return disponiveis;
+    }
+
+    /**
+     * Verifica o saldo de todas as quantidades, na ordem das chaves, e as segura até o fim da transação, que
+     * precisa gravar os movimentos de RESERVA com {@link #registrar(List, MotivoMovimento)}.
+     */
+    public void reservar(Map<String, Integer> quantidadesPorSku) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("A reserva no ledger precisa de uma transação ativa.");
+        }
+
+        Map<String, Integer> seguras = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, Integer> item : quantidadesPorSku.entrySet()) {
+                segurar(item.getKey(), item.getValue());
+                seguras.put(item.getKey(), item.getValue());
+            }
+        } finally {
+            // Depois do commit os movimentos já entram na soma; antes de um rollback eles nunca existiram.
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    seguras.forEach(LedgerEstoque.this::liberar);
+                }
+            });
+        }
+    }
+
+    public void registrar(List<ReservaEstoque> reservas, MotivoMovimento motivo) {
+        movimentosEstoque.registrar(reservas, motivo);
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.engine.ledger.compactacao-ms:1000}")
+    public void compactar() {
+        if (!lockCompactacao.tryLock()) {
+            return;
+        }
+        try {
+            int compactados;
+            do {
+                compactados = transactionTemplate.execute(status -> movimentosEstoque.compactarLote(tamanhoLote));
+            } while (compactados == tamanhoLote);
+        } catch (RuntimeException ex) {
+            // Os movimentos continuam sem marca e entram no próximo ciclo.
+            logger.error("Erro ao compactar o ledger de estoque.", ex);
+        } finally {
+            lockCompactacao.unlock();
+        }
+    }
+
+    private void segurar(String productSKU, int quantidade) {
+        PendenciaSku pendencia = pendencias.computeIfAbsent(productSKU, sku -> new PendenciaSku());
+        pendencia.lock.lock();
+        try {
+            SaldoEstoqueDTO saldo = movimentoRepository.saldo(productSKU)
+                    .orElseThrow(() -> new ProductNotFoundException(productSKU));
+            if (saldo.quantidadeDisponivel() - pendencia.reservado < quantidade) {
+                throw new OutOfStockException(productSKU);
+            }
+            pendencia.reservado += quantidade;
+        } finally {
+            pendencia.lock.unlock();
+        }
+    }
+
+    private void liberar(String productSKU, int quantidade) {
+        PendenciaSku pendencia = pendencias.get(productSKU);
+        pendencia.lock.lock();
+        try {
+            pendencia.reservado -= quantidade;
+        } finally {
+            pendencia.lock.unlock();
+        }
+    }
+
+    // Quantidade já verificada por transações de reserva que ainda não terminaram.
+    private static class PendenciaSku {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int reservado;
+    }
+}
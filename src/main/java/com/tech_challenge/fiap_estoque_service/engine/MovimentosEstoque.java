@@ -0,0 +1,107 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.MovimentoEstoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.MovimentoEstoqueRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Movimentos de estoque gravados na mesma transação que os causou e somados depois na tabela estoque. No ledger
+ * eles são a fonte do saldo; no estoque em memória guardam os deltas que o write-behind ainda não gravou, para que
+ * a carga depois de uma queda os encontre; nos shards guardam as mudanças que a escritora ainda não gravou, refeitas
+ * na partida.
+ */
+@Component
+public class MovimentosEstoque {
+
+    private static final Logger logger = LoggerFactory.getLogger(MovimentosEstoque.class);
+
+    private final MovimentoEstoqueRepository movimentoRepository;
+    private final EstoqueRepository estoqueRepository;
+
+    public MovimentosEstoque(MovimentoEstoqueRepository movimentoRepository, EstoqueRepository estoqueRepository) {
+        this.movimentoRepository = movimentoRepository;
+        this.estoqueRepository = estoqueRepository;
+    }
+
+    public void registrar(List<ReservaEstoque> reservas, MotivoMovimento motivo) {
+        LocalDateTime agora = LocalDateTime.now();
+        movimentoRepository.saveAll(reservas.stream()
+                .map(reserva -> MovimentoEstoque.builder()
+                        .productSKU(reserva.getProductSKU())
+                        .deltaDisponivel(motivo.deltaDisponivel(reserva.getQuantidadeReservada()))
+                        .deltaReal(motivo.deltaReal(reserva.getQuantidadeReservada()))
+                        .motivo(motivo)
+                        .reservaId(reserva.getId())
+                        .createdAt(agora)
+                        .build())
+                .toList());
+    }
+
+    // Um movimento por SKU, sem reserva, na transação de quem chama. Retorna o id do movimento de cada SKU.
+    public Map<String, Long> registrar(Map<String, Integer> quantidadesPorSku, MotivoMovimento motivo) {
+        LocalDateTime agora = LocalDateTime.now();
+        Map<String, Long> ids = new HashMap<>();
+        movimentoRepository.saveAll(quantidadesPorSku.entrySet().stream()
+                .map(item -> MovimentoEstoque.builder()
+                        .productSKU(item.getKey())
+                        .deltaDisponivel(motivo.deltaDisponivel(item.getValue()))
+                        .deltaReal(motivo.deltaReal(item.getValue()))
+                        .motivo(motivo)
+                        .createdAt(agora)
+                        .build())
+                .toList())
+                .forEach(movimento -> ids.put(movimento.getProductSKU(), movimento.getId()));
+        return ids;
+    }
+
+    // Marca movimentos cujo delta quem chama acabou de somar na tabela estoque, na mesma transação.
+    public void marcarCompactados(Collection<Long> ids) {
+        if (!ids.isEmpty() && movimentoRepository.marcarCompactados(ids) != ids.size()) {
+            throw new IllegalStateException("Movimentos de estoque compactados por outra transação.");
+        }
+    }
+
+    // Remove movimentos que não devem mais ser somados, na transação de quem chama.
+    public void descartar(Collection<Long> ids) {
+        if (!ids.isEmpty()) {
+            movimentoRepository.deleteAllByIdInBatch(ids);
+        }
+    }
+
+    // Soma na tabela estoque até tamanhoLote movimentos ainda não compactados e os marca, na transação de quem
+    // chama. Retorna quantos foram compactados.
+    public int compactarLote(int tamanhoLote) {
+        List<MovimentoEstoque> movimentos = movimentoRepository
+                .findByCompactadoFalseOrderByIdAsc(Limit.of(tamanhoLote));
+        if (movimentos.isEmpty()) {
+            return 0;
+        }
+        marcarCompactados(movimentos.stream().map(MovimentoEstoque::getId).toList());
+
+        // Um UPDATE por SKU no lote inteiro, em ordem de SKU.
+        Map<String, int[]> deltas = new TreeMap<>();
+        for (MovimentoEstoque movimento : movimentos) {
+            int[] delta = deltas.computeIfAbsent(movimento.getProductSKU(), sku -> new int[2]);
+            delta[0] += movimento.getDeltaDisponivel();
+            delta[1] += movimento.getDeltaReal();
+        }
+        LocalDateTime agora = LocalDateTime.now();
+        deltas.forEach((sku, delta) -> estoqueRepository.aplicarDelta(sku, delta[0], delta[1], agora));
+        logger.debug("Compactados {} movimentos de {} produtos.", movimentos.size(), deltas.size());
+        return movimentos.size();
+    }
+}
@@ -0,0 +1,42 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Saldo de um SKU mantido em memória. Cada campo é atualizado por CAS, sem locks.
+class SaldoSku {
+    private final AtomicInteger disponivel;
+    private final AtomicInteger real;
+
+    SaldoSku(int disponivel, int real) {
+        this.disponivel = new AtomicInteger(disponivel);
+        this.real = new AtomicInteger(real);
+    }
+
+    boolean tentarReservar(int quantidade) {
+        while (true) {
+            int atual = disponivel.get();
+            if (atual < quantidade) {
+                return false;
+            }
+            if (disponivel.compareAndSet(atual, atual - quantidade)) {
+                return true;
+            }
+        }
+    }
+
+    void devolver(int quantidade) {
+        disponivel.addAndGet(quantidade);
+    }
+
+    void baixarReal(int quantidade) {
+        real.addAndGet(-quantidade);
+    }
+
+    int disponivel() {
+        return disponivel.get();
+    }
+
+    int real() {
+        return real.get();
+    }
+}
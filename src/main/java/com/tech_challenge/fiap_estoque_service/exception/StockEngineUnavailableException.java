@@ -0,0 +1,12 @@
+package com.tech_challenge.fiap_estoque_service.exception;
+
+public class StockEngineUnavailableException extends RuntimeException {
+    public StockEngineUnavailableException(String message) {
+        super(message);
+    }
+
+    public StockEngineUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
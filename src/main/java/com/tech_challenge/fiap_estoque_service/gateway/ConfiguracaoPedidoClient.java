@@ -0,0 +1,40 @@
+package com.tech_challenge.fiap_estoque_service.gateway;
+
+import feign.Client;
+import feign.Request;
+import feign.http2client.Http2Client;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Um único {@link HttpClient} para as chamadas do {@link PedidoClient}. O Http2Client do Feign monta um HttpClient
+ * novo, com thread seletora própria, em toda chamada cujas opções diferem das do cliente (connect-timeout ou
+ * redirecionamento); aqui as opções de cada chamada são trocadas pelas do cliente compartilhado antes de chegar a
+ * ele, e só o read-timeout, que vale por requisição, continua vindo da configuração do Feign.
+ */
+@Configuration
+public class ConfiguracaoPedidoClient {
+
+    @Bean
+    public HttpClient pedidoHttpClient(@Value("${pedido.service.connect-timeout-ms:2000}") long connectTimeoutMs) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.ALWAYS)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
+
+    @Bean
+    public Client feignClient(HttpClient pedidoHttpClient) {
+        Http2Client http2Client = new Http2Client(pedidoHttpClient);
+        long connectTimeoutMs = pedidoHttpClient.connectTimeout().orElseThrow().toMillis();
+        return (request, options) -> http2Client.execute(request, new Request.Options(
+                connectTimeoutMs, TimeUnit.MILLISECONDS, options.readTimeoutMillis(), TimeUnit.MILLISECONDS, true));
+    }
+}
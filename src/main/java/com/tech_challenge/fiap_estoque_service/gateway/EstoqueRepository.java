@@ -1,11 +1,75 @@
 package com.tech_challenge.fiap_estoque_service.gateway;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.dto.EstoqueExportDTO;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface EstoqueRepository extends JpaRepository<Estoque, String> {
 
+    // Decremento condicional: a própria linha do estoque garante que não haverá venda além do disponível.
+    // Retorna 0 quando o produto não existe ou não tem quantidade suficiente.
+    @Modifying
+    @Query("UPDATE Estoque e SET e.quantidadeDisponivel = e.quantidadeDisponivel - :quantidade, e.updatedAt = :agora "
+            + "WHERE e.productSKU = :productSKU AND e.quantidadeDisponivel >= :quantidade")
+    int reservarQuantidade(@Param("productSKU") String productSKU, @Param("quantidade") int quantidade,
+            @Param("agora") LocalDateTime agora);
+
+    // Aplica deltas acumulados (positivos ou negativos) sem ler a linha antes.
+    @Modifying
+    @Query("UPDATE Estoque e SET e.quantidadeDisponivel = e.quantidadeDisponivel + :deltaDisponivel, "
+            + "e.quantidadeReal = e.quantidadeReal + :deltaReal, e.updatedAt = :agora "
+            + "WHERE e.productSKU = :productSKU")
+    int aplicarDelta(@Param("productSKU") String productSKU, @Param("deltaDisponivel") int deltaDisponivel,
+            @Param("deltaReal") int deltaReal, @Param("agora") LocalDateTime agora);
+
+    // Devolução e baixa de um pedido inteiro num único statement: as reservas do pedido somadas por SKU e aplicadas
+    // às linhas do estoque em ordem de SKU. MERGE ... USING é o UPDATE ... FROM do SQL padrão, aceito pelo H2 e
+    // pelo PostgreSQL 15+. As reservas do pedido precisam estar travadas antes, para a soma não mudar até o commit.
+    @Modifying
+    @Query(value = "MERGE INTO estoque e USING (SELECT product_sku, SUM(quantidade_reservada) AS quantidade "
+            + "FROM reserva_estoque WHERE pedido_id = :pedidoId AND status = 'PENDENTE' "
+            + "GROUP BY product_sku ORDER BY product_sku) r ON (e.product_sku = r.product_sku) "
+            + "WHEN MATCHED THEN UPDATE SET quantidade_disponivel = e.quantidade_disponivel + r.quantidade, "
+            + "updated_at = :agora", nativeQuery = true)
+    int devolverReservasDoPedido(@Param("pedidoId") String pedidoId, @Param("agora") LocalDateTime agora);
+
+    @Modifying
+    @Query(value = "MERGE INTO estoque e USING (SELECT product_sku, SUM(quantidade_reservada) AS quantidade "
+            + "FROM reserva_estoque WHERE pedido_id = :pedidoId AND status = 'PENDENTE' "
+            + "GROUP BY product_sku ORDER BY product_sku) r ON (e.product_sku = r.product_sku) "
+            + "WHEN MATCHED THEN UPDATE SET quantidade_real = e.quantidade_real - r.quantidade, "
+            + "updated_at = :agora", nativeQuery = true)
+    int baixarReservasDoPedido(@Param("pedidoId") String pedidoId, @Param("agora") LocalDateTime agora);
+
+    // Pedidos com muitos SKUs: uma leitura travando todas as linhas em ordem de SKU; as alterações nas entidades
+    // voltam no flush como UPDATEs em lote JDBC.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM Estoque e WHERE e.productSKU IN :productSKUs ORDER BY e.productSKU")
+    List<Estoque> travarPorSkus(@Param("productSKUs") Collection<String> productSKUs);
+
+    // Cursor para o export: projeção direta em DTO e fetch size para o driver trazer as linhas em blocos.
+    // Precisa ser consumido (e fechado) dentro de uma transação.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.tech_challenge.fiap_estoque_service.dto.EstoqueExportDTO(e.productSKU, "
+            + "e.quantidadeDisponivel, e.updatedAt) FROM Estoque e WHERE e.productSKU > :aPartirDe "
+            + "ORDER BY e.productSKU")
+    Stream<EstoqueExportDTO> exportarAPartirDe(@Param("aPartirDe") String aPartirDe);
 }
@@ -0,0 +1,41 @@
+package com.tech_challenge.fiap_estoque_service.gateway;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.LeaseEstoque;
+
+@Repository
+public interface LeaseEstoqueRepository extends JpaRepository<LeaseEstoque, String> {
+
+    // INSERT direto: o id vem da instância, e o save() faria um SELECT antes para decidir entre persist e merge.
+    @Modifying
+    @Query(value = "INSERT INTO lease_estoque (id, instancia, product_sku, quantidade, expires_at) "
+            + "VALUES (:id, :instancia, :productSKU, :quantidade, :expiresAt)", nativeQuery = true)
+    void criar(@Param("id") String id, @Param("instancia") String instancia, @Param("productSKU") String productSKU,
+            @Param("quantidade") int quantidade, @Param("expiresAt") LocalDateTime expiresAt);
+
+    // Concessões, devoluções (delta negativo) e renovações: retorna 0 quando o lease já foi recuperado por
+    // outra instância, e nesse caso a dona não pode mexer no estoque em nome dele.
+    @Modifying
+    @Query("UPDATE LeaseEstoque l SET l.quantidade = l.quantidade + :delta, l.expiresAt = :expiresAt "
+            + "WHERE l.id = :id")
+    int ajustar(@Param("id") String id, @Param("delta") int delta, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("DELETE FROM LeaseEstoque l WHERE l.id = :id")
+    int remover(@Param("id") String id);
+
+    List<LeaseEstoque> findByExpiresAtBefore(LocalDateTime limite);
+
+    // Só uma instância consegue remover um lease vencido; uma renovação concorrente faz a remoção não achar nada.
+    @Modifying
+    @Query("DELETE FROM LeaseEstoque l WHERE l.id = :id AND l.expiresAt < :limite")
+    int removerVencido(@Param("id") String id, @Param("limite") LocalDateTime limite);
+}
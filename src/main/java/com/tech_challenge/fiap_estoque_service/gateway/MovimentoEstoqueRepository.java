@@ -0,0 +1,49 @@
+package com.tech_challenge.fiap_estoque_service.gateway;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.MovimentoEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.SaldoEstoqueDTO;
+
+@Repository
+public interface MovimentoEstoqueRepository extends JpaRepository<MovimentoEstoque, Long> {
+
+    // Último snapshot mais a cauda ainda não compactada, num único comando: a compactação troca os dois na mesma
+    // transação, então a soma nunca conta um movimento duas vezes nem deixa de contá-lo.
+    @Query("SELECT new com.tech_challenge.fiap_estoque_service.dto.SaldoEstoqueDTO(e.productSKU, "
+            + "e.quantidadeDisponivel + COALESCE((SELECT SUM(m.deltaDisponivel) FROM MovimentoEstoque m "
+            + "WHERE m.compactado = false AND m.productSKU = e.productSKU), 0), "
+            + "e.quantidadeReal + COALESCE((SELECT SUM(m.deltaReal) FROM MovimentoEstoque m "
+            + "WHERE m.compactado = false AND m.productSKU = e.productSKU), 0)) "
+            + "FROM Estoque e WHERE e.productSKU IN :productSKUs")
+    List<SaldoEstoqueDTO> saldos(@Param("productSKUs") Collection<String> productSKUs);
+
+    // O mesmo saldo para todos os produtos, usado na carga do estoque em memória.
+    @Query("SELECT new com.tech_challenge.fiap_estoque_service.dto.SaldoEstoqueDTO(e.productSKU, "
+            + "e.quantidadeDisponivel + COALESCE((SELECT SUM(m.deltaDisponivel) FROM MovimentoEstoque m "
+            + "WHERE m.compactado = false AND m.productSKU = e.productSKU), 0), "
+            + "e.quantidadeReal + COALESCE((SELECT SUM(m.deltaReal) FROM MovimentoEstoque m "
+            + "WHERE m.compactado = false AND m.productSKU = e.productSKU), 0)) "
+            + "FROM Estoque e")
+    List<SaldoEstoqueDTO> saldosDeTodos();
+
+    default Optional<SaldoEstoqueDTO> saldo(String productSKU) {
+        return saldos(List.of(productSKU)).stream().findFirst();
+    }
+
+    List<MovimentoEstoque> findByCompactadoFalseOrderByIdAsc(Limit limit);
+
+    // Marca só o que ainda não estava marcado; um total menor que o esperado indica outra compactação em paralelo.
+    @Modifying
+    @Query("UPDATE MovimentoEstoque m SET m.compactado = true WHERE m.id IN :ids AND m.compactado = false")
+    int marcarCompactados(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,35 @@
+package com.tech_challenge.fiap_estoque_service.gateway;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.NotificacaoPedido;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface NotificacaoPedidoRepository extends JpaRepository<NotificacaoPedido, String> {
+
+    List<NotificacaoPedido> findByProximaTentativaLessThanEqualOrderByCreatedAtAsc(LocalDateTime agora,
+            Limit limit);
+
+    List<NotificacaoPedido> findByPedidoIdOrderByCreatedAtAsc(String pedidoId);
+
+    // Reivindica a notificação para um envio: só quem ainda vê o proxima_tentativa lido troca o valor pelo fim do
+    // prazo do envio, então instâncias diferentes nunca enviam a mesma notificação ao mesmo tempo.
+    @Modifying
+    @Transactional
+    @Query("UPDATE NotificacaoPedido n SET n.proximaTentativa = :ate WHERE n.id = :id "
+            + "AND n.proximaTentativa = :vista")
+    int reivindicar(@Param("id") String id, @Param("vista") LocalDateTime vista, @Param("ate") LocalDateTime ate);
+
+    List<NotificacaoPedido> findByTipoAndPedidoIdIn(TipoNotificacao tipo, Collection<String> pedidoIds);
+}
@@ -0,0 +1,34 @@
+package com.tech_challenge.fiap_estoque_service.gateway;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.PedidoReserva;
+
+@Repository
+public interface PedidoReservaRepository extends JpaRepository<PedidoReserva, String> {
+
+    // Verificação e registro no mesmo comando: retorna 0 quando o pedido já foi reservado, sem lançar exceção.
+    // Duas primeiras tentativas simultâneas ainda esbarram na chave primária e a segunda falha no commit da outra.
+    @Modifying
+    @Query(value = "INSERT INTO pedido_reserva (pedido_id, created_at) SELECT :pedidoId, :agora "
+            + "WHERE NOT EXISTS (SELECT 1 FROM pedido_reserva WHERE pedido_id = :pedidoId)", nativeQuery = true)
+    int registrar(@Param("pedidoId") String pedidoId, @Param("agora") LocalDateTime agora);
+
+    // Trava o registro de cada pedido, em ordem de pedido, até o fim da transação: serializa quem grava algo por
+    // pedido fora das reservas, como as notificações do outbox.
+    @Query(value = "SELECT pedido_id FROM pedido_reserva WHERE pedido_id IN (:pedidoIds) ORDER BY pedido_id "
+            + "FOR UPDATE", nativeQuery = true)
+    List<String> travar(@Param("pedidoIds") Collection<String> pedidoIds);
+
+    @Modifying
+    @Query("DELETE FROM PedidoReserva p WHERE p.pedidoId = :pedidoId")
+    int remover(@Param("pedidoId") String pedidoId);
+}
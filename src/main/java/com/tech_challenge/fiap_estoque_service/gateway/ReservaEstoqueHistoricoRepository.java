@@ -0,0 +1,26 @@
+package com.tech_challenge.fiap_estoque_service.gateway;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoqueHistorico;
+
+@Repository
+public interface ReservaEstoqueHistoricoRepository extends JpaRepository<ReservaEstoqueHistorico, String> {
+
+    List<ReservaEstoqueHistorico> findByPedidoId(String pedidoId);
+
+    // Copia as reservas dos pedidos sem passar pela aplicação; a remoção da tabela quente vem na mesma transação.
+    @Modifying
+    @Query(value = "INSERT INTO reserva_estoque_historico (id, product_sku, quantidade_reservada, status, pedido_id, "
+            + "expires_at, lease_id, arquivada_em) SELECT id, product_sku, quantidade_reservada, status, pedido_id, "
+            + "expires_at, lease_id, :agora FROM reserva_estoque WHERE pedido_id IN (:pedidoIds)", nativeQuery = true)
+    int copiar(@Param("pedidoIds") Collection<String> pedidoIds, @Param("agora") LocalDateTime agora);
+}
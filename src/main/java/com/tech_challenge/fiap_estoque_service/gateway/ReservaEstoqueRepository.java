@@ -1,18 +1,97 @@
 package com.tech_challenge.fiap_estoque_service.gateway;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
 
+import com.tech_challenge.fiap_estoque_service.dto.ContagemPorStatusDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ExpiracaoPedidoDTO;
 import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.SituacaoReservaDTO;
+
+import jakarta.persistence.LockModeType;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface ReservaEstoqueRepository extends JpaRepository<ReservaEstoque, String> {
 
-    List<ReservaEstoque> findByStatusAndExpiresAtBefore(ReservaStatus status, LocalDateTime now);
+    // Reivindica um lote das reservas vencidas mais antigas. Linhas já travadas por outra instância ou outro worker
+    // são puladas, então lotes simultâneos nunca se sobrepõem; a trava vale até o commit da transação do lote.
+    @Query(value = "SELECT * FROM reserva_estoque WHERE status = 'PENDENTE' AND expires_at < :agora "
+            + "ORDER BY expires_at, id LIMIT :limite FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<ReservaEstoque> reivindicarExpiradas(@Param("agora") LocalDateTime agora, @Param("limite") int limite);
+
+    // Mesma reivindicação para os pedidos vencidos na RodaDeExpiracao de uma das instâncias.
+    @Query(value = "SELECT * FROM reserva_estoque WHERE pedido_id IN (:pedidoIds) AND status = 'PENDENTE' "
+            + "AND expires_at <= :agora FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<ReservaEstoque> reivindicarExpiradasDosPedidos(@Param("pedidoIds") Collection<String> pedidoIds,
+            @Param("agora") LocalDateTime agora);
+
     List<ReservaEstoque> findByPedidoId(String pedidoId);
+
+    List<ReservaEstoque> findByPedidoIdIn(Collection<String> pedidoIds);
+
+    // Cancelamento e confirmação travam as reservas do pedido, em ordem de id, antes de tocar nas linhas do estoque,
+    // na mesma ordem da expiração (reservas, depois estoque por SKU).
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM ReservaEstoque r WHERE r.pedidoId = :pedidoId ORDER BY r.id")
+    List<ReservaEstoque> travarPorPedido(@Param("pedidoId") String pedidoId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM ReservaEstoque r WHERE r.pedidoId IN :pedidoIds ORDER BY r.id")
+    List<ReservaEstoque> travarPorPedidos(@Param("pedidoIds") Collection<String> pedidoIds);
+
+    // Só SKU e status das reservas do pedido, travadas em ordem de id: o suficiente para validar a transição sem
+    // carregar as entidades.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new com.tech_challenge.fiap_estoque_service.dto.SituacaoReservaDTO(r.productSKU, r.status) "
+            + "FROM ReservaEstoque r WHERE r.pedidoId = :pedidoId ORDER BY r.id")
+    List<SituacaoReservaDTO> travarSituacaoPorPedido(@Param("pedidoId") String pedidoId);
+
+    // Transição de status de todas as reservas do pedido num único UPDATE.
+    @Modifying
+    @Query("UPDATE ReservaEstoque r SET r.status = :para WHERE r.pedidoId = :pedidoId AND r.status IN :de")
+    int atualizarStatusDoPedido(@Param("pedidoId") String pedidoId, @Param("de") Collection<ReservaStatus> de,
+            @Param("para") ReservaStatus para);
+
+    // Um vencimento por pedido, usado para reconstruir a RodaDeExpiracao na subida da aplicação.
+    @Query("SELECT new com.tech_challenge.fiap_estoque_service.dto.ExpiracaoPedidoDTO(r.pedidoId, MAX(r.expiresAt)) "
+            + "FROM ReservaEstoque r WHERE r.status = :status GROUP BY r.pedidoId")
+    List<ExpiracaoPedidoDTO> findExpiracoesPorPedido(@Param("status") ReservaStatus status);
+
+    // Usados pelo ColetorMetricasEstoque; as duas consultas ficam no índice por status.
+    @Query("SELECT new com.tech_challenge.fiap_estoque_service.dto.ContagemPorStatusDTO(r.status, COUNT(r)) "
+            + "FROM ReservaEstoque r GROUP BY r.status")
+    List<ContagemPorStatusDTO> contarPorStatus();
+
+    long countByStatusAndExpiresAtBefore(ReservaStatus status, LocalDateTime now);
+
+    // Quanto de um lease do modo escrow já virou reserva, em qualquer status, inclusive as reservas já arquivadas.
+    // As duas tabelas são lidas no mesmo comando, então um lote arquivado no meio não é contado nem zero nem duas
+    // vezes.
+    @Query(value = "SELECT COALESCE(SUM(quantidade_reservada), 0) FROM ("
+            + "SELECT quantidade_reservada FROM reserva_estoque WHERE lease_id = :leaseId UNION ALL "
+            + "SELECT quantidade_reservada FROM reserva_estoque_historico WHERE lease_id = :leaseId) t",
+            nativeQuery = true)
+    long somarPorLease(@Param("leaseId") String leaseId);
+
+    // Pedidos com todas as reservas em status final e vencidas antes do limite, candidatos ao arquivamento.
+    @Query("SELECT DISTINCT r.pedidoId FROM ReservaEstoque r WHERE r.expiresAt < :limite AND r.status IN :finais "
+            + "AND NOT EXISTS (SELECT 1 FROM ReservaEstoque p WHERE p.pedidoId = r.pedidoId "
+            + "AND (p.status NOT IN :finais OR p.expiresAt >= :limite))")
+    List<String> findPedidosArquivaveis(@Param("limite") LocalDateTime limite,
+            @Param("finais") Collection<ReservaStatus> finais, Limit limit);
+
+    @Modifying
+    @Query("DELETE FROM ReservaEstoque r WHERE r.pedidoId IN :pedidoIds")
+    int removerPorPedidos(@Param("pedidoIds") Collection<String> pedidoIds);
 }
@@ -0,0 +1,237 @@
+package com.tech_challenge.fiap_estoque_service.grpc;
+
+import com.google.protobuf.Empty;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import com.tech_challenge.fiap_estoque_service.exception.ReservationCannotBeCancelledException;
+import com.tech_challenge.fiap_estoque_service.exception.ReservationNotFoundException;
+import com.tech_challenge.fiap_estoque_service.exception.StockEngineUnavailableException;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.EstoqueGrpc;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.EstoquePublic;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.Pedido;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.PedidoIdRequest;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.ProdutoRequest;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.ResultadoPedido;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.ResultadoPedidoStatus;
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+import com.tech_challenge.fiap_estoque_service.usecase.EstoqueUseCase;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// As operações do EstoqueController em gRPC, chamando o mesmo EstoqueUseCase. As chamadas unárias respondem como os
+// endpoints REST de um pedido; o ReservarStream agrupa os pedidos que já chegaram (até tamanho-chunk) e os reserva
+// como um lote do /batch, como o POST /estoque/stream. O fluxo pede ao cliente só os pedidos que cabem no lote em
+// andamento, então um cliente que envia mais rápido do que o estoque reserva espera no controle de fluxo do HTTP/2
+// em vez de acumular pedidos em memória.
+@Component
+@ConditionalOnProperty(name = "estoque.grpc.enabled", havingValue = "true")
+public class EstoqueGrpcService extends EstoqueGrpc.EstoqueImplBase {
+    private static final Logger logger = LoggerFactory.getLogger(EstoqueGrpcService.class);
+
+    private final EstoqueUseCase estoqueUseCase;
+    private final EstoqueMetricas estoqueMetricas;
+    private final int tamanhoChunk;
+    private final ExecutorService lotes = Executors.newVirtualThreadPerTaskExecutor();
+
+    public EstoqueGrpcService(EstoqueUseCase estoqueUseCase, EstoqueMetricas estoqueMetricas,
+            @Value("${estoque.lote.tamanho-chunk:100}") int tamanhoChunk) {
+        this.estoqueUseCase = estoqueUseCase;
+        this.estoqueMetricas = estoqueMetricas;
+        this.tamanhoChunk = tamanhoChunk;
+    }
+
+    @Override
+    public void getEstoque(ProdutoRequest request, StreamObserver<EstoquePublic> resposta) {
+        responder(resposta, () -> {
+            var estoque = estoqueUseCase.getEstoqueByProductSKU(request.getProductSku());
+            return EstoquePublic.newBuilder()
+                    .setProductSku(estoque.productSKU())
+                    .setQuantidadeDisponivel(estoque.quantidadeDisponivel())
+                    .build();
+        });
+    }
+
+    @Override
+    public void reservar(Pedido pedido, StreamObserver<Empty> resposta) {
+        responder(resposta, () -> {
+            estoqueMetricas.medirAcao("updateEstoqueGrpc", () -> estoqueUseCase.updateEstoque(paraDTO(pedido)));
+            return Empty.getDefaultInstance();
+        });
+    }
+
+    @Override
+    public void cancelar(PedidoIdRequest request, StreamObserver<Empty> resposta) {
+        responder(resposta, () -> {
+            estoqueMetricas.medirAcao("updateStatusToCancelGrpc",
+                    () -> estoqueUseCase.updateStatusToCancel(request.getPedidoId()));
+            return Empty.getDefaultInstance();
+        });
+    }
+
+    @Override
+    public void confirmar(PedidoIdRequest request, StreamObserver<Empty> resposta) {
+        responder(resposta, () -> {
+            estoqueMetricas.medirAcao("updateStatusToConfirmedGrpc",
+                    () -> estoqueUseCase.updateStatusToConfirmed(request.getPedidoId()));
+            return Empty.getDefaultInstance();
+        });
+    }
+
+    @Override
+    public StreamObserver<Pedido> reservarStream(StreamObserver<ResultadoPedido> resposta) {
+        ServerCallStreamObserver<ResultadoPedido> chamada = (ServerCallStreamObserver<ResultadoPedido>) resposta;
+        chamada.disableAutoRequest();
+        FluxoReservas fluxo = new FluxoReservas(chamada);
+        chamada.request(tamanhoChunk);
+        return fluxo;
+    }
+
+    @PreDestroy
+    public void parar() {
+        lotes.close();
+    }
+
+    private static <T> void responder(StreamObserver<T> resposta, Supplier<T> acao) {
+        T valor;
+        try {
+            valor = acao.get();
+        } catch (RuntimeException ex) {
+            resposta.onError(status(ex).withDescription(ex.getMessage()).asRuntimeException());
+            return;
+        }
+        resposta.onNext(valor);
+        resposta.onCompleted();
+    }
+
+    // Os mesmos casos do GlobalExceptionController, com a confirmação fora de PENDENTE como pré-condição.
+    private static Status status(RuntimeException ex) {
+        if (ex instanceof ProductNotFoundException || ex instanceof ReservationNotFoundException
+                || ex instanceof ReservationCannotBeCancelledException) {
+            return Status.NOT_FOUND;
+        }
+        if (ex instanceof OutOfStockException || ex instanceof IllegalStateException) {
+            return Status.FAILED_PRECONDITION;
+        }
+        if (ex instanceof StockEngineUnavailableException) {
+            return Status.UNAVAILABLE;
+        }
+        logger.error("Erro inesperado numa chamada gRPC de estoque.", ex);
+        return Status.INTERNAL;
+    }
+
+    private static PedidoDTO paraDTO(Pedido pedido) {
+        return new PedidoDTO(pedido.getPedidosList().stream()
+                .map(item -> new ItemPedidoDTO(item.getProductSku(), item.getQtd()))
+                .toList(), pedido.getPedidoId());
+    }
+
+    private static ResultadoPedido paraProto(ResultadoPedidoDTO resultado) {
+        ResultadoPedido.Builder builder = ResultadoPedido.newBuilder()
+                .setStatus(ResultadoPedidoStatus.valueOf(resultado.status().name()));
+        if (resultado.pedidoId() != null) {
+            builder.setPedidoId(resultado.pedidoId());
+        }
+        if (resultado.mensagem() != null) {
+            builder.setMensagem(resultado.mensagem());
+        }
+        return builder.build();
+    }
+
+    // Os pedidos recebidos entram na fila e uma única tarefa por vez os reserva em lotes e responde, na ordem de
+    // chegada. Só a tarefa em andamento escreve na resposta.
+    private final class FluxoReservas implements StreamObserver<Pedido> {
+        private final ServerCallStreamObserver<ResultadoPedido> resposta;
+        private final Queue<PedidoDTO> pendentes = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean agendado = new AtomicBoolean();
+        private final AtomicBoolean concluido = new AtomicBoolean();
+        private volatile boolean fim;
+
+        private FluxoReservas(ServerCallStreamObserver<ResultadoPedido> resposta) {
+            this.resposta = resposta;
+        }
+
+        @Override
+        public void onNext(Pedido pedido) {
+            pendentes.add(paraDTO(pedido));
+            agendar();
+        }
+
+        // Cliente cancelou ou a conexão caiu: os pedidos ainda não reservados são descartados.
+        @Override
+        public void onError(Throwable erro) {
+            pendentes.clear();
+            concluido.set(true);
+        }
+
+        @Override
+        public void onCompleted() {
+            fim = true;
+            agendar();
+        }
+
+        private void agendar() {
+            if (agendado.compareAndSet(false, true)) {
+                lotes.execute(this::reservar);
+            }
+        }
+
+        private void reservar() {
+            while (true) {
+                List<PedidoDTO> lote = new ArrayList<>(tamanhoChunk);
+                PedidoDTO pedido;
+                while (lote.size() < tamanhoChunk && (pedido = pendentes.poll()) != null) {
+                    lote.add(pedido);
+                }
+                if (lote.isEmpty()) {
+                    agendado.set(false);
+                    // Um pedido que chegou depois do poll vazio agenda outra tarefa, ou esta mesma continua.
+                    if (!pendentes.isEmpty() && agendado.compareAndSet(false, true)) {
+                        continue;
+                    }
+                    // Com o fim recebido, nenhum pedido chega mais e a fila vazia é definitiva.
+                    if (fim && pendentes.isEmpty() && concluido.compareAndSet(false, true)) {
+                        resposta.onCompleted();
+                    }
+                    return;
+                }
+                if (concluido.get() || resposta.isCancelled()) {
+                    pendentes.clear();
+                    continue;
+                }
+
+                try {
+                    estoqueMetricas.medirLote("updateEstoqueGrpcStream", () -> estoqueUseCase.updateEstoqueEmLote(lote))
+                            .forEach(resultado -> resposta.onNext(paraProto(resultado)));
+                } catch (RuntimeException ex) {
+                    pendentes.clear();
+                    if (concluido.compareAndSet(false, true)) {
+                        resposta.onError(status(ex).withDescription(ex.getMessage()).asRuntimeException());
+                    }
+                    continue;
+                }
+                resposta.request(lote.size());
+            }
+        }
+    }
+}
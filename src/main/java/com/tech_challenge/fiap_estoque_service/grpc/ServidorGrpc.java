@@ -0,0 +1,61 @@
+package com.tech_challenge.fiap_estoque_service.grpc;
+
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.Server;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Servidor gRPC sem TLS, ao lado do HTTP. As chamadas bloqueiam no banco como as requisições REST, então cada uma
+// roda numa thread virtual.
+@Component
+@ConditionalOnProperty(name = "estoque.grpc.enabled", havingValue = "true")
+public class ServidorGrpc {
+    private static final Logger logger = LoggerFactory.getLogger(ServidorGrpc.class);
+
+    private final ExecutorService chamadas = Executors.newVirtualThreadPerTaskExecutor();
+    private final Server server;
+
+    public ServidorGrpc(EstoqueGrpcService estoqueGrpcService, @Value("${estoque.grpc.porta:9090}") int porta) {
+        this.server = Grpc.newServerBuilderForPort(porta, InsecureServerCredentials.create())
+                .addService(estoqueGrpcService)
+                .executor(chamadas)
+                .build();
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        try {
+            server.start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Não foi possível abrir a porta gRPC.", ex);
+        }
+        logger.info("Servidor gRPC ouvindo na porta {}.", server.getPort());
+    }
+
+    public int getPorta() {
+        return server.getPort();
+    }
+
+    // Novas chamadas são recusadas e as em andamento têm alguns segundos para terminar antes de serem canceladas.
+    @PreDestroy
+    public void parar() throws InterruptedException {
+        server.shutdown();
+        if (!server.awaitTermination(5, TimeUnit.SECONDS)) {
+            server.shutdownNow().awaitTermination();
+        }
+        chamadas.close();
+    }
+}
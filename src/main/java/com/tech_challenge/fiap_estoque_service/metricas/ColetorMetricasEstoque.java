@@ -0,0 +1,124 @@
+package com.tech_challenge.fiap_estoque_service.metricas;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.dto.ContagemPorStatusDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.SkuQuenteDTO;
+import com.tech_challenge.fiap_estoque_service.engine.EstoqueEmMemoria;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.NotificacaoPedidoRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gauges que dependem de consultas ao banco. Em vez de consultar a cada scrape, os valores são recalculados a
+ * cada {@code estoque.metricas.intervalo-ms}: reservas por status, reservas PENDENTE já vencidas (o backlog da
+ * expiração), notificações ainda no outbox e o disponível dos SKUs em {@code estoque.metricas.skus-monitorados}
+ * (ou, se vazio, dos SKUs mais reservados segundo o {@link SkusQuentes}).
+ */
+@Component
+public class ColetorMetricasEstoque {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColetorMetricasEstoque.class);
+
+    private final ReservaEstoqueRepository reservaRepository;
+    private final NotificacaoPedidoRepository notificacaoRepository;
+    private final EstoqueRepository estoqueRepository;
+    private final Optional<EstoqueEmMemoria> estoqueEmMemoria;
+    private final SkusQuentes skusQuentes;
+    private final List<String> skusMonitorados;
+    private final MultiGauge reservasPorStatus;
+    private final MultiGauge disponivelPorSku;
+    private final AtomicLong backlogExpiracao = new AtomicLong();
+    private final AtomicLong outboxPendentes = new AtomicLong();
+
+    public ColetorMetricasEstoque(MeterRegistry meterRegistry, ReservaEstoqueRepository reservaRepository,
+            NotificacaoPedidoRepository notificacaoRepository, EstoqueRepository estoqueRepository,
+            Optional<EstoqueEmMemoria> estoqueEmMemoria, SkusQuentes skusQuentes,
+            @Value("${estoque.metricas.skus-monitorados:}") List<String> skusMonitorados) {
+        this.reservaRepository = reservaRepository;
+        this.notificacaoRepository = notificacaoRepository;
+        this.estoqueRepository = estoqueRepository;
+        this.estoqueEmMemoria = estoqueEmMemoria;
+        this.skusQuentes = skusQuentes;
+        this.skusMonitorados = List.copyOf(skusMonitorados);
+        this.reservasPorStatus = MultiGauge.builder("estoque.reservas")
+                .description("Reservas por ReservaStatus")
+                .register(meterRegistry);
+        this.disponivelPorSku = MultiGauge.builder("estoque.disponivel")
+                .description("Quantidade disponível dos SKUs monitorados")
+                .register(meterRegistry);
+        Gauge.builder("estoque.expiracao.backlog", backlogExpiracao, AtomicLong::get)
+                .description("Reservas PENDENTE já vencidas e ainda não expiradas")
+                .register(meterRegistry);
+        Gauge.builder("estoque.outbox.pendentes", outboxPendentes, AtomicLong::get)
+                .description("Notificações ao pedido-service ainda no outbox")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.metricas.intervalo-ms:15000}")
+    public void atualizar() {
+        try {
+            Map<ReservaStatus, Long> totais = new EnumMap<>(ReservaStatus.class);
+            for (ReservaStatus status : ReservaStatus.values()) {
+                totais.put(status, 0L);
+            }
+            for (ContagemPorStatusDTO contagem : reservaRepository.contarPorStatus()) {
+                totais.put(contagem.status(), contagem.total());
+            }
+            reservasPorStatus.register(linhas("status", totais), true);
+
+            backlogExpiracao.set(reservaRepository.countByStatusAndExpiresAtBefore(ReservaStatus.PENDENTE,
+                    LocalDateTime.now()));
+            outboxPendentes.set(notificacaoRepository.count());
+
+            disponivelPorSku.register(linhas("sku", disponiveis()), true);
+        } catch (RuntimeException ex) {
+            // Os gauges ficam com os valores anteriores até a próxima coleta.
+            logger.error("Erro ao atualizar as métricas de estoque.", ex);
+        }
+    }
+
+    private static List<MultiGauge.Row<?>> linhas(String tag, Map<?, ? extends Number> valores) {
+        return valores.entrySet().stream()
+                .<MultiGauge.Row<?>>map(valor -> MultiGauge.Row.of(Tags.of(tag, valor.getKey().toString()),
+                        valor.getValue()))
+                .toList();
+    }
+
+    // Sem lista fixa, acompanha os SKUs mais reservados no momento.
+    private Map<String, Integer> disponiveis() {
+        List<String> skus = skusMonitorados.isEmpty()
+                ? skusQuentes.quentesEscrita().stream().map(SkuQuenteDTO::productSKU).toList()
+                : skusMonitorados;
+        if (skus.isEmpty()) {
+            return Map.of();
+        }
+        if (estoqueEmMemoria.isPresent()) {
+            return estoqueEmMemoria.get().disponiveis(skus);
+        }
+        Map<String, Integer> disponiveis = new TreeMap<>();
+        for (Estoque estoque : estoqueRepository.findAllById(skus)) {
+            disponiveis.put(estoque.getProductSKU(), estoque.getQuantidadeDisponivel());
+        }
+        return disponiveis;
+    }
+}
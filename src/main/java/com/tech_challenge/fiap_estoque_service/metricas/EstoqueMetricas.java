@@ -0,0 +1,92 @@
+package com.tech_challenge.fiap_estoque_service.metricas;
+
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Métricas do ciclo de vida das reservas. Cada operação vira o timer {@code estoque.operacao} com as tags
+ * {@code operacao} e {@code resultado} (SUCESSO ou o nome da exceção lançada); a contagem do timer já é o
+ * contador por desfecho. Nas operações em lote, {@code estoque.lote.pedidos} conta os pedidos por status.
+ */
+@Component
+public class EstoqueMetricas {
+
+    public static final String SUCESSO = "SUCESSO";
+
+    private final MeterRegistry meterRegistry;
+    private final Counter reservasExpiradas;
+    private final Timer varredura;
+    private final DistributionSummary reservasPorVarredura;
+
+    public EstoqueMetricas(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.reservasExpiradas = Counter.builder("estoque.expiracao.reservas")
+                .description("Reservas PENDENTE passadas para EXPIRADA")
+                .register(meterRegistry);
+        this.varredura = Timer.builder("estoque.expiracao.varredura")
+                .description("Duração de cada execução de cancelarReservasExpiradas")
+                .register(meterRegistry);
+        this.reservasPorVarredura = DistributionSummary.builder("estoque.expiracao.varredura.reservas")
+                .description("Reservas expiradas por execução de cancelarReservasExpiradas")
+                .register(meterRegistry);
+    }
+
+    public <T> T medir(String operacao, Supplier<T> acao) {
+        long inicio = System.nanoTime();
+        String resultado = SUCESSO;
+        try {
+            return acao.get();
+        } catch (RuntimeException ex) {
+            resultado = ex.getClass().getSimpleName();
+            throw ex;
+        } finally {
+            Timer.builder("estoque.operacao")
+                    .tag("operacao", operacao)
+                    .tag("resultado", resultado)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void medirAcao(String operacao, Runnable acao) {
+        medir(operacao, () -> {
+            acao.run();
+            return null;
+        });
+    }
+
+    public List<ResultadoPedidoDTO> medirLote(String operacao, Supplier<List<ResultadoPedidoDTO>> acao) {
+        List<ResultadoPedidoDTO> resultados = medir(operacao, acao);
+        for (ResultadoPedidoDTO resultado : resultados) {
+            meterRegistry.counter("estoque.lote.pedidos", "operacao", operacao, "resultado",
+                    resultado.status().name()).increment();
+        }
+        return resultados;
+    }
+
+    public void registrarExpiradas(int quantidade) {
+        reservasExpiradas.increment(quantidade);
+    }
+
+    public void registrarVarredura(long duracaoNanos, int reservas) {
+        varredura.record(duracaoNanos, TimeUnit.NANOSECONDS);
+        reservasPorVarredura.record(reservas);
+    }
+
+    // Conflitos de trava (deadlock, timeout de lock, falha de serialização) por operação: a transação foi refeita
+    // ou, esgotadas as tentativas, abortada.
+    public void registrarConflito(String operacao, boolean abortada) {
+        meterRegistry.counter(abortada ? "estoque.transacao.abortadas" : "estoque.transacao.retentativas",
+                "operacao", operacao).increment();
+    }
+}
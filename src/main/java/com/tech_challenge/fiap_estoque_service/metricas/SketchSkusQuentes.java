@@ -0,0 +1,111 @@
+package com.tech_challenge.fiap_estoque_service.metricas;
+
+import com.tech_challenge.fiap_estoque_service.dto.SkuQuenteDTO;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Count-Min sketch com os K SKUs de maior contagem estimada. A memória é fixa: {@code profundidade x largura}
+ * contadores mais no máximo K candidatos, qualquer que seja o número de SKUs distintos. O registro é um
+ * incremento atômico por linha; a lista de candidatos só é disputada quando um SKU novo tenta entrar nela e,
+ * se outra thread estiver mexendo, a tentativa é descartada (um SKU quente volta a tentar logo em seguida).
+ *
+ * {@link #decair()} divide todos os contadores por dois, então contagens antigas perdem peso a cada chamada e
+ * o sketch reflete uma janela deslizante com meia-vida igual ao intervalo entre chamadas.
+ */
+public class SketchSkusQuentes {
+
+    private final AtomicLongArray contadores;
+    private final int profundidade;
+    private final int largura;
+    private final int topK;
+    private final Map<String, Long> candidatos = new ConcurrentHashMap<>();
+    private final ReentrantLock lockCandidatos = new ReentrantLock();
+
+    public SketchSkusQuentes(int profundidade, int largura, int topK) {
+        if (Integer.bitCount(largura) != 1) {
+            throw new IllegalArgumentException("A largura do sketch deve ser potência de 2.");
+        }
+        this.contadores = new AtomicLongArray(profundidade * largura);
+        this.profundidade = profundidade;
+        this.largura = largura;
+        this.topK = topK;
+    }
+
+    public void registrar(String productSKU) {
+        int h1 = productSKU.hashCode();
+        int h2 = espalhar(h1);
+        long menorContador = Long.MAX_VALUE;
+        for (int linha = 0; linha < profundidade; linha++) {
+            menorContador = Math.min(menorContador, contadores.incrementAndGet(indice(linha, h1, h2)));
+        }
+        long estimativa = menorContador;
+
+        if (candidatos.computeIfPresent(productSKU, (sku, anterior) -> estimativa) != null
+                || !lockCandidatos.tryLock()) {
+            return;
+        }
+        try {
+            if (candidatos.size() < topK) {
+                candidatos.put(productSKU, estimativa);
+                return;
+            }
+            Map.Entry<String, Long> menor = candidatos.entrySet().stream()
+                    .min(Map.Entry.comparingByValue())
+                    .orElseThrow();
+            if (estimativa > menor.getValue()) {
+                candidatos.remove(menor.getKey());
+                candidatos.put(productSKU, estimativa);
+            }
+        } finally {
+            lockCandidatos.unlock();
+        }
+    }
+
+    public long estimar(String productSKU) {
+        int h1 = productSKU.hashCode();
+        int h2 = espalhar(h1);
+        long estimativa = Long.MAX_VALUE;
+        for (int linha = 0; linha < profundidade; linha++) {
+            estimativa = Math.min(estimativa, contadores.get(indice(linha, h1, h2)));
+        }
+        return estimativa;
+    }
+
+    public List<SkuQuenteDTO> quentes() {
+        return candidatos.keySet().stream()
+                .map(sku -> new SkuQuenteDTO(sku, estimar(sku)))
+                .filter(quente -> quente.estimativa() > 0)
+                .sorted(Comparator.comparingLong(SkuQuenteDTO::estimativa).reversed())
+                .toList();
+    }
+
+    public void decair() {
+        for (int i = 0; i < contadores.length(); i++) {
+            contadores.getAndUpdate(i, valor -> valor >> 1);
+        }
+        lockCandidatos.lock();
+        try {
+            // Os candidatos passam a valer a estimativa já decaída; quem chegou a zero libera a vaga.
+            candidatos.replaceAll((sku, anterior) -> estimar(sku));
+            candidatos.values().removeIf(estimativa -> estimativa == 0);
+        } finally {
+            lockCandidatos.unlock();
+        }
+    }
+
+    private int indice(int linha, int h1, int h2) {
+        // Duplo hashing (Kirsch-Mitzenmacher): uma função de hash diferente por linha a partir de duas.
+        return linha * largura + ((h1 + linha * h2) & (largura - 1));
+    }
+
+    private static int espalhar(int hash) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) | 1;
+    }
+}
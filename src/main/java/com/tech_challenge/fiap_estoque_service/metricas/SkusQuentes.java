@@ -0,0 +1,55 @@
+package com.tech_challenge.fiap_estoque_service.metricas;
+
+import com.tech_challenge.fiap_estoque_service.dto.SkuQuenteDTO;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * SKUs mais lidos e mais reservados na janela recente, cada lista vinda de um {@link SketchSkusQuentes}. A cada
+ * {@code estoque.skus-quentes.meia-vida-ms} as contagens caem pela metade. Publicado no actuator pelo
+ * {@link SkusQuentesEndpoint}.
+ */
+@Component
+public class SkusQuentes {
+
+    private final SketchSkusQuentes leituras;
+    private final SketchSkusQuentes escritas;
+
+    public SkusQuentes(@Value("${estoque.skus-quentes.profundidade:4}") int profundidade,
+            @Value("${estoque.skus-quentes.largura:2048}") int largura,
+            @Value("${estoque.skus-quentes.top-k:20}") int topK) {
+        this.leituras = new SketchSkusQuentes(profundidade, largura, topK);
+        this.escritas = new SketchSkusQuentes(profundidade, largura, topK);
+    }
+
+    public void registrarLeitura(String productSKU) {
+        leituras.registrar(productSKU);
+    }
+
+    public void registrarLeituras(Collection<String> productSKUs) {
+        productSKUs.forEach(leituras::registrar);
+    }
+
+    public void registrarEscritas(Collection<String> productSKUs) {
+        productSKUs.forEach(escritas::registrar);
+    }
+
+    public List<SkuQuenteDTO> quentesLeitura() {
+        return leituras.quentes();
+    }
+
+    public List<SkuQuenteDTO> quentesEscrita() {
+        return escritas.quentes();
+    }
+
+    @Scheduled(fixedRateString = "${estoque.skus-quentes.meia-vida-ms:10000}")
+    public void decair() {
+        leituras.decair();
+        escritas.decair();
+    }
+}
@@ -0,0 +1,31 @@
+package com.tech_challenge.fiap_estoque_service.metricas;
+
+import com.tech_challenge.fiap_estoque_service.dto.SkuQuenteDTO;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// GET /actuator/skusquentes: os top-K SKUs de leitura e de reserva, com a contagem estimada na janela recente.
+@Component
+@Endpoint(id = "skusquentes")
+public class SkusQuentesEndpoint {
+
+    private final SkusQuentes skusQuentes;
+
+    public SkusQuentesEndpoint(SkusQuentes skusQuentes) {
+        this.skusQuentes = skusQuentes;
+    }
+
+    @ReadOperation
+    public Map<String, List<SkuQuenteDTO>> skusQuentes() {
+        Map<String, List<SkuQuenteDTO>> quentes = new LinkedHashMap<>();
+        quentes.put("leituras", skusQuentes.quentesLeitura());
+        quentes.put("escritas", skusQuentes.quentesEscrita());
+        return quentes;
+    }
+}
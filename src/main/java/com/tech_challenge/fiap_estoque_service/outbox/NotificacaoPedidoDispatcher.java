@@ -0,0 +1,150 @@
+package com.tech_challenge.fiap_estoque_service.outbox;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.NotificacaoPedido;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoRequestDTO;
+import com.tech_challenge.fiap_estoque_service.gateway.NotificacaoPedidoRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.PedidoClient;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Envia as notificações pendentes do outbox ao pedido-service. Cada pedido é atendido por uma virtual thread
+ * que envia as notificações dele em ordem de criação e para na primeira que falhar; pedidos diferentes seguem
+ * em paralelo. Notificações com falha voltam com backoff exponencial até {@code estoque.outbox.max-tentativas}.
+ *
+ * Antes do envio cada notificação é reivindicada por {@code estoque.outbox.prazo-envio-ms}; outra instância só a
+ * vê de novo se esta cair sem apagá-la nem reagendá-la.
+ */
+@Component
+public class NotificacaoPedidoDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificacaoPedidoDispatcher.class);
+
+    private final NotificacaoPedidoRepository notificacaoRepository;
+    private final PedidoClient pedidoClient;
+    private final int tamanhoLote;
+    private final long backoffInicialMs;
+    private final long backoffMaximoMs;
+    private final int maxTentativas;
+    private final long prazoEnvioMs;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ExecutorService rodadas = Executors.newVirtualThreadPerTaskExecutor();
+
+    public NotificacaoPedidoDispatcher(NotificacaoPedidoRepository notificacaoRepository, PedidoClient pedidoClient,
+            @Value("${estoque.outbox.tamanho-lote:200}") int tamanhoLote,
+            @Value("${estoque.outbox.backoff-inicial-ms:1000}") long backoffInicialMs,
+            @Value("${estoque.outbox.backoff-maximo-ms:300000}") long backoffMaximoMs,
+            @Value("${estoque.outbox.max-tentativas:10}") int maxTentativas,
+            @Value("${estoque.outbox.prazo-envio-ms:30000}") long prazoEnvioMs) {
+        this.notificacaoRepository = notificacaoRepository;
+        this.pedidoClient = pedidoClient;
+        this.tamanhoLote = tamanhoLote;
+        this.backoffInicialMs = backoffInicialMs;
+        this.backoffMaximoMs = backoffMaximoMs;
+        this.maxTentativas = maxTentativas;
+        this.prazoEnvioMs = prazoEnvioMs;
+    }
+
+    // A rodada roda fora da thread do agendador, que é compartilhada com os outros jobs: um pedido-service lento
+    // atrasa só as notificações.
+    @Scheduled(fixedDelayString = "${estoque.outbox.intervalo-ms:500}")
+    public void agendarDespacho() {
+        rodadas.execute(this::despachar);
+    }
+
+    // Uma rodada por vez; as que chegam com outra em andamento não fazem nada.
+    public void despachar() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            Set<String> pedidoIds = new LinkedHashSet<>();
+            notificacaoRepository
+                    .findByProximaTentativaLessThanEqualOrderByCreatedAtAsc(LocalDateTime.now(), Limit.of(tamanhoLote))
+                    .forEach(notificacao -> pedidoIds.add(notificacao.getPedidoId()));
+
+            // O close do executor espera todas as virtual threads terminarem.
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                pedidoIds.forEach(pedidoId -> executor.submit(() -> despacharPedido(pedidoId)));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void despacharPedido(String pedidoId) {
+        try {
+            for (NotificacaoPedido notificacao : notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc(pedidoId)) {
+                // Uma notificação anterior ainda em espera, ou sendo enviada por outra instância, segura as
+                // seguintes do mesmo pedido.
+                if (notificacao.getProximaTentativa().isAfter(LocalDateTime.now()) || !reivindicar(notificacao)
+                        || !enviar(notificacao)) {
+                    return;
+                }
+                notificacaoRepository.delete(notificacao);
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Erro ao despachar as notificações do pedido {}.", pedidoId, ex);
+        }
+    }
+
+    private boolean reivindicar(NotificacaoPedido notificacao) {
+        LocalDateTime ate = LocalDateTime.now().plusNanos(prazoEnvioMs * 1_000_000);
+        if (notificacaoRepository.reivindicar(notificacao.getId(), notificacao.getProximaTentativa(), ate) == 0) {
+            return false;
+        }
+        notificacao.setProximaTentativa(ate);
+        return true;
+    }
+
+    private boolean enviar(NotificacaoPedido notificacao) {
+        PedidoRequestDTO request = new PedidoRequestDTO(notificacao.getPedidoId());
+        try {
+            switch (notificacao.getTipo()) {
+                case EXPIRADO -> pedidoClient.changeToClosedExpired(request);
+                case SUCESSO -> pedidoClient.changeToClosedSuccess(request);
+            }
+            return true;
+        } catch (RuntimeException ex) {
+            reagendar(notificacao, ex);
+            return false;
+        }
+    }
+
+    private void reagendar(NotificacaoPedido notificacao, RuntimeException ex) {
+        int tentativas = notificacao.getTentativas() + 1;
+        if (tentativas >= maxTentativas) {
+            logger.error("Notificação {} do pedido {} descartada após {} tentativas.", notificacao.getTipo(),
+                    notificacao.getPedidoId(), tentativas, ex);
+            notificacaoRepository.delete(notificacao);
+            return;
+        }
+
+        long espera = Math.min(backoffMaximoMs, backoffInicialMs << Math.min(tentativas - 1, 30));
+        notificacao.setTentativas(tentativas);
+        notificacao.setProximaTentativa(LocalDateTime.now().plusNanos(espera * 1_000_000));
+        notificacaoRepository.save(notificacao);
+        logger.warn("Erro ao chamar o serviço de pedido ({} do pedido {}); nova tentativa em {} ms.",
+                notificacao.getTipo(), notificacao.getPedidoId(), espera, ex);
+    }
+
+    @PreDestroy
+    public void parar() {
+        rodadas.close();
+    }
+}
@@ -0,0 +1,60 @@
+package com.tech_challenge.fiap_estoque_service.outbox;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.NotificacaoPedido;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+import com.tech_challenge.fiap_estoque_service.gateway.NotificacaoPedidoRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.PedidoReservaRepository;
+
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Registra notificações para o pedido-service na transação corrente. O envio fica a cargo do
+ * {@link NotificacaoPedidoDispatcher}, fora da transação que mudou o status das reservas.
+ *
+ * Duas transações podem registrar o mesmo pedido ao mesmo tempo, por exemplo dois lotes da expiração que
+ * reivindicaram reservas diferentes dele. Por isso o registro trava antes o pedido em pedido_reserva: a segunda
+ * espera o commit da primeira e já encontra a notificação, em vez de esbarrar na chave única e desfazer o lote
+ * inteiro.
+ */
+@Component
+public class NotificacaoPedidoOutbox {
+
+    private final NotificacaoPedidoRepository notificacaoRepository;
+    private final PedidoReservaRepository pedidoReservaRepository;
+
+    public NotificacaoPedidoOutbox(NotificacaoPedidoRepository notificacaoRepository,
+            PedidoReservaRepository pedidoReservaRepository) {
+        this.notificacaoRepository = notificacaoRepository;
+        this.pedidoReservaRepository = pedidoReservaRepository;
+    }
+
+    // Uma notificação por pedido e tipo, mesmo que o pedido tenha várias reservas ou seja registrado de novo.
+    public void registrar(Collection<String> pedidoIds, TipoNotificacao tipo) {
+        Set<String> novos = new LinkedHashSet<>(pedidoIds);
+        if (novos.isEmpty()) {
+            return;
+        }
+        pedidoReservaRepository.travar(novos);
+        notificacaoRepository.findByTipoAndPedidoIdIn(tipo, novos)
+                .forEach(existente -> novos.remove(existente.getPedidoId()));
+
+        LocalDateTime agora = LocalDateTime.now();
+        List<NotificacaoPedido> notificacoes = novos.stream()
+                .map(pedidoId -> NotificacaoPedido.builder()
+                        .pedidoId(pedidoId)
+                        .tipo(tipo)
+                        .tentativas(0)
+                        .proximaTentativa(agora)
+                        .createdAt(agora)
+                        .build())
+                .collect(Collectors.toList());
+        notificacaoRepository.saveAll(notificacoes);
+    }
+}
@@ -0,0 +1,109 @@
+package com.tech_challenge.fiap_estoque_service.scheduler;
+
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueHistoricoRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Move para reserva_estoque_historico os pedidos cujas reservas estão todas em status final e venceram há mais de
+ * {@code estoque.arquivamento.idade}, para que a tabela quente guarde só o que a expiração e os lookups por pedido
+ * ainda usam. Cada lote de pedidos é copiado e removido numa transação curta, com uma pausa entre lotes para não
+ * disputar o banco com as requisições; o que não couber no orçamento de tempo fica para a próxima execução.
+ */
+@Service
+public class ArquivamentoReservasScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArquivamentoReservasScheduler.class);
+    private static final Set<ReservaStatus> FINAIS = EnumSet.of(ReservaStatus.CONFIRMADA, ReservaStatus.EXPIRADA,
+            ReservaStatus.CANCELADA, ReservaStatus.FINALIZADO);
+
+    private final ReservaEstoqueRepository reservaRepository;
+    private final ReservaEstoqueHistoricoRepository historicoRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration idade;
+    private final int tamanhoLote;
+    private final long pausaMs;
+    private final long orcamentoMs;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public ArquivamentoReservasScheduler(ReservaEstoqueRepository reservaRepository,
+            ReservaEstoqueHistoricoRepository historicoRepository, TransactionTemplate transactionTemplate,
+            @Value("${estoque.arquivamento.idade:P1D}") Duration idade,
+            @Value("${estoque.arquivamento.tamanho-lote:200}") int tamanhoLote,
+            @Value("${estoque.arquivamento.pausa-ms:50}") long pausaMs,
+            @Value("${estoque.arquivamento.orcamento-ms:30000}") long orcamentoMs) {
+        this.reservaRepository = reservaRepository;
+        this.historicoRepository = historicoRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.idade = idade;
+        this.tamanhoLote = tamanhoLote;
+        this.pausaMs = pausaMs;
+        this.orcamentoMs = orcamentoMs;
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.arquivamento.intervalo-ms:60000}")
+    public void arquivar() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            LocalDateTime agora = LocalDateTime.now();
+            LocalDateTime limite = agora.minus(idade);
+            long prazo = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(orcamentoMs);
+            int total = 0;
+
+            while (true) {
+                int arquivados = transactionTemplate.execute(status -> arquivarLote(limite, agora));
+                total += arquivados;
+                if (arquivados < tamanhoLote) {
+                    break;
+                }
+                if (System.nanoTime() - prazo > 0) {
+                    logger.warn("Orçamento de {} ms esgotado após {} pedidos arquivados; o restante fica para a "
+                            + "próxima execução.", orcamentoMs, total);
+                    break;
+                }
+                Thread.sleep(pausaMs);
+            }
+
+            if (total > 0) {
+                logger.info("Arquivados {} pedidos com reservas finalizadas antes de {}.", total, limite);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            // O lote com erro volta inteiro na tabela quente e é tentado de novo na próxima execução.
+            logger.error("Erro ao arquivar reservas.", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int arquivarLote(LocalDateTime limite, LocalDateTime agora) {
+        List<String> pedidoIds = reservaRepository.findPedidosArquivaveis(limite, FINAIS, Limit.of(tamanhoLote));
+        if (pedidoIds.isEmpty()) {
+            return 0;
+        }
+        int copiadas = historicoRepository.copiar(pedidoIds, agora);
+        if (reservaRepository.removerPorPedidos(pedidoIds) != copiadas) {
+            throw new IllegalStateException("Reservas alteradas durante o arquivamento; o lote será repetido.");
+        }
+        return pedidoIds.size();
+    }
+}
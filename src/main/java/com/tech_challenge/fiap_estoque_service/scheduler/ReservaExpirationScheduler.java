@@ -1,24 +1,38 @@
 package com.tech_challenge.fiap_estoque_service.scheduler;
 
-import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
 import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
-import com.tech_challenge.fiap_estoque_service.dto.PedidoRequestDTO;
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
 import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+import com.tech_challenge.fiap_estoque_service.engine.EstoqueEmMemoria;
+import com.tech_challenge.fiap_estoque_service.engine.EstoqueShards;
+import com.tech_challenge.fiap_estoque_service.engine.LedgerEstoque;
 import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
-import com.tech_challenge.fiap_estoque_service.gateway.PedidoClient;
 import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
-
-import feign.FeignException;
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+import com.tech_challenge.fiap_estoque_service.outbox.NotificacaoPedidoOutbox;
+import com.tech_challenge.fiap_estoque_service.transacao.RetentativaTransacao;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -27,27 +41,127 @@ public class ReservaExpirationScheduler {
     private static final Logger logger = LoggerFactory.getLogger(ReservaExpirationScheduler.class);
     private final ReservaEstoqueRepository reservaRepository;
     private final EstoqueRepository estoqueRepository;
-    private final PedidoClient pedidoClient;
+    private final NotificacaoPedidoOutbox notificacaoOutbox;
+    private final Optional<EstoqueEmMemoria> estoqueEmMemoria;
+    private final Optional<LedgerEstoque> ledgerEstoque;
+    private final Optional<EstoqueShards> estoqueShards;
+    private final EstoqueCache estoqueCache;
+    private final EstoqueMetricas estoqueMetricas;
+    private final TransactionTemplate transactionTemplate;
+    private final RetentativaTransacao retentativaTransacao;
+    private final int tamanhoLote;
+    private final long orcamentoMs;
+    private final int workers;
 
     public ReservaExpirationScheduler(ReservaEstoqueRepository reservaRepository, EstoqueRepository estoqueRepository,
-            PedidoClient pedidoClient) {
+            NotificacaoPedidoOutbox notificacaoOutbox, Optional<EstoqueEmMemoria> estoqueEmMemoria,
+            Optional<LedgerEstoque> ledgerEstoque, Optional<EstoqueShards> estoqueShards, EstoqueCache estoqueCache,
+            EstoqueMetricas estoqueMetricas, TransactionTemplate transactionTemplate, RetentativaTransacao retentativaTransacao,
+            @Value("${estoque.expiracao.tamanho-lote:500}") int tamanhoLote,
+            @Value("${estoque.expiracao.orcamento-ms:30000}") long orcamentoMs,
+            @Value("${estoque.expiracao.workers:1}") int workers) {
         this.reservaRepository = reservaRepository;
         this.estoqueRepository = estoqueRepository;
-        this.pedidoClient = pedidoClient;
+        this.notificacaoOutbox = notificacaoOutbox;
+        this.estoqueEmMemoria = estoqueEmMemoria;
+        this.ledgerEstoque = ledgerEstoque;
+        this.estoqueShards = estoqueShards;
+        this.estoqueCache = estoqueCache;
+        this.estoqueMetricas = estoqueMetricas;
+        this.transactionTemplate = transactionTemplate;
+        this.retentativaTransacao = retentativaTransacao;
+        this.tamanhoLote = tamanhoLote;
+        this.orcamentoMs = orcamentoMs;
+        this.workers = workers;
     }
 
-    @Scheduled(fixedRate = 2 * 60000) // Roda a cada 2 minutos.
-    @Transactional
+    // Rede de segurança da RodaDeExpiracao. Cada worker reivindica lotes das reservas vencidas com SKIP LOCKED e
+    // processa cada lote na sua própria transação curta, então workers desta e de outras instâncias dividem o
+    // backlog sem disputar as mesmas linhas. O que não couber no orçamento de tempo fica para a próxima execução.
+    @Scheduled(fixedRateString = "${estoque.expiracao.varredura-ms:300000}")
     public void cancelarReservasExpiradas() {
         logger.info("Iniciando verificação de reservas expiradas...");
 
-        List<ReservaEstoque> reservasExpiradas = reservaRepository
-                .findByStatusAndExpiresAtBefore(ReservaStatus.PENDENTE, LocalDateTime.now());
+        LocalDateTime agora = LocalDateTime.now();
+        long inicio = System.nanoTime();
+        long prazo = inicio + TimeUnit.MILLISECONDS.toNanos(orcamentoMs);
+        int total = 0;
+
+        if (workers == 1) {
+            total = varrer(agora, prazo);
+        } else {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<Integer>> futuros = new ArrayList<>();
+                for (int i = 0; i < workers; i++) {
+                    futuros.add(executor.submit(() -> varrer(agora, prazo)));
+                }
+                for (Future<Integer> futuro : futuros) {
+                    total += aguardar(futuro);
+                }
+            }
+        }
+        estoqueMetricas.registrarVarredura(System.nanoTime() - inicio, total);
 
-        if (reservasExpiradas.isEmpty()) {
+        if (total == 0) {
             logger.info("Nenhuma reserva expirada encontrada.");
             return;
         }
+        logger.info("Processo de cancelamento de reservas expiradas concluído: {} reservas.", total);
+    }
+
+    // Chamado pela RodaDeExpiracao com os pedidos que venceram no mesmo tick. Pedidos já confirmados ou
+    // cancelados nesse meio-tempo, ou sendo expirados por outra instância, são ignorados.
+    public void expirarPedidos(Collection<String> pedidoIds) {
+        LocalDateTime agora = LocalDateTime.now();
+        List<String> ids = List.copyOf(pedidoIds);
+
+        for (int inicio = 0; inicio < ids.size(); inicio += tamanhoLote) {
+            List<String> lote = ids.subList(inicio, Math.min(inicio + tamanhoLote, ids.size()));
+            retentativaTransacao.executarAcao("expirarPedidos", () -> transactionTemplate.executeWithoutResult(
+                    status -> expirar(reservaRepository.reivindicarExpiradasDosPedidos(lote, agora))));
+        }
+    }
+
+    private int varrer(LocalDateTime agora, long prazo) {
+        int total = 0;
+        while (true) {
+            List<ReservaEstoque> lote = retentativaTransacao.executar("cancelarReservasExpiradas",
+                    () -> transactionTemplate.execute(status -> {
+                        List<ReservaEstoque> reservasExpiradas = reservaRepository.reivindicarExpiradas(agora,
+                                tamanhoLote);
+                        expirar(reservasExpiradas);
+                        return reservasExpiradas;
+                    }));
+            total += lote.size();
+
+            if (lote.size() < tamanhoLote) {
+                return total;
+            }
+            if (System.nanoTime() - prazo > 0) {
+                logger.warn("Orçamento de {} ms esgotado após {} reservas expiradas; o restante fica para a "
+                        + "próxima execução.", orcamentoMs, total);
+                return total;
+            }
+        }
+    }
+
+    // Um worker com erro não derruba os outros; os lotes que ele não fez ficam para a próxima execução.
+    private int aguardar(Future<Integer> futuro) {
+        try {
+            return futuro.get();
+        } catch (ExecutionException ex) {
+            logger.error("Erro em um worker da varredura de reservas expiradas.", ex.getCause());
+            return 0;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    private void expirar(List<ReservaEstoque> reservasExpiradas) {
+        if (reservasExpiradas.isEmpty()) {
+            return;
+        }
 
         logger.info("Encontradas {} reservas expiradas para cancelar.", reservasExpiradas.size());
 
@@ -55,33 +169,41 @@ public class ReservaExpirationScheduler {
                 .collect(Collectors.groupingBy(ReservaEstoque::getProductSKU,
                         Collectors.summingInt(ReservaEstoque::getQuantidadeReservada)));
 
-        List<String> skusParaAtualizar = quantidadesARevolver.keySet().stream().toList();
-        List<Estoque> estoquesParaAtualizar = estoqueRepository.findAllById(skusParaAtualizar);
-
-        for (Estoque estoque : estoquesParaAtualizar) {
-            int quantidadeDevolvida = quantidadesARevolver.get(estoque.getProductSKU());
-            estoque.setQuantidadeDisponivel(estoque.getQuantidadeDisponivel() + quantidadeDevolvida);
-            estoque.setUpdatedAt(LocalDateTime.now());
-            logger.debug("Devolvendo {} itens para o estoque do produto {}", quantidadeDevolvida,
-                    estoque.getProductSKU());
+        if (estoqueEmMemoria.isPresent()) {
+            // Com o estoque em memória ativo, a devolução passa por ele e chega à tabela pelo write-behind, que soma
+            // os movimentos gravados aqui.
+            estoqueEmMemoria.get().devolver(quantidadesARevolver);
+            estoqueEmMemoria.get().registrar(reservasExpiradas, MotivoMovimento.EXPIRACAO);
+        } else if (ledgerEstoque.isPresent()) {
+            // No ledger a devolução é um movimento por reserva, somado ao estoque na compactação.
+            ledgerEstoque.get().registrar(reservasExpiradas, MotivoMovimento.EXPIRACAO);
+        } else if (estoqueShards.isPresent()) {
+            // Nos shards só a thread escritora grava o estoque; a devolução é registrada neste lote e vai para a
+            // fila depois do commit.
+            estoqueShards.get().devolver(quantidadesARevolver, MotivoMovimento.EXPIRACAO);
+        } else {
+            devolverEstoque(quantidadesARevolver);
         }
 
+        // Reservas reivindicadas nesta transação: o commit grava os status em lotes JDBC.
         for (ReservaEstoque reserva : reservasExpiradas) {
             reserva.setStatus(ReservaStatus.EXPIRADA);
-            updatePedidoService(reserva.getPedidoId());
         }
 
-        estoqueRepository.saveAll(estoquesParaAtualizar);
-        reservaRepository.saveAll(reservasExpiradas);
-
-        logger.info("Processo de cancelamento de reservas expiradas concluído.");
+        // Uma notificação por pedido, enviada pelo dispatcher depois do commit do lote.
+        notificacaoOutbox.registrar(reservasExpiradas.stream().map(ReservaEstoque::getPedidoId).toList(),
+                TipoNotificacao.EXPIRADO);
+        estoqueMetricas.registrarExpiradas(reservasExpiradas.size());
     }
 
-    private void updatePedidoService(String pedidoId) {
-        try {
-            this.pedidoClient.changeToClosedExpired(new PedidoRequestDTO(pedidoId));
-        } catch (FeignException ex) {
-            logger.error("Erro ao chamar o serviço de pedido.\n - Stacktrace: {}", ex);
-        }
+    // UPDATE relativo por SKU, em ordem de SKU: workers paralelos devolvendo ao mesmo produto não perdem
+    // atualizações e travam as linhas do estoque sempre na mesma ordem.
+    private void devolverEstoque(Map<String, Integer> quantidadesARevolver) {
+        LocalDateTime agora = LocalDateTime.now();
+        new TreeMap<>(quantidadesARevolver).forEach((productSKU, quantidadeDevolvida) -> {
+            estoqueRepository.aplicarDelta(productSKU, quantidadeDevolvida, 0, agora);
+            logger.debug("Devolvendo {} itens para o estoque do produto {}", quantidadeDevolvida, productSKU);
+        });
+        estoqueCache.invalidar(quantidadesARevolver.keySet());
     }
 }
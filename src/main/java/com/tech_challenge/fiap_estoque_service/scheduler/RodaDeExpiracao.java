@@ -0,0 +1,161 @@
+package com.tech_challenge.fiap_estoque_service.scheduler;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ExpiracaoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Roda de tempo (hashed timing wheel) com o vencimento de cada pedido com reservas PENDENTE. Agendar é O(1):
+ * o pedido entra numa fila e é distribuído no slot do seu tick no próximo avanço da roda. A cada tick de
+ * {@code estoque.expiracao.roda.tick-ms} os slots vencidos são percorridos e todos os pedidos que venceram
+ * juntos são expirados de uma vez pelo {@link ReservaExpirationScheduler}.
+ *
+ * A roda só fica em memória: ela é reconstruída a partir da tabela reserva_estoque na subida, e a varredura
+ * periódica do banco continua cobrindo o que se perder (falha na expiração, reinício entre o commit e o
+ * agendamento).
+ *
+ * O tick só anda no ritmo configurado se o agendador tiver thread livre para ele; por isso
+ * {@code spring.task.scheduling.pool.size} dá uma thread a cada tarefa agendada da aplicação.
+ */
+@Component
+public class RodaDeExpiracao {
+
+    private static final Logger logger = LoggerFactory.getLogger(RodaDeExpiracao.class);
+
+    private final ReservaExpirationScheduler expirationScheduler;
+    private final ReservaEstoqueRepository reservaRepository;
+    private final long tickMs;
+    private final ArrayDeque<Agendamento>[] slots;
+    private final int mascara;
+    private final ConcurrentLinkedQueue<Agendamento> novos = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private long proximoTick;
+
+    @SuppressWarnings("unchecked")
+    public RodaDeExpiracao(ReservaExpirationScheduler expirationScheduler, ReservaEstoqueRepository reservaRepository,
+            @Value("${estoque.expiracao.roda.tick-ms:100}") long tickMs,
+            @Value("${estoque.expiracao.roda.slots:512}") int quantidadeSlots) {
+        if (Integer.bitCount(quantidadeSlots) != 1) {
+            throw new IllegalArgumentException("A quantidade de slots da roda deve ser potência de 2.");
+        }
+        this.expirationScheduler = expirationScheduler;
+        this.reservaRepository = reservaRepository;
+        this.tickMs = tickMs;
+        this.slots = new ArrayDeque[quantidadeSlots];
+        for (int i = 0; i < quantidadeSlots; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.mascara = quantidadeSlots - 1;
+        this.proximoTick = System.currentTimeMillis() / tickMs;
+    }
+
+    @PostConstruct
+    public void reconstruir() {
+        List<ExpiracaoPedidoDTO> pendentes = reservaRepository.findExpiracoesPorPedido(ReservaStatus.PENDENTE);
+        pendentes.forEach(pendente -> agendarAgora(pendente.pedidoId(), pendente.expiresAt()));
+        logger.info("Roda de expiração reconstruída com {} pedidos pendentes.", pendentes.size());
+    }
+
+    // Dentro de uma transação o agendamento só vale depois do commit, para não agendar reservas desfeitas.
+    public void agendar(Collection<ReservaEstoque> reservas) {
+        Map<String, LocalDateTime> vencimentos = reservas.stream()
+                .collect(Collectors.toMap(ReservaEstoque::getPedidoId, ReservaEstoque::getExpiresAt,
+                        (a, b) -> a.isAfter(b) ? a : b));
+        if (vencimentos.isEmpty()) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            vencimentos.forEach(this::agendarAgora);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                vencimentos.forEach(RodaDeExpiracao.this::agendarAgora);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.expiracao.roda.tick-ms:100}")
+    public void avancar() {
+        Set<String> vencidos;
+        lock.lock();
+        try {
+            vencidos = coletarVencidos(System.currentTimeMillis() / tickMs);
+        } finally {
+            lock.unlock();
+        }
+
+        if (vencidos.isEmpty()) {
+            return;
+        }
+        try {
+            expirationScheduler.expirarPedidos(vencidos);
+        } catch (RuntimeException ex) {
+            // Os pedidos continuam PENDENTE no banco e são apanhados pela varredura periódica.
+            logger.error("Erro ao expirar {} pedidos vencidos na roda de expiração.", vencidos.size(), ex);
+        }
+    }
+
+    private void agendarAgora(String pedidoId, LocalDateTime expiresAt) {
+        long vencimentoMs = expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        // Arredonda para cima: a roda pode disparar até um tick depois do vencimento, nunca antes.
+        novos.add(new Agendamento(pedidoId, Math.floorDiv(vencimentoMs + tickMs - 1, tickMs)));
+    }
+
+    private Set<String> coletarVencidos(long tickAtual) {
+        Set<String> vencidos = new LinkedHashSet<>();
+        Agendamento novo;
+        while ((novo = novos.poll()) != null) {
+            // Vencimentos já passados (reconstrução, agendamento tardio) nem chegam a entrar na roda.
+            if (novo.tick() <= tickAtual) {
+                vencidos.add(novo.pedidoId());
+            } else {
+                slots[(int) (novo.tick() & mascara)].add(novo);
+            }
+        }
+
+        // Depois de uma pausa longa basta uma volta completa: cada slot é visitado uma única vez.
+        long ticksAtrasados = Math.min(tickAtual - proximoTick + 1, slots.length);
+        for (long tick = proximoTick; tick < proximoTick + ticksAtrasados; tick++) {
+            Iterator<Agendamento> slot = slots[(int) (tick & mascara)].iterator();
+            while (slot.hasNext()) {
+                Agendamento agendamento = slot.next();
+                if (agendamento.tick() <= tickAtual) {
+                    vencidos.add(agendamento.pedidoId());
+                    slot.remove();
+                }
+            }
+        }
+        proximoTick = Math.max(proximoTick, tickAtual + 1);
+        return vencidos;
+    }
+
+    private record Agendamento(String pedidoId, long tick) {
+    }
+}
@@ -0,0 +1,79 @@
+package com.tech_challenge.fiap_estoque_service.transacao;
+
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Refaz uma transação inteira quando o banco a aborta por conflito de trava: deadlock, timeout de lock ou falha de
+ * serialização, todos traduzidos pelo Spring para {@link PessimisticLockingFailureException}. Cada nova tentativa
+ * espera um tempo aleatório entre zero e um teto que dobra a cada falha (até {@code backoff-maximo-ms}), para que as
+ * transações que colidiram não voltem juntas. Retentativas e abortos viram métricas por operação.
+ *
+ * A ação precisa abrir e fechar a própria transação. Chamada dentro de uma transação já ativa ela roda uma vez só,
+ * porque a transação de fora já está marcada para rollback e só quem a abriu pode refazê-la.
+ */
+@Component
+public class RetentativaTransacao {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetentativaTransacao.class);
+
+    private final EstoqueMetricas estoqueMetricas;
+    private final int maxTentativas;
+    private final long backoffInicialMs;
+    private final long backoffMaximoMs;
+
+    public RetentativaTransacao(EstoqueMetricas estoqueMetricas,
+            @Value("${estoque.transacao.max-tentativas:4}") int maxTentativas,
+            @Value("${estoque.transacao.backoff-inicial-ms:5}") long backoffInicialMs,
+            @Value("${estoque.transacao.backoff-maximo-ms:200}") long backoffMaximoMs) {
+        this.estoqueMetricas = estoqueMetricas;
+        this.maxTentativas = maxTentativas;
+        this.backoffInicialMs = backoffInicialMs;
+        this.backoffMaximoMs = backoffMaximoMs;
+    }
+
+    public <T> T executar(String operacao, Supplier<T> acao) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return acao.get();
+        }
+        for (int tentativa = 1;; tentativa++) {
+            try {
+                return acao.get();
+            } catch (PessimisticLockingFailureException ex) {
+                if (tentativa >= maxTentativas) {
+                    estoqueMetricas.registrarConflito(operacao, true);
+                    throw ex;
+                }
+                estoqueMetricas.registrarConflito(operacao, false);
+                logger.debug("Conflito de trava em {} na tentativa {}; refazendo a transação.", operacao, tentativa);
+                esperar(tentativa, ex);
+            }
+        }
+    }
+
+    public void executarAcao(String operacao, Runnable acao) {
+        executar(operacao, () -> {
+            acao.run();
+            return null;
+        });
+    }
+
+    private void esperar(int tentativa, PessimisticLockingFailureException ex) {
+        long teto = Math.min(backoffMaximoMs, backoffInicialMs << Math.min(tentativa - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(teto + 1));
+        } catch (InterruptedException interrompida) {
+            Thread.currentThread().interrupt();
+            throw ex;
+        }
+    }
+}
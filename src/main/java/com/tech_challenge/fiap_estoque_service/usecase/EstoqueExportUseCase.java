@@ -0,0 +1,10 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.dto.FormatoExport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface EstoqueExportUseCase {
+    void exportar(FormatoExport formato, String aPartirDe, OutputStream saida) throws IOException;
+}
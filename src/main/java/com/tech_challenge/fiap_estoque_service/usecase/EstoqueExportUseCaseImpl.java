@@ -0,0 +1,87 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.tech_challenge.fiap_estoque_service.dto.EstoqueExportDTO;
+import com.tech_challenge.fiap_estoque_service.dto.FormatoExport;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+// Exporta a tabela estoque inteira em ordem de SKU, lendo por cursor dentro de uma transação somente leitura.
+// As linhas vêm como projeção (nada fica no contexto de persistência) e são escritas conforme chegam, então a
+// memória usada não depende do tamanho da tabela. aPartirDe retoma o export depois do último SKU recebido.
+@Service
+public class EstoqueExportUseCaseImpl implements EstoqueExportUseCase {
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+    private static final String CABECALHO_CSV = "productSKU,quantidadeDisponivel,updatedAt";
+
+    private final EstoqueRepository estoqueRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectWriter jsonWriter;
+
+    public EstoqueExportUseCaseImpl(EstoqueRepository estoqueRepository, TransactionTemplate transactionTemplate,
+            ObjectMapper objectMapper) {
+        this.estoqueRepository = estoqueRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setReadOnly(true);
+        this.jsonWriter = objectMapper.writerFor(EstoqueExportDTO.class);
+    }
+
+    @Override
+    public void exportar(FormatoExport formato, String aPartirDe, OutputStream saida) throws IOException {
+        Writer escritor = new BufferedWriter(new OutputStreamWriter(saida, StandardCharsets.UTF_8), TAMANHO_BUFFER);
+        if (formato == FormatoExport.CSV) {
+            escritor.write(CABECALHO_CSV);
+            escritor.write('\n');
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<EstoqueExportDTO> linhas = estoqueRepository
+                        .exportarAPartirDe(aPartirDe == null ? "" : aPartirDe)) {
+                    linhas.forEach(linha -> escrever(formato, linha, escritor));
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            // Normalmente o cliente fechou a conexão; a transação já foi encerrada e o cursor liberado.
+            throw ex.getCause();
+        }
+        escritor.flush();
+    }
+
+    private void escrever(FormatoExport formato, EstoqueExportDTO linha, Writer escritor) {
+        try {
+            if (formato == FormatoExport.CSV) {
+                escritor.write(campoCsv(linha.productSKU()));
+                escritor.write(',');
+                escritor.write(Integer.toString(linha.quantidadeDisponivel()));
+                escritor.write(',');
+                escritor.write(linha.updatedAt() == null ? "" : linha.updatedAt().toString());
+            } else {
+                escritor.write(jsonWriter.writeValueAsString(linha));
+            }
+            escritor.write('\n');
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static String campoCsv(String valor) {
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0
+                && valor.indexOf('\r') < 0) {
+            return valor;
+        }
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+}
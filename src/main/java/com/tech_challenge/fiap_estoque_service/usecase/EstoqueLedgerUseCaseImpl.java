@@ -0,0 +1,171 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ConsultaEstoqueDTO;
+import com.tech_challenge.fiap_estoque_service.dto.EstoquePublicDTO;
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+import com.tech_challenge.fiap_estoque_service.engine.LedgerEstoque;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.metricas.SkusQuentes;
+import com.tech_challenge.fiap_estoque_service.outbox.NotificacaoPedidoOutbox;
+import com.tech_challenge.fiap_estoque_service.scheduler.RodaDeExpiracao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Mesmo contrato do EstoqueUseCaseImpl, mas cada mudança de saldo é um movimento gravado pelo LedgerEstoque; a
+// tabela estoque só é atualizada pela compactação.
+@Service
+@ConditionalOnProperty(name = "estoque.engine.ledger.enabled", havingValue = "true")
+public class EstoqueLedgerUseCaseImpl implements EstoqueUseCase {
+    private final LedgerEstoque ledgerEstoque;
+    private final ReservaEstoqueRepository reservaRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final RodaDeExpiracao rodaDeExpiracao;
+    private final NotificacaoPedidoOutbox notificacaoOutbox;
+    private final SkusQuentes skusQuentes;
+    private final IdempotenciaReserva idempotenciaReserva;
+    private final HistoricoReservas historicoReservas;
+    private final Duration ttl;
+
+    public EstoqueLedgerUseCaseImpl(LedgerEstoque ledgerEstoque, ReservaEstoqueRepository reservaRepository,
+            TransactionTemplate transactionTemplate, RodaDeExpiracao rodaDeExpiracao,
+            NotificacaoPedidoOutbox notificacaoOutbox, SkusQuentes skusQuentes,
+            IdempotenciaReserva idempotenciaReserva, HistoricoReservas historicoReservas,
+            @Value("${estoque.reserva.ttl:PT1M}") Duration ttl) {
+        this.ledgerEstoque = ledgerEstoque;
+        this.reservaRepository = reservaRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.rodaDeExpiracao = rodaDeExpiracao;
+        this.notificacaoOutbox = notificacaoOutbox;
+        this.skusQuentes = skusQuentes;
+        this.idempotenciaReserva = idempotenciaReserva;
+        this.historicoReservas = historicoReservas;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public EstoquePublicDTO getEstoqueByProductSKU(String productSKU) {
+        skusQuentes.registrarLeitura(productSKU);
+        Integer disponivel = ledgerEstoque.disponiveis(List.of(productSKU)).get(productSKU);
+        if (disponivel == null) {
+            throw new ProductNotFoundException(productSKU);
+        }
+        return new EstoquePublicDTO(productSKU, disponivel);
+    }
+
+    @Override
+    public ConsultaEstoqueDTO getEstoqueByProductSKUs(List<String> productSKUs) {
+        Set<String> skus = new LinkedHashSet<>(productSKUs);
+        skusQuentes.registrarLeituras(skus);
+        Map<String, EstoquePublicDTO> porSku = new HashMap<>();
+        ledgerEstoque.disponiveis(skus)
+                .forEach((sku, disponivel) -> porSku.put(sku, new EstoquePublicDTO(sku, disponivel)));
+        return ConsultaEstoqueDTO.de(skus, porSku);
+    }
+
+    @Override
+    public void updateEstoque(PedidoDTO pedido) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> reservar(pedido));
+        } catch (DataIntegrityViolationException ex) {
+            // Mesma regra do EstoqueUseCaseImpl: tentativa simultânea de um pedido que acabou de ser reservado.
+            if (!idempotenciaReserva.ehRepeticao(pedido.pedidoId())) {
+                throw ex;
+            }
+        }
+    }
+
+    private void reservar(PedidoDTO pedido) {
+        if (!idempotenciaReserva.registrar(pedido.pedidoId(), LocalDateTime.now())) {
+            return;
+        }
+        Map<String, Integer> quantidadesPorSku = ReservaEstoqueRegras.quantidadesPorSku(pedido);
+        skusQuentes.registrarEscritas(quantidadesPorSku.keySet());
+        ledgerEstoque.reservar(quantidadesPorSku);
+        List<ReservaEstoque> reservas = reservaRepository.saveAll(ReservaEstoqueRegras.novasReservas(pedido, ttl));
+        ledgerEstoque.registrar(reservas, MotivoMovimento.RESERVA);
+        rodaDeExpiracao.agendar(reservas);
+    }
+
+    // As reservas do pedido ficam travadas até o commit: cancelamentos simultâneos ou a expiração do mesmo pedido
+    // esperam e veem o status final, em vez de acrescentarem um segundo movimento de devolução.
+    @Override
+    @Transactional
+    public void updateStatusToCancel(String pedidoId) {
+        List<ReservaEstoque> reservas = reservaRepository.travarPorPedido(pedidoId);
+        if (!historicoReservas.validarCancelamento(pedidoId, reservas)) {
+            return;
+        }
+
+        List<ReservaEstoque> devolvidas = ReservaEstoqueRegras.reservasParaDevolver(reservas);
+        ledgerEstoque.registrar(devolvidas, MotivoMovimento.CANCELAMENTO);
+        devolvidas.forEach(reserva -> reserva.setStatus(ReservaStatus.CANCELADA));
+    }
+
+    @Override
+    @Transactional
+    public void updateStatusToConfirmed(String pedidoId) {
+        List<ReservaEstoque> reservas = reservaRepository.travarPorPedido(pedidoId);
+        if (!historicoReservas.validarConfirmacao(pedidoId, reservas)) {
+            return;
+        }
+
+        ledgerEstoque.registrar(reservas, MotivoMovimento.CONFIRMACAO);
+        reservas.forEach(reserva -> reserva.setStatus(ReservaStatus.CONFIRMADA));
+        notificacaoOutbox.registrar(List.of(pedidoId), TipoNotificacao.SUCESSO);
+    }
+
+    // Como no modo em memória, cada pedido do lote roda na sua própria transação curta.
+    @Override
+    public List<ResultadoPedidoDTO> updateEstoqueEmLote(List<PedidoDTO> pedidos) {
+        List<ResultadoPedidoDTO> resultados = new ArrayList<>(pedidos.size());
+        for (PedidoDTO pedido : pedidos) {
+            try {
+                updateEstoque(pedido);
+                resultados.add(ResultadoPedidoDTO.sucesso(pedido.pedidoId()));
+            } catch (RuntimeException ex) {
+                resultados.add(ReservaEstoqueRegras.resultadoDaFalha(pedido.pedidoId(), ex));
+            }
+        }
+        return resultados;
+    }
+
+    @Override
+    public List<ResultadoPedidoDTO> updateStatusToCancelEmLote(List<String> pedidoIds) {
+        return pedidoIds.stream().map(pedidoId -> executarPedido(pedidoId, this::updateStatusToCancel)).toList();
+    }
+
+    @Override
+    public List<ResultadoPedidoDTO> updateStatusToConfirmedEmLote(List<String> pedidoIds) {
+        return pedidoIds.stream().map(pedidoId -> executarPedido(pedidoId, this::updateStatusToConfirmed)).toList();
+    }
+
+    private ResultadoPedidoDTO executarPedido(String pedidoId, Consumer<String> operacao) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> operacao.accept(pedidoId));
+            return ResultadoPedidoDTO.sucesso(pedidoId);
+        } catch (RuntimeException ex) {
+            return ReservaEstoqueRegras.resultadoDaFalha(pedidoId, ex);
+        }
+    }
+}
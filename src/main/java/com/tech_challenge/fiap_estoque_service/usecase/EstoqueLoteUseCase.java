@@ -0,0 +1,14 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import java.util.List;
+
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+
+public interface EstoqueLoteUseCase {
+    List<ResultadoPedidoDTO> updateEstoqueEmLote(List<PedidoDTO> pedidos);
+
+    List<ResultadoPedidoDTO> updateStatusToCancelEmLote(List<String> pedidoIds);
+
+    List<ResultadoPedidoDTO> updateStatusToConfirmedEmLote(List<String> pedidoIds);
+}
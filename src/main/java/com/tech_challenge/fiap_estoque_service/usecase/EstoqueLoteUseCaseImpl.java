@@ -0,0 +1,221 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoStatus;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.outbox.NotificacaoPedidoOutbox;
+import com.tech_challenge.fiap_estoque_service.scheduler.RodaDeExpiracao;
+import com.tech_challenge.fiap_estoque_service.transacao.RetentativaTransacao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Processa vários pedidos por transação, em blocos de {@code estoque.lote.tamanho-chunk}. Um pedido com falha
+ * de negócio não lança exceção dentro do bloco: os decrementos que ele já aplicou são compensados e o resultado
+ * é registrado, de forma que os demais pedidos do bloco sejam gravados normalmente.
+ */
+@Component
+public class EstoqueLoteUseCaseImpl implements EstoqueLoteUseCase {
+    private final Logger logger = LoggerFactory.getLogger(EstoqueLoteUseCaseImpl.class);
+
+    private final EstoqueRepository estoqueRepository;
+    private final ReservaEstoqueRepository reservaRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final RodaDeExpiracao rodaDeExpiracao;
+    private final NotificacaoPedidoOutbox notificacaoOutbox;
+    private final EstoqueCache estoqueCache;
+    private final IdempotenciaReserva idempotenciaReserva;
+    private final HistoricoReservas historicoReservas;
+    private final RetentativaTransacao retentativaTransacao;
+    private final Duration ttl;
+    private final int tamanhoChunk;
+
+    public EstoqueLoteUseCaseImpl(EstoqueRepository estoqueRepository, ReservaEstoqueRepository reservaRepository,
+            TransactionTemplate transactionTemplate, RodaDeExpiracao rodaDeExpiracao,
+            NotificacaoPedidoOutbox notificacaoOutbox, EstoqueCache estoqueCache,
+            IdempotenciaReserva idempotenciaReserva, HistoricoReservas historicoReservas,
+            RetentativaTransacao retentativaTransacao,
+            @Value("${estoque.reserva.ttl:PT1M}") Duration ttl,
+            @Value("${estoque.lote.tamanho-chunk:100}") int tamanhoChunk) {
+        this.estoqueRepository = estoqueRepository;
+        this.reservaRepository = reservaRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.rodaDeExpiracao = rodaDeExpiracao;
+        this.notificacaoOutbox = notificacaoOutbox;
+        this.estoqueCache = estoqueCache;
+        this.idempotenciaReserva = idempotenciaReserva;
+        this.historicoReservas = historicoReservas;
+        this.retentativaTransacao = retentativaTransacao;
+        this.ttl = ttl;
+        this.tamanhoChunk = tamanhoChunk;
+    }
+
+    @Override
+    public List<ResultadoPedidoDTO> updateEstoqueEmLote(List<PedidoDTO> pedidos) {
+        return processarEmChunks("updateEstoqueEmLote", pedidos, PedidoDTO::pedidoId, this::reservarChunk);
+    }
+
+    @Override
+    public List<ResultadoPedidoDTO> updateStatusToCancelEmLote(List<String> pedidoIds) {
+        return processarEmChunks("updateStatusToCancelEmLote", pedidoIds, Function.identity(),
+                this::cancelarChunk);
+    }
+
+    @Override
+    public List<ResultadoPedidoDTO> updateStatusToConfirmedEmLote(List<String> pedidoIds) {
+        return processarEmChunks("updateStatusToConfirmedEmLote", pedidoIds, Function.identity(),
+                this::confirmarChunk);
+    }
+
+    private <T> List<ResultadoPedidoDTO> processarEmChunks(String operacao, List<T> itens,
+            Function<T, String> pedidoId, Function<List<T>, List<ResultadoPedidoDTO>> processarChunk) {
+        List<ResultadoPedidoDTO> resultados = new ArrayList<>(itens.size());
+        for (int inicio = 0; inicio < itens.size(); inicio += tamanhoChunk) {
+            List<T> chunk = itens.subList(inicio, Math.min(inicio + tamanhoChunk, itens.size()));
+            try {
+                // Os pedidos de um bloco travam SKUs em ordem dentro de cada pedido, mas não entre pedidos: um
+                // deadlock entre blocos simultâneos refaz o bloco inteiro.
+                resultados.addAll(retentativaTransacao.executar(operacao,
+                        () -> transactionTemplate.execute(status -> processarChunk.apply(chunk))));
+            } catch (RuntimeException ex) {
+                // Erro de infraestrutura: só o bloco atual é desfeito, os anteriores já foram confirmados.
+                logger.error("Erro ao processar bloco de {} pedidos.", chunk.size(), ex);
+                chunk.forEach(item -> resultados.add(ReservaEstoqueRegras.resultadoDaFalha(pedidoId.apply(item), ex)));
+            }
+        }
+        return resultados;
+    }
+
+    private List<ResultadoPedidoDTO> reservarChunk(List<PedidoDTO> pedidos) {
+        LocalDateTime agora = LocalDateTime.now();
+        List<ResultadoPedidoDTO> resultados = new ArrayList<>(pedidos.size());
+        List<ReservaEstoque> novasReservas = new ArrayList<>();
+        Set<String> skusAlterados = new HashSet<>();
+
+        for (PedidoDTO pedido : pedidos) {
+            // Repetições, inclusive dentro do próprio lote, são respondidas como sucesso sem tocar no estoque.
+            if (!idempotenciaReserva.registrar(pedido.pedidoId(), agora)) {
+                resultados.add(ResultadoPedidoDTO.sucesso(pedido.pedidoId()));
+                continue;
+            }
+
+            Map<String, Integer> reservadas = new LinkedHashMap<>();
+            String skuSemSaldo = null;
+            for (Map.Entry<String, Integer> item : ReservaEstoqueRegras.quantidadesPorSku(pedido).entrySet()) {
+                if (estoqueRepository.reservarQuantidade(item.getKey(), item.getValue(), agora) == 0) {
+                    skuSemSaldo = item.getKey();
+                    break;
+                }
+                reservadas.put(item.getKey(), item.getValue());
+            }
+
+            skusAlterados.addAll(reservadas.keySet());
+            if (skuSemSaldo == null) {
+                novasReservas.addAll(ReservaEstoqueRegras.novasReservas(pedido, ttl));
+                resultados.add(ResultadoPedidoDTO.sucesso(pedido.pedidoId()));
+                continue;
+            }
+
+            // O bloco não é desfeito por um pedido sem saldo, então o registro do pedido é compensado junto.
+            reservadas.forEach((sku, qtd) -> estoqueRepository.aplicarDelta(sku, qtd, 0, agora));
+            idempotenciaReserva.desfazer(pedido.pedidoId());
+            resultados.add(estoqueRepository.existsById(skuSemSaldo)
+                    ? new ResultadoPedidoDTO(pedido.pedidoId(), ResultadoPedidoStatus.SEM_ESTOQUE,
+                            "Estoque insuficiente para o produto: " + skuSemSaldo)
+                    : new ResultadoPedidoDTO(pedido.pedidoId(), ResultadoPedidoStatus.NAO_ENCONTRADO,
+                            "Produto não encontrado: " + skuSemSaldo));
+        }
+
+        reservaRepository.saveAll(novasReservas);
+        rodaDeExpiracao.agendar(novasReservas);
+        estoqueCache.invalidar(skusAlterados);
+        return resultados;
+    }
+
+    private List<ResultadoPedidoDTO> cancelarChunk(List<String> pedidoIds) {
+        Map<String, List<ReservaEstoque>> reservasPorPedido = reservasPorPedido(pedidoIds);
+        Map<String, Integer> devolucoes = new TreeMap<>();
+        List<ResultadoPedidoDTO> resultados = new ArrayList<>(pedidoIds.size());
+
+        // As reservas vêm travadas e gerenciadas: o flush do commit grava as mudanças de status em lote.
+        for (String pedidoId : pedidoIds) {
+            List<ReservaEstoque> reservas = reservasPorPedido.getOrDefault(pedidoId, List.of());
+            try {
+                if (historicoReservas.validarCancelamento(pedidoId, reservas)) {
+                    ReservaEstoqueRegras.quantidadesParaDevolver(reservas)
+                            .forEach((sku, qtd) -> devolucoes.merge(sku, qtd, Integer::sum));
+                    ReservaEstoqueRegras.reservasParaDevolver(reservas)
+                            .forEach(reserva -> reserva.setStatus(ReservaStatus.CANCELADA));
+                }
+                resultados.add(ResultadoPedidoDTO.sucesso(pedidoId));
+            } catch (RuntimeException ex) {
+                resultados.add(ReservaEstoqueRegras.resultadoDaFalha(pedidoId, ex));
+            }
+        }
+
+        atualizarEstoques(devolucoes, 1, 0);
+        estoqueCache.invalidar(devolucoes.keySet());
+        return resultados;
+    }
+
+    private List<ResultadoPedidoDTO> confirmarChunk(List<String> pedidoIds) {
+        Map<String, List<ReservaEstoque>> reservasPorPedido = reservasPorPedido(pedidoIds);
+        Map<String, Integer> baixas = new TreeMap<>();
+        List<ResultadoPedidoDTO> resultados = new ArrayList<>(pedidoIds.size());
+        List<ReservaEstoque> alteradas = new ArrayList<>();
+
+        for (String pedidoId : pedidoIds) {
+            List<ReservaEstoque> reservas = reservasPorPedido.getOrDefault(pedidoId, List.of());
+            try {
+                if (historicoReservas.validarConfirmacao(pedidoId, reservas)) {
+                    ReservaEstoqueRegras.quantidadesReservadas(reservas)
+                            .forEach((sku, qtd) -> baixas.merge(sku, qtd, Integer::sum));
+                    reservas.forEach(reserva -> reserva.setStatus(ReservaStatus.CONFIRMADA));
+                    alteradas.addAll(reservas);
+                }
+                resultados.add(ResultadoPedidoDTO.sucesso(pedidoId));
+            } catch (RuntimeException ex) {
+                resultados.add(ReservaEstoqueRegras.resultadoDaFalha(pedidoId, ex));
+            }
+        }
+
+        atualizarEstoques(baixas, 0, -1);
+        notificacaoOutbox.registrar(alteradas.stream().map(ReservaEstoque::getPedidoId).toList(),
+                TipoNotificacao.SUCESSO);
+        return resultados;
+    }
+
+    private Map<String, List<ReservaEstoque>> reservasPorPedido(List<String> pedidoIds) {
+        return reservaRepository.travarPorPedidos(pedidoIds).stream()
+                .collect(Collectors.groupingBy(ReservaEstoque::getPedidoId));
+    }
+
+    // Um UPDATE relativo por SKU, na ordem do TreeMap, sem ler as linhas antes.
+    private void atualizarEstoques(Map<String, Integer> quantidadesPorSku, int sinalDisponivel, int sinalReal) {
+        LocalDateTime agora = LocalDateTime.now();
+        quantidadesPorSku.forEach((sku, qtd) -> estoqueRepository.aplicarDelta(sku, sinalDisponivel * qtd,
+                sinalReal * qtd, agora));
+    }
+}
@@ -0,0 +1,210 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ConsultaEstoqueDTO;
+import com.tech_challenge.fiap_estoque_service.dto.EstoquePublicDTO;
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+import com.tech_challenge.fiap_estoque_service.engine.EstoqueShards;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.metricas.SkusQuentes;
+import com.tech_challenge.fiap_estoque_service.outbox.NotificacaoPedidoOutbox;
+import com.tech_challenge.fiap_estoque_service.scheduler.RodaDeExpiracao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+// Mesmo contrato do EstoqueUseCaseImpl, com o saldo mudado só pelas threads escritoras do EstoqueShards. O shard é
+// chamado sempre fora da transação da requisição, para que quem espera na fila não segure uma conexão de que a
+// escritora precisa para gravar.
+@Service
+@ConditionalOnProperty(name = "estoque.engine.shards.enabled", havingValue = "true")
+public class EstoqueShardsUseCaseImpl implements EstoqueUseCase {
+    private final EstoqueShards estoqueShards;
+    private final EstoqueRepository estoqueRepository;
+    private final ReservaEstoqueRepository reservaRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final RodaDeExpiracao rodaDeExpiracao;
+    private final NotificacaoPedidoOutbox notificacaoOutbox;
+    private final EstoqueCache estoqueCache;
+    private final SkusQuentes skusQuentes;
+    private final IdempotenciaReserva idempotenciaReserva;
+    private final HistoricoReservas historicoReservas;
+    private final Duration ttl;
+
+    public EstoqueShardsUseCaseImpl(EstoqueShards estoqueShards, EstoqueRepository estoqueRepository,
+            ReservaEstoqueRepository reservaRepository, TransactionTemplate transactionTemplate,
+            RodaDeExpiracao rodaDeExpiracao, NotificacaoPedidoOutbox notificacaoOutbox, EstoqueCache estoqueCache,
+            SkusQuentes skusQuentes, IdempotenciaReserva idempotenciaReserva, HistoricoReservas historicoReservas,
+            @Value("${estoque.reserva.ttl:PT1M}") Duration ttl) {
+        this.estoqueShards = estoqueShards;
+        this.estoqueRepository = estoqueRepository;
+        this.reservaRepository = reservaRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.rodaDeExpiracao = rodaDeExpiracao;
+        this.notificacaoOutbox = notificacaoOutbox;
+        this.estoqueCache = estoqueCache;
+        this.skusQuentes = skusQuentes;
+        this.idempotenciaReserva = idempotenciaReserva;
+        this.historicoReservas = historicoReservas;
+        this.ttl = ttl;
+    }
+
+    // A escritora do shard grava na tabela antes de responder, então a leitura pelo cache continua valendo.
+    @Override
+    public EstoquePublicDTO getEstoqueByProductSKU(String productSKU) {
+        skusQuentes.registrarLeitura(productSKU);
+        return estoqueCache.buscar(productSKU, sku -> {
+            Estoque estoque = estoqueRepository.findById(sku).orElseThrow(ProductNotFoundException::new);
+            return new EstoquePublicDTO(estoque.getProductSKU(), estoque.getQuantidadeDisponivel());
+        });
+    }
+
+    @Override
+    public ConsultaEstoqueDTO getEstoqueByProductSKUs(List<String> productSKUs) {
+        Set<String> skus = new LinkedHashSet<>(productSKUs);
+        skusQuentes.registrarLeituras(skus);
+        Map<String, EstoquePublicDTO> porSku = estoqueCache.buscarTodos(skus,
+                faltantes -> estoqueRepository.findAllById(faltantes).stream()
+                        .collect(Collectors.toMap(Estoque::getProductSKU,
+                                estoque -> new EstoquePublicDTO(estoque.getProductSKU(),
+                                        estoque.getQuantidadeDisponivel()))));
+        return ConsultaEstoqueDTO.de(skus, porSku);
+    }
+
+    // Como no EstoqueUseCaseImpl, o pedido é registrado pelo INSERT condicional da transação que grava as reservas,
+    // sem consulta antes; só as repetições de uma rajada, já no conjunto de recentes, respondem sem passar pelo
+    // shard. O saldo é reservado antes dessa transação, que descarta o estorno gravado pelo shard; se ela não grava
+    // nada (o INSERT achou o pedido) ou falha, o estorno é aplicado e o saldo volta para o shard. Uma repetição
+    // recusada pelo shard, porque o próprio pedido já levou o saldo, responde como a primeira vez.
+    @Override
+    public void updateEstoque(PedidoDTO pedido) {
+        if (idempotenciaReserva.reservadoRecentemente(pedido.pedidoId())) {
+            return;
+        }
+        Map<String, Integer> quantidadesPorSku = ReservaEstoqueRegras.quantidadesPorSku(pedido);
+        skusQuentes.registrarEscritas(quantidadesPorSku.keySet());
+        EstoqueShards.Pendencia estorno;
+        try {
+            estorno = estoqueShards.reservar(quantidadesPorSku);
+        } catch (OutOfStockException | ProductNotFoundException ex) {
+            if (idempotenciaReserva.ehRepeticao(pedido.pedidoId())) {
+                return;
+            }
+            throw ex;
+        }
+
+        boolean gravado = false;
+        try {
+            gravado = Boolean.TRUE.equals(transactionTemplate.execute(status -> gravarReservas(pedido, estorno)));
+        } catch (DataIntegrityViolationException ex) {
+            // Mesma regra do EstoqueUseCaseImpl: tentativa simultânea de um pedido que acabou de ser reservado.
+            if (!idempotenciaReserva.ehRepeticao(pedido.pedidoId())) {
+                throw ex;
+            }
+        } finally {
+            if (!gravado) {
+                estoqueShards.aplicar(estorno);
+            }
+        }
+    }
+
+    private boolean gravarReservas(PedidoDTO pedido, EstoqueShards.Pendencia estorno) {
+        if (!idempotenciaReserva.registrar(pedido.pedidoId(), LocalDateTime.now())) {
+            return false;
+        }
+        List<ReservaEstoque> reservas = ReservaEstoqueRegras.novasReservas(pedido, ttl);
+        reservaRepository.saveAll(reservas);
+        estoqueShards.descartar(estorno);
+        rodaDeExpiracao.agendar(reservas);
+        return true;
+    }
+
+    // As reservas do pedido ficam travadas até o commit, então cancelamentos simultâneos ou a expiração do mesmo
+    // pedido não devolvem o saldo duas vezes; a trava é por pedido, não disputa com outros pedidos do SKU. A
+    // devolução é registrada na mesma transação e aplicada no shard depois do commit.
+    @Override
+    public void updateStatusToCancel(String pedidoId) {
+        estoqueShards.aplicar(transactionTemplate.execute(status -> estoqueShards.registrar(cancelar(pedidoId),
+                MotivoMovimento.CANCELAMENTO)));
+    }
+
+    private Map<String, Integer> cancelar(String pedidoId) {
+        List<ReservaEstoque> reservas = reservaRepository.travarPorPedido(pedidoId);
+        if (!historicoReservas.validarCancelamento(pedidoId, reservas)) {
+            return Map.of();
+        }
+
+        Map<String, Integer> quantidades = ReservaEstoqueRegras.quantidadesParaDevolver(reservas);
+        ReservaEstoqueRegras.reservasParaDevolver(reservas)
+                .forEach(reserva -> reserva.setStatus(ReservaStatus.CANCELADA));
+        return quantidades;
+    }
+
+    @Override
+    public void updateStatusToConfirmed(String pedidoId) {
+        estoqueShards.aplicar(transactionTemplate.execute(status -> estoqueShards.registrar(confirmar(pedidoId),
+                MotivoMovimento.CONFIRMACAO)));
+    }
+
+    private Map<String, Integer> confirmar(String pedidoId) {
+        List<ReservaEstoque> reservas = reservaRepository.travarPorPedido(pedidoId);
+        if (!historicoReservas.validarConfirmacao(pedidoId, reservas)) {
+            return Map.of();
+        }
+
+        reservas.forEach(reserva -> reserva.setStatus(ReservaStatus.CONFIRMADA));
+        notificacaoOutbox.registrar(List.of(pedidoId), TipoNotificacao.SUCESSO);
+        return ReservaEstoqueRegras.quantidadesReservadas(reservas);
+    }
+
+    // Como nos outros modos com saldo fora das transações, cada pedido do lote segue o caminho unitário.
+    @Override
+    public List<ResultadoPedidoDTO> updateEstoqueEmLote(List<PedidoDTO> pedidos) {
+        List<ResultadoPedidoDTO> resultados = new ArrayList<>(pedidos.size());
+        for (PedidoDTO pedido : pedidos) {
+            resultados.add(executarPedido(pedido.pedidoId(), id -> updateEstoque(pedido)));
+        }
+        return resultados;
+    }
+
+    @Override
+    public List<ResultadoPedidoDTO> updateStatusToCancelEmLote(List<String> pedidoIds) {
+        return pedidoIds.stream().map(pedidoId -> executarPedido(pedidoId, this::updateStatusToCancel)).toList();
+    }
+
+    @Override
+    public List<ResultadoPedidoDTO> updateStatusToConfirmedEmLote(List<String> pedidoIds) {
+        return pedidoIds.stream().map(pedidoId -> executarPedido(pedidoId, this::updateStatusToConfirmed)).toList();
+    }
+
+    private ResultadoPedidoDTO executarPedido(String pedidoId, Consumer<String> operacao) {
+        try {
+            operacao.accept(pedidoId);
+            return ResultadoPedidoDTO.sucesso(pedidoId);
+        } catch (RuntimeException ex) {
+            return ReservaEstoqueRegras.resultadoDaFalha(pedidoId, ex);
+        }
+    }
+}
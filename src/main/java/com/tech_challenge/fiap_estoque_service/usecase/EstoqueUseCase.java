@@ -1,14 +1,26 @@
 package com.tech_challenge.fiap_estoque_service.usecase;
 
+import com.tech_challenge.fiap_estoque_service.dto.ConsultaEstoqueDTO;
 import com.tech_challenge.fiap_estoque_service.dto.EstoquePublicDTO;
 import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+
+import java.util.List;
 
 public interface EstoqueUseCase {
     EstoquePublicDTO getEstoqueByProductSKU(String productSKU);
 
+    ConsultaEstoqueDTO getEstoqueByProductSKUs(List<String> productSKUs);
+
     void updateEstoque(PedidoDTO pedido);
 
     void updateStatusToCancel(String pedidoId);
 
     void updateStatusToConfirmed(String pedidoId);
+
+    List<ResultadoPedidoDTO> updateEstoqueEmLote(List<PedidoDTO> pedidos);
+
+    List<ResultadoPedidoDTO> updateStatusToCancelEmLote(List<String> pedidoIds);
+
+    List<ResultadoPedidoDTO> updateStatusToConfirmedEmLote(List<String> pedidoIds);
 }
@@ -1,46 +1,133 @@
 package com.tech_challenge.fiap_estoque_service.usecase;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.dto.ConsultaEstoqueDTO;
 import com.tech_challenge.fiap_estoque_service.dto.EstoquePublicDTO;
 import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.engine.EstoqueEscrow;
 import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
 import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.metricas.SkusQuentes;
+import com.tech_challenge.fiap_estoque_service.transacao.RetentativaTransacao;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
+@ConditionalOnProperty(name = { "estoque.engine.memoria.enabled", "estoque.engine.ledger.enabled",
+        "estoque.engine.shards.enabled" }, havingValue = "false", matchIfMissing = true)
 public class EstoqueUseCaseImpl implements EstoqueUseCase {
     private EstoqueRepository estoqueRepository;
     private ReservaEstoqueUseCase reservaEstoqueUseCase;
     private UpdateStatusToCancelUseCase cancelStatusUseCase;
     private UpdateStatusToConfirmedUseCase confirmedStatusUseCase;
+    private EstoqueLoteUseCase estoqueLoteUseCase;
+    private EstoqueCache estoqueCache;
+    private SkusQuentes skusQuentes;
+    private IdempotenciaReserva idempotenciaReserva;
+    private Optional<EstoqueEscrow> estoqueEscrow;
+    private RetentativaTransacao retentativaTransacao;
 
     public EstoqueUseCaseImpl(EstoqueRepository estoqueRepository, ReservaEstoqueUseCase reservaEstoqueUseCase,
-            UpdateStatusToCancelUseCase cancelStatusUseCase, UpdateStatusToConfirmedUseCase confirmedStatusUseCase) {
+            UpdateStatusToCancelUseCase cancelStatusUseCase, UpdateStatusToConfirmedUseCase confirmedStatusUseCase,
+            EstoqueLoteUseCase estoqueLoteUseCase, EstoqueCache estoqueCache, SkusQuentes skusQuentes,
+            IdempotenciaReserva idempotenciaReserva, Optional<EstoqueEscrow> estoqueEscrow,
+            RetentativaTransacao retentativaTransacao) {
         this.estoqueRepository = estoqueRepository;
         this.reservaEstoqueUseCase = reservaEstoqueUseCase;
         this.cancelStatusUseCase = cancelStatusUseCase;
         this.confirmedStatusUseCase = confirmedStatusUseCase;
+        this.estoqueLoteUseCase = estoqueLoteUseCase;
+        this.estoqueCache = estoqueCache;
+        this.skusQuentes = skusQuentes;
+        this.idempotenciaReserva = idempotenciaReserva;
+        this.estoqueEscrow = estoqueEscrow;
+        this.retentativaTransacao = retentativaTransacao;
     }
 
     @Override
     public EstoquePublicDTO getEstoqueByProductSKU(String productSKU) {
-        var estoque = this.estoqueRepository.findById(productSKU).orElseThrow(ProductNotFoundException::new);
-        return new EstoquePublicDTO(estoque.getProductSKU(), estoque.getQuantidadeDisponivel());
+        this.skusQuentes.registrarLeitura(productSKU);
+        return comSaldoLocal(this.estoqueCache.buscar(productSKU, sku -> {
+            var estoque = this.estoqueRepository.findById(sku).orElseThrow(ProductNotFoundException::new);
+            return new EstoquePublicDTO(estoque.getProductSKU(), estoque.getQuantidadeDisponivel());
+        }));
+    }
+
+    @Override
+    public ConsultaEstoqueDTO getEstoqueByProductSKUs(List<String> productSKUs) {
+        Set<String> skus = new LinkedHashSet<>(productSKUs);
+        this.skusQuentes.registrarLeituras(skus);
+        Map<String, EstoquePublicDTO> porSku = this.estoqueCache.buscarTodos(skus,
+                faltantes -> this.estoqueRepository.findAllById(faltantes).stream()
+                        .collect(Collectors.toMap(Estoque::getProductSKU,
+                                estoque -> new EstoquePublicDTO(estoque.getProductSKU(),
+                                        estoque.getQuantidadeDisponivel()))));
+        if (this.estoqueEscrow.isPresent()) {
+            porSku = porSku.values().stream()
+                    .collect(Collectors.toMap(EstoquePublicDTO::productSKU, this::comSaldoLocal));
+        }
+        return ConsultaEstoqueDTO.de(skus, porSku);
+    }
+
+    // No modo escrow o que está no lease desta instância já saiu da tabela, mas continua à venda por aqui.
+    // O que está nos leases das outras réplicas não aparece na consulta.
+    private EstoquePublicDTO comSaldoLocal(EstoquePublicDTO estoque) {
+        return this.estoqueEscrow
+                .map(escrow -> new EstoquePublicDTO(estoque.productSKU(),
+                        estoque.quantidadeDisponivel() + escrow.saldoLocal(estoque.productSKU())))
+                .orElse(estoque);
     }
 
     @Override
     public void updateEstoque(PedidoDTO pedido) {
-        this.reservaEstoqueUseCase.updateEstoque(pedido);
+        try {
+            this.retentativaTransacao.executarAcao("updateEstoque",
+                    () -> this.reservaEstoqueUseCase.updateEstoque(pedido));
+        } catch (DataIntegrityViolationException ex) {
+            // Duas tentativas do mesmo pedido ao mesmo tempo: a segunda esbarra na chave de pedido_reserva
+            // quando a primeira confirma, e a essa altura a reserva original já está gravada.
+            if (!this.idempotenciaReserva.ehRepeticao(pedido.pedidoId())) {
+                throw ex;
+            }
+        }
     }
 
     @Override
     public void updateStatusToCancel(String pedidoId) {
-        this.cancelStatusUseCase.updateStatusToCancel(pedidoId);
+        this.retentativaTransacao.executarAcao("updateStatusToCancel",
+                () -> this.cancelStatusUseCase.updateStatusToCancel(pedidoId));
     }
 
     @Override
     public void updateStatusToConfirmed(String pedidoId) {
-        this.confirmedStatusUseCase.updateStatusToConfirmed(pedidoId);
+        this.retentativaTransacao.executarAcao("updateStatusToConfirmed",
+                () -> this.confirmedStatusUseCase.updateStatusToConfirmed(pedidoId));
+    }
+
+    @Override
+    public List<ResultadoPedidoDTO> updateEstoqueEmLote(List<PedidoDTO> pedidos) {
+        return this.estoqueLoteUseCase.updateEstoqueEmLote(pedidos);
+    }
+
+    @Override
+    public List<ResultadoPedidoDTO> updateStatusToCancelEmLote(List<String> pedidoIds) {
+        return this.estoqueLoteUseCase.updateStatusToCancelEmLote(pedidoIds);
+    }
+
+    @Override
+    public List<ResultadoPedidoDTO> updateStatusToConfirmedEmLote(List<String> pedidoIds) {
+        return this.estoqueLoteUseCase.updateStatusToConfirmedEmLote(pedidoIds);
     }
 
 }
@@ -0,0 +1,57 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoqueHistorico;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueHistoricoRepository;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Validações de cancelamento e confirmação que também enxergam os pedidos arquivados. Quando o pedido não tem
+ * reservas na tabela quente, a consulta cai para reserva_estoque_historico. Um pedido arquivado só tem reservas em
+ * status final e não muda mais: as regras de sempre decidem entre repetição sem efeito e rejeição, e um pedido
+ * expirado, cujo estoque já voltou na expiração, também responde como repetição.
+ */
+@Component
+public class HistoricoReservas {
+
+    private final ReservaEstoqueHistoricoRepository historicoRepository;
+
+    public HistoricoReservas(ReservaEstoqueHistoricoRepository historicoRepository) {
+        this.historicoRepository = historicoRepository;
+    }
+
+    // Retorna false quando não há nada a fazer, inclusive para todo pedido arquivado.
+    public boolean validarCancelamento(String pedidoId, List<ReservaEstoque> reservas) {
+        return validarStatusCancelamento(pedidoId, ReservaEstoqueRegras.statusDe(reservas));
+    }
+
+    public boolean validarStatusCancelamento(String pedidoId, List<ReservaStatus> status) {
+        if (!status.isEmpty()) {
+            return ReservaEstoqueRegras.validarStatusCancelamento(pedidoId, status);
+        }
+        ReservaEstoqueRegras.validarStatusCancelamento(pedidoId, arquivadas(pedidoId));
+        return false;
+    }
+
+    public boolean validarConfirmacao(String pedidoId, List<ReservaEstoque> reservas) {
+        return validarStatusConfirmacao(pedidoId, ReservaEstoqueRegras.statusDe(reservas));
+    }
+
+    public boolean validarStatusConfirmacao(String pedidoId, List<ReservaStatus> status) {
+        if (!status.isEmpty()) {
+            return ReservaEstoqueRegras.validarStatusConfirmacao(pedidoId, status);
+        }
+        // Nenhuma reserva arquivada está PENDENTE, então aqui o resultado é repetição ou exceção.
+        return ReservaEstoqueRegras.validarStatusConfirmacao(pedidoId, arquivadas(pedidoId));
+    }
+
+    private List<ReservaStatus> arquivadas(String pedidoId) {
+        return historicoRepository.findByPedidoId(pedidoId).stream()
+                .map(ReservaEstoqueHistorico::getStatus)
+                .toList();
+    }
+}
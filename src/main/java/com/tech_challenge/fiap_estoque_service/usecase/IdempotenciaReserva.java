@@ -0,0 +1,101 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tech_challenge.fiap_estoque_service.gateway.PedidoReservaRepository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Torna a reserva idempotente por pedidoId. A tabela pedido_reserva, com o pedidoId como chave primária, é a
+ * fonte da verdade: {@link #registrar(String, LocalDateTime)} verifica e grava a chave num único INSERT
+ * condicional, no lugar da consulta que a reserva teria que fazer antes, e o registro some junto com o rollback
+ * de uma reserva que falhou, de forma que a nova tentativa é avaliada de novo.
+ *
+ * Os pedidos reservados recentemente ficam também num conjunto em memória, preenchido depois do commit, que
+ * responde às repetições de uma rajada de retentativas sem ir ao banco. Ele só guarda chaves confirmadas, então
+ * uma ausência nele nunca é tratada como pedido novo sem passar pelo INSERT.
+ */
+@Component
+public class IdempotenciaReserva {
+
+    private final PedidoReservaRepository pedidoReservaRepository;
+    private final Cache<String, Boolean> recentes;
+
+    public IdempotenciaReserva(PedidoReservaRepository pedidoReservaRepository,
+            @Value("${estoque.idempotencia.recentes.tamanho-maximo:100000}") long tamanhoMaximo,
+            @Value("${estoque.idempotencia.recentes.expiracao:PT10M}") Duration expiracao) {
+        this.pedidoReservaRepository = pedidoReservaRepository;
+        this.recentes = Caffeine.newBuilder()
+                .maximumSize(tamanhoMaximo)
+                .expireAfterWrite(expiracao)
+                .build();
+    }
+
+    // Retorna false quando o pedido já foi reservado e a reserva deve ser respondida sem tocar no estoque.
+    public boolean registrar(String pedidoId, LocalDateTime agora) {
+        if (recentes.getIfPresent(pedidoId) != null) {
+            return false;
+        }
+        if (pedidoReservaRepository.registrar(pedidoId, agora) == 0) {
+            recentes.put(pedidoId, Boolean.TRUE);
+            return false;
+        }
+        lembrarAposCommit(pedidoId);
+        return true;
+    }
+
+    // Só o conjunto em memória, sem ir ao banco: os modos que mexem no saldo fora da transação respondem assim a uma
+    // rajada de retentativas antes de retirar o saldo. Uma ausência aqui não diz nada; quem decide é o registrar().
+    public boolean reservadoRecentemente(String pedidoId) {
+        return recentes.getIfPresent(pedidoId) != null;
+    }
+
+    // Chamado fora da transação que falhou com violação de integridade, ou quando o saldo foi recusado num modo que
+    // reserva fora da transação: só é repetição se a chave estiver no conjunto ou o registro existir.
+    public boolean ehRepeticao(String pedidoId) {
+        if (reservadoRecentemente(pedidoId)) {
+            return true;
+        }
+        if (!pedidoReservaRepository.existsById(pedidoId)) {
+            return false;
+        }
+        recentes.put(pedidoId, Boolean.TRUE);
+        return true;
+    }
+
+    // Para quem compensa uma reserva que falhou sem desfazer a transação (lote em blocos).
+    public void desfazer(String pedidoId) {
+        pedidoReservaRepository.remover(pedidoId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recentes.invalidate(pedidoId);
+            return;
+        }
+        // Registrada depois da de registrar(), então roda depois dela e a chave não fica no conjunto.
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentes.invalidate(pedidoId);
+            }
+        });
+    }
+
+    private void lembrarAposCommit(String pedidoId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recentes.put(pedidoId, Boolean.TRUE);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentes.put(pedidoId, Boolean.TRUE);
+            }
+        });
+    }
+}
@@ -0,0 +1,91 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.engine.EstoqueEscrow;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.metricas.SkusQuentes;
+import com.tech_challenge.fiap_estoque_service.scheduler.RodaDeExpiracao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// Reserva do modo escrow: as quantidades saem do lease local do EstoqueEscrow e a transação só grava as reservas.
+// Cancelamento, confirmação e expiração continuam iguais, devolvendo direto para a tabela estoque. A retirada do
+// lease acontece antes da transação: quando ela completa o lease, a transação do EstoqueEscrow é a única conexão que
+// a requisição segura, e quem espera a trava do SKU não prende nenhuma.
+@Component
+@ConditionalOnProperty(name = "estoque.engine.escrow.enabled", havingValue = "true")
+public class ReservaEstoqueEscrowUseCaseImpl implements ReservaEstoqueUseCase {
+
+    private final EstoqueEscrow estoqueEscrow;
+    private final ReservaEstoqueRepository reservaRepository;
+    private final RodaDeExpiracao rodaDeExpiracao;
+    private final SkusQuentes skusQuentes;
+    private final IdempotenciaReserva idempotenciaReserva;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+
+    public ReservaEstoqueEscrowUseCaseImpl(EstoqueEscrow estoqueEscrow, ReservaEstoqueRepository reservaRepository,
+            RodaDeExpiracao rodaDeExpiracao, SkusQuentes skusQuentes, IdempotenciaReserva idempotenciaReserva,
+            TransactionTemplate transactionTemplate, @Value("${estoque.reserva.ttl:PT1M}") Duration ttl) {
+        this.estoqueEscrow = estoqueEscrow;
+        this.reservaRepository = reservaRepository;
+        this.rodaDeExpiracao = rodaDeExpiracao;
+        this.skusQuentes = skusQuentes;
+        this.idempotenciaReserva = idempotenciaReserva;
+        this.transactionTemplate = transactionTemplate;
+        this.ttl = ttl;
+    }
+
+    // O pedido é registrado pelo INSERT condicional da transação que grava as reservas, sem consulta antes: uma
+    // repetição que passar pela retirada não grava nada e devolve o que retirou ao lease. Só as repetições já no
+    // conjunto de recentes respondem sem tocar no lease, e a pedido_reserva só é consultada quando a retirada é
+    // recusada, porque o próprio pedido pode ter levado o saldo.
+    @Override
+    public void updateEstoque(PedidoDTO pedidoDTO) {
+        if (this.idempotenciaReserva.reservadoRecentemente(pedidoDTO.pedidoId())) {
+            return;
+        }
+
+        Map<String, Integer> quantidadesPorSku = ReservaEstoqueRegras.quantidadesPorSku(pedidoDTO);
+        this.skusQuentes.registrarEscritas(quantidadesPorSku.keySet());
+        Map<String, String> leaseIds;
+        try {
+            leaseIds = this.estoqueEscrow.retirar(quantidadesPorSku);
+        } catch (OutOfStockException | ProductNotFoundException ex) {
+            if (this.idempotenciaReserva.ehRepeticao(pedidoDTO.pedidoId())) {
+                return;
+            }
+            throw ex;
+        }
+
+        boolean gravado = false;
+        try {
+            gravado = Boolean.TRUE.equals(this.transactionTemplate.execute(status -> gravarReservas(pedidoDTO,
+                    leaseIds)));
+        } finally {
+            this.estoqueEscrow.concluir(quantidadesPorSku, leaseIds, gravado);
+        }
+    }
+
+    private boolean gravarReservas(PedidoDTO pedidoDTO, Map<String, String> leaseIds) {
+        if (!this.idempotenciaReserva.registrar(pedidoDTO.pedidoId(), LocalDateTime.now())) {
+            return false;
+        }
+        List<ReservaEstoque> reservas = ReservaEstoqueRegras.novasReservas(pedidoDTO, ttl);
+        reservas.forEach(reserva -> reserva.setLeaseId(leaseIds.get(reserva.getProductSKU())));
+        this.reservaRepository.saveAll(reservas);
+        this.rodaDeExpiracao.agendar(reservas);
+        return true;
+    }
+}
@@ -0,0 +1,132 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoStatus;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import com.tech_challenge.fiap_estoque_service.exception.ReservationCannotBeCancelledException;
+import com.tech_challenge.fiap_estoque_service.exception.ReservationNotFoundException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+// Regras de transição das reservas compartilhadas entre o caminho JPA e os modos alternativos de estoque.
+final class ReservaEstoqueRegras {
+
+    private ReservaEstoqueRegras() {
+    }
+
+    static Map<String, Integer> quantidadesPorSku(PedidoDTO pedidoDTO) {
+        return pedidoDTO.pedidos().stream()
+                .collect(Collectors.groupingBy(ItemPedidoDTO::productSKU, TreeMap::new,
+                        Collectors.summingInt(ItemPedidoDTO::qtd)));
+    }
+
+    // Todas as reservas do pedido vencem no mesmo instante, para que expirem juntas.
+    static List<ReservaEstoque> novasReservas(PedidoDTO pedidoDTO, Duration ttl) {
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+        return pedidoDTO.pedidos().stream()
+                .map(item -> ReservaEstoque.builder()
+                        .pedidoId(pedidoDTO.pedidoId())
+                        .productSKU(item.productSKU())
+                        .quantidadeReservada(item.qtd())
+                        .status(ReservaStatus.PENDENTE)
+                        .expiresAt(expiresAt)
+                        .build())
+                .toList();
+    }
+
+    static List<ReservaStatus> statusDe(List<ReservaEstoque> reservas) {
+        return reservas.stream().map(ReservaEstoque::getStatus).toList();
+    }
+
+    // Retorna false quando não há nada a fazer (nenhuma reserva PENDENTE: todas já canceladas ou expiradas).
+    static boolean validarCancelamento(String pedidoId, List<ReservaEstoque> reservas) {
+        return validarStatusCancelamento(pedidoId, statusDe(reservas));
+    }
+
+    // As validações só olham os status, então também servem para as transições feitas direto no banco.
+    static boolean validarStatusCancelamento(String pedidoId, List<ReservaStatus> status) {
+        if (status.isEmpty()) {
+            throw new ReservationNotFoundException("Reserva não encontrada para o pedido: " + pedidoId);
+        }
+
+        boolean anyFinalized = status.stream()
+                .anyMatch(s -> s == ReservaStatus.FINALIZADO || s == ReservaStatus.CONFIRMADA);
+
+        if (anyFinalized) {
+            throw new ReservationCannotBeCancelledException(
+                    "Não é possível cancelar reservas com status FINALIZADO ou CONFIRMADA para o pedido");
+        }
+
+        // Só reservas PENDENTE ainda seguram estoque: o de uma EXPIRADA já voltou na expiração e não volta de novo,
+        // esteja o pedido na tabela quente ou no histórico.
+        return status.stream().anyMatch(s -> s == ReservaStatus.PENDENTE);
+    }
+
+    static List<ReservaEstoque> reservasParaDevolver(List<ReservaEstoque> reservas) {
+        return reservas.stream()
+                .filter(reserva -> reserva.getStatus() == ReservaStatus.PENDENTE)
+                .toList();
+    }
+
+    static Map<String, Integer> quantidadesParaDevolver(List<ReservaEstoque> reservas) {
+        return reservasParaDevolver(reservas).stream()
+                .collect(Collectors.groupingBy(ReservaEstoque::getProductSKU, TreeMap::new,
+                        Collectors.summingInt(ReservaEstoque::getQuantidadeReservada)));
+    }
+
+    // Retorna false quando não há nada a fazer (todas as reservas já confirmadas).
+    static boolean validarConfirmacao(String pedidoId, List<ReservaEstoque> reservas) {
+        return validarStatusConfirmacao(pedidoId, statusDe(reservas));
+    }
+
+    static boolean validarStatusConfirmacao(String pedidoId, List<ReservaStatus> status) {
+        if (status.isEmpty()) {
+            throw new ReservationNotFoundException("Reserva não encontrada para o pedido: " + pedidoId);
+        }
+
+        boolean allPending = status.stream().allMatch(s -> s == ReservaStatus.PENDENTE);
+
+        if (!allPending) {
+            boolean alreadyConfirmed = status.stream().allMatch(s -> s == ReservaStatus.CONFIRMADA);
+            if (alreadyConfirmed) {
+                return false;
+            }
+            throw new IllegalStateException(
+                    "Algumas reservas para o pedido " + pedidoId + " não estão no status PENDENTE.");
+        }
+        return true;
+    }
+
+    static Map<String, Integer> quantidadesReservadas(List<ReservaEstoque> reservas) {
+        return reservas.stream()
+                .collect(Collectors.groupingBy(ReservaEstoque::getProductSKU, TreeMap::new,
+                        Collectors.summingInt(ReservaEstoque::getQuantidadeReservada)));
+    }
+
+    // Traduz as exceções de negócio para o resultado de um pedido dentro de um lote.
+    static ResultadoPedidoDTO resultadoDaFalha(String pedidoId, RuntimeException ex) {
+        ResultadoPedidoStatus status;
+        if (ex instanceof OutOfStockException) {
+            status = ResultadoPedidoStatus.SEM_ESTOQUE;
+        } else if (ex instanceof ProductNotFoundException || ex instanceof ReservationNotFoundException) {
+            status = ResultadoPedidoStatus.NAO_ENCONTRADO;
+        } else if (ex instanceof ReservationCannotBeCancelledException) {
+            status = ResultadoPedidoStatus.NAO_CANCELAVEL;
+        } else if (ex instanceof IllegalStateException) {
+            status = ResultadoPedidoStatus.STATUS_INVALIDO;
+        } else {
+            status = ResultadoPedidoStatus.ERRO;
+        }
+        return new ResultadoPedidoDTO(pedidoId, status, ex.getMessage());
+    }
+}
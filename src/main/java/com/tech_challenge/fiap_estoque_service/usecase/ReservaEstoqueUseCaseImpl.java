@@ -1,87 +1,113 @@
 package com.tech_challenge.fiap_estoque_service.usecase;
 
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
 import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
 import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
-import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
 import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
-import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
 import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
 import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
 import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
 import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.metricas.SkusQuentes;
+import com.tech_challenge.fiap_estoque_service.scheduler.RodaDeExpiracao;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
+@ConditionalOnProperty(name = "estoque.engine.escrow.enabled", havingValue = "false", matchIfMissing = true)
 public class ReservaEstoqueUseCaseImpl implements ReservaEstoqueUseCase {
 
     private final EstoqueRepository estoqueRepository;
     private final ReservaEstoqueRepository reservaRepository;
-
-    public ReservaEstoqueUseCaseImpl(EstoqueRepository estoqueRepository, ReservaEstoqueRepository reservaRepository) {
+    private final RodaDeExpiracao rodaDeExpiracao;
+    private final EstoqueCache estoqueCache;
+    private final SkusQuentes skusQuentes;
+    private final IdempotenciaReserva idempotenciaReserva;
+    private final Duration ttl;
+    private final int minimoSkusEmLote;
+
+    public ReservaEstoqueUseCaseImpl(EstoqueRepository estoqueRepository, ReservaEstoqueRepository reservaRepository,
+            RodaDeExpiracao rodaDeExpiracao, EstoqueCache estoqueCache, SkusQuentes skusQuentes,
+            IdempotenciaReserva idempotenciaReserva, @Value("${estoque.reserva.ttl:PT1M}") Duration ttl,
+            @Value("${estoque.reserva.minimo-skus-em-lote:16}") int minimoSkusEmLote) {
         this.estoqueRepository = estoqueRepository;
         this.reservaRepository = reservaRepository;
+        this.rodaDeExpiracao = rodaDeExpiracao;
+        this.estoqueCache = estoqueCache;
+        this.skusQuentes = skusQuentes;
+        this.idempotenciaReserva = idempotenciaReserva;
+        this.ttl = ttl;
+        this.minimoSkusEmLote = minimoSkusEmLote;
     }
 
     @Override
     @Transactional
     public void updateEstoque(PedidoDTO pedidoDTO) {
-        List<String> productSKUs = pedidoDTO.pedidos().stream()
-                .map(ItemPedidoDTO::productSKU)
-                .toList();
-        List<Estoque> estoques = this.estoqueRepository.findAllById(productSKUs);
-
-        validarDisponibilidade(estoques, pedidoDTO.pedidos());
-        criarReservasEAtualizarEstoque(estoques, pedidoDTO);
-
-        this.estoqueRepository.saveAll(estoques);
-    }
-
-    private void validarDisponibilidade(List<Estoque> estoques, List<ItemPedidoDTO> itensPedido) {
-        if (estoques.size() != itensPedido.size()) {
-            throw new ProductNotFoundException();
+        LocalDateTime agora = LocalDateTime.now();
+        // Pedido já reservado (retentativa do pedido-service): responde como a primeira vez, sem tocar no estoque.
+        if (!this.idempotenciaReserva.registrar(pedidoDTO.pedidoId(), agora)) {
+            return;
         }
 
-        for (ItemPedidoDTO item : itensPedido) {
-            Estoque estoqueDoItem = estoques.stream()
-                    .filter(e -> e.getProductSKU().equals(item.productSKU()))
-                    .findFirst()
-                    .orElseThrow(() -> new ProductNotFoundException(item.productSKU()));
+        // Pedidos pequenos: um UPDATE condicional por SKU, sempre na mesma ordem (TreeMap), sem carregar as
+        // entidades. Qualquer exceção desfaz os decrementos já aplicados junto com a transação.
+        Map<String, Integer> quantidadesPorSku = ReservaEstoqueRegras.quantidadesPorSku(pedidoDTO);
+        this.skusQuentes.registrarEscritas(quantidadesPorSku.keySet());
 
-            if (estoqueDoItem.getQuantidadeDisponivel() < item.qtd()) {
-                throw new OutOfStockException();
+        if (quantidadesPorSku.size() >= this.minimoSkusEmLote) {
+            reservarEmLote(quantidadesPorSku, agora);
+        } else {
+            for (Map.Entry<String, Integer> item : quantidadesPorSku.entrySet()) {
+                reservarQuantidade(item.getKey(), item.getValue(), agora);
             }
         }
-    }
-
-    private void criarReservasEAtualizarEstoque(List<Estoque> estoques, PedidoDTO pedidoDTO) {
-        List<ReservaEstoque> novasReservas = new ArrayList<>();
+        this.estoqueCache.invalidar(quantidadesPorSku.keySet());
 
-        for (ItemPedidoDTO item : pedidoDTO.pedidos()) {
-            Estoque estoqueDoItem = estoques.stream()
-                    .filter(e -> e.getProductSKU().equals(item.productSKU()))
-                    .findFirst().get();
+        // Reservas novas (id gerado na aplicação): o saveAll só faz persist, e os INSERTs saem em lote no flush.
+        List<ReservaEstoque> reservas = ReservaEstoqueRegras.novasReservas(pedidoDTO, ttl);
+        this.reservaRepository.saveAll(reservas);
+        this.rodaDeExpiracao.agendar(reservas);
+    }
 
-            estoqueDoItem.setQuantidadeDisponivel(estoqueDoItem.getQuantidadeDisponivel() - item.qtd());
-            estoqueDoItem.setUpdatedAt(LocalDateTime.now());
+    // Com muitos SKUs, um UPDATE por linha vira uma ida ao banco por item. Aqui as linhas são travadas numa leitura
+    // (em ordem de SKU, como no caminho condicional) e os decrementos voltam no flush em lotes JDBC.
+    private void reservarEmLote(Map<String, Integer> quantidadesPorSku, LocalDateTime agora) {
+        Map<String, Estoque> estoques = this.estoqueRepository.travarPorSkus(quantidadesPorSku.keySet()).stream()
+                .collect(Collectors.toMap(Estoque::getProductSKU, Function.identity()));
 
-            ReservaEstoque novaReserva = ReservaEstoque.builder()
-                    .pedidoId(pedidoDTO.pedidoId())
-                    .productSKU(item.productSKU())
-                    .quantidadeReservada(item.qtd())
-                    .status(ReservaStatus.PENDENTE)
-                    .expiresAt(LocalDateTime.now().plusMinutes(1)) // 1 minuto para facilitar o teste de mudança de
-                                                                   // status
-                    .build();
+        for (Map.Entry<String, Integer> item : quantidadesPorSku.entrySet()) {
+            Estoque estoque = estoques.get(item.getKey());
+            if (estoque == null) {
+                throw new ProductNotFoundException(item.getKey());
+            }
+            if (estoque.getQuantidadeDisponivel() < item.getValue()) {
+                throw new OutOfStockException(item.getKey());
+            }
+            estoque.setQuantidadeDisponivel(estoque.getQuantidadeDisponivel() - item.getValue());
+            estoque.setUpdatedAt(agora);
+        }
+    }
 
-            novasReservas.add(novaReserva);
+    private void reservarQuantidade(String productSKU, int quantidade, LocalDateTime agora) {
+        int atualizados = this.estoqueRepository.reservarQuantidade(productSKU, quantidade, agora);
+        if (atualizados > 0) {
+            return;
         }
 
-        this.reservaRepository.saveAll(novasReservas);
+        // Só chega aqui no caminho de falha, então a consulta extra não pesa nas reservas bem-sucedidas.
+        if (!this.estoqueRepository.existsById(productSKU)) {
+            throw new ProductNotFoundException(productSKU);
+        }
+        throw new OutOfStockException(productSKU);
     }
-}
\ No newline at end of file
+}
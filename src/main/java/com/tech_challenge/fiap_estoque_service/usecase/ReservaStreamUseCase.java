@@ -0,0 +1,9 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface ReservaStreamUseCase {
+    void reservar(InputStream entrada, OutputStream saida) throws IOException;
+}
@@ -0,0 +1,148 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoStatus;
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+// Reserva de um fluxo de pedidos em NDJSON, respondendo um resultado por linha na mesma conexão enquanto o cliente
+// ainda envia. As linhas que já chegaram são agrupadas (até tamanho-chunk) e reservadas como um lote do endpoint
+// /batch; o resultado de cada grupo é escrito e enviado antes de esperar pelas próximas linhas. Um cliente que manda
+// um pedido e espera a resposta tem lotes de um; um que manda sem esperar tem lotes cheios. Uma linha maior que
+// tamanho-maximo-linha encerra o fluxo: as anteriores são respondidas e a última resposta é o erro, sem guardar em
+// memória o resto de uma linha que não tem fim.
+@Service
+public class ReservaStreamUseCaseImpl implements ReservaStreamUseCase {
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+
+    private final EstoqueUseCase estoqueUseCase;
+    private final EstoqueMetricas estoqueMetricas;
+    private final ObjectReader pedidoReader;
+    private final ObjectWriter resultadoWriter;
+    private final int tamanhoChunk;
+    private final int tamanhoMaximoLinha;
+
+    public ReservaStreamUseCaseImpl(EstoqueUseCase estoqueUseCase, EstoqueMetricas estoqueMetricas,
+            ObjectMapper objectMapper, @Value("${estoque.lote.tamanho-chunk:100}") int tamanhoChunk,
+            @Value("${estoque.stream.tamanho-maximo-linha:65536}") int tamanhoMaximoLinha) {
+        this.estoqueUseCase = estoqueUseCase;
+        this.estoqueMetricas = estoqueMetricas;
+        this.pedidoReader = objectMapper.readerFor(PedidoDTO.class);
+        this.resultadoWriter = objectMapper.writerFor(ResultadoPedidoDTO.class);
+        this.tamanhoChunk = tamanhoChunk;
+        this.tamanhoMaximoLinha = tamanhoMaximoLinha;
+    }
+
+    @Override
+    public void reservar(InputStream entrada, OutputStream saida) throws IOException {
+        Writer escritor = new BufferedWriter(new OutputStreamWriter(saida, StandardCharsets.UTF_8), TAMANHO_BUFFER);
+        Deque<String> linhas = new ArrayDeque<>();
+        ByteArrayOutputStream parcial = new ByteArrayOutputStream();
+        byte[] buffer = new byte[TAMANHO_BUFFER];
+        // Uma posição por linha lida: o resultado de uma linha inválida já entra pronto, o de um pedido vem do lote.
+        List<ResultadoPedidoDTO> resultados = new ArrayList<>();
+        List<PedidoDTO> pedidos = new ArrayList<>();
+
+        boolean fim = false;
+        boolean excedida = false;
+        while (!fim || !linhas.isEmpty()) {
+            // Cada read devolve o que já chegou e só bloqueia sem nada disponível. available() não serve: com corpo
+            // em chunks o Tomcat conta os bytes de controle e uma leitura a mais ficaria esperando o próximo pedido.
+            if (linhas.isEmpty()) {
+                int lidos = entrada.read(buffer);
+                fim = lidos < 0;
+                excedida = !separarLinhas(buffer, fim ? 0 : lidos, fim, parcial, linhas);
+                fim |= excedida;
+            }
+            while (resultados.size() < tamanhoChunk && !linhas.isEmpty()) {
+                ler(linhas.poll(), pedidos, resultados);
+            }
+            if (resultados.isEmpty()) {
+                continue;
+            }
+
+            List<PedidoDTO> lote = List.copyOf(pedidos);
+            Iterator<ResultadoPedidoDTO> doLote = lote.isEmpty() ? Collections.emptyIterator()
+                    : estoqueMetricas.medirLote("updateEstoqueStream",
+                            () -> estoqueUseCase.updateEstoqueEmLote(lote)).iterator();
+            for (ResultadoPedidoDTO resultado : resultados) {
+                escritor.write(resultadoWriter.writeValueAsString(resultado == null ? doLote.next() : resultado));
+                escritor.write('\n');
+            }
+            escritor.flush();
+            pedidos.clear();
+            resultados.clear();
+        }
+        if (excedida) {
+            escritor.write(resultadoWriter.writeValueAsString(new ResultadoPedidoDTO(null, ResultadoPedidoStatus.ERRO,
+                    "Linha maior que " + tamanhoMaximoLinha + " bytes; fluxo encerrado.")));
+            escritor.write('\n');
+            escritor.flush();
+        }
+    }
+
+    // Completa as linhas com os bytes lidos; o resto sem quebra de linha espera a próxima leitura, ou vira a última
+    // linha no fim do corpo. Retorna false, sem guardar nada da linha, quando ela passa do tamanho máximo.
+    private boolean separarLinhas(byte[] buffer, int lidos, boolean fim, ByteArrayOutputStream parcial,
+            Deque<String> linhas) {
+        int inicio = 0;
+        for (int i = 0; i < lidos; i++) {
+            if (buffer[i] == '\n') {
+                if (parcial.size() + i - inicio > tamanhoMaximoLinha) {
+                    parcial.reset();
+                    return false;
+                }
+                parcial.write(buffer, inicio, i - inicio);
+                linhas.add(parcial.toString(StandardCharsets.UTF_8));
+                parcial.reset();
+                inicio = i + 1;
+            }
+        }
+        if (parcial.size() + lidos - inicio > tamanhoMaximoLinha) {
+            parcial.reset();
+            return false;
+        }
+        parcial.write(buffer, inicio, lidos - inicio);
+        if (fim && parcial.size() > 0) {
+            linhas.add(parcial.toString(StandardCharsets.UTF_8));
+            parcial.reset();
+        }
+        return true;
+    }
+
+    // Linhas em branco são ignoradas; uma linha inválida vira um resultado de erro sem derrubar o fluxo.
+    private void ler(String linha, List<PedidoDTO> pedidos, List<ResultadoPedidoDTO> resultados) {
+        if (linha.isBlank()) {
+            return;
+        }
+        try {
+            pedidos.add(pedidoReader.readValue(linha));
+            resultados.add(null);
+        } catch (JsonProcessingException ex) {
+            resultados.add(new ResultadoPedidoDTO(null, ResultadoPedidoStatus.ERRO,
+                    "Linha inválida: " + ex.getOriginalMessage()));
+        }
+    }
+}
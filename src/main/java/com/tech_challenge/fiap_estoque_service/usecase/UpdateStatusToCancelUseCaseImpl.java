@@ -1,10 +1,8 @@
 package com.tech_challenge.fiap_estoque_service.usecase;
 
-import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
-import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
 import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
-import com.tech_challenge.fiap_estoque_service.exception.ReservationCannotBeCancelledException;
-import com.tech_challenge.fiap_estoque_service.exception.ReservationNotFoundException;
+import com.tech_challenge.fiap_estoque_service.dto.SituacaoReservaDTO;
 import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
 
 import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
@@ -15,86 +13,50 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Component
 public class UpdateStatusToCancelUseCaseImpl implements UpdateStatusToCancelUseCase {
     private final Logger logger = LoggerFactory.getLogger(UpdateStatusToCancelUseCaseImpl.class);
+    private static final Set<ReservaStatus> DEVOLVIVEIS = EnumSet.of(ReservaStatus.PENDENTE);
 
     private final ReservaEstoqueRepository reservaRepository;
     private final EstoqueRepository estoqueRepository;
+    private final EstoqueCache estoqueCache;
+    private final HistoricoReservas historicoReservas;
 
     public UpdateStatusToCancelUseCaseImpl(ReservaEstoqueRepository reservaRepository,
-            EstoqueRepository estoqueRepository) {
+            EstoqueRepository estoqueRepository, EstoqueCache estoqueCache,
+            HistoricoReservas historicoReservas) {
         this.reservaRepository = reservaRepository;
         this.estoqueRepository = estoqueRepository;
+        this.estoqueCache = estoqueCache;
+        this.historicoReservas = historicoReservas;
 
     }
 
     @Override
     @Transactional
     public void updateStatusToCancel(String pedidoId) {
-        logger.info("metodo findByPedidoId " + pedidoId);
-        List<ReservaEstoque> reservas = reservaRepository.findByPedidoId(pedidoId);
-        logger.info("reservas: " + reservas);
+        List<SituacaoReservaDTO> situacoes = reservaRepository.travarSituacaoPorPedido(pedidoId);
+        logger.debug("Cancelamento do pedido {}: reservas {}", pedidoId, situacoes);
 
-        if (reservas.isEmpty()) {
-            throw new ReservationNotFoundException("Reserva não encontrada para o pedido: " + pedidoId);
-        }
-
-        boolean anyFinalized = reservas.stream()
-                .anyMatch(reserva -> reserva.getStatus() == ReservaStatus.FINALIZADO
-                        || reserva.getStatus() == ReservaStatus.CONFIRMADA);
-
-        if (anyFinalized) {
-            throw new ReservationCannotBeCancelledException(
-                    "Não é possível cancelar reservas com status FINALIZADO ou CONFIRMADA para o pedido");
-        }
-
-        boolean allCancelled = reservas.stream()
-                .allMatch(reserva -> reserva.getStatus() == ReservaStatus.CANCELADA);
-        if (allCancelled) {
+        if (!historicoReservas.validarStatusCancelamento(pedidoId,
+                situacoes.stream().map(SituacaoReservaDTO::status).toList())) {
             return;
         }
 
-        Map<String, Integer> quantidadesParaDevolverDisponivel = reservas.stream()
-                .filter(reserva -> reserva.getStatus() == ReservaStatus.PENDENTE
-                        || reserva.getStatus() == ReservaStatus.EXPIRADA)
-                .collect(Collectors.groupingBy(ReservaEstoque::getProductSKU,
-                        Collectors.summingInt(ReservaEstoque::getQuantidadeReservada)));
-
-        // Map<String, Integer> quantidadesParaDevolverReal = reservas.stream()
-        // .filter(reserva -> reserva.getStatus() == ReservaStatus.CONFIRMADA)
-        // .collect(Collectors.groupingBy(ReservaEstoque::getProductSKU,
-        // Collectors.summingInt(ReservaEstoque::getQuantidadeReservada)));
-
-        List<String> skusParaAtualizar = reservas.stream()
-                .map(ReservaEstoque::getProductSKU)
-                .distinct()
-                .toList();
-        List<Estoque> estoquesParaAtualizar = estoqueRepository.findAllById(skusParaAtualizar);
-
-        for (Estoque estoque : estoquesParaAtualizar) {
-            quantidadesParaDevolverDisponivel.computeIfPresent(estoque.getProductSKU(), (sku, qtd) -> {
-                estoque.setQuantidadeDisponivel(estoque.getQuantidadeDisponivel() + qtd);
-                return qtd;
-            });
-
-            // quantidadesParaDevolverReal.computeIfPresent(estoque.getProductSKU(), (sku,
-            // qtd) -> {
-            // estoque.setQuantidadeReal(estoque.getQuantidadeReal() + qtd);
-            // return qtd;
-            // });
-            estoque.setUpdatedAt(LocalDateTime.now());
-        }
-
-        for (ReservaEstoque reserva : reservas) {
-            reserva.setStatus(ReservaStatus.CANCELADA);
-        }
+        // Com as reservas travadas, o custo não depende do tamanho do pedido: um MERGE devolve as quantidades somadas
+        // por SKU das PENDENTE e um UPDATE troca o status delas; reservas EXPIRADA ficam como estão.
+        estoqueRepository.devolverReservasDoPedido(pedidoId, LocalDateTime.now());
+        reservaRepository.atualizarStatusDoPedido(pedidoId, DEVOLVIVEIS, ReservaStatus.CANCELADA);
 
-        estoqueRepository.saveAll(estoquesParaAtualizar);
-        reservaRepository.saveAll(reservas);
+        estoqueCache.invalidar(situacoes.stream()
+                .filter(situacao -> DEVOLVIVEIS.contains(situacao.status()))
+                .map(SituacaoReservaDTO::productSKU)
+                .collect(Collectors.toSet()));
     }
-}
\ No newline at end of file
+}
@@ -1,88 +1,52 @@
 package com.tech_challenge.fiap_estoque_service.usecase;
 
-import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
-import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
 import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
-import com.tech_challenge.fiap_estoque_service.exception.ReservationNotFoundException;
+import com.tech_challenge.fiap_estoque_service.dto.SituacaoReservaDTO;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
 import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
-import com.tech_challenge.fiap_estoque_service.gateway.PedidoClient;
 import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.outbox.NotificacaoPedidoOutbox;
 
-import feign.FeignException;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 @Component
 public class UpdateStatusToConfirmedUseCaseImpl implements UpdateStatusToConfirmedUseCase {
-    private final Logger logger = LoggerFactory.getLogger(UpdateStatusToConfirmedUseCaseImpl.class);
 
     private final ReservaEstoqueRepository reservaRepository;
     private final EstoqueRepository estoqueRepository;
+    private final NotificacaoPedidoOutbox notificacaoOutbox;
+    private final HistoricoReservas historicoReservas;
 
     public UpdateStatusToConfirmedUseCaseImpl(ReservaEstoqueRepository reservaRepository,
-            EstoqueRepository estoqueRepository) {
+            EstoqueRepository estoqueRepository, NotificacaoPedidoOutbox notificacaoOutbox,
+            HistoricoReservas historicoReservas) {
         this.reservaRepository = reservaRepository;
         this.estoqueRepository = estoqueRepository;
+        this.notificacaoOutbox = notificacaoOutbox;
+        this.historicoReservas = historicoReservas;
     }
 
     @Override
     @Transactional
     public void updateStatusToConfirmed(String pedidoId) {
-        List<ReservaEstoque> reservas = reservaRepository.findByPedidoId(pedidoId);
-
-        if (reservas.isEmpty()) {
-            throw new ReservationNotFoundException("Reserva não encontrada para o pedido: " + pedidoId);
-        }
+        List<SituacaoReservaDTO> situacoes = reservaRepository.travarSituacaoPorPedido(pedidoId);
 
-        boolean allPending = reservas.stream()
-                .allMatch(reserva -> reserva.getStatus() == ReservaStatus.PENDENTE);
-
-        if (!allPending) {
-            boolean alreadyConfirmed = reservas.stream()
-                    .allMatch(reserva -> reserva.getStatus() == ReservaStatus.CONFIRMADA);
-            if (alreadyConfirmed) {
-                return;
-            }
-            throw new IllegalStateException(
-                    "Algumas reservas para o pedido " + pedidoId + " não estão no status PENDENTE.");
+        if (!historicoReservas.validarStatusConfirmacao(pedidoId,
+                situacoes.stream().map(SituacaoReservaDTO::status).toList())) {
+            return;
         }
 
-        Map<String, Integer> quantidadesParaBaixa = reservas.stream()
-                .collect(Collectors.groupingBy(ReservaEstoque::getProductSKU,
-                        Collectors.summingInt(ReservaEstoque::getQuantidadeReservada)));
-
-        List<String> skusParaAtualizar = quantidadesParaBaixa.keySet().stream().toList();
-        List<Estoque> estoquesParaAtualizar = estoqueRepository.findAllById(skusParaAtualizar);
+        // Todas as reservas estão PENDENTE e travadas: baixa do real somada por SKU e troca de status em dois
+        // statements, sem carregar reservas nem estoque.
+        estoqueRepository.baixarReservasDoPedido(pedidoId, LocalDateTime.now());
+        reservaRepository.atualizarStatusDoPedido(pedidoId, List.of(ReservaStatus.PENDENTE),
+                ReservaStatus.CONFIRMADA);
 
-        for (Estoque estoque : estoquesParaAtualizar) {
-            int quantidadeReservada = quantidadesParaBaixa.get(estoque.getProductSKU());
-            estoque.setQuantidadeReal(estoque.getQuantidadeReal() - quantidadeReservada);
-            estoque.setUpdatedAt(LocalDateTime.now());
-        }
-
-        for (ReservaEstoque reserva : reservas) {
-            reserva.setStatus(ReservaStatus.CONFIRMADA);
-        }
-
-        estoqueRepository.saveAll(estoquesParaAtualizar);
-        reservaRepository.saveAll(reservas);
-
-        // this.updatePedidoService(pedidoId);
+        // O pedido-service é avisado pelo NotificacaoPedidoDispatcher depois do commit.
+        notificacaoOutbox.registrar(List.of(pedidoId), TipoNotificacao.SUCESSO);
     }
-
-    // private void updatePedidoService(String pedidoId) {
-    // try {
-    // this.pedidoClient.changeToClosedSuccess(pedidoId);
-    // } catch (FeignException ex) {
-    // logger.error("Erro ao chamar o serviço de pedido.\n - Stacktrace: {}", ex);
-    // }
-    // }
-}
\ No newline at end of file
+}
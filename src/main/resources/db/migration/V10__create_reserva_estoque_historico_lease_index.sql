@@ -0,0 +1,2 @@
+-- A recuperação de um lease vencido soma também as reservas do lease que já foram arquivadas.
+CREATE INDEX idx_reserva_estoque_historico_lease_id ON reserva_estoque_historico (lease_id);
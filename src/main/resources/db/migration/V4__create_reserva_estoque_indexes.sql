@@ -0,0 +1,3 @@
+CREATE INDEX idx_reserva_estoque_status_expires_at ON reserva_estoque (status, expires_at, id);
+
+CREATE INDEX idx_reserva_estoque_pedido_id ON reserva_estoque (pedido_id);
@@ -0,0 +1,12 @@
+CREATE TABLE notificacao_pedido (
+    id VARCHAR(36) NOT NULL,
+    pedido_id VARCHAR(255) NOT NULL,
+    tipo VARCHAR(255) NOT NULL,
+    tentativas INT NOT NULL,
+    proxima_tentativa TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_notificacao_pedido_pedido_id_tipo UNIQUE (pedido_id, tipo)
+);
+
+CREATE INDEX idx_notificacao_pedido_proxima_tentativa ON notificacao_pedido (proxima_tentativa, created_at);
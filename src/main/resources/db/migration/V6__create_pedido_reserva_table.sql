@@ -0,0 +1,8 @@
+CREATE TABLE pedido_reserva (
+    pedido_id VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (pedido_id)
+);
+
+INSERT INTO pedido_reserva (pedido_id, created_at)
+SELECT DISTINCT pedido_id, CURRENT_TIMESTAMP FROM reserva_estoque;
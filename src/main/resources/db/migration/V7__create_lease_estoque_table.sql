@@ -0,0 +1,14 @@
+CREATE TABLE lease_estoque (
+    id VARCHAR(36) NOT NULL,
+    instancia VARCHAR(255) NOT NULL,
+    product_sku VARCHAR(255) NOT NULL,
+    quantidade INT NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_lease_estoque_expires_at ON lease_estoque (expires_at);
+
+ALTER TABLE reserva_estoque ADD COLUMN lease_id VARCHAR(36);
+
+CREATE INDEX idx_reserva_estoque_lease_id ON reserva_estoque (lease_id);
@@ -0,0 +1,15 @@
+CREATE SEQUENCE movimento_estoque_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE movimento_estoque (
+    id BIGINT NOT NULL,
+    product_sku VARCHAR(255) NOT NULL,
+    delta_disponivel INT NOT NULL,
+    delta_real INT NOT NULL,
+    motivo VARCHAR(255) NOT NULL,
+    reserva_id VARCHAR(36),
+    compactado BOOLEAN NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_movimento_estoque_compactado_sku ON movimento_estoque (compactado, product_sku);
@@ -0,0 +1,16 @@
+CREATE TABLE reserva_estoque_historico (
+    id VARCHAR(36) NOT NULL,
+    product_sku VARCHAR(255) NOT NULL,
+    quantidade_reservada INT NOT NULL,
+    status VARCHAR(255) NOT NULL,
+    pedido_id VARCHAR(255) NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    lease_id VARCHAR(36),
+    arquivada_em TIMESTAMP NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_reserva_estoque_historico_pedido_id ON reserva_estoque_historico (pedido_id);
+
+-- Candidatas ao arquivamento: pedidos já vencidos, percorridos por expires_at.
+CREATE INDEX idx_reserva_estoque_expires_at ON reserva_estoque (expires_at, pedido_id);
@@ -0,0 +1,114 @@
+package com.tech_challenge.fiap_estoque_service.cache;
+
+import com.tech_challenge.fiap_estoque_service.dto.EstoquePublicDTO;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EstoqueCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private EstoqueCache estoqueCache;
+    private AtomicInteger carregamentos;
+    private Function<String, EstoquePublicDTO> carregar;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        estoqueCache = new EstoqueCache(meterRegistry, 100, Duration.ofMinutes(1));
+        carregamentos = new AtomicInteger();
+        carregar = sku -> new EstoquePublicDTO(sku, 10 + carregamentos.incrementAndGet());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void buscar_ShouldLoadOnlyOnMissAndRecordHitsAndMisses() {
+        estoqueCache.buscar("SKU-1", carregar);
+        EstoquePublicDTO result = estoqueCache.buscar("SKU-1", carregar);
+
+        assertEquals(11, result.quantidadeDisponivel());
+        assertEquals(1, carregamentos.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "estoque").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "estoque").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void buscar_ShouldNotCacheProductNotFound() {
+        assertThrows(ProductNotFoundException.class, () -> estoqueCache.buscar("SKU-1", sku -> {
+            throw new ProductNotFoundException();
+        }));
+
+        assertEquals(11, estoqueCache.buscar("SKU-1", carregar).quantidadeDisponivel());
+    }
+
+    @Test
+    void invalidar_ShouldEvictImmediately_WhenNoTransactionIsActive() {
+        estoqueCache.buscar("SKU-1", carregar);
+
+        estoqueCache.invalidar(List.of("SKU-1"));
+
+        assertEquals(12, estoqueCache.buscar("SKU-1", carregar).quantidadeDisponivel());
+    }
+
+    @Test
+    void invalidar_ShouldWaitForCommit_WhenTransactionIsActive() {
+        estoqueCache.buscar("SKU-1", carregar);
+        TransactionSynchronizationManager.initSynchronization();
+
+        estoqueCache.invalidar(List.of("SKU-1"));
+        assertEquals(11, estoqueCache.buscar("SKU-1", carregar).quantidadeDisponivel());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(12, estoqueCache.buscar("SKU-1", carregar).quantidadeDisponivel());
+    }
+
+    @Test
+    void buscarTodos_ShouldLoadOnlyMissingSkusInOneCall() {
+        estoqueCache.buscar("SKU-1", carregar);
+        List<Set<String>> chamadas = new ArrayList<>();
+
+        Map<String, EstoquePublicDTO> result = estoqueCache.buscarTodos(List.of("SKU-1", "SKU-2", "SKU-3"),
+                faltantes -> {
+                    chamadas.add(faltantes);
+                    return Map.of("SKU-2", new EstoquePublicDTO("SKU-2", 5));
+                });
+
+        assertEquals(List.of(Set.of("SKU-2", "SKU-3")), chamadas);
+        assertEquals(Set.of("SKU-1", "SKU-2"), result.keySet());
+        assertEquals(5, estoqueCache.buscar("SKU-2", carregar).quantidadeDisponivel());
+    }
+
+    @Test
+    void buscarTodos_ShouldNotCacheLoadThatRacedAnInvalidation() {
+        // O saldo muda e é invalidado enquanto o lote ainda está lendo o valor antigo.
+        Map<String, EstoquePublicDTO> result = estoqueCache.buscarTodos(List.of("SKU-1"), faltantes -> {
+            estoqueCache.invalidar(List.of("SKU-1"));
+            return Map.of("SKU-1", new EstoquePublicDTO("SKU-1", 5));
+        });
+
+        assertEquals(5, result.get("SKU-1").quantidadeDisponivel());
+        assertEquals(11, estoqueCache.buscar("SKU-1", carregar).quantidadeDisponivel());
+    }
+}
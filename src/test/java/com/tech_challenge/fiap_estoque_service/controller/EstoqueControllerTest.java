@@ -1,22 +1,47 @@
 package com.tech_challenge.fiap_estoque_service.controller;
 
+import com.tech_challenge.fiap_estoque_service.dto.ConsultaEstoqueDTO;
 import com.tech_challenge.fiap_estoque_service.dto.EstoquePublicDTO;
+import com.tech_challenge.fiap_estoque_service.dto.FormatoExport;
 import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
 import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
 import com.tech_challenge.fiap_estoque_service.dto.PedidoIdRequestDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoStatus;
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+import com.tech_challenge.fiap_estoque_service.usecase.EstoqueExportUseCase;
 import com.tech_challenge.fiap_estoque_service.usecase.EstoqueUseCase;
+import com.tech_challenge.fiap_estoque_service.usecase.ReservaStreamUseCase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 class EstoqueControllerTest {
@@ -24,6 +49,15 @@ class EstoqueControllerTest {
     @Mock
     private EstoqueUseCase estoqueUseCase;
 
+    @Mock
+    private EstoqueExportUseCase estoqueExportUseCase;
+
+    @Mock
+    private ReservaStreamUseCase reservaStreamUseCase;
+
+    @Spy
+    private EstoqueMetricas estoqueMetricas = new EstoqueMetricas(new SimpleMeterRegistry());
+
     @InjectMocks
     private EstoqueController estoqueController;
 
@@ -45,6 +79,88 @@ class EstoqueControllerTest {
         verify(estoqueUseCase, times(1)).getEstoqueByProductSKU(productSKU);
     }
 
+    @Test
+    void getEstoqueByProductSKUs_ShouldReturnFoundAndMissingSkus() {
+        List<String> skus = List.of("PROD001", "PROD999");
+        ConsultaEstoqueDTO expectedDTO = new ConsultaEstoqueDTO(List.of(new EstoquePublicDTO("PROD001", 10)),
+                List.of("PROD999"));
+        when(estoqueUseCase.getEstoqueByProductSKUs(skus)).thenReturn(expectedDTO);
+
+        ResponseEntity<ConsultaEstoqueDTO> response = estoqueController.getEstoqueByProductSKUs(skus);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(expectedDTO, response.getBody());
+    }
+
+    @Test
+    void consultarEstoque_ShouldDelegateBodySkusToUseCase() {
+        List<String> skus = List.of("PROD001", "PROD002");
+        ConsultaEstoqueDTO expectedDTO = new ConsultaEstoqueDTO(List.of(new EstoquePublicDTO("PROD001", 10),
+                new EstoquePublicDTO("PROD002", 5)), List.of());
+        when(estoqueUseCase.getEstoqueByProductSKUs(skus)).thenReturn(expectedDTO);
+
+        ResponseEntity<ConsultaEstoqueDTO> response = estoqueController.consultarEstoque(skus);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(expectedDTO, response.getBody());
+        verify(estoqueUseCase, times(1)).getEstoqueByProductSKUs(skus);
+    }
+
+    @Test
+    void exportarEstoque_ShouldStreamCsvFromResumeKey() throws IOException {
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(2).write("linhas".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(estoqueExportUseCase).exportar(eq(FormatoExport.CSV), eq("PROD001"), any());
+
+        ResponseEntity<StreamingResponseBody> response = estoqueController.exportarEstoque(FormatoExport.CSV,
+                "PROD001", null);
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        response.getBody().writeTo(saida);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.parseMediaType("text/csv"), response.getHeaders().getContentType());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("linhas", saida.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportarEstoque_ShouldGzipBody_WhenClientAcceptsGzip() throws IOException {
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(2).write("linhas".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(estoqueExportUseCase).exportar(eq(FormatoExport.NDJSON), isNull(), any());
+
+        ResponseEntity<StreamingResponseBody> response = estoqueController.exportarEstoque(FormatoExport.NDJSON,
+                null, "gzip, deflate");
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        response.getBody().writeTo(saida);
+
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        try (GZIPInputStream entrada = new GZIPInputStream(new ByteArrayInputStream(saida.toByteArray()))) {
+            assertEquals("linhas", new String(entrada.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void reserveStockStream_ShouldPassRequestBodyAndStreamResults() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent("pedidos".getBytes(StandardCharsets.UTF_8));
+        doAnswer(invocation -> {
+            byte[] corpo = invocation.<InputStream>getArgument(0).readAllBytes();
+            invocation.<OutputStream>getArgument(1).write(corpo);
+            return null;
+        }).when(reservaStreamUseCase).reservar(any(), any());
+
+        ResponseEntity<StreamingResponseBody> response = estoqueController.reserveStockStream(request);
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        response.getBody().writeTo(saida);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.parseMediaType("application/x-ndjson"), response.getHeaders().getContentType());
+        assertEquals("pedidos", saida.toString(StandardCharsets.UTF_8));
+    }
+
     @Test
     void reserveStock_ShouldReturnNoContent() {
         ItemPedidoDTO item = new ItemPedidoDTO("PROD001", 2);
@@ -77,4 +193,42 @@ class EstoqueControllerTest {
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
         verify(estoqueUseCase, times(1)).updateStatusToConfirmed(pedidoId.toString());
     }
+
+    @Test
+    void reserveStockEmLote_ShouldReturnResultPerOrder() {
+        PedidoDTO pedidoDTO = new PedidoDTO(List.of(new ItemPedidoDTO("PROD001", 2)), "pedido-1");
+        List<ResultadoPedidoDTO> resultados = List.of(ResultadoPedidoDTO.sucesso("pedido-1"));
+        when(estoqueUseCase.updateEstoqueEmLote(List.of(pedidoDTO))).thenReturn(resultados);
+
+        ResponseEntity<List<ResultadoPedidoDTO>> response = estoqueController.reserveStockEmLote(List.of(pedidoDTO));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(resultados, response.getBody());
+    }
+
+    @Test
+    void changeToCancelStatusEmLote_ShouldPassPedidoIdsAndReturnResults() {
+        List<ResultadoPedidoDTO> resultados = List.of(
+                new ResultadoPedidoDTO("pedido-1", ResultadoPedidoStatus.NAO_CANCELAVEL, "confirmado"));
+        when(estoqueUseCase.updateStatusToCancelEmLote(List.of("pedido-1"))).thenReturn(resultados);
+
+        ResponseEntity<List<ResultadoPedidoDTO>> response = estoqueController
+                .changeToCancelStatusEmLote(List.of(new PedidoIdRequestDTO("pedido-1")));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(resultados, response.getBody());
+    }
+
+    @Test
+    void changeToConfirmedStatusEmLote_ShouldPassPedidoIdsAndReturnResults() {
+        List<ResultadoPedidoDTO> resultados = List.of(ResultadoPedidoDTO.sucesso("pedido-1"),
+                ResultadoPedidoDTO.sucesso("pedido-2"));
+        when(estoqueUseCase.updateStatusToConfirmedEmLote(List.of("pedido-1", "pedido-2"))).thenReturn(resultados);
+
+        ResponseEntity<List<ResultadoPedidoDTO>> response = estoqueController.changeToConfirmedStatusEmLote(
+                List.of(new PedidoIdRequestDTO("pedido-1"), new PedidoIdRequestDTO("pedido-2")));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(resultados, response.getBody());
+    }
 }
@@ -0,0 +1,106 @@
+package com.tech_challenge.fiap_estoque_service.controller;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Fluxo de reservas numa conexão real: o resultado de cada pedido chega antes de o cliente mandar o seguinte.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ReservaStreamIntegracaoTest {
+
+    @LocalServerPort
+    private int porta;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    private final String productSKU = "stream-" + UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(1)
+                .quantidadeReal(1)
+                .updatedAt(LocalDateTime.now())
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        reservaRepository.deleteAll(reservaRepository.findAll().stream()
+                .filter(r -> r.getProductSKU().equals(productSKU)).toList());
+        estoqueRepository.deleteById(productSKU);
+    }
+
+    @Test
+    void reserveStockStream_ShouldAnswerEachOrderWhileTheRequestIsStillOpen() throws IOException {
+        try (Socket socket = new Socket("localhost", porta)) {
+            socket.setSoTimeout(10_000);
+            OutputStream saida = socket.getOutputStream();
+            BufferedReader entrada = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            saida.write(("POST /estoque/stream HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Content-Type: application/x-ndjson\r\nTransfer-Encoding: chunked\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+
+            enviarChunk(saida, pedido("stream-1"));
+            assertEquals("HTTP/1.1 200 ", entrada.readLine());
+            while (!entrada.readLine().isEmpty()) {
+                // Cabeçalhos da resposta.
+            }
+            assertEquals("{\"pedidoId\":\"stream-1\",\"status\":\"SUCESSO\",\"mensagem\":null}", lerChunk(entrada));
+
+            // O único item do SKU já está reservado pelo primeiro pedido.
+            enviarChunk(saida, pedido("stream-2"));
+            assertTrue(lerChunk(entrada).startsWith("{\"pedidoId\":\"stream-2\",\"status\":\"SEM_ESTOQUE\""));
+
+            enviarChunk(saida, "");
+            assertEquals("0", entrada.readLine());
+        }
+        assertEquals(0, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+    }
+
+    private String pedido(String pedidoId) {
+        return "{\"pedidoId\":\"" + pedidoId + "\",\"pedidos\":[{\"productSKU\":\"" + productSKU + "\",\"qtd\":1}]}\n";
+    }
+
+    private static void enviarChunk(OutputStream saida, String conteudo) throws IOException {
+        byte[] bytes = conteudo.getBytes(StandardCharsets.UTF_8);
+        saida.write((Integer.toHexString(bytes.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        saida.write(bytes);
+        saida.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        saida.flush();
+    }
+
+    private static String lerChunk(BufferedReader entrada) throws IOException {
+        int tamanho = Integer.parseInt(entrada.readLine().trim(), 16);
+        char[] dados = new char[tamanho];
+        int lidos = 0;
+        while (lidos < tamanho) {
+            lidos += entrada.read(dados, lidos, tamanho - lidos);
+        }
+        entrada.readLine();
+        return new String(dados).trim();
+    }
+}
@@ -0,0 +1,84 @@
+package com.tech_challenge.fiap_estoque_service.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Executor assíncrono do MVC com uma thread só: o primeiro fluxo aberto a ocupa e o seguinte é recusado.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.task.execution.pool.core-size=1", "spring.task.execution.pool.max-size=1" })
+class ReservaStreamLimiteIntegracaoTest {
+
+    private static final String CABECALHOS = "POST /estoque/stream HTTP/1.1\r\nHost: localhost\r\n"
+            + "Content-Type: application/x-ndjson\r\nTransfer-Encoding: chunked\r\n\r\n";
+
+    @LocalServerPort
+    private int porta;
+
+    @Test
+    void reserveStockStream_ShouldAnswerServiceUnavailable_WhenEveryAsyncThreadIsBusy() throws IOException {
+        Socket aberto = abrirFluxo();
+        try (Socket recusado = new Socket("localhost", porta)) {
+            recusado.setSoTimeout(10_000);
+            OutputStream saida = recusado.getOutputStream();
+            BufferedReader entrada = new BufferedReader(
+                    new InputStreamReader(recusado.getInputStream(), StandardCharsets.UTF_8));
+            long prazo = System.nanoTime() + 5_000_000_000L;
+            String status;
+            do {
+                // Se o segundo fluxo estava na thread quando o primeiro chegou, quem recebeu o 503 foi o primeiro:
+                // ele é aberto de novo para voltar a disputar a thread.
+                if (aberto.getInputStream().available() > 0) {
+                    aberto.close();
+                    aberto = abrirFluxo();
+                }
+                saida.write(CABECALHOS.getBytes(StandardCharsets.US_ASCII));
+                saida.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                saida.flush();
+                status = entrada.readLine();
+                // Até o primeiro fluxo chegar ao executor, o segundo ainda pode ser atendido e terminar.
+            } while (!status.startsWith("HTTP/1.1 503") && pularResposta(entrada) && System.nanoTime() < prazo);
+
+            assertEquals("HTTP/1.1 503 ", status);
+            String cabecalho;
+            boolean retryAfter = false;
+            while (!(cabecalho = entrada.readLine()).isEmpty()) {
+                retryAfter |= cabecalho.equalsIgnoreCase("Retry-After: 5");
+            }
+            assertTrue(retryAfter);
+        } finally {
+            aberto.close();
+        }
+    }
+
+    // Sem nenhum pedido enviado, o fluxo fica esperando o corpo e segura a thread.
+    private Socket abrirFluxo() throws IOException {
+        Socket aberto = new Socket("localhost", porta);
+        aberto.getOutputStream().write(CABECALHOS.getBytes(StandardCharsets.US_ASCII));
+        aberto.getOutputStream().flush();
+        return aberto;
+    }
+
+    // Descarta cabeçalhos e corpo em chunks de uma resposta atendida.
+    private static boolean pularResposta(BufferedReader entrada) throws IOException {
+        while (!entrada.readLine().isEmpty()) {
+            // Cabeçalhos.
+        }
+        int tamanho;
+        while ((tamanho = Integer.parseInt(entrada.readLine().trim(), 16)) > 0) {
+            entrada.skip(tamanho);
+            entrada.readLine();
+        }
+        entrada.readLine();
+        return true;
+    }
+}
@@ -0,0 +1,148 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import com.tech_challenge.fiap_estoque_service.dto.SaldoEstoqueDTO;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
+import com.tech_challenge.fiap_estoque_service.gateway.MovimentoEstoqueRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class EstoqueEmMemoriaTest {
+
+    @Mock
+    private MovimentoEstoqueRepository movimentoRepository;
+
+    @Mock
+    private MovimentosEstoque movimentosEstoque;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private EstoqueEmMemoria estoqueEmMemoria;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(movimentoRepository.saldosDeTodos()).thenReturn(Arrays.asList(
+                new SaldoEstoqueDTO("PROD001", 10, 10), new SaldoEstoqueDTO("PROD002", 5, 5)));
+        estoqueEmMemoria = new EstoqueEmMemoria(movimentoRepository, movimentosEstoque);
+        estoqueEmMemoria.carregar();
+    }
+
+    @Test
+    void disponiveis_ShouldLoadUnknownSkusInOneQueryAndOmitMissingOnes() {
+        when(movimentoRepository.saldos(List.of("PROD003", "PROD999"))).thenReturn(List.of(
+                new SaldoEstoqueDTO("PROD003", 7, 7)));
+
+        Map<String, Integer> disponiveis = estoqueEmMemoria.disponiveis(List.of("PROD001", "PROD003", "PROD999"));
+
+        assertEquals(Map.of("PROD001", 10, "PROD003", 7), disponiveis);
+        assertEquals(7, estoqueEmMemoria.disponivel("PROD003"));
+        verify(movimentoRepository, never()).saldo(any());
+    }
+
+    @Test
+    void carregar_ShouldStartFromStockPlusMovementsNotYetWritten() {
+        // Uma reserva de 3 confirmada antes da queda, ainda só nos movimentos.
+        when(movimentoRepository.saldosDeTodos()).thenReturn(List.of(new SaldoEstoqueDTO("PROD001", 7, 10)));
+        EstoqueEmMemoria recarregado = new EstoqueEmMemoria(movimentoRepository, movimentosEstoque);
+
+        recarregado.carregar();
+
+        assertEquals(7, recarregado.disponivel("PROD001"));
+    }
+
+    @Test
+    void reservar_ShouldRollbackPreviousItems_WhenOneIsOutOfStock() {
+        Map<String, Integer> pedido = new TreeMap<>(Map.of("PROD001", 3, "PROD002", 6));
+
+        assertThrows(OutOfStockException.class, () -> estoqueEmMemoria.reservar(pedido));
+
+        assertEquals(10, estoqueEmMemoria.disponivel("PROD001"));
+        assertEquals(5, estoqueEmMemoria.disponivel("PROD002"));
+    }
+
+    @Test
+    void reservar_ShouldThrowProductNotFoundException_WhenProductIsUnknown() {
+        when(movimentoRepository.saldo("PROD999")).thenReturn(Optional.empty());
+
+        assertThrows(ProductNotFoundException.class, () -> estoqueEmMemoria.reservar(Map.of("PROD999", 1)));
+    }
+
+    @Test
+    void reservar_ShouldLoadProductCreatedAfterStartup() {
+        when(movimentoRepository.saldo("PROD003")).thenReturn(Optional.of(new SaldoEstoqueDTO("PROD003", 2, 2)));
+
+        estoqueEmMemoria.reservar(Map.of("PROD003", 2));
+
+        assertEquals(0, estoqueEmMemoria.disponivel("PROD003"));
+    }
+
+    @Test
+    void devolverEBaixar_ShouldApplyBothQuantitiesInMemory() {
+        estoqueEmMemoria.reservar(Map.of("PROD001", 4));
+        estoqueEmMemoria.devolver(Map.of("PROD001", 1));
+        estoqueEmMemoria.baixar(Map.of("PROD001", 3));
+
+        assertEquals(7, estoqueEmMemoria.disponivel("PROD001"));
+        verifyNoInteractions(movimentosEstoque);
+    }
+
+    @Test
+    void reservar_ShouldNeverOversellUnderConcurrency() throws InterruptedException {
+        AtomicInteger sucessos = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 100; i++) {
+            executor.submit(() -> {
+                try {
+                    estoqueEmMemoria.reservar(Map.of("PROD001", 1));
+                    sucessos.incrementAndGet();
+                } catch (OutOfStockException ex) {
+                    // esperado quando o saldo acaba
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(10, sucessos.get());
+        assertEquals(0, estoqueEmMemoria.disponivel("PROD001"));
+    }
+
+    @Test
+    void gravarPendencias_ShouldKeepCompacting_WhileBatchesAreFull() {
+        EstoqueWriteBehind writeBehind = new EstoqueWriteBehind(movimentosEstoque,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), 2);
+        when(movimentosEstoque.compactarLote(2)).thenReturn(2, 2, 1);
+
+        writeBehind.gravarPendencias();
+
+        verify(movimentosEstoque, times(3)).compactarLote(2);
+    }
+
+    @Test
+    void gravarPendencias_ShouldLeaveMovementsForNextCycle_WhenDatabaseWriteFails() {
+        EstoqueWriteBehind writeBehind = new EstoqueWriteBehind(movimentosEstoque, transactionTemplate, 2);
+        when(transactionTemplate.execute(any())).thenThrow(new IllegalStateException("banco indisponível"));
+
+        assertDoesNotThrow(writeBehind::gravarPendencias);
+    }
+}
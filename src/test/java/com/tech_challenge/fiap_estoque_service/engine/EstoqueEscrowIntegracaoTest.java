@@ -0,0 +1,241 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.LeaseEstoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.LeaseEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.PedidoReservaRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.metricas.SkusQuentes;
+import com.tech_challenge.fiap_estoque_service.scheduler.RodaDeExpiracao;
+import com.tech_challenge.fiap_estoque_service.usecase.IdempotenciaReserva;
+import com.tech_challenge.fiap_estoque_service.usecase.ReservaEstoqueEscrowUseCaseImpl;
+import com.tech_challenge.fiap_estoque_service.usecase.ReservaEstoqueUseCase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Várias instâncias do modo escrow no mesmo banco, cada uma com os seus leases, como réplicas do serviço.
+@SpringBootTest(properties = { "estoque.engine.escrow.enabled=true", "estoque.engine.escrow.renovacao-ms=3600000",
+        "estoque.engine.escrow.recuperacao-ms=3600000" })
+class EstoqueEscrowIntegracaoTest {
+
+    private static final int INSTANCIAS = 3;
+    private static final int THREADS = 12;
+    private static final int PEDIDOS = 400;
+    private static final int ESTOQUE_INICIAL = 250;
+    private static final Duration DURACAO = Duration.ofSeconds(30);
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private LeaseEstoqueRepository leaseRepository;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EstoqueCache estoqueCache;
+
+    @Autowired
+    private RodaDeExpiracao rodaDeExpiracao;
+
+    @Autowired
+    private SkusQuentes skusQuentes;
+
+    @Autowired
+    private IdempotenciaReserva idempotenciaReserva;
+
+    @Autowired
+    private PedidoReservaRepository pedidoReservaRepository;
+
+    private final String productSKU = "escrow-" + UUID.randomUUID();
+    private final List<EstoqueEscrow> instancias = new ArrayList<>();
+    private final List<ReservaEstoqueUseCase> reservas = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(ESTOQUE_INICIAL)
+                .quantidadeReal(ESTOQUE_INICIAL)
+                .updatedAt(LocalDateTime.now())
+                .build());
+        for (int i = 0; i < INSTANCIAS; i++) {
+            EstoqueEscrow escrow = new EstoqueEscrow(estoqueRepository, leaseRepository, reservaRepository,
+                    transactionTemplate, estoqueCache, "instancia-" + i, DURACAO, 10, 1000);
+            instancias.add(escrow);
+            reservas.add(new ReservaEstoqueEscrowUseCaseImpl(escrow, reservaRepository, rodaDeExpiracao,
+                    skusQuentes, idempotenciaReserva, transactionTemplate, Duration.ofMinutes(1)));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        leaseRepository.deleteAll(leaseRepository.findAll().stream()
+                .filter(lease -> lease.getProductSKU().equals(productSKU)).toList());
+        reservaRepository.deleteAll(reservasDoProduto());
+        estoqueRepository.deleteById(productSKU);
+    }
+
+    @Test
+    void reservar_ShouldNeverOversellAcrossInstancesAndReturnLeasesOnShutdown() throws InterruptedException {
+        AtomicInteger sucessos = new AtomicInteger();
+        AtomicInteger proxima = new AtomicInteger();
+        executarConcorrente(() -> {
+            ReservaEstoqueUseCase instancia = reservas.get(proxima.getAndIncrement() % INSTANCIAS);
+            try {
+                instancia.updateEstoque(novoPedido());
+                sucessos.incrementAndGet();
+            } catch (OutOfStockException ex) {
+                // Saldo nos leases das outras instâncias.
+            }
+        });
+
+        assertTrue(sucessos.get() > 0 && sucessos.get() <= ESTOQUE_INICIAL);
+        assertEquals(sucessos.get(), totalReservado());
+        assertTrue(reservasDoProduto().stream().allMatch(reserva -> reserva.getLeaseId() != null));
+        assertEquals(ESTOQUE_INICIAL, disponivelNoBanco() + somaDosSaldosLocais() + totalReservado());
+
+        instancias.forEach(EstoqueEscrow::devolverTudo);
+
+        assertEquals(ESTOQUE_INICIAL, disponivelNoBanco() + totalReservado());
+        assertTrue(leasesDoProduto().isEmpty());
+    }
+
+    @Test
+    void recuperarVencidos_ShouldReturnUnusedLeaseOfInstanceThatStopped() {
+        EstoqueEscrow caiu = instancias.get(0);
+        EstoqueEscrow sobrevivente = instancias.get(1);
+        reservas.get(0).updateEstoque(novoPedido());
+        assertEquals(9, caiu.saldoLocal(productSKU));
+
+        // A instância para sem devolver nada e o lease vence.
+        List<LeaseEstoque> leases = leasesDoProduto();
+        leases.forEach(lease -> lease.setExpiresAt(LocalDateTime.now().minus(DURACAO.multipliedBy(2))));
+        leaseRepository.saveAll(leases);
+
+        sobrevivente.recuperarVencidos();
+
+        assertTrue(leasesDoProduto().isEmpty());
+        assertEquals(1, totalReservado());
+        assertEquals(ESTOQUE_INICIAL - 1, disponivelNoBanco());
+    }
+
+    @Test
+    void reservar_ShouldGiveQuantityBackToLease_WhenTransactionRollsBack() {
+        EstoqueEscrow escrow = instancias.get(0);
+        reservas.get(0).updateEstoque(novoPedido());
+        int saldoAntes = escrow.saldoLocal(productSKU);
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            escrow.reservar(Map.of(productSKU, 5));
+            throw new IllegalStateException("falha depois de reservar");
+        }));
+
+        assertEquals(saldoAntes, escrow.saldoLocal(productSKU));
+        assertEquals(ESTOQUE_INICIAL, disponivelNoBanco() + escrow.saldoLocal(productSKU) + totalReservado());
+    }
+
+    @Test
+    void updateEstoque_ShouldLeaveLeaseUntouched_WhenOrderIsRepeated() {
+        PedidoDTO pedido = novoPedido();
+        reservas.get(0).updateEstoque(pedido);
+        int saldoAntes = instancias.get(0).saldoLocal(productSKU);
+
+        reservas.get(0).updateEstoque(pedido);
+        reservas.get(1).updateEstoque(pedido);
+
+        assertEquals(saldoAntes, instancias.get(0).saldoLocal(productSKU));
+        assertEquals(0, instancias.get(1).saldoLocal(productSKU));
+        assertEquals(1, totalReservado());
+    }
+
+    @Test
+    void updateEstoque_ShouldReturnWithdrawalToLease_WhenRepeatedOrderIsOnlyInTheDatabase() {
+        PedidoDTO pedido = novoPedido();
+        reservas.get(0).updateEstoque(pedido);
+        // Outra réplica, que não viu a primeira reserva: a repetição só aparece no INSERT da pedido_reserva.
+        ReservaEstoqueUseCase outraReplica = new ReservaEstoqueEscrowUseCaseImpl(instancias.get(1),
+                reservaRepository, rodaDeExpiracao, skusQuentes,
+                new IdempotenciaReserva(pedidoReservaRepository, 100, Duration.ofMinutes(10)), transactionTemplate,
+                Duration.ofMinutes(1));
+
+        outraReplica.updateEstoque(pedido);
+
+        assertEquals(1, totalReservado());
+        assertEquals(ESTOQUE_INICIAL, disponivelNoBanco() + instancias.get(0).saldoLocal(productSKU)
+                + instancias.get(1).saldoLocal(productSKU) + 1);
+    }
+
+    private PedidoDTO novoPedido() {
+        return new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 1)), UUID.randomUUID().toString());
+    }
+
+    private int disponivelNoBanco() {
+        return estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel();
+    }
+
+    private int somaDosSaldosLocais() {
+        return instancias.stream().mapToInt(escrow -> escrow.saldoLocal(productSKU)).sum();
+    }
+
+    private int totalReservado() {
+        return reservasDoProduto().stream().mapToInt(ReservaEstoque::getQuantidadeReservada).sum();
+    }
+
+    private List<ReservaEstoque> reservasDoProduto() {
+        return reservaRepository.findAll().stream().filter(r -> r.getProductSKU().equals(productSKU)).toList();
+    }
+
+    private List<LeaseEstoque> leasesDoProduto() {
+        return leaseRepository.findAll().stream().filter(l -> l.getProductSKU().equals(productSKU)).toList();
+    }
+
+    private void executarConcorrente(Runnable pedido) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch largada = new CountDownLatch(1);
+        CountDownLatch fim = new CountDownLatch(PEDIDOS);
+        for (int i = 0; i < PEDIDOS; i++) {
+            executor.submit(() -> {
+                try {
+                    largada.await();
+                    pedido.run();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    fim.countDown();
+                }
+            });
+        }
+        largada.countDown();
+        fim.await(60, TimeUnit.SECONDS);
+        executor.shutdownNow();
+    }
+}
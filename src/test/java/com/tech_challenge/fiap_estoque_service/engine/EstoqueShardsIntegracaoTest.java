@@ -0,0 +1,300 @@
+package com.tech_challenge.fiap_estoque_service.engine;
+
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.exception.StockEngineUnavailableException;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.scheduler.ReservaExpirationScheduler;
+import com.tech_challenge.fiap_estoque_service.usecase.EstoqueShardsUseCaseImpl;
+import com.tech_challenge.fiap_estoque_service.usecase.EstoqueUseCase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Modo de shards com escrita única: o EstoqueUseCase do contexto é o EstoqueShardsUseCaseImpl. Banco próprio,
+// porque a recuperação na partida somaria os movimentos sem marca deixados pelos testes do ledger.
+@SpringBootTest(properties = { "estoque.engine.shards.enabled=true", "estoque.engine.shards.quantidade="
+        + EstoqueShardsIntegracaoTest.SHARDS, "spring.datasource.url=jdbc:h2:mem:shards" })
+class EstoqueShardsIntegracaoTest {
+
+    static final int SHARDS = 4;
+    private static final int THREADS = 12;
+    private static final int PEDIDOS = 400;
+    private static final int ESTOQUE_INICIAL = 250;
+
+    @Autowired
+    private EstoqueUseCase estoqueUseCase;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Autowired
+    private EstoqueShards estoqueShards;
+
+    @Autowired
+    private ReservaExpirationScheduler reservaExpirationScheduler;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MovimentosEstoque movimentosEstoque;
+
+    @Autowired
+    private EstoqueCache estoqueCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final List<String> skus = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        reservaRepository.deleteAll(reservaRepository.findAll().stream()
+                .filter(reserva -> skus.contains(reserva.getProductSKU())).toList());
+        estoqueRepository.deleteAllById(skus);
+    }
+
+    @Test
+    void updateEstoque_ShouldNeverOversellHotSku() throws InterruptedException {
+        assertInstanceOf(EstoqueShardsUseCaseImpl.class, estoqueUseCase);
+        String productSKU = novoProduto(ESTOQUE_INICIAL);
+
+        AtomicInteger sucessos = new AtomicInteger();
+        AtomicInteger semEstoque = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch largada = new CountDownLatch(1);
+        CountDownLatch fim = new CountDownLatch(PEDIDOS);
+        for (int i = 0; i < PEDIDOS; i++) {
+            executor.submit(() -> {
+                try {
+                    largada.await();
+                    estoqueUseCase.updateEstoque(pedido(productSKU, 1));
+                    sucessos.incrementAndGet();
+                } catch (OutOfStockException ex) {
+                    semEstoque.incrementAndGet();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    fim.countDown();
+                }
+            });
+        }
+        largada.countDown();
+        assertTrue(fim.await(60, TimeUnit.SECONDS));
+        executor.shutdownNow();
+
+        assertEquals(ESTOQUE_INICIAL, sucessos.get());
+        assertEquals(PEDIDOS - ESTOQUE_INICIAL, semEstoque.get());
+        assertEquals(0, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+        assertEquals(ESTOQUE_INICIAL, reservasDo(productSKU).size());
+    }
+
+    @Test
+    void updateEstoque_ShouldReturnStockToOtherShards_WhenOneShardRefuses() {
+        String comEstoque = novoProduto(5);
+        String semEstoque = novoProduto(0);
+        while (shard(semEstoque) == shard(comEstoque)) {
+            estoqueRepository.deleteById(semEstoque);
+            skus.remove(semEstoque);
+            semEstoque = novoProduto(0);
+        }
+        PedidoDTO pedido = new PedidoDTO(List.of(new ItemPedidoDTO(comEstoque, 3), new ItemPedidoDTO(semEstoque, 1)),
+                UUID.randomUUID().toString());
+
+        assertThrows(OutOfStockException.class, () -> estoqueUseCase.updateEstoque(pedido));
+
+        assertEquals(5, estoqueRepository.findById(comEstoque).orElseThrow().getQuantidadeDisponivel());
+        assertTrue(reservasDo(comEstoque).isEmpty());
+    }
+
+    @Test
+    void updateStatus_ShouldReturnAndSubtractStockThroughShards() {
+        String productSKU = novoProduto(10);
+        PedidoDTO cancelado = pedido(productSKU, 3);
+        PedidoDTO confirmado = pedido(productSKU, 4);
+        estoqueUseCase.updateEstoque(cancelado);
+        estoqueUseCase.updateEstoque(confirmado);
+        // Repetição do pedido: nada muda no saldo.
+        estoqueUseCase.updateEstoque(confirmado);
+        assertEquals(3, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+
+        estoqueUseCase.updateStatusToCancel(cancelado.pedidoId());
+        estoqueUseCase.updateStatusToCancel(cancelado.pedidoId());
+        estoqueUseCase.updateStatusToConfirmed(confirmado.pedidoId());
+
+        Estoque estoque = estoqueRepository.findById(productSKU).orElseThrow();
+        assertEquals(6, estoque.getQuantidadeDisponivel());
+        assertEquals(6, estoque.getQuantidadeReal());
+    }
+
+    @Test
+    void updateEstoque_ShouldAnswerRepeatedOrderWithoutGoingThroughShard() {
+        String productSKU = novoProduto(10);
+        PedidoDTO pedido = pedido(productSKU, 4);
+        estoqueUseCase.updateEstoque(pedido);
+        double comandos = meterRegistry.get("estoque.shards.commit.comandos").summary().totalAmount();
+
+        estoqueUseCase.updateEstoque(pedido);
+
+        assertEquals(comandos, meterRegistry.get("estoque.shards.commit.comandos").summary().totalAmount());
+        assertEquals(6, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+        assertEquals(1, reservasDo(productSKU).size());
+    }
+
+    @Test
+    void expirarPedidos_ShouldReturnStockThroughShardAfterCommit() throws InterruptedException {
+        String productSKU = novoProduto(10);
+        String pedidoId = UUID.randomUUID().toString();
+        EstoqueShards.Pendencia estorno = estoqueShards.reservar(Map.of(productSKU, 4));
+        transactionTemplate.executeWithoutResult(status -> {
+            reservaRepository.save(ReservaEstoque.builder()
+                    .pedidoId(pedidoId)
+                    .productSKU(productSKU)
+                    .quantidadeReservada(4)
+                    .status(ReservaStatus.PENDENTE)
+                    .expiresAt(LocalDateTime.now().minusMinutes(1))
+                    .build());
+            estoqueShards.descartar(estorno);
+        });
+
+        reservaExpirationScheduler.expirarPedidos(List.of(pedidoId));
+
+        // A devolução da expiração é enviada ao shard depois do commit, sem esperar a gravação.
+        long prazo = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel() != 10
+                && System.nanoTime() < prazo) {
+            Thread.sleep(20);
+        }
+        assertEquals(10, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+        assertTrue(reservaRepository.findByPedidoId(pedidoId).stream()
+                .allMatch(reserva -> reserva.getStatus() == ReservaStatus.EXPIRADA));
+    }
+
+    @Test
+    void recuperar_ShouldApplyChangesLeftByACrashBetweenCommits() throws InterruptedException {
+        String reservado = novoProduto(10);
+        String confirmado = novoProduto(10);
+        // Queda depois do commit do shard e antes da transação das reservas: o estorno fica sem marca.
+        estoqueShards.reservar(Map.of(reservado, 4));
+        // Queda depois do commit da confirmação e antes de a baixa chegar ao shard.
+        transactionTemplate.executeWithoutResult(status -> estoqueShards.registrar(Map.of(confirmado, 3),
+                MotivoMovimento.CONFIRMACAO));
+        assertEquals(6, estoqueRepository.findById(reservado).orElseThrow().getQuantidadeDisponivel());
+
+        // Partida de outra instância no mesmo banco.
+        EstoqueShards reiniciado = new EstoqueShards(estoqueRepository, movimentosEstoque, transactionTemplate,
+                estoqueCache, new SimpleMeterRegistry(), 1, 16, 16, Duration.ofSeconds(5));
+        try {
+            reiniciado.recuperar();
+        } finally {
+            reiniciado.parar();
+        }
+
+        assertEquals(10, estoqueRepository.findById(reservado).orElseThrow().getQuantidadeDisponivel());
+        assertEquals(7, estoqueRepository.findById(confirmado).orElseThrow().getQuantidadeReal());
+    }
+
+    @Test
+    void reservar_ShouldFailImmediately_WhenShardsAreStopped() throws InterruptedException {
+        String productSKU = novoProduto(10);
+        EstoqueShards parado = new EstoqueShards(estoqueRepository, movimentosEstoque, transactionTemplate,
+                estoqueCache, new SimpleMeterRegistry(), 1, 16, 16, Duration.ofSeconds(30));
+        parado.parar();
+
+        long inicio = System.nanoTime();
+        assertThrows(StockEngineUnavailableException.class, () -> parado.reservar(Map.of(productSKU, 4)));
+        assertThrows(StockEngineUnavailableException.class, () -> parado.aplicar(
+                new EstoqueShards.Pendencia(MotivoMovimento.CANCELAMENTO, Map.of(productSKU, 1), Map.of())));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - inicio).toSeconds() < 5);
+        assertEquals(10, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+    }
+
+    @Test
+    void reservar_ShouldGiveUpAfterMaximumWaitAndReturnTheLateReservation() throws InterruptedException {
+        String productSKU = novoProduto(10);
+        MeterRegistry registro = new SimpleMeterRegistry();
+        EstoqueShards lento = new EstoqueShards(estoqueRepository, movimentosEstoque, transactionTemplate,
+                estoqueCache, registro, 1, 16, 16, Duration.ofMillis(200));
+        // Outra transação segura a linha do SKU, e a escritora do shard fica parada no UPDATE.
+        CountDownLatch travada = new CountDownLatch(1);
+        Thread trava = Thread.ofPlatform().start(() -> transactionTemplate.executeWithoutResult(status -> {
+            estoqueRepository.aplicarDelta(productSKU, 0, 0, LocalDateTime.now());
+            travada.countDown();
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            assertTrue(travada.await(10, TimeUnit.SECONDS));
+
+            assertThrows(StockEngineUnavailableException.class, () -> lento.reservar(Map.of(productSKU, 4)));
+
+            // Quando a linha é liberada a reserva é gravada e, sem ninguém esperando por ela, estornada: dois commits.
+            trava.join();
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (registro.get("estoque.shards.commit.comandos").summary().count() < 2
+                    && System.nanoTime() < limite) {
+                Thread.sleep(50);
+            }
+        } finally {
+            lento.parar();
+        }
+        assertEquals(10, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+    }
+
+    private String novoProduto(int quantidade) {
+        String productSKU = "shards-" + UUID.randomUUID();
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(quantidade)
+                .quantidadeReal(quantidade)
+                .updatedAt(LocalDateTime.now())
+                .build());
+        skus.add(productSKU);
+        return productSKU;
+    }
+
+    private static int shard(String productSKU) {
+        return Math.floorMod(productSKU.hashCode(), SHARDS);
+    }
+
+    private static PedidoDTO pedido(String productSKU, int quantidade) {
+        return new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, quantidade)), UUID.randomUUID().toString());
+    }
+
+    private List<ReservaEstoque> reservasDo(String productSKU) {
+        return reservaRepository.findAll().stream().filter(r -> r.getProductSKU().equals(productSKU)).toList();
+    }
+}
@@ -0,0 +1,162 @@
+package com.tech_challenge.fiap_estoque_service.grpc;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.EstoqueGrpc;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.ItemPedido;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.Pedido;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.PedidoIdRequest;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.ProdutoRequest;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.ResultadoPedido;
+import com.tech_challenge.fiap_estoque_service.grpc.proto.ResultadoPedidoStatus;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Chamadas gRPC reais contra o servidor numa porta livre, sobre os mesmos casos de uso do REST.
+@SpringBootTest(properties = { "estoque.grpc.enabled=true", "estoque.grpc.porta=0" })
+class EstoqueGrpcIntegracaoTest {
+
+    @Autowired
+    private ServidorGrpc servidorGrpc;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    private final String productSKU = "grpc-" + UUID.randomUUID();
+
+    private ManagedChannel canal;
+
+    @BeforeEach
+    void setUp() {
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(2)
+                .quantidadeReal(2)
+                .updatedAt(LocalDateTime.now())
+                .build());
+        canal = Grpc.newChannelBuilderForAddress("localhost", servidorGrpc.getPorta(),
+                InsecureChannelCredentials.create()).build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        canal.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        reservaRepository.deleteAll(reservaRepository.findAll().stream()
+                .filter(r -> r.getProductSKU().equals(productSKU)).toList());
+        estoqueRepository.deleteById(productSKU);
+    }
+
+    @Test
+    void reservarECancelar_ShouldUpdateAvailableStock() {
+        EstoqueGrpc.EstoqueBlockingStub stub = EstoqueGrpc.newBlockingStub(canal);
+        String pedidoId = "grpc-pedido-" + UUID.randomUUID();
+
+        stub.reservar(pedido(pedidoId, 1));
+        assertEquals(1, disponivel(stub));
+
+        stub.cancelar(PedidoIdRequest.newBuilder().setPedidoId(pedidoId).build());
+        assertEquals(2, disponivel(stub));
+    }
+
+    @Test
+    void reservar_ShouldFailWithFailedPrecondition_WhenStockIsInsufficient() {
+        EstoqueGrpc.EstoqueBlockingStub stub = EstoqueGrpc.newBlockingStub(canal);
+
+        StatusRuntimeException ex = assertThrows(StatusRuntimeException.class,
+                () -> stub.reservar(pedido("grpc-pedido-" + UUID.randomUUID(), 3)));
+
+        assertEquals(Status.Code.FAILED_PRECONDITION, ex.getStatus().getCode());
+        assertEquals(2, disponivel(stub));
+    }
+
+    @Test
+    void getEstoque_ShouldFailWithNotFound_WhenProductDoesNotExist() {
+        EstoqueGrpc.EstoqueBlockingStub stub = EstoqueGrpc.newBlockingStub(canal);
+
+        StatusRuntimeException ex = assertThrows(StatusRuntimeException.class,
+                () -> stub.getEstoque(ProdutoRequest.newBuilder().setProductSku("grpc-inexistente").build()));
+
+        assertEquals(Status.Code.NOT_FOUND, ex.getStatus().getCode());
+    }
+
+    @Test
+    void confirmar_ShouldFailWithFailedPrecondition_WhenReservationWasCancelled() {
+        EstoqueGrpc.EstoqueBlockingStub stub = EstoqueGrpc.newBlockingStub(canal);
+        String pedidoId = "grpc-pedido-" + UUID.randomUUID();
+        stub.reservar(pedido(pedidoId, 1));
+        stub.cancelar(PedidoIdRequest.newBuilder().setPedidoId(pedidoId).build());
+
+        StatusRuntimeException ex = assertThrows(StatusRuntimeException.class,
+                () -> stub.confirmar(PedidoIdRequest.newBuilder().setPedidoId(pedidoId).build()));
+
+        assertEquals(Status.Code.FAILED_PRECONDITION, ex.getStatus().getCode());
+    }
+
+    @Test
+    void reservarStream_ShouldAnswerEachOrderInSendingOrder() throws Exception {
+        List<ResultadoPedido> resultados = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> fim = new CompletableFuture<>();
+        StreamObserver<Pedido> envio = EstoqueGrpc.newStub(canal).reservarStream(new StreamObserver<>() {
+            @Override
+            public void onNext(ResultadoPedido resultado) {
+                resultados.add(resultado);
+            }
+
+            @Override
+            public void onError(Throwable erro) {
+                fim.completeExceptionally(erro);
+            }
+
+            @Override
+            public void onCompleted() {
+                fim.complete(null);
+            }
+        });
+
+        // O estoque tem dois itens: o terceiro pedido fica sem estoque.
+        envio.onNext(pedido("grpc-stream-1", 1));
+        envio.onNext(pedido("grpc-stream-2", 1));
+        envio.onNext(pedido("grpc-stream-3", 1));
+        envio.onCompleted();
+        fim.get(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of("grpc-stream-1", "grpc-stream-2", "grpc-stream-3"),
+                resultados.stream().map(ResultadoPedido::getPedidoId).toList());
+        assertEquals(List.of(ResultadoPedidoStatus.SUCESSO, ResultadoPedidoStatus.SUCESSO,
+                ResultadoPedidoStatus.SEM_ESTOQUE), resultados.stream().map(ResultadoPedido::getStatus).toList());
+    }
+
+    private int disponivel(EstoqueGrpc.EstoqueBlockingStub stub) {
+        return stub.getEstoque(ProdutoRequest.newBuilder().setProductSku(productSKU).build())
+                .getQuantidadeDisponivel();
+    }
+
+    private Pedido pedido(String pedidoId, int qtd) {
+        return Pedido.newBuilder()
+                .setPedidoId(pedidoId)
+                .addPedidos(ItemPedido.newBuilder().setProductSku(productSKU).setQtd(qtd))
+                .build();
+    }
+}
@@ -0,0 +1,98 @@
+package com.tech_challenge.fiap_estoque_service.metricas;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.dto.ContagemPorStatusDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.SkuQuenteDTO;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.NotificacaoPedidoRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ColetorMetricasEstoqueTest {
+
+    @Mock
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Mock
+    private NotificacaoPedidoRepository notificacaoRepository;
+
+    @Mock
+    private EstoqueRepository estoqueRepository;
+
+    @Mock
+    private SkusQuentes skusQuentes;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ColetorMetricasEstoque coletor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        coletor = new ColetorMetricasEstoque(meterRegistry, reservaRepository, notificacaoRepository,
+                estoqueRepository, Optional.empty(), skusQuentes, List.of("PROD001", "PROD002"));
+    }
+
+    @Test
+    void atualizar_ShouldPublishGaugesFromRepositories() {
+        when(reservaRepository.contarPorStatus()).thenReturn(List.of(
+                new ContagemPorStatusDTO(ReservaStatus.PENDENTE, 7),
+                new ContagemPorStatusDTO(ReservaStatus.CONFIRMADA, 3)));
+        when(reservaRepository.countByStatusAndExpiresAtBefore(eq(ReservaStatus.PENDENTE), any(LocalDateTime.class)))
+                .thenReturn(2L);
+        when(notificacaoRepository.count()).thenReturn(5L);
+        when(estoqueRepository.findAllById(List.of("PROD001", "PROD002"))).thenReturn(List.of(
+                Estoque.builder().productSKU("PROD001").quantidadeDisponivel(42).build()));
+
+        coletor.atualizar();
+
+        assertEquals(7.0, meterRegistry.get("estoque.reservas").tag("status", "PENDENTE").gauge().value());
+        assertEquals(3.0, meterRegistry.get("estoque.reservas").tag("status", "CONFIRMADA").gauge().value());
+        assertEquals(0.0, meterRegistry.get("estoque.reservas").tag("status", "EXPIRADA").gauge().value());
+        assertEquals(2.0, meterRegistry.get("estoque.expiracao.backlog").gauge().value());
+        assertEquals(5.0, meterRegistry.get("estoque.outbox.pendentes").gauge().value());
+        assertEquals(42.0, meterRegistry.get("estoque.disponivel").tag("sku", "PROD001").gauge().value());
+        assertNull(meterRegistry.find("estoque.disponivel").tag("sku", "PROD002").gauge());
+    }
+
+    @Test
+    void atualizar_ShouldFollowHottestWrittenSkus_WhenNoSkuIsConfigured() {
+        coletor = new ColetorMetricasEstoque(meterRegistry, reservaRepository, notificacaoRepository,
+                estoqueRepository, Optional.empty(), skusQuentes, List.of());
+        when(reservaRepository.contarPorStatus()).thenReturn(List.of());
+        when(skusQuentes.quentesEscrita()).thenReturn(List.of(new SkuQuenteDTO("PROD009", 120)));
+        when(estoqueRepository.findAllById(List.of("PROD009"))).thenReturn(List.of(
+                Estoque.builder().productSKU("PROD009").quantidadeDisponivel(3).build()));
+
+        coletor.atualizar();
+
+        assertEquals(3.0, meterRegistry.get("estoque.disponivel").tag("sku", "PROD009").gauge().value());
+    }
+
+    @Test
+    void atualizar_ShouldKeepPreviousValues_WhenRepositoryFails() {
+        when(reservaRepository.contarPorStatus()).thenReturn(List.of());
+        when(notificacaoRepository.count()).thenReturn(5L);
+        coletor.atualizar();
+
+        when(reservaRepository.contarPorStatus()).thenThrow(new IllegalStateException("banco fora"));
+        coletor.atualizar();
+
+        assertEquals(5.0, meterRegistry.get("estoque.outbox.pendentes").gauge().value());
+    }
+}
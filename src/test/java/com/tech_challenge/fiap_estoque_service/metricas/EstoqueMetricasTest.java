@@ -0,0 +1,51 @@
+package com.tech_challenge.fiap_estoque_service.metricas;
+
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoStatus;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EstoqueMetricasTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private EstoqueMetricas estoqueMetricas;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        estoqueMetricas = new EstoqueMetricas(meterRegistry);
+    }
+
+    @Test
+    void medirAcao_ShouldTagSuccessAndExceptionOutcomes() {
+        estoqueMetricas.medirAcao("updateEstoque", () -> {
+        });
+        assertThrows(OutOfStockException.class, () -> estoqueMetricas.medirAcao("updateEstoque", () -> {
+            throw new OutOfStockException("PROD001");
+        }));
+
+        assertEquals(1, meterRegistry.get("estoque.operacao").tag("operacao", "updateEstoque")
+                .tag("resultado", EstoqueMetricas.SUCESSO).timer().count());
+        assertEquals(1, meterRegistry.get("estoque.operacao").tag("operacao", "updateEstoque")
+                .tag("resultado", "OutOfStockException").timer().count());
+    }
+
+    @Test
+    void medirLote_ShouldCountOrdersByResultStatus() {
+        List<ResultadoPedidoDTO> resultados = estoqueMetricas.medirLote("updateEstoqueEmLote", () -> List.of(
+                ResultadoPedidoDTO.sucesso("p1"),
+                ResultadoPedidoDTO.sucesso("p2"),
+                new ResultadoPedidoDTO("p3", ResultadoPedidoStatus.SEM_ESTOQUE, "sem estoque")));
+
+        assertEquals(3, resultados.size());
+        assertEquals(2.0, meterRegistry.get("estoque.lote.pedidos").tag("resultado", "SUCESSO").counter().count());
+        assertEquals(1.0, meterRegistry.get("estoque.lote.pedidos").tag("resultado", "SEM_ESTOQUE").counter()
+                .count());
+    }
+}
@@ -0,0 +1,73 @@
+package com.tech_challenge.fiap_estoque_service.metricas;
+
+import com.tech_challenge.fiap_estoque_service.dto.SkuQuenteDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SketchSkusQuentesTest {
+
+    @Test
+    void quentes_ShouldFindHeavyHittersAmongManyColdSkus() {
+        SketchSkusQuentes sketch = new SketchSkusQuentes(4, 1024, 5);
+
+        for (int rodada = 0; rodada < 200; rodada++) {
+            for (int quente = 0; quente < 3; quente++) {
+                sketch.registrar("quente-" + quente);
+            }
+            for (int frio = 0; frio < 50; frio++) {
+                sketch.registrar("frio-" + (rodada * 50 + frio));
+            }
+        }
+
+        List<SkuQuenteDTO> quentes = sketch.quentes();
+        assertTrue(quentes.size() <= 5);
+        assertEquals(Set.of("quente-0", "quente-1", "quente-2"), quentes.subList(0, 3).stream()
+                .map(SkuQuenteDTO::productSKU).collect(Collectors.toSet()));
+        // Count-Min nunca subestima.
+        assertTrue(quentes.get(0).estimativa() >= 200);
+    }
+
+    @Test
+    void decair_ShouldHalveCountsAndDropSkusThatReachZero() {
+        SketchSkusQuentes sketch = new SketchSkusQuentes(4, 1024, 5);
+        for (int i = 0; i < 8; i++) {
+            sketch.registrar("PROD001");
+        }
+        sketch.registrar("PROD002");
+
+        sketch.decair();
+
+        assertEquals(4, sketch.estimar("PROD001"));
+        assertEquals(List.of(new SkuQuenteDTO("PROD001", 4)), sketch.quentes());
+    }
+
+    @Test
+    void registrar_ShouldNotLoseCountsUnderConcurrency() throws InterruptedException {
+        SketchSkusQuentes sketch = new SketchSkusQuentes(4, 1024, 5);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int thread = 0; thread < 8; thread++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        sketch.registrar("PROD001");
+                    }
+                });
+            }
+        }
+
+        assertEquals(80_000, sketch.estimar("PROD001"));
+        assertEquals("PROD001", sketch.quentes().get(0).productSKU());
+    }
+
+    @Test
+    void constructor_ShouldRejectWidthThatIsNotPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new SketchSkusQuentes(4, 1000, 5));
+    }
+}
@@ -0,0 +1,175 @@
+package com.tech_challenge.fiap_estoque_service.outbox;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.NotificacaoPedido;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoRequestDTO;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+import com.tech_challenge.fiap_estoque_service.gateway.NotificacaoPedidoRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.PedidoClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class NotificacaoPedidoDispatcherTest {
+
+    @Mock
+    private NotificacaoPedidoRepository notificacaoRepository;
+
+    @Mock
+    private PedidoClient pedidoClient;
+
+    private NotificacaoPedidoDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        dispatcher = new NotificacaoPedidoDispatcher(notificacaoRepository, pedidoClient, 10, 1000, 60000, 3, 30000);
+        when(notificacaoRepository.reivindicar(any(), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenReturn(1);
+    }
+
+    @Test
+    void despachar_ShouldSendNotificationsOfAnOrderInOrderAndDeleteThem() {
+        NotificacaoPedido expirado = notificacao("pedido-1", TipoNotificacao.EXPIRADO, 0);
+        NotificacaoPedido sucesso = notificacao("pedido-1", TipoNotificacao.SUCESSO, 0);
+        when(notificacaoRepository.findByProximaTentativaLessThanEqualOrderByCreatedAtAsc(any(LocalDateTime.class),
+                any(Limit.class))).thenReturn(List.of(expirado, sucesso));
+        when(notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc("pedido-1")).thenReturn(List.of(expirado, sucesso));
+
+        dispatcher.despachar();
+
+        InOrder inOrder = inOrder(pedidoClient);
+        inOrder.verify(pedidoClient).changeToClosedExpired(new PedidoRequestDTO("pedido-1"));
+        inOrder.verify(pedidoClient).changeToClosedSuccess(new PedidoRequestDTO("pedido-1"));
+        verify(notificacaoRepository, times(1)).delete(expirado);
+        verify(notificacaoRepository, times(1)).delete(sucesso);
+    }
+
+    @Test
+    void despachar_ShouldBackOffAndHoldLaterNotifications_WhenSendFails() {
+        NotificacaoPedido expirado = notificacao("pedido-1", TipoNotificacao.EXPIRADO, 1);
+        NotificacaoPedido sucesso = notificacao("pedido-1", TipoNotificacao.SUCESSO, 0);
+        when(notificacaoRepository.findByProximaTentativaLessThanEqualOrderByCreatedAtAsc(any(LocalDateTime.class),
+                any(Limit.class))).thenReturn(List.of(expirado));
+        when(notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc("pedido-1")).thenReturn(List.of(expirado, sucesso));
+        doThrow(new IllegalStateException("indisponível")).when(pedidoClient).changeToClosedExpired(any());
+
+        LocalDateTime antes = LocalDateTime.now();
+        dispatcher.despachar();
+
+        assertEquals(2, expirado.getTentativas());
+        // Segunda falha: backoff de 2x o inicial.
+        assertTrue(expirado.getProximaTentativa().isAfter(antes.plusNanos(1_900_000_000L)));
+        verify(notificacaoRepository, times(1)).save(expirado);
+        verify(notificacaoRepository, never()).delete(any(NotificacaoPedido.class));
+        verify(pedidoClient, never()).changeToClosedSuccess(any());
+    }
+
+    @Test
+    void despachar_ShouldNotSendAheadOfAnEarlierNotificationStillWaiting() {
+        NotificacaoPedido esperando = notificacao("pedido-1", TipoNotificacao.EXPIRADO, 1);
+        esperando.setProximaTentativa(LocalDateTime.now().plusMinutes(1));
+        NotificacaoPedido sucesso = notificacao("pedido-1", TipoNotificacao.SUCESSO, 0);
+        when(notificacaoRepository.findByProximaTentativaLessThanEqualOrderByCreatedAtAsc(any(LocalDateTime.class),
+                any(Limit.class))).thenReturn(List.of(sucesso));
+        when(notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc("pedido-1"))
+                .thenReturn(List.of(esperando, sucesso));
+
+        dispatcher.despachar();
+
+        verifyNoInteractions(pedidoClient);
+    }
+
+    @Test
+    void despachar_ShouldDiscardNotification_AfterMaxAttempts() {
+        NotificacaoPedido expirado = notificacao("pedido-1", TipoNotificacao.EXPIRADO, 2);
+        when(notificacaoRepository.findByProximaTentativaLessThanEqualOrderByCreatedAtAsc(any(LocalDateTime.class),
+                any(Limit.class))).thenReturn(List.of(expirado));
+        when(notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc("pedido-1")).thenReturn(List.of(expirado));
+        doThrow(new IllegalStateException("indisponível")).when(pedidoClient).changeToClosedExpired(any());
+
+        dispatcher.despachar();
+
+        verify(notificacaoRepository, times(1)).delete(expirado);
+        verify(notificacaoRepository, never()).save(any(NotificacaoPedido.class));
+    }
+
+    @Test
+    void despachar_ShouldSendDifferentOrdersIndependently() {
+        NotificacaoPedido falha = notificacao("pedido-1", TipoNotificacao.EXPIRADO, 0);
+        NotificacaoPedido ok = notificacao("pedido-2", TipoNotificacao.EXPIRADO, 0);
+        when(notificacaoRepository.findByProximaTentativaLessThanEqualOrderByCreatedAtAsc(any(LocalDateTime.class),
+                any(Limit.class))).thenReturn(List.of(falha, ok));
+        when(notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc("pedido-1")).thenReturn(List.of(falha));
+        when(notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc("pedido-2")).thenReturn(List.of(ok));
+        doThrow(new IllegalStateException("indisponível")).when(pedidoClient)
+                .changeToClosedExpired(new PedidoRequestDTO("pedido-1"));
+
+        dispatcher.despachar();
+
+        verify(notificacaoRepository, times(1)).delete(ok);
+        verify(notificacaoRepository, never()).delete(falha);
+    }
+
+    @Test
+    void despachar_ShouldNotSend_WhenAnotherInstanceClaimedTheNotification() {
+        NotificacaoPedido expirado = notificacao("pedido-1", TipoNotificacao.EXPIRADO, 0);
+        when(notificacaoRepository.findByProximaTentativaLessThanEqualOrderByCreatedAtAsc(any(LocalDateTime.class),
+                any(Limit.class))).thenReturn(List.of(expirado));
+        when(notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc("pedido-1")).thenReturn(List.of(expirado));
+        when(notificacaoRepository.reivindicar(eq(expirado.getId()), eq(expirado.getProximaTentativa()),
+                any(LocalDateTime.class))).thenReturn(0);
+
+        dispatcher.despachar();
+
+        verifyNoInteractions(pedidoClient);
+        verify(notificacaoRepository, never()).delete(any(NotificacaoPedido.class));
+    }
+
+    @Test
+    void agendarDespacho_ShouldReturnWithoutWaitingForPedidoService() throws InterruptedException {
+        NotificacaoPedido expirado = notificacao("pedido-1", TipoNotificacao.EXPIRADO, 0);
+        when(notificacaoRepository.findByProximaTentativaLessThanEqualOrderByCreatedAtAsc(any(LocalDateTime.class),
+                any(Limit.class))).thenReturn(List.of(expirado));
+        when(notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc("pedido-1")).thenReturn(List.of(expirado));
+        CountDownLatch liberar = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            liberar.await();
+            return null;
+        }).when(pedidoClient).changeToClosedExpired(any());
+
+        dispatcher.agendarDespacho();
+        verify(pedidoClient, timeout(1000)).changeToClosedExpired(any());
+        // Rodada anterior ainda presa no envio: a próxima não começa outra.
+        dispatcher.despachar();
+        verify(notificacaoRepository, times(1)).findByProximaTentativaLessThanEqualOrderByCreatedAtAsc(
+                any(LocalDateTime.class), any(Limit.class));
+
+        liberar.countDown();
+        verify(notificacaoRepository, timeout(1000)).delete(expirado);
+        dispatcher.parar();
+    }
+
+    private NotificacaoPedido notificacao(String pedidoId, TipoNotificacao tipo, int tentativas) {
+        return NotificacaoPedido.builder()
+                .id(UUID.randomUUID().toString())
+                .pedidoId(pedidoId)
+                .tipo(tipo)
+                .tentativas(tentativas)
+                .proximaTentativa(LocalDateTime.now().minusSeconds(1))
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
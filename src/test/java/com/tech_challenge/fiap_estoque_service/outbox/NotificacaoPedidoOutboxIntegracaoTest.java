@@ -0,0 +1,182 @@
+package com.tech_challenge.fiap_estoque_service.outbox;
+
+import com.sun.net.httpserver.HttpServer;
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoRequestDTO;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.NotificacaoPedidoRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.PedidoClient;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.usecase.EstoqueUseCase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Sobe um stub local do pedido-service para exercitar o outbox de ponta a ponta, inclusive a nova tentativa. O banco
+// é só deste contexto: os dispatchers dos outros contextos em cache apontam para outro pedido-service e, num banco
+// compartilhado, reivindicariam as notificações daqui.
+@SpringBootTest(properties = { "estoque.outbox.intervalo-ms=50", "estoque.outbox.backoff-inicial-ms=100",
+        "spring.datasource.url=jdbc:h2:mem:outbox",
+        "spring.cloud.openfeign.client.config.default.connect-timeout=10000" })
+class NotificacaoPedidoOutboxIntegracaoTest {
+
+    private static final HttpServer pedidoService = iniciarStub();
+    private static final List<String> recebidas = new CopyOnWriteArrayList<>();
+    private static final AtomicInteger falhasRestantes = new AtomicInteger();
+
+    @Autowired
+    private EstoqueUseCase estoqueUseCase;
+
+    @Autowired
+    private NotificacaoPedidoOutbox notificacaoOutbox;
+
+    @Autowired
+    private NotificacaoPedidoRepository notificacaoRepository;
+
+    @Autowired
+    private PedidoClient pedidoClient;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final String productSKU = "outbox-" + UUID.randomUUID();
+
+    @DynamicPropertySource
+    static void pedidoServiceUrl(DynamicPropertyRegistry registry) {
+        registry.add("pedido.service.url",
+                () -> "http://localhost:" + pedidoService.getAddress().getPort() + "/pedido");
+    }
+
+    @AfterAll
+    static void pararStub() {
+        pedidoService.stop(0);
+    }
+
+    @BeforeEach
+    void setUp() {
+        recebidas.clear();
+        falhasRestantes.set(0);
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(10)
+                .quantidadeReal(10)
+                .updatedAt(LocalDateTime.now())
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        reservaRepository.deleteAll(reservaRepository.findAll().stream()
+                .filter(r -> r.getProductSKU().equals(productSKU)).toList());
+        estoqueRepository.deleteById(productSKU);
+    }
+
+    @Test
+    void shouldNotifySuccessAfterConfirmation() throws InterruptedException {
+        String pedidoId = UUID.randomUUID().toString();
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 2)), pedidoId));
+
+        estoqueUseCase.updateStatusToConfirmed(pedidoId);
+
+        aguardar(() -> recebidas.contains("/pedido/success " + pedidoId));
+        aguardar(() -> notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc(pedidoId).isEmpty());
+    }
+
+    @Test
+    void shouldRetryAndKeepOrderPerOrder_WhenPedidoServiceFails() throws InterruptedException {
+        String pedidoId = UUID.randomUUID().toString();
+        falhasRestantes.set(2);
+
+        transactionTemplate.executeWithoutResult(
+                status -> notificacaoOutbox.registrar(List.of(pedidoId, pedidoId), TipoNotificacao.EXPIRADO));
+        Thread.sleep(5);
+        transactionTemplate.executeWithoutResult(
+                status -> notificacaoOutbox.registrar(List.of(pedidoId), TipoNotificacao.SUCESSO));
+        // Registrar de novo o mesmo pedido e tipo não gera outra notificação.
+        transactionTemplate.executeWithoutResult(
+                status -> notificacaoOutbox.registrar(List.of(pedidoId), TipoNotificacao.EXPIRADO));
+
+        // Outras notificações da aplicação (reserva de exemplo, testes anteriores) também chegam ao stub.
+        aguardar(() -> doPedido(pedidoId).size() == 2);
+        assertEquals(List.of("/pedido/expried " + pedidoId, "/pedido/success " + pedidoId), doPedido(pedidoId));
+    }
+
+    @Test
+    void pedidoClient_ShouldReuseTheSharedHttpClient() {
+        pedidoClient.changeToClosedSuccess(new PedidoRequestDTO(UUID.randomUUID().toString()));
+        long seletoras = seletorasHttpClient();
+
+        // Cada HttpClient novo traz uma thread seletora; mesmo com o connect-timeout do Feign diferente do
+        // HttpClient compartilhado, nenhum é criado.
+        for (int i = 0; i < 20; i++) {
+            pedidoClient.changeToClosedSuccess(new PedidoRequestDTO(UUID.randomUUID().toString()));
+        }
+
+        assertEquals(seletoras, seletorasHttpClient());
+    }
+
+    private static long seletorasHttpClient() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().endsWith("-SelectorManager"))
+                .count();
+    }
+
+    private static List<String> doPedido(String pedidoId) {
+        return recebidas.stream().filter(recebida -> recebida.endsWith(" " + pedidoId)).toList();
+    }
+
+    private static void aguardar(BooleanSupplier condicao) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 10_000;
+        while (!condicao.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < limite, "Condição não atingida a tempo");
+            Thread.sleep(20);
+        }
+    }
+
+    private static HttpServer iniciarStub() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/pedido/", exchange -> {
+                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                boolean falhar = falhasRestantes.getAndUpdate(restantes -> Math.max(0, restantes - 1)) > 0;
+                if (!falhar) {
+                    String pedidoId = body.replaceAll(".*\"pedidoId\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+                    recebidas.add(exchange.getRequestURI().getPath() + " " + pedidoId);
+                }
+                exchange.sendResponseHeaders(falhar ? 503 : 200, -1);
+                exchange.close();
+            });
+            server.start();
+            return server;
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.tech_challenge.fiap_estoque_service.outbox;
+
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+import com.tech_challenge.fiap_estoque_service.gateway.NotificacaoPedidoRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.PedidoReservaRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Sem pedido-service no ar as notificações continuam na tabela, então dá para contá-las depois do registro.
+@SpringBootTest
+class NotificacaoPedidoOutboxRegistroIntegracaoTest {
+
+    @Autowired
+    private NotificacaoPedidoOutbox notificacaoOutbox;
+
+    @Autowired
+    private NotificacaoPedidoRepository notificacaoRepository;
+
+    @Autowired
+    private PedidoReservaRepository pedidoReservaRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final String pedidoId = "outbox-" + UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        notificacaoRepository.deleteAll(notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc(pedidoId));
+        pedidoReservaRepository.deleteById(pedidoId);
+    }
+
+    @Test
+    void registrar_ShouldWaitForConcurrentRegistrationOfSameOrderInsteadOfFailing() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> pedidoReservaRepository.registrar(pedidoId,
+                LocalDateTime.now()));
+        CountDownLatch registrou = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+
+        // Dois lotes da expiração com reservas diferentes do mesmo pedido.
+        CompletableFuture<Void> primeiro = CompletableFuture.runAsync(() -> transactionTemplate
+                .executeWithoutResult(status -> {
+                    notificacaoOutbox.registrar(List.of(pedidoId), TipoNotificacao.EXPIRADO);
+                    registrou.countDown();
+                    aguardar(liberar);
+                }));
+        assertTrue(registrou.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> segundo = CompletableFuture.runAsync(() -> transactionTemplate
+                .executeWithoutResult(status -> notificacaoOutbox.registrar(List.of(pedidoId),
+                        TipoNotificacao.EXPIRADO)));
+
+        Thread.sleep(200);
+        assertFalse(segundo.isDone());
+        liberar.countDown();
+
+        assertDoesNotThrow(() -> primeiro.get(5, TimeUnit.SECONDS));
+        assertDoesNotThrow(() -> segundo.get(5, TimeUnit.SECONDS));
+        assertEquals(1, notificacaoRepository.findByPedidoIdOrderByCreatedAtAsc(pedidoId).size());
+    }
+
+    private static void aguardar(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
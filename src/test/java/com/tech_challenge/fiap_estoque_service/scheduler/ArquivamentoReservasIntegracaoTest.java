@@ -0,0 +1,161 @@
+package com.tech_challenge.fiap_estoque_service.scheduler;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoqueHistorico;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.exception.ReservationCannotBeCancelledException;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueHistoricoRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.usecase.EstoqueUseCase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "estoque.arquivamento.intervalo-ms=3600000")
+class ArquivamentoReservasIntegracaoTest {
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Autowired
+    private ReservaEstoqueHistoricoRepository historicoRepository;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EstoqueUseCase estoqueUseCase;
+
+    private final List<String> pedidos = new ArrayList<>();
+    private final List<String> skus = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        reservaRepository.deleteAll(reservaRepository.findByPedidoIdIn(pedidos));
+        pedidos.forEach(pedidoId -> historicoRepository.deleteAll(historicoRepository.findByPedidoId(pedidoId)));
+        estoqueRepository.deleteAllById(skus);
+    }
+
+    @Test
+    void arquivar_ShouldMoveOnlyOrdersWhoseReservationsAreAllFinalAndOld() {
+        LocalDateTime antiga = LocalDateTime.now().minusDays(2);
+        String cancelado = novoPedido(antiga, ReservaStatus.CANCELADA, ReservaStatus.CANCELADA);
+        String expirado = novoPedido(antiga, ReservaStatus.EXPIRADA);
+        String confirmado = novoPedido(antiga, ReservaStatus.CONFIRMADA, ReservaStatus.CONFIRMADA);
+        String pendente = novoPedido(antiga, ReservaStatus.PENDENTE);
+        String recente = novoPedido(LocalDateTime.now(), ReservaStatus.CANCELADA);
+
+        // Lotes de dois pedidos, para passar por mais de uma transação.
+        new ArquivamentoReservasScheduler(reservaRepository, historicoRepository, transactionTemplate,
+                Duration.ofDays(1), 2, 0, 30000).arquivar();
+
+        for (String pedidoId : List.of(cancelado, expirado, confirmado)) {
+            assertTrue(reservaRepository.findByPedidoId(pedidoId).isEmpty());
+            assertFalse(historicoRepository.findByPedidoId(pedidoId).isEmpty());
+        }
+        assertEquals(2, historicoRepository.findByPedidoId(confirmado).size());
+        assertTrue(historicoRepository.findByPedidoId(confirmado).stream()
+                .allMatch(reserva -> reserva.getStatus() == ReservaStatus.CONFIRMADA
+                        && reserva.getArquivadaEm() != null));
+        for (String pedidoId : List.of(pendente, recente)) {
+            assertEquals(1, reservaRepository.findByPedidoId(pedidoId).size());
+            assertTrue(historicoRepository.findByPedidoId(pedidoId).isEmpty());
+        }
+    }
+
+    @Test
+    void updateStatus_ShouldFallBackToHistory_WhenOrderWasArchived() {
+        LocalDateTime antiga = LocalDateTime.now().minusDays(2);
+        String cancelado = novoPedido(antiga, ReservaStatus.CANCELADA);
+        String confirmado = novoPedido(antiga, ReservaStatus.CONFIRMADA);
+        new ArquivamentoReservasScheduler(reservaRepository, historicoRepository, transactionTemplate,
+                Duration.ofDays(1), 100, 0, 30000).arquivar();
+
+        // Repetições respondem como antes do arquivamento e nada volta para a tabela quente.
+        assertDoesNotThrow(() -> estoqueUseCase.updateStatusToCancel(cancelado));
+        assertDoesNotThrow(() -> estoqueUseCase.updateStatusToConfirmed(confirmado));
+        assertThrows(ReservationCannotBeCancelledException.class,
+                () -> estoqueUseCase.updateStatusToCancel(confirmado));
+        assertTrue(reservaRepository.findByPedidoIdIn(List.of(cancelado, confirmado)).isEmpty());
+        assertEquals(ReservaStatus.CANCELADA,
+                historicoRepository.findByPedidoId(cancelado).stream().map(ReservaEstoqueHistorico::getStatus)
+                        .findFirst().orElseThrow());
+    }
+
+    @Test
+    void updateStatusToCancel_ShouldLeaveStockUntouched_WhenExpiredOrderIsCancelledBeforeAndAfterArchiving() {
+        String productSKU = "arquivo-" + UUID.randomUUID();
+        skus.add(productSKU);
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(10)
+                .quantidadeReal(10)
+                .updatedAt(LocalDateTime.now())
+                .build());
+        // O estoque da reserva já voltou na expiração: as 10 unidades estão todas disponíveis.
+        String expirado = novoPedido(productSKU, LocalDateTime.now().minusDays(2), ReservaStatus.EXPIRADA);
+
+        estoqueUseCase.updateStatusToCancel(expirado);
+        assertEquals(10, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+        assertEquals(List.of(ReservaStatus.EXPIRADA), reservaRepository.findByPedidoId(expirado).stream()
+                .map(ReservaEstoque::getStatus).toList());
+
+        new ArquivamentoReservasScheduler(reservaRepository, historicoRepository, transactionTemplate,
+                Duration.ofDays(1), 100, 0, 30000).arquivar();
+        assertTrue(reservaRepository.findByPedidoId(expirado).isEmpty());
+
+        estoqueUseCase.updateStatusToCancel(expirado);
+        assertEquals(10, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+    }
+
+    @Test
+    void somarPorLease_ShouldCountArchivedReservations() {
+        String leaseId = UUID.randomUUID().toString();
+        String arquivado = novoPedido(LocalDateTime.now().minusDays(2), ReservaStatus.CONFIRMADA);
+        String pendente = novoPedido(LocalDateTime.now(), ReservaStatus.PENDENTE);
+        for (ReservaEstoque reserva : reservaRepository.findByPedidoIdIn(List.of(arquivado, pendente))) {
+            reserva.setLeaseId(leaseId);
+            reservaRepository.save(reserva);
+        }
+        new ArquivamentoReservasScheduler(reservaRepository, historicoRepository, transactionTemplate,
+                Duration.ofDays(1), 100, 0, 30000).arquivar();
+
+        // A recuperação do lease vencido devolve só o que não virou reserva, arquivada ou não.
+        assertTrue(reservaRepository.findByPedidoId(arquivado).isEmpty());
+        assertEquals(2, reservaRepository.somarPorLease(leaseId));
+    }
+
+    private String novoPedido(LocalDateTime expiresAt, ReservaStatus... status) {
+        return novoPedido("PROD001", expiresAt, status);
+    }
+
+    private String novoPedido(String productSKU, LocalDateTime expiresAt, ReservaStatus... status) {
+        String pedidoId = "arquivo-" + UUID.randomUUID();
+        pedidos.add(pedidoId);
+        for (ReservaStatus s : status) {
+            reservaRepository.save(ReservaEstoque.builder()
+                    .pedidoId(pedidoId)
+                    .productSKU(productSKU)
+                    .quantidadeReservada(1)
+                    .status(s)
+                    .expiresAt(expiresAt)
+                    .build());
+        }
+        return pedidoId;
+    }
+}
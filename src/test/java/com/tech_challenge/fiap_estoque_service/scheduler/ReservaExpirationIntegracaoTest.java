@@ -0,0 +1,145 @@
+package com.tech_challenge.fiap_estoque_service.scheduler;
+
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+import com.tech_challenge.fiap_estoque_service.outbox.NotificacaoPedidoOutbox;
+import com.tech_challenge.fiap_estoque_service.transacao.RetentativaTransacao;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Várias "instâncias" da varredura, cada uma com vários workers, sobre as mesmas reservas vencidas no banco.
+@SpringBootTest(properties = "estoque.expiracao.varredura-ms=3600000")
+class ReservaExpirationIntegracaoTest {
+
+    private static final int INSTANCIAS = 3;
+    private static final int RESERVAS = 90;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private NotificacaoPedidoOutbox notificacaoOutbox;
+
+    @Autowired
+    private EstoqueCache estoqueCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final String productSKU = "expiracao-" + UUID.randomUUID();
+    private final List<String> pedidos = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(0)
+                .quantidadeReal(RESERVAS)
+                .updatedAt(LocalDateTime.now())
+                .build());
+        List<ReservaEstoque> reservas = new ArrayList<>();
+        for (int i = 0; i < RESERVAS; i++) {
+            String pedidoId = "expiracao-" + UUID.randomUUID();
+            pedidos.add(pedidoId);
+            reservas.add(ReservaEstoque.builder()
+                    .pedidoId(pedidoId)
+                    .productSKU(productSKU)
+                    .quantidadeReservada(1)
+                    .status(ReservaStatus.PENDENTE)
+                    .expiresAt(LocalDateTime.now().minusMinutes(1))
+                    .build());
+        }
+        reservaRepository.saveAll(reservas);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reservaRepository.deleteAll(reservaRepository.findByPedidoIdIn(pedidos));
+        estoqueRepository.deleteById(productSKU);
+    }
+
+    @Test
+    void cancelarReservasExpiradas_ShouldExpireEachReservationOnce_WithConcurrentInstancesAndWorkers()
+            throws InterruptedException {
+        List<ReservaExpirationScheduler> instancias = new ArrayList<>();
+        for (int i = 0; i < INSTANCIAS; i++) {
+            EstoqueMetricas estoqueMetricas = new EstoqueMetricas(new SimpleMeterRegistry());
+            instancias.add(new ReservaExpirationScheduler(reservaRepository, estoqueRepository, notificacaoOutbox,
+                    Optional.empty(), Optional.empty(), Optional.empty(), estoqueCache, estoqueMetricas, transactionTemplate,
+                    new RetentativaTransacao(estoqueMetricas, 4, 5, 200), 5, 30000, 4));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(INSTANCIAS);
+        CountDownLatch largada = new CountDownLatch(1);
+        for (ReservaExpirationScheduler instancia : instancias) {
+            executor.submit(() -> {
+                largada.await();
+                instancia.cancelarReservasExpiradas();
+                return null;
+            });
+        }
+        largada.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        // Uma devolução dupla deixaria o disponível acima do total reservado.
+        assertEquals(RESERVAS, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+        assertTrue(reservaRepository.findByPedidoIdIn(pedidos).stream()
+                .allMatch(reserva -> reserva.getStatus() == ReservaStatus.EXPIRADA));
+    }
+
+    @Test
+    void reivindicarExpiradas_ShouldSkipRowsClaimedByAnotherTransaction() throws InterruptedException {
+        CountDownLatch reivindicado = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        List<String> primeiroLote = new ArrayList<>();
+
+        Thread outraInstancia = new Thread(() -> transactionTemplate.executeWithoutResult(status -> {
+            // Pela roda de expiração: trava exatamente as reservas desses pedidos.
+            reservaRepository.reivindicarExpiradasDosPedidos(pedidos.subList(0, 10), LocalDateTime.now())
+                    .forEach(reserva -> primeiroLote.add(reserva.getId()));
+            reivindicado.countDown();
+            try {
+                liberar.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        outraInstancia.start();
+        assertTrue(reivindicado.await(30, TimeUnit.SECONDS));
+
+        List<String> segundoLote = transactionTemplate.execute(status -> reservaRepository
+                .reivindicarExpiradas(LocalDateTime.now(), RESERVAS).stream().map(ReservaEstoque::getId).toList());
+        liberar.countDown();
+        outraInstancia.join();
+
+        assertEquals(10, primeiroLote.size());
+        assertEquals(RESERVAS - 10, segundoLote.size());
+        assertTrue(segundoLote.stream().noneMatch(primeiroLote::contains));
+    }
+}
@@ -1,28 +1,36 @@
 package com.tech_challenge.fiap_estoque_service.scheduler;
 
-import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
 import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
-import com.tech_challenge.fiap_estoque_service.dto.PedidoRequestDTO;
 import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+import com.tech_challenge.fiap_estoque_service.engine.EstoqueEmMemoria;
 import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
-import com.tech_challenge.fiap_estoque_service.gateway.PedidoClient;
 import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
-import feign.FeignException;
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+import com.tech_challenge.fiap_estoque_service.outbox.NotificacaoPedidoOutbox;
+import com.tech_challenge.fiap_estoque_service.transacao.RetentativaTransacao;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class ReservaExpirationSchedulerTest {
@@ -34,26 +42,39 @@ class ReservaExpirationSchedulerTest {
     private EstoqueRepository estoqueRepository;
 
     @Mock
-    private PedidoClient pedidoClient;
+    private NotificacaoPedidoOutbox notificacaoOutbox;
+
+    @Mock
+    private EstoqueCache estoqueCache;
 
-    @InjectMocks
     private ReservaExpirationScheduler reservaExpirationScheduler;
 
+    private TransactionTemplate transactionTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private EstoqueMetricas estoqueMetricas;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        meterRegistry = new SimpleMeterRegistry();
+        estoqueMetricas = new EstoqueMetricas(meterRegistry);
+        reservaExpirationScheduler = new ReservaExpirationScheduler(reservaRepository, estoqueRepository,
+                notificacaoOutbox, Optional.empty(), Optional.empty(), Optional.empty(), estoqueCache,
+                estoqueMetricas, transactionTemplate, new RetentativaTransacao(estoqueMetricas, 4, 0, 0), 2, 30000, 1);
     }
 
     @Test
     void cancelarReservasExpiradas_ShouldDoNothingWhenNoExpiredReservations() {
-        when(reservaRepository.findByStatusAndExpiresAtBefore(eq(ReservaStatus.PENDENTE), any(LocalDateTime.class)))
+        when(reservaRepository.reivindicarExpiradas(any(LocalDateTime.class), anyInt()))
                 .thenReturn(Collections.emptyList());
 
         reservaExpirationScheduler.cancelarReservasExpiradas();
 
-        verify(estoqueRepository, never()).saveAll(anyList());
-        verify(reservaRepository, never()).saveAll(anyList());
-        verify(pedidoClient, never()).changeToClosedExpired(any(PedidoRequestDTO.class));
+        verify(estoqueRepository, never()).aplicarDelta(anyString(), anyInt(), anyInt(), any());
+        verify(notificacaoOutbox, never()).registrar(anyList(), any(TipoNotificacao.class));
     }
 
     @Test
@@ -79,40 +100,27 @@ class ReservaExpirationSchedulerTest {
                 .expiresAt(LocalDateTime.now().minusMinutes(10))
                 .build();
 
-        Estoque estoque1 = new Estoque();
-        estoque1.setProductSKU(productSKU1);
-        estoque1.setQuantidadeDisponivel(10);
-
-        Estoque estoque2 = new Estoque();
-        estoque2.setProductSKU(productSKU2);
-        estoque2.setQuantidadeDisponivel(15);
-
-        when(reservaRepository.findByStatusAndExpiresAtBefore(eq(ReservaStatus.PENDENTE), any(LocalDateTime.class)))
-                .thenReturn(Arrays.asList(reserva1, reserva2));
-        when(estoqueRepository.findAllById(Arrays.asList(productSKU1, productSKU2)))
-                .thenReturn(Arrays.asList(estoque1, estoque2));
+        when(reservaRepository.reivindicarExpiradas(any(LocalDateTime.class), eq(2)))
+                .thenReturn(Arrays.asList(reserva1, reserva2))
+                .thenReturn(Collections.emptyList());
 
         reservaExpirationScheduler.cancelarReservasExpiradas();
 
         // Verify stock updates
-        assertEquals(10 + 2, estoque1.getQuantidadeDisponivel());
-        assertEquals(15 + 3, estoque2.getQuantidadeDisponivel());
+        verify(estoqueRepository, times(1)).aplicarDelta(eq(productSKU1), eq(2), eq(0), any(LocalDateTime.class));
+        verify(estoqueRepository, times(1)).aplicarDelta(eq(productSKU2), eq(3), eq(0), any(LocalDateTime.class));
 
         // Verify reservation status updates
         assertEquals(ReservaStatus.EXPIRADA, reserva1.getStatus());
         assertEquals(ReservaStatus.EXPIRADA, reserva2.getStatus());
 
-        // Verify repositories save calls
-        verify(estoqueRepository, times(1)).saveAll(anyList());
-        verify(reservaRepository, times(1)).saveAll(anyList());
-
-        // Verify pedidoClient calls
-        verify(pedidoClient, times(1)).changeToClosedExpired(new PedidoRequestDTO(pedidoId1));
-        verify(pedidoClient, times(1)).changeToClosedExpired(new PedidoRequestDTO(pedidoId2));
+        // Verify notifications are written to the outbox instead of calling pedido-service
+        verify(notificacaoOutbox, times(1)).registrar(Arrays.asList(pedidoId1, pedidoId2),
+                TipoNotificacao.EXPIRADO);
     }
 
     @Test
-    void cancelarReservasExpiradas_ShouldHandleFeignException() {
+    void cancelarReservasExpiradas_ShouldRegisterOneNotificationPerOrder() {
         String pedidoId = UUID.randomUUID().toString();
         String productSKU = "PROD001";
 
@@ -124,27 +132,144 @@ class ReservaExpirationSchedulerTest {
                 .expiresAt(LocalDateTime.now().minusMinutes(5))
                 .build();
 
-        Estoque estoque = new Estoque();
-        estoque.setProductSKU(productSKU);
-        estoque.setQuantidadeDisponivel(10);
+        ReservaEstoque outraReservaDoPedido = ReservaEstoque.builder()
+                .pedidoId(pedidoId)
+                .productSKU(productSKU)
+                .quantidadeReservada(1)
+                .status(ReservaStatus.PENDENTE)
+                .expiresAt(LocalDateTime.now().minusMinutes(5))
+                .build();
+
+        when(reservaRepository.reivindicarExpiradas(any(LocalDateTime.class), anyInt()))
+                .thenReturn(Arrays.asList(reserva, outraReservaDoPedido))
+                .thenReturn(Collections.emptyList());
+
+        reservaExpirationScheduler.cancelarReservasExpiradas();
+
+        verify(estoqueRepository, times(1)).aplicarDelta(eq(productSKU), eq(3), eq(0), any(LocalDateTime.class));
+        assertEquals(ReservaStatus.EXPIRADA, reserva.getStatus());
+        assertEquals(ReservaStatus.EXPIRADA, outraReservaDoPedido.getStatus());
+
+        // The outbox deduplicates by pedidoId, so the repeated id is passed through as is
+        verify(notificacaoOutbox, times(1)).registrar(Arrays.asList(pedidoId, pedidoId), TipoNotificacao.EXPIRADO);
+    }
 
-        when(reservaRepository.findByStatusAndExpiresAtBefore(eq(ReservaStatus.PENDENTE), any(LocalDateTime.class)))
+    @Test
+    void cancelarReservasExpiradas_ShouldReturnStockThroughMemoryEngine_WhenEnabled() {
+        EstoqueEmMemoria estoqueEmMemoria = mock(EstoqueEmMemoria.class);
+        reservaExpirationScheduler = new ReservaExpirationScheduler(reservaRepository, estoqueRepository,
+                notificacaoOutbox, Optional.of(estoqueEmMemoria), Optional.empty(), Optional.empty(), estoqueCache,
+                estoqueMetricas, transactionTemplate, new RetentativaTransacao(estoqueMetricas, 4, 0, 0), 2, 30000, 1);
+
+        ReservaEstoque reserva = ReservaEstoque.builder()
+                .pedidoId(UUID.randomUUID().toString())
+                .productSKU("PROD001")
+                .quantidadeReservada(2)
+                .status(ReservaStatus.PENDENTE)
+                .expiresAt(LocalDateTime.now().minusMinutes(5))
+                .build();
+
+        when(reservaRepository.reivindicarExpiradas(any(LocalDateTime.class), anyInt()))
                 .thenReturn(Collections.singletonList(reserva));
-        when(estoqueRepository.findAllById(Collections.singletonList(productSKU)))
-                .thenReturn(Collections.singletonList(estoque));
-        doThrow(FeignException.class).when(pedidoClient).changeToClosedExpired(any(PedidoRequestDTO.class));
 
         reservaExpirationScheduler.cancelarReservasExpiradas();
 
-        // Verify stock updates still happen
-        assertEquals(10 + 2, estoque.getQuantidadeDisponivel());
+        verify(estoqueEmMemoria, times(1)).devolver(Map.of("PROD001", 2));
+        verify(estoqueRepository, never()).aplicarDelta(anyString(), anyInt(), anyInt(), any());
         assertEquals(ReservaStatus.EXPIRADA, reserva.getStatus());
+    }
+
+    @Test
+    void cancelarReservasExpiradas_ShouldClaimNextBatch_WhenBatchIsFull() {
+        ReservaEstoque reserva1 = reservaExpirada("r1", "PROD001", 10);
+        ReservaEstoque reserva2 = reservaExpirada("r2", "PROD001", 9);
+        ReservaEstoque reserva3 = reservaExpirada("r3", "PROD002", 8);
+
+        // As reservas expiradas num lote saem da busca; a próxima reivindicação já traz as seguintes.
+        when(reservaRepository.reivindicarExpiradas(any(LocalDateTime.class), eq(2)))
+                .thenReturn(Arrays.asList(reserva1, reserva2))
+                .thenReturn(Collections.singletonList(reserva3));
 
-        // Verify repositories save calls still happen
-        verify(estoqueRepository, times(1)).saveAll(anyList());
-        verify(reservaRepository, times(1)).saveAll(anyList());
+        reservaExpirationScheduler.cancelarReservasExpiradas();
+
+        assertEquals(ReservaStatus.EXPIRADA, reserva1.getStatus());
+        assertEquals(ReservaStatus.EXPIRADA, reserva2.getStatus());
+        assertEquals(ReservaStatus.EXPIRADA, reserva3.getStatus());
+        // Uma notificação por lote.
+        verify(reservaRepository, times(2)).reivindicarExpiradas(any(LocalDateTime.class), eq(2));
+        verify(notificacaoOutbox, times(2)).registrar(anyList(), eq(TipoNotificacao.EXPIRADO));
+        assertEquals(3.0, meterRegistry.get("estoque.expiracao.reservas").counter().count());
+        assertEquals(1, meterRegistry.get("estoque.expiracao.varredura").timer().count());
+        assertEquals(3.0, meterRegistry.get("estoque.expiracao.varredura.reservas").summary().totalAmount());
+    }
+
+    @Test
+    void cancelarReservasExpiradas_ShouldStop_WhenBudgetIsExhausted() {
+        reservaExpirationScheduler = new ReservaExpirationScheduler(reservaRepository, estoqueRepository,
+                notificacaoOutbox, Optional.empty(), Optional.empty(), Optional.empty(), estoqueCache,
+                estoqueMetricas, transactionTemplate, new RetentativaTransacao(estoqueMetricas, 4, 0, 0), 2, 0, 1);
+
+        when(reservaRepository.reivindicarExpiradas(any(LocalDateTime.class), anyInt()))
+                .thenReturn(Arrays.asList(reservaExpirada("r1", "PROD001", 10), reservaExpirada("r2", "PROD001", 9)));
+
+        reservaExpirationScheduler.cancelarReservasExpiradas();
+
+        verify(reservaRepository, times(1)).reivindicarExpiradas(any(LocalDateTime.class), anyInt());
+        verify(notificacaoOutbox, times(1)).registrar(anyList(), eq(TipoNotificacao.EXPIRADO));
+    }
+
+    @Test
+    void cancelarReservasExpiradas_ShouldSumBatchesOfAllWorkers() {
+        reservaExpirationScheduler = new ReservaExpirationScheduler(reservaRepository, estoqueRepository,
+                notificacaoOutbox, Optional.empty(), Optional.empty(), Optional.empty(), estoqueCache,
+                estoqueMetricas, transactionTemplate, new RetentativaTransacao(estoqueMetricas, 4, 0, 0), 2, 30000, 3);
+
+        when(reservaRepository.reivindicarExpiradas(any(LocalDateTime.class), eq(2)))
+                .thenReturn(Arrays.asList(reservaExpirada("r1", "PROD001", 10), reservaExpirada("r2", "PROD001", 9)))
+                .thenReturn(Collections.singletonList(reservaExpirada("r3", "PROD002", 8)))
+                .thenReturn(Collections.emptyList());
+
+        reservaExpirationScheduler.cancelarReservasExpiradas();
+
+        // Cada worker reivindica até receber um lote incompleto.
+        verify(reservaRepository, times(4)).reivindicarExpiradas(any(LocalDateTime.class), eq(2));
+        assertEquals(3.0, meterRegistry.get("estoque.expiracao.varredura.reservas").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("estoque.expiracao.varredura").timer().count());
+    }
+
+    @Test
+    void expirarPedidos_ShouldExpireClaimedReservations() {
+        ReservaEstoque vencida = reservaExpirada("r1", "PROD001", 1);
+
+        when(reservaRepository.reivindicarExpiradasDosPedidos(eq(List.of("pedido-1", "pedido-2")),
+                any(LocalDateTime.class))).thenReturn(List.of(vencida));
+
+        reservaExpirationScheduler.expirarPedidos(List.of("pedido-1", "pedido-2"));
+
+        assertEquals(ReservaStatus.EXPIRADA, vencida.getStatus());
+        verify(estoqueRepository, times(1)).aplicarDelta(eq("PROD001"), eq(1), eq(0), any(LocalDateTime.class));
+        verify(notificacaoOutbox, times(1)).registrar(List.of(vencida.getPedidoId()), TipoNotificacao.EXPIRADO);
+    }
 
-        // Verify pedidoClient was still attempted
-        verify(pedidoClient, times(1)).changeToClosedExpired(any(PedidoRequestDTO.class));
+    @Test
+    void expirarPedidos_ShouldDoNothing_WhenNothingIsClaimed() {
+        when(reservaRepository.reivindicarExpiradasDosPedidos(eq(List.of("pedido-1")), any(LocalDateTime.class)))
+                .thenReturn(List.of());
+
+        reservaExpirationScheduler.expirarPedidos(List.of("pedido-1"));
+
+        verify(estoqueRepository, never()).aplicarDelta(anyString(), anyInt(), anyInt(), any());
+        verify(notificacaoOutbox, never()).registrar(anyList(), any(TipoNotificacao.class));
+    }
+
+    private ReservaEstoque reservaExpirada(String id, String productSKU, int minutosAtras) {
+        return ReservaEstoque.builder()
+                .id(id)
+                .pedidoId(UUID.randomUUID().toString())
+                .productSKU(productSKU)
+                .quantidadeReservada(1)
+                .status(ReservaStatus.PENDENTE)
+                .expiresAt(LocalDateTime.now().minusMinutes(minutosAtras))
+                .build();
     }
 }
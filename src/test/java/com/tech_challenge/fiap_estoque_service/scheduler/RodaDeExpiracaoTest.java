@@ -0,0 +1,131 @@
+package com.tech_challenge.fiap_estoque_service.scheduler;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ExpiracaoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class RodaDeExpiracaoTest {
+
+    @Mock
+    private ReservaExpirationScheduler expirationScheduler;
+
+    @Mock
+    private ReservaEstoqueRepository reservaRepository;
+
+    private RodaDeExpiracao rodaDeExpiracao;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        rodaDeExpiracao = new RodaDeExpiracao(expirationScheduler, reservaRepository, 10, 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void avancar_ShouldExpireDueOrdersTogether() {
+        rodaDeExpiracao.agendar(List.of(
+                reserva("pedido-1", LocalDateTime.now().minusSeconds(1)),
+                reserva("pedido-1", LocalDateTime.now().minusSeconds(1)),
+                reserva("pedido-2", LocalDateTime.now().minusSeconds(2))));
+
+        rodaDeExpiracao.avancar();
+
+        verify(expirationScheduler, times(1)).expirarPedidos(Set.of("pedido-1", "pedido-2"));
+    }
+
+    @Test
+    void avancar_ShouldNotExpireOrdersBeforeTheirDeadline() {
+        rodaDeExpiracao.agendar(List.of(reserva("pedido-1", LocalDateTime.now().plusMinutes(1))));
+
+        rodaDeExpiracao.avancar();
+
+        verify(expirationScheduler, never()).expirarPedidos(anyCollection());
+    }
+
+    @Test
+    void avancar_ShouldKeepDeadlinesBeyondOneRevolution() throws InterruptedException {
+        // 8 slots de 10 ms: o vencimento cai numa volta seguinte da roda.
+        rodaDeExpiracao.agendar(List.of(reserva("pedido-1", LocalDateTime.now().plusNanos(150_000_000))));
+
+        rodaDeExpiracao.avancar();
+        verify(expirationScheduler, never()).expirarPedidos(anyCollection());
+
+        Thread.sleep(200);
+        rodaDeExpiracao.avancar();
+        verify(expirationScheduler, times(1)).expirarPedidos(Set.of("pedido-1"));
+    }
+
+    @Test
+    void agendar_ShouldWaitForCommit_WhenTransactionIsActive() {
+        TransactionSynchronizationManager.initSynchronization();
+        rodaDeExpiracao.agendar(List.of(reserva("pedido-1", LocalDateTime.now().minusSeconds(1))));
+
+        rodaDeExpiracao.avancar();
+        verify(expirationScheduler, never()).expirarPedidos(anyCollection());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        rodaDeExpiracao.avancar();
+        verify(expirationScheduler, times(1)).expirarPedidos(Set.of("pedido-1"));
+    }
+
+    @Test
+    void reconstruir_ShouldScheduleOrdersWithPendingReservations() {
+        when(reservaRepository.findExpiracoesPorPedido(ReservaStatus.PENDENTE))
+                .thenReturn(List.of(new ExpiracaoPedidoDTO("pedido-1", LocalDateTime.now().minusSeconds(1)),
+                        new ExpiracaoPedidoDTO("pedido-2", LocalDateTime.now().plusMinutes(1))));
+
+        rodaDeExpiracao.reconstruir();
+        rodaDeExpiracao.avancar();
+
+        verify(expirationScheduler, times(1)).expirarPedidos(Set.of("pedido-1"));
+    }
+
+    @Test
+    void avancar_ShouldSwallowExpirationErrors() {
+        doThrow(new IllegalStateException("falha")).when(expirationScheduler).expirarPedidos(any());
+        rodaDeExpiracao.agendar(List.of(reserva("pedido-1", LocalDateTime.now().minusSeconds(1))));
+
+        rodaDeExpiracao.avancar();
+
+        verify(expirationScheduler, times(1)).expirarPedidos(Set.of("pedido-1"));
+    }
+
+    @Test
+    void constructor_ShouldRejectSlotCountThatIsNotPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new RodaDeExpiracao(expirationScheduler, reservaRepository, 10, 10));
+    }
+
+    private ReservaEstoque reserva(String pedidoId, LocalDateTime expiresAt) {
+        return ReservaEstoque.builder()
+                .pedidoId(pedidoId)
+                .productSKU("PROD001")
+                .quantidadeReservada(1)
+                .status(ReservaStatus.PENDENTE)
+                .expiresAt(expiresAt)
+                .build();
+    }
+}
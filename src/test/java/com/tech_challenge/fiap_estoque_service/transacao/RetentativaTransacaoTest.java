@@ -0,0 +1,94 @@
+package com.tech_challenge.fiap_estoque_service.transacao;
+
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetentativaTransacaoTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RetentativaTransacao retentativaTransacao;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        retentativaTransacao = new RetentativaTransacao(new EstoqueMetricas(meterRegistry), 3, 1, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void executar_ShouldRetryLockConflictsAndReturnResult() {
+        AtomicInteger tentativas = new AtomicInteger();
+
+        String resultado = retentativaTransacao.executar("updateEstoque", () -> {
+            if (tentativas.incrementAndGet() < 3) {
+                throw new CannotAcquireLockException("deadlock");
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", resultado);
+        assertEquals(3, tentativas.get());
+        assertEquals(2, meterRegistry.counter("estoque.transacao.retentativas", "operacao", "updateEstoque").count());
+        assertEquals(0, meterRegistry.counter("estoque.transacao.abortadas", "operacao", "updateEstoque").count());
+    }
+
+    @Test
+    void executar_ShouldGiveUpAfterMaxAttemptsAndCountAbort() {
+        AtomicInteger tentativas = new AtomicInteger();
+
+        assertThrows(PessimisticLockingFailureException.class, () -> retentativaTransacao.executarAcao(
+                "updateStatusToCancel", () -> {
+                    tentativas.incrementAndGet();
+                    throw new CannotAcquireLockException("deadlock");
+                }));
+
+        assertEquals(3, tentativas.get());
+        assertEquals(2, meterRegistry.counter("estoque.transacao.retentativas", "operacao", "updateStatusToCancel")
+                .count());
+        assertEquals(1, meterRegistry.counter("estoque.transacao.abortadas", "operacao", "updateStatusToCancel")
+                .count());
+    }
+
+    @Test
+    void executar_ShouldNotRetryOtherErrors() {
+        AtomicInteger tentativas = new AtomicInteger();
+
+        assertThrows(DataIntegrityViolationException.class, () -> retentativaTransacao.executarAcao(
+                "updateEstoque", () -> {
+                    tentativas.incrementAndGet();
+                    throw new DataIntegrityViolationException("duplicado");
+                }));
+
+        assertEquals(1, tentativas.get());
+    }
+
+    @Test
+    void executar_ShouldRunOnce_WhenTransactionIsAlreadyActive() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        AtomicInteger tentativas = new AtomicInteger();
+
+        assertThrows(PessimisticLockingFailureException.class, () -> retentativaTransacao.executarAcao(
+                "updateEstoque", () -> {
+                    tentativas.incrementAndGet();
+                    throw new CannotAcquireLockException("deadlock");
+                }));
+
+        assertEquals(1, tentativas.get());
+        assertEquals(0, meterRegistry.counter("estoque.transacao.retentativas", "operacao", "updateEstoque").count());
+    }
+}
@@ -0,0 +1,24 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// Conta os statements preparados pela thread do teste; os jobs agendados do contexto rodam em outras threads e
+// não entram na conta. Com lotes JDBC, um lote inteiro é preparado uma vez só.
+public class ContadorStatements implements StatementInspector {
+
+    private static final ThreadLocal<Integer> CONTAGEM = ThreadLocal.withInitial(() -> 0);
+
+    @Override
+    public String inspect(String sql) {
+        CONTAGEM.set(CONTAGEM.get() + 1);
+        return sql;
+    }
+
+    static void zerar() {
+        CONTAGEM.set(0);
+    }
+
+    static int contagem() {
+        return CONTAGEM.get();
+    }
+}
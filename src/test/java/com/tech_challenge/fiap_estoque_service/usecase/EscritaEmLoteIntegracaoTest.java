@@ -0,0 +1,97 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.tech_challenge.fiap_estoque_service.usecase.ContadorStatements")
+class EscritaEmLoteIntegracaoTest {
+
+    private static final int ITENS = 200;
+
+    @Autowired
+    private ReservaEstoqueUseCase reservaEstoqueUseCase;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final String pedidoId = "lote-" + UUID.randomUUID();
+    private final List<String> skus = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        List<Estoque> estoques = new ArrayList<>();
+        for (int i = 0; i < ITENS; i++) {
+            String productSKU = "lote-" + UUID.randomUUID();
+            skus.add(productSKU);
+            estoques.add(Estoque.builder()
+                    .productSKU(productSKU)
+                    .quantidadeDisponivel(10)
+                    .quantidadeReal(10)
+                    .updatedAt(LocalDateTime.now())
+                    .build());
+        }
+        estoqueRepository.saveAll(estoques);
+        ContadorStatements.zerar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reservaRepository.deleteAll(reservaRepository.findByPedidoId(pedidoId));
+        estoqueRepository.deleteAllById(skus);
+    }
+
+    @Test
+    void updateEstoque_ShouldWriteLargeOrderInAHandfulOfStatements() {
+        List<ItemPedidoDTO> itens = skus.stream().map(sku -> new ItemPedidoDTO(sku, 1)).toList();
+
+        reservaEstoqueUseCase.updateEstoque(new PedidoDTO(itens, pedidoId));
+
+        // Registro de idempotência, leitura travada do estoque, UPDATEs e INSERTs em lotes de batch_size; sem lotes
+        // seriam mais de 400 statements.
+        long statements = ContadorStatements.contagem();
+        assertTrue(statements <= 6, "statements: " + statements);
+        assertEquals(ITENS, reservaRepository.findByPedidoId(pedidoId).size());
+        assertTrue(estoqueRepository.findAllById(skus).stream().allMatch(e -> e.getQuantidadeDisponivel() == 9));
+    }
+
+    @Test
+    void flush_ShouldBatchStatusChangesOfManagedReservations() {
+        reservaEstoqueUseCase.updateEstoque(
+                new PedidoDTO(skus.stream().map(sku -> new ItemPedidoDTO(sku, 1)).toList(), pedidoId));
+        ContadorStatements.zerar();
+
+        // Sem lotes seriam um SELECT e um UPDATE por reserva.
+        transactionTemplate.executeWithoutResult(status -> reservaRepository.travarPorPedido(pedidoId)
+                .forEach(reserva -> reserva.setStatus(ReservaStatus.CANCELADA)));
+
+        long statements = ContadorStatements.contagem();
+        assertTrue(statements <= 4, "statements: " + statements);
+        assertTrue(reservaRepository.findByPedidoId(pedidoId).stream()
+                .map(ReservaEstoque::getStatus).allMatch(ReservaStatus.CANCELADA::equals));
+    }
+}
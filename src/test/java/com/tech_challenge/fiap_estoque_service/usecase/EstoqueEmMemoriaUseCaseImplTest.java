@@ -0,0 +1,194 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.engine.EstoqueEmMemoria;
+import com.tech_challenge.fiap_estoque_service.engine.EstoqueWriteBehind;
+import com.tech_challenge.fiap_estoque_service.engine.MovimentosEstoque;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.MovimentoEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = { "estoque.engine.memoria.enabled=true", "estoque.engine.memoria.flush-ms=3600000" })
+class EstoqueEmMemoriaUseCaseImplTest {
+
+    @Autowired
+    private EstoqueUseCase estoqueUseCase;
+
+    @Autowired
+    private EstoqueWriteBehind writeBehind;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Autowired
+    private MovimentoEstoqueRepository movimentoRepository;
+
+    @Autowired
+    private MovimentosEstoque movimentosEstoque;
+
+    private static final int CANCELAMENTOS = 8;
+
+    private final String productSKU = "memoria-" + UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(10)
+                .quantidadeReal(10)
+                .updatedAt(LocalDateTime.now())
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.gravarPendencias();
+        reservaRepository.deleteAll(reservaRepository.findAll().stream()
+                .filter(r -> r.getProductSKU().equals(productSKU)).toList());
+        estoqueRepository.deleteById(productSKU);
+    }
+
+    @Test
+    void shouldUseInMemoryImplementation() {
+        assertInstanceOf(EstoqueEmMemoriaUseCaseImpl.class, estoqueUseCase);
+    }
+
+    @Test
+    void updateEstoque_ShouldReserveInMemoryAndWriteStockBehind() {
+        String pedidoId = UUID.randomUUID().toString();
+
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 4)), pedidoId));
+
+        assertEquals(6, estoqueUseCase.getEstoqueByProductSKU(productSKU).quantidadeDisponivel());
+        assertEquals(10, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+        assertEquals(1, reservaRepository.findByPedidoId(pedidoId).size());
+
+        writeBehind.gravarPendencias();
+
+        assertEquals(6, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+    }
+
+    @Test
+    void updateEstoque_ShouldThrowOutOfStockException_WhenMemoryBalanceIsInsufficient() {
+        PedidoDTO pedido = new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 11)), UUID.randomUUID().toString());
+
+        assertThrows(OutOfStockException.class, () -> estoqueUseCase.updateEstoque(pedido));
+        assertEquals(10, estoqueUseCase.getEstoqueByProductSKU(productSKU).quantidadeDisponivel());
+    }
+
+    @Test
+    void updateEstoque_ShouldReserveOnlyOnce_WhenOrderIsRetried() {
+        String pedidoId = UUID.randomUUID().toString();
+        PedidoDTO pedido = new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 4)), pedidoId);
+
+        estoqueUseCase.updateEstoque(pedido);
+        estoqueUseCase.updateEstoque(pedido);
+        estoqueUseCase.updateEstoqueEmLote(List.of(pedido));
+
+        assertEquals(6, estoqueUseCase.getEstoqueByProductSKU(productSKU).quantidadeDisponivel());
+        assertEquals(1, reservaRepository.findByPedidoId(pedidoId).size());
+    }
+
+    @Test
+    void updateEstoque_ShouldAllowRetry_WhenFirstAttemptFailed() {
+        String pedidoId = UUID.randomUUID().toString();
+
+        assertThrows(OutOfStockException.class, () -> estoqueUseCase
+                .updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 11)), pedidoId)));
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 5)), pedidoId));
+
+        assertEquals(5, estoqueUseCase.getEstoqueByProductSKU(productSKU).quantidadeDisponivel());
+        assertEquals(1, reservaRepository.findByPedidoId(pedidoId).size());
+    }
+
+    @Test
+    void updateStatusToCancelAndConfirm_ShouldApplyDeltasToMemoryAndDatabase() {
+        String cancelado = UUID.randomUUID().toString();
+        String confirmado = UUID.randomUUID().toString();
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 3)), cancelado));
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 2)), confirmado));
+
+        estoqueUseCase.updateStatusToCancel(cancelado);
+        estoqueUseCase.updateStatusToConfirmed(confirmado);
+        writeBehind.gravarPendencias();
+
+        assertEquals(8, estoqueUseCase.getEstoqueByProductSKU(productSKU).quantidadeDisponivel());
+        Estoque estoque = estoqueRepository.findById(productSKU).orElseThrow();
+        assertEquals(8, estoque.getQuantidadeDisponivel());
+        assertEquals(8, estoque.getQuantidadeReal());
+        assertTrue(reservaRepository.findByPedidoId(cancelado).stream()
+                .allMatch(r -> r.getStatus() == ReservaStatus.CANCELADA));
+        assertTrue(reservaRepository.findByPedidoId(confirmado).stream()
+                .map(ReservaEstoque::getStatus).allMatch(ReservaStatus.CONFIRMADA::equals));
+    }
+
+    @Test
+    void updateStatusToCancel_ShouldReturnStockOnce_WhenOrderIsCancelledConcurrently() throws InterruptedException {
+        String pedidoId = UUID.randomUUID().toString();
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 3)), pedidoId));
+
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Thread> cancelamentos = new ArrayList<>();
+        for (int i = 0; i < CANCELAMENTOS; i++) {
+            cancelamentos.add(Thread.ofPlatform().start(() -> {
+                try {
+                    largada.await();
+                    estoqueUseCase.updateStatusToCancel(pedidoId);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        largada.countDown();
+        for (Thread cancelamento : cancelamentos) {
+            cancelamento.join();
+        }
+
+        assertEquals(10, estoqueUseCase.getEstoqueByProductSKU(productSKU).quantidadeDisponivel());
+        assertEquals(1, movimentoRepository.findAll().stream()
+                .filter(m -> m.getProductSKU().equals(productSKU) && m.getMotivo() == MotivoMovimento.CANCELAMENTO)
+                .count());
+    }
+
+    @Test
+    void carregar_ShouldKeepChangesThatWereNotWrittenBehindBeforeACrash() {
+        String reservado = UUID.randomUUID().toString();
+        String confirmado = UUID.randomUUID().toString();
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 3)), reservado));
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 2)), confirmado));
+        estoqueUseCase.updateStatusToConfirmed(confirmado);
+
+        // A instância cai antes do write-behind: outra carrega o saldo do banco.
+        EstoqueEmMemoria recarregado = new EstoqueEmMemoria(movimentoRepository, movimentosEstoque);
+        recarregado.carregar();
+
+        assertEquals(5, recarregado.disponivel(productSKU));
+        assertEquals(10, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+        writeBehind.gravarPendencias();
+        Estoque estoque = estoqueRepository.findById(productSKU).orElseThrow();
+        assertEquals(5, estoque.getQuantidadeDisponivel());
+        assertEquals(8, estoque.getQuantidadeReal());
+    }
+}
@@ -0,0 +1,91 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.tech_challenge.fiap_estoque_service.dto.EstoqueExportDTO;
+import com.tech_challenge.fiap_estoque_service.dto.FormatoExport;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class EstoqueExportUseCaseImplTest {
+
+    private static final LocalDateTime ATUALIZADO = LocalDateTime.of(2024, 5, 1, 10, 30);
+
+    @Mock
+    private EstoqueRepository estoqueRepository;
+
+    private EstoqueExportUseCaseImpl estoqueExportUseCase;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        estoqueExportUseCase = new EstoqueExportUseCaseImpl(estoqueRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), objectMapper);
+    }
+
+    @Test
+    void exportar_ShouldWriteOneJsonObjectPerLine() throws IOException {
+        when(estoqueRepository.exportarAPartirDe("")).thenReturn(Stream.of(
+                new EstoqueExportDTO("PROD001", 10, ATUALIZADO),
+                new EstoqueExportDTO("PROD002", 0, ATUALIZADO)));
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+
+        estoqueExportUseCase.exportar(FormatoExport.NDJSON, null, saida);
+
+        assertEquals("""
+                {"productSKU":"PROD001","quantidadeDisponivel":10,"updatedAt":"2024-05-01T10:30:00"}
+                {"productSKU":"PROD002","quantidadeDisponivel":0,"updatedAt":"2024-05-01T10:30:00"}
+                """, saida.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportar_ShouldWriteCsvWithHeaderAndQuoteSpecialCharacters() throws IOException {
+        when(estoqueRepository.exportarAPartirDe("PROD001")).thenReturn(Stream.of(
+                new EstoqueExportDTO("PROD,\"002\"", 5, ATUALIZADO),
+                new EstoqueExportDTO("PROD003", 7, null)));
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+
+        estoqueExportUseCase.exportar(FormatoExport.CSV, "PROD001", saida);
+
+        assertEquals("""
+                productSKU,quantidadeDisponivel,updatedAt
+                "PROD,\"\"002\"\"\",5,2024-05-01T10:30
+                PROD003,7,
+                """, saida.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportar_ShouldCloseCursorAndPropagateIOException_WhenClientDisconnects() {
+        AtomicBoolean fechado = new AtomicBoolean();
+        when(estoqueRepository.exportarAPartirDe("")).thenReturn(Stream
+                .generate(() -> new EstoqueExportDTO("PROD001", 10, ATUALIZADO))
+                .onClose(() -> fechado.set(true)));
+        OutputStream saidaFechada = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThrows(IOException.class, () -> estoqueExportUseCase.exportar(FormatoExport.NDJSON, "", saidaFechada));
+        assertTrue(fechado.get());
+    }
+}
@@ -0,0 +1,175 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.MovimentoEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.MotivoMovimento;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.engine.LedgerEstoque;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.MovimentoEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = { "estoque.engine.ledger.enabled=true", "estoque.engine.ledger.compactacao-ms=3600000" })
+class EstoqueLedgerUseCaseImplTest {
+
+    @Autowired
+    private EstoqueUseCase estoqueUseCase;
+
+    @Autowired
+    private LedgerEstoque ledgerEstoque;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Autowired
+    private MovimentoEstoqueRepository movimentoRepository;
+
+    private final String productSKU = "ledger-" + UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(10)
+                .quantidadeReal(10)
+                .updatedAt(LocalDateTime.now())
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        ledgerEstoque.compactar();
+        movimentoRepository.deleteAll(movimentosDoProduto());
+        reservaRepository.deleteAll(reservaRepository.findAll().stream()
+                .filter(r -> r.getProductSKU().equals(productSKU)).toList());
+        estoqueRepository.deleteById(productSKU);
+    }
+
+    @Test
+    void shouldUseLedgerImplementation() {
+        assertInstanceOf(EstoqueLedgerUseCaseImpl.class, estoqueUseCase);
+    }
+
+    @Test
+    void updateEstoque_ShouldAppendMovementWithoutTouchingStockRowUntilCompaction() {
+        String pedidoId = UUID.randomUUID().toString();
+
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 4)), pedidoId));
+
+        assertEquals(6, estoqueUseCase.getEstoqueByProductSKU(productSKU).quantidadeDisponivel());
+        assertEquals(10, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+        List<MovimentoEstoque> movimentos = movimentosDoProduto();
+        assertEquals(1, movimentos.size());
+        assertEquals(MotivoMovimento.RESERVA, movimentos.get(0).getMotivo());
+        assertEquals(-4, movimentos.get(0).getDeltaDisponivel());
+        assertEquals(reservaRepository.findByPedidoId(pedidoId).get(0).getId(), movimentos.get(0).getReservaId());
+
+        ledgerEstoque.compactar();
+
+        assertEquals(6, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+        assertEquals(6, estoqueUseCase.getEstoqueByProductSKU(productSKU).quantidadeDisponivel());
+        assertTrue(movimentosDoProduto().stream().allMatch(MovimentoEstoque::isCompactado));
+    }
+
+    @Test
+    void updateStatusToCancelAndConfirm_ShouldAppendMovementsAndKeepAuditTrail() {
+        String cancelado = UUID.randomUUID().toString();
+        String confirmado = UUID.randomUUID().toString();
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 3)), cancelado));
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 2)), confirmado));
+
+        estoqueUseCase.updateStatusToCancel(cancelado);
+        estoqueUseCase.updateStatusToConfirmed(confirmado);
+        ledgerEstoque.compactar();
+
+        Estoque estoque = estoqueRepository.findById(productSKU).orElseThrow();
+        assertEquals(8, estoque.getQuantidadeDisponivel());
+        assertEquals(8, estoque.getQuantidadeReal());
+        assertEquals(List.of(MotivoMovimento.RESERVA, MotivoMovimento.RESERVA, MotivoMovimento.CANCELAMENTO,
+                MotivoMovimento.CONFIRMACAO), movimentosDoProduto().stream().map(MovimentoEstoque::getMotivo).toList());
+    }
+
+    @Test
+    void updateEstoque_ShouldNeverOversellUnderConcurrentOrders() throws InterruptedException {
+        AtomicInteger sucessos = new AtomicInteger();
+        AtomicInteger semEstoque = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch fim = new CountDownLatch(40);
+        for (int i = 0; i < 40; i++) {
+            executor.submit(() -> {
+                try {
+                    estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 1)),
+                            UUID.randomUUID().toString()));
+                    sucessos.incrementAndGet();
+                } catch (OutOfStockException ex) {
+                    semEstoque.incrementAndGet();
+                } finally {
+                    fim.countDown();
+                }
+            });
+        }
+        fim.await(60, TimeUnit.SECONDS);
+        executor.shutdownNow();
+
+        assertEquals(10, sucessos.get());
+        assertEquals(30, semEstoque.get());
+        assertEquals(0, estoqueUseCase.getEstoqueByProductSKU(productSKU).quantidadeDisponivel());
+    }
+
+    @Test
+    void updateStatusToCancel_ShouldAppendOneMovement_WhenOrderIsCancelledConcurrently() throws InterruptedException {
+        String pedidoId = UUID.randomUUID().toString();
+        estoqueUseCase.updateEstoque(new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 3)), pedidoId));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch largada = new CountDownLatch(1);
+        CountDownLatch fim = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            executor.submit(() -> {
+                try {
+                    largada.await();
+                    estoqueUseCase.updateStatusToCancel(pedidoId);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    fim.countDown();
+                }
+            });
+        }
+        largada.countDown();
+        fim.await(60, TimeUnit.SECONDS);
+        executor.shutdownNow();
+
+        assertEquals(10, estoqueUseCase.getEstoqueByProductSKU(productSKU).quantidadeDisponivel());
+        assertEquals(List.of(MotivoMovimento.RESERVA, MotivoMovimento.CANCELAMENTO),
+                movimentosDoProduto().stream().map(MovimentoEstoque::getMotivo).toList());
+    }
+
+    private List<MovimentoEstoque> movimentosDoProduto() {
+        return movimentoRepository.findAll().stream()
+                .filter(m -> m.getProductSKU().equals(productSKU))
+                .sorted((a, b) -> a.getId().compareTo(b.getId()))
+                .toList();
+    }
+}
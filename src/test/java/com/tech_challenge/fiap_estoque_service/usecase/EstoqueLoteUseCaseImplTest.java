@@ -0,0 +1,196 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoStatus;
+import com.tech_challenge.fiap_estoque_service.dto.TipoNotificacao;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueHistoricoRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+import com.tech_challenge.fiap_estoque_service.outbox.NotificacaoPedidoOutbox;
+import com.tech_challenge.fiap_estoque_service.scheduler.RodaDeExpiracao;
+import com.tech_challenge.fiap_estoque_service.transacao.RetentativaTransacao;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class EstoqueLoteUseCaseImplTest {
+
+    @Mock
+    private EstoqueRepository estoqueRepository;
+
+    @Mock
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private RodaDeExpiracao rodaDeExpiracao;
+
+    @Mock
+    private NotificacaoPedidoOutbox notificacaoOutbox;
+
+    @Mock
+    private EstoqueCache estoqueCache;
+
+    @Mock
+    private IdempotenciaReserva idempotenciaReserva;
+
+    @Mock
+    private ReservaEstoqueHistoricoRepository historicoRepository;
+
+    private EstoqueLoteUseCaseImpl estoqueLoteUseCase;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        estoqueLoteUseCase = new EstoqueLoteUseCaseImpl(estoqueRepository, reservaRepository,
+                new TransactionTemplate(transactionManager), rodaDeExpiracao, notificacaoOutbox, estoqueCache,
+                idempotenciaReserva, new HistoricoReservas(historicoRepository),
+                new RetentativaTransacao(new EstoqueMetricas(new SimpleMeterRegistry()), 4, 0, 0),
+                Duration.ofMinutes(1), 2);
+        when(idempotenciaReserva.registrar(anyString(), any(LocalDateTime.class))).thenReturn(true);
+    }
+
+    @Test
+    void updateEstoqueEmLote_ShouldReportResultPerOrderAndCompensateFailedOrder() {
+        PedidoDTO ok = new PedidoDTO(List.of(new ItemPedidoDTO("PROD001", 1)), "pedido-ok");
+        PedidoDTO semEstoque = new PedidoDTO(
+                Arrays.asList(new ItemPedidoDTO("PROD001", 2), new ItemPedidoDTO("PROD002", 9)), "pedido-sem-estoque");
+        PedidoDTO inexistente = new PedidoDTO(List.of(new ItemPedidoDTO("PROD999", 1)), "pedido-inexistente");
+
+        when(estoqueRepository.reservarQuantidade(eq("PROD001"), anyInt(), any(LocalDateTime.class))).thenReturn(1);
+        when(estoqueRepository.reservarQuantidade(eq("PROD002"), eq(9), any(LocalDateTime.class))).thenReturn(0);
+        when(estoqueRepository.reservarQuantidade(eq("PROD999"), eq(1), any(LocalDateTime.class))).thenReturn(0);
+        when(estoqueRepository.existsById("PROD002")).thenReturn(true);
+        when(estoqueRepository.existsById("PROD999")).thenReturn(false);
+
+        List<ResultadoPedidoDTO> resultados = estoqueLoteUseCase
+                .updateEstoqueEmLote(Arrays.asList(ok, semEstoque, inexistente));
+
+        assertEquals(List.of(ResultadoPedidoStatus.SUCESSO, ResultadoPedidoStatus.SEM_ESTOQUE,
+                ResultadoPedidoStatus.NAO_ENCONTRADO), resultados.stream().map(ResultadoPedidoDTO::status).toList());
+        assertEquals(List.of("pedido-ok", "pedido-sem-estoque", "pedido-inexistente"),
+                resultados.stream().map(ResultadoPedidoDTO::pedidoId).toList());
+
+        // PROD001 do pedido sem estoque é devolvido dentro do mesmo bloco
+        verify(estoqueRepository, times(1)).aplicarDelta(eq("PROD001"), eq(2), eq(0), any(LocalDateTime.class));
+        verify(idempotenciaReserva).desfazer("pedido-sem-estoque");
+        verify(idempotenciaReserva).desfazer("pedido-inexistente");
+        verify(idempotenciaReserva, never()).desfazer("pedido-ok");
+        // dois blocos (tamanho 2), um saveAll por bloco
+        verify(transactionManager, times(2)).commit(any());
+        verify(reservaRepository, times(1)).saveAll(argThat(reservas -> ((List<ReservaEstoque>) reservas).size() == 1
+                && ((List<ReservaEstoque>) reservas).get(0).getPedidoId().equals("pedido-ok")));
+    }
+
+    @Test
+    void updateEstoqueEmLote_ShouldAnswerRepeatedOrderWithoutTouchingStock() {
+        PedidoDTO novo = new PedidoDTO(List.of(new ItemPedidoDTO("PROD001", 1)), "pedido-novo");
+        PedidoDTO repetido = new PedidoDTO(List.of(new ItemPedidoDTO("PROD002", 1)), "pedido-repetido");
+
+        when(idempotenciaReserva.registrar(eq("pedido-repetido"), any(LocalDateTime.class))).thenReturn(false);
+        when(estoqueRepository.reservarQuantidade(eq("PROD001"), anyInt(), any(LocalDateTime.class))).thenReturn(1);
+
+        List<ResultadoPedidoDTO> resultados = estoqueLoteUseCase.updateEstoqueEmLote(Arrays.asList(novo, repetido));
+
+        assertEquals(List.of(ResultadoPedidoStatus.SUCESSO, ResultadoPedidoStatus.SUCESSO),
+                resultados.stream().map(ResultadoPedidoDTO::status).toList());
+        verify(estoqueRepository, never()).reservarQuantidade(eq("PROD002"), anyInt(), any(LocalDateTime.class));
+        verify(reservaRepository, times(1)).saveAll(argThat(reservas -> ((List<ReservaEstoque>) reservas).size() == 1
+                && ((List<ReservaEstoque>) reservas).get(0).getPedidoId().equals("pedido-novo")));
+    }
+
+    @Test
+    void updateEstoqueEmLote_ShouldMarkOnlyFailingChunkAsError_WhenDatabaseFails() {
+        PedidoDTO pedido1 = new PedidoDTO(List.of(new ItemPedidoDTO("PROD001", 1)), "pedido-1");
+        PedidoDTO pedido2 = new PedidoDTO(List.of(new ItemPedidoDTO("PROD001", 1)), "pedido-2");
+        PedidoDTO pedido3 = new PedidoDTO(List.of(new ItemPedidoDTO("PROD002", 1)), "pedido-3");
+
+        when(estoqueRepository.reservarQuantidade(eq("PROD001"), anyInt(), any(LocalDateTime.class))).thenReturn(1);
+        when(estoqueRepository.reservarQuantidade(eq("PROD002"), anyInt(), any(LocalDateTime.class)))
+                .thenThrow(new DataAccessResourceFailureException("conexão perdida"));
+
+        List<ResultadoPedidoDTO> resultados = estoqueLoteUseCase
+                .updateEstoqueEmLote(Arrays.asList(pedido1, pedido2, pedido3));
+
+        assertEquals(List.of(ResultadoPedidoStatus.SUCESSO, ResultadoPedidoStatus.SUCESSO,
+                ResultadoPedidoStatus.ERRO), resultados.stream().map(ResultadoPedidoDTO::status).toList());
+        verify(transactionManager, times(1)).commit(any());
+        verify(transactionManager, times(1)).rollback(any());
+    }
+
+    @Test
+    void updateStatusToCancelEmLote_ShouldCancelValidOrdersAndReportTheOthers() {
+        ReservaEstoque pendente = reserva("pedido-1", "PROD001", 2, ReservaStatus.PENDENTE);
+        ReservaEstoque expirada = reserva("pedido-1", "PROD002", 3, ReservaStatus.EXPIRADA);
+        ReservaEstoque confirmada = reserva("pedido-2", "PROD001", 1, ReservaStatus.CONFIRMADA);
+
+        when(reservaRepository.travarPorPedidos(Arrays.asList("pedido-1", "pedido-2")))
+                .thenReturn(Arrays.asList(pendente, expirada, confirmada));
+        when(reservaRepository.travarPorPedidos(List.of("pedido-3"))).thenReturn(Collections.emptyList());
+
+        List<ResultadoPedidoDTO> resultados = estoqueLoteUseCase
+                .updateStatusToCancelEmLote(Arrays.asList("pedido-1", "pedido-2", "pedido-3"));
+
+        assertEquals(List.of(ResultadoPedidoStatus.SUCESSO, ResultadoPedidoStatus.NAO_CANCELAVEL,
+                ResultadoPedidoStatus.NAO_ENCONTRADO), resultados.stream().map(ResultadoPedidoDTO::status).toList());
+        assertEquals(ReservaStatus.CANCELADA, pendente.getStatus());
+        assertEquals(ReservaStatus.EXPIRADA, expirada.getStatus());
+        assertEquals(ReservaStatus.CONFIRMADA, confirmada.getStatus());
+        // Só a reserva PENDENTE devolve: o estoque da EXPIRADA já voltou na expiração.
+        verify(estoqueRepository).aplicarDelta(eq("PROD001"), eq(2), eq(0), any(LocalDateTime.class));
+        verify(estoqueRepository, never()).aplicarDelta(eq("PROD002"), anyInt(), anyInt(), any(LocalDateTime.class));
+    }
+
+    @Test
+    void updateStatusToConfirmedEmLote_ShouldConfirmPendingOrdersAndReportInvalidStatus() {
+        ReservaEstoque pendente1 = reserva("pedido-1", "PROD001", 2, ReservaStatus.PENDENTE);
+        ReservaEstoque pendente2 = reserva("pedido-2", "PROD001", 1, ReservaStatus.PENDENTE);
+        ReservaEstoque cancelada = reserva("pedido-2", "PROD002", 1, ReservaStatus.CANCELADA);
+
+        when(reservaRepository.travarPorPedidos(Arrays.asList("pedido-1", "pedido-2")))
+                .thenReturn(Arrays.asList(pendente1, pendente2, cancelada));
+
+        List<ResultadoPedidoDTO> resultados = estoqueLoteUseCase
+                .updateStatusToConfirmedEmLote(Arrays.asList("pedido-1", "pedido-2"));
+
+        assertEquals(List.of(ResultadoPedidoStatus.SUCESSO, ResultadoPedidoStatus.STATUS_INVALIDO),
+                resultados.stream().map(ResultadoPedidoDTO::status).toList());
+        assertEquals(ReservaStatus.CONFIRMADA, pendente1.getStatus());
+        assertEquals(ReservaStatus.PENDENTE, pendente2.getStatus());
+        verify(estoqueRepository).aplicarDelta(eq("PROD001"), eq(0), eq(-2), any(LocalDateTime.class));
+        verify(estoqueRepository, never()).aplicarDelta(eq("PROD002"), anyInt(), anyInt(), any(LocalDateTime.class));
+        verify(notificacaoOutbox, times(1)).registrar(List.of("pedido-1"), TipoNotificacao.SUCESSO);
+    }
+
+    private ReservaEstoque reserva(String pedidoId, String productSKU, int quantidade, ReservaStatus status) {
+        return ReservaEstoque.builder()
+                .pedidoId(pedidoId)
+                .productSKU(productSKU)
+                .quantidadeReservada(quantidade)
+                .status(status)
+                .build();
+    }
+}
@@ -1,22 +1,34 @@
 package com.tech_challenge.fiap_estoque_service.usecase;
 
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
 import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.dto.ConsultaEstoqueDTO;
 import com.tech_challenge.fiap_estoque_service.dto.EstoquePublicDTO;
 import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
 import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.engine.EstoqueEscrow;
 import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
 import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+import com.tech_challenge.fiap_estoque_service.metricas.SkusQuentes;
+import com.tech_challenge.fiap_estoque_service.transacao.RetentativaTransacao;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
 
+import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class EstoqueUseCaseImplTest {
@@ -33,12 +45,26 @@ class EstoqueUseCaseImplTest {
     @Mock
     private UpdateStatusToConfirmedUseCase confirmedStatusUseCase;
 
-    @InjectMocks
+    @Mock
+    private EstoqueLoteUseCase estoqueLoteUseCase;
+
+    @Mock
+    private SkusQuentes skusQuentes;
+
+    @Mock
+    private IdempotenciaReserva idempotenciaReserva;
+
+    @Spy
+    private EstoqueCache estoqueCache = new EstoqueCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+
     private EstoqueUseCaseImpl estoqueUseCase;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        estoqueUseCase = new EstoqueUseCaseImpl(estoqueRepository, reservaEstoqueUseCase, cancelStatusUseCase,
+                confirmedStatusUseCase, estoqueLoteUseCase, estoqueCache, skusQuentes, idempotenciaReserva,
+                Optional.empty(), retentativa());
     }
 
     @Test
@@ -58,6 +84,37 @@ class EstoqueUseCaseImplTest {
         verify(estoqueRepository, times(1)).findById(productSKU);
     }
 
+    @Test
+    void getEstoqueByProductSKU_ShouldServeRepeatedReadsFromCache() {
+        Estoque estoque = new Estoque();
+        estoque.setProductSKU("PROD001");
+        estoque.setQuantidadeDisponivel(10);
+        when(estoqueRepository.findById("PROD001")).thenReturn(Optional.of(estoque));
+
+        estoqueUseCase.getEstoqueByProductSKU("PROD001");
+        EstoquePublicDTO result = estoqueUseCase.getEstoqueByProductSKU("PROD001");
+
+        assertEquals(10, result.quantidadeDisponivel());
+        verify(estoqueRepository, times(1)).findById("PROD001");
+    }
+
+    @Test
+    void getEstoqueByProductSKUs_ShouldLoadMissesInOneQueryAndMarkMissingSkus() {
+        Estoque prod1 = Estoque.builder().productSKU("PROD001").quantidadeDisponivel(10).build();
+        Estoque prod2 = Estoque.builder().productSKU("PROD002").quantidadeDisponivel(5).build();
+        when(estoqueRepository.findById("PROD001")).thenReturn(Optional.of(prod1));
+        when(estoqueRepository.findAllById(any())).thenReturn(List.of(prod2));
+        estoqueUseCase.getEstoqueByProductSKU("PROD001");
+
+        ConsultaEstoqueDTO result = estoqueUseCase.getEstoqueByProductSKUs(
+                List.of("PROD002", "PROD001", "PROD999", "PROD002"));
+
+        assertEquals(List.of(new EstoquePublicDTO("PROD002", 5), new EstoquePublicDTO("PROD001", 10)),
+                result.encontrados());
+        assertEquals(List.of("PROD999"), result.naoEncontrados());
+        verify(estoqueRepository, times(1)).findAllById(Set.of("PROD002", "PROD999"));
+    }
+
     @Test
     void getEstoqueByProductSKU_ShouldThrowProductNotFoundException_WhenProductDoesNotExist() {
         String productSKU = "PROD001";
@@ -68,6 +125,19 @@ class EstoqueUseCaseImplTest {
         verify(estoqueRepository, times(1)).findById(productSKU);
     }
 
+    @Test
+    void getEstoqueByProductSKU_ShouldAddLocalLeaseBalance_WhenEscrowIsEnabled() {
+        EstoqueEscrow estoqueEscrow = mock(EstoqueEscrow.class);
+        EstoqueUseCaseImpl comEscrow = new EstoqueUseCaseImpl(estoqueRepository, reservaEstoqueUseCase,
+                cancelStatusUseCase, confirmedStatusUseCase, estoqueLoteUseCase, estoqueCache, skusQuentes,
+                idempotenciaReserva, Optional.of(estoqueEscrow), retentativa());
+        Estoque estoque = Estoque.builder().productSKU("PROD001").quantidadeDisponivel(10).build();
+        when(estoqueRepository.findById("PROD001")).thenReturn(Optional.of(estoque));
+        when(estoqueEscrow.saldoLocal("PROD001")).thenReturn(7);
+
+        assertEquals(17, comEscrow.getEstoqueByProductSKU("PROD001").quantidadeDisponivel());
+    }
+
     @Test
     void updateEstoque_ShouldCallReservaEstoqueUseCase() {
         ItemPedidoDTO item = new ItemPedidoDTO("PROD001", 2);
@@ -78,6 +148,24 @@ class EstoqueUseCaseImplTest {
         verify(reservaEstoqueUseCase, times(1)).updateEstoque(pedidoDTO);
     }
 
+    @Test
+    void updateEstoque_ShouldTreatKeyViolationAsDuplicate_WhenOrderWasReservedConcurrently() {
+        PedidoDTO pedidoDTO = new PedidoDTO(List.of(new ItemPedidoDTO("PROD001", 2)), "pedido-simultaneo");
+        doThrow(new DataIntegrityViolationException("pk_pedido_reserva")).when(reservaEstoqueUseCase)
+                .updateEstoque(pedidoDTO);
+        when(idempotenciaReserva.ehRepeticao("pedido-simultaneo")).thenReturn(true);
+
+        assertDoesNotThrow(() -> estoqueUseCase.updateEstoque(pedidoDTO));
+    }
+
+    @Test
+    void updateEstoque_ShouldRethrowKeyViolation_WhenOrderIsNotReserved() {
+        PedidoDTO pedidoDTO = new PedidoDTO(List.of(new ItemPedidoDTO("PROD001", 2)), "pedido-com-erro");
+        doThrow(new DataIntegrityViolationException("fk")).when(reservaEstoqueUseCase).updateEstoque(pedidoDTO);
+
+        assertThrows(DataIntegrityViolationException.class, () -> estoqueUseCase.updateEstoque(pedidoDTO));
+    }
+
     @Test
     void updateStatusToCancel_ShouldCallCancelStatusUseCase() {
         String pedidoId = UUID.randomUUID().toString();
@@ -95,4 +183,28 @@ class EstoqueUseCaseImplTest {
 
         verify(confirmedStatusUseCase, times(1)).updateStatusToConfirmed(pedidoId);
     }
+
+    @Test
+    void updateEstoqueEmLote_ShouldCallEstoqueLoteUseCase() {
+        List<PedidoDTO> pedidos = List.of(new PedidoDTO(List.of(new ItemPedidoDTO("PROD001", 1)), "pedido-1"));
+
+        estoqueUseCase.updateEstoqueEmLote(pedidos);
+
+        verify(estoqueLoteUseCase, times(1)).updateEstoqueEmLote(pedidos);
+    }
+
+    @Test
+    void updateStatusEmLote_ShouldCallEstoqueLoteUseCase() {
+        List<String> pedidoIds = List.of("pedido-1", "pedido-2");
+
+        estoqueUseCase.updateStatusToCancelEmLote(pedidoIds);
+        estoqueUseCase.updateStatusToConfirmedEmLote(pedidoIds);
+
+        verify(estoqueLoteUseCase, times(1)).updateStatusToCancelEmLote(pedidoIds);
+        verify(estoqueLoteUseCase, times(1)).updateStatusToConfirmedEmLote(pedidoIds);
+    }
+
+    private RetentativaTransacao retentativa() {
+        return new RetentativaTransacao(new EstoqueMetricas(new SimpleMeterRegistry()), 4, 0, 0);
+    }
 }
@@ -0,0 +1,90 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.gateway.PedidoReservaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IdempotenciaReservaTest {
+
+    @Mock
+    private PedidoReservaRepository pedidoReservaRepository;
+
+    private IdempotenciaReserva idempotenciaReserva;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        idempotenciaReserva = new IdempotenciaReserva(pedidoReservaRepository, 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void registrar_ShouldAnswerRepeatedOrderFromMemoryAfterFirstReservation() {
+        when(pedidoReservaRepository.registrar(eq("pedido-1"), any(LocalDateTime.class))).thenReturn(1);
+
+        assertTrue(idempotenciaReserva.registrar("pedido-1", LocalDateTime.now()));
+        assertFalse(idempotenciaReserva.registrar("pedido-1", LocalDateTime.now()));
+        assertFalse(idempotenciaReserva.registrar("pedido-1", LocalDateTime.now()));
+
+        verify(pedidoReservaRepository, times(1)).registrar(eq("pedido-1"), any(LocalDateTime.class));
+    }
+
+    @Test
+    void registrar_ShouldFallBackToDatabase_WhenOrderIsNotInMemory() {
+        when(pedidoReservaRepository.registrar(eq("pedido-antigo"), any(LocalDateTime.class))).thenReturn(0);
+
+        assertFalse(idempotenciaReserva.registrar("pedido-antigo", LocalDateTime.now()));
+        assertFalse(idempotenciaReserva.registrar("pedido-antigo", LocalDateTime.now()));
+
+        verify(pedidoReservaRepository, times(1)).registrar(eq("pedido-antigo"), any(LocalDateTime.class));
+    }
+
+    @Test
+    void desfazer_ShouldRemoveKeySoTheOrderCanBeRetried() {
+        when(pedidoReservaRepository.registrar(eq("pedido-1"), any(LocalDateTime.class))).thenReturn(1);
+
+        idempotenciaReserva.registrar("pedido-1", LocalDateTime.now());
+        idempotenciaReserva.desfazer("pedido-1");
+
+        verify(pedidoReservaRepository).remover("pedido-1");
+        assertTrue(idempotenciaReserva.registrar("pedido-1", LocalDateTime.now()));
+    }
+
+    @Test
+    void ehRepeticao_ShouldCheckDatabase() {
+        when(pedidoReservaRepository.existsById("pedido-1")).thenReturn(true);
+
+        assertTrue(idempotenciaReserva.ehRepeticao("pedido-1"));
+        assertFalse(idempotenciaReserva.ehRepeticao("pedido-2"));
+        assertFalse(idempotenciaReserva.registrar("pedido-1", LocalDateTime.now()));
+        verify(pedidoReservaRepository, never()).registrar(eq("pedido-1"), any(LocalDateTime.class));
+    }
+
+    @Test
+    void ehRepeticao_ShouldNotQueryDatabase_WhenOrderWasReservedRecently() {
+        when(pedidoReservaRepository.registrar(eq("pedido-1"), any(LocalDateTime.class))).thenReturn(1);
+        assertTrue(idempotenciaReserva.registrar("pedido-1", LocalDateTime.now()));
+
+        assertTrue(idempotenciaReserva.ehRepeticao("pedido-1"));
+        verify(pedidoReservaRepository, never()).existsById("pedido-1");
+    }
+
+    @Test
+    void reservadoRecentemente_ShouldAnswerOnlyFromMemory() {
+        when(pedidoReservaRepository.registrar(eq("pedido-1"), any(LocalDateTime.class))).thenReturn(1);
+        when(pedidoReservaRepository.existsById("pedido-antigo")).thenReturn(true);
+        assertTrue(idempotenciaReserva.registrar("pedido-1", LocalDateTime.now()));
+
+        assertTrue(idempotenciaReserva.reservadoRecentemente("pedido-1"));
+        assertFalse(idempotenciaReserva.reservadoRecentemente("pedido-antigo"));
+        verify(pedidoReservaRepository, never()).existsById(anyString());
+    }
+}
@@ -0,0 +1,177 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class ReservaEstoqueConcorrenciaTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReservaEstoqueConcorrenciaTest.class);
+
+    private static final int THREADS = 16;
+    private static final int PEDIDOS = 400;
+    private static final int ESTOQUE_INICIAL = 250;
+    private static final int ITENS_POR_PEDIDO = 5;
+
+    @Autowired
+    private ReservaEstoqueUseCase reservaEstoqueUseCase;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    @Autowired
+    private EstoqueUseCase estoqueUseCase;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final String prefixo = "concorrencia-" + UUID.randomUUID() + "-";
+    private final List<String> skus = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        reservaRepository.deleteAll(reservaRepository.findAll().stream()
+                .filter(r -> r.getProductSKU().startsWith(prefixo)).toList());
+        estoqueRepository.deleteAllById(skus);
+        skus.clear();
+    }
+
+    @Test
+    void updateEstoque_ShouldNeverOversellUnderConcurrentOrdersForSameSku() throws InterruptedException {
+        String productSKU = criarEstoque("hot", ESTOQUE_INICIAL);
+
+        AtomicInteger sucessos = new AtomicInteger();
+        AtomicInteger semEstoque = new AtomicInteger();
+        executarConcorrente(PEDIDOS, () -> {
+            try {
+                reservaEstoqueUseCase.updateEstoque(
+                        new PedidoDTO(List.of(new ItemPedidoDTO(productSKU, 1)), UUID.randomUUID().toString()));
+                sucessos.incrementAndGet();
+            } catch (OutOfStockException ex) {
+                semEstoque.incrementAndGet();
+            }
+        });
+
+        assertEquals(ESTOQUE_INICIAL, sucessos.get());
+        assertEquals(PEDIDOS - ESTOQUE_INICIAL, semEstoque.get());
+        assertEquals(0, estoqueRepository.findById(productSKU).orElseThrow().getQuantidadeDisponivel());
+    }
+
+    @Test
+    void reservarCancelarConfirmar_ShouldNotAbortUnderConcurrentOrdersOverOverlappingSkus()
+            throws InterruptedException {
+        // Itens em ordem aleatória sobre poucos SKUs: sem a ordem única de travas, reserva, cancelamento e
+        // confirmação simultâneos se bloqueiam em ciclo e o banco aborta um dos lados.
+        for (int i = 0; i < 4; i++) {
+            criarEstoque("disputado" + i, PEDIDOS * ITENS_POR_PEDIDO);
+        }
+        double abortadasAntes = contar("estoque.transacao.abortadas");
+
+        AtomicInteger falhas = new AtomicInteger();
+        executarConcorrente(PEDIDOS, () -> {
+            PedidoDTO pedido = novoPedido(3);
+            try {
+                estoqueUseCase.updateEstoque(pedido);
+                if (ThreadLocalRandom.current().nextBoolean()) {
+                    estoqueUseCase.updateStatusToCancel(pedido.pedidoId());
+                } else {
+                    estoqueUseCase.updateStatusToConfirmed(pedido.pedidoId());
+                }
+            } catch (RuntimeException ex) {
+                logger.warn("Pedido {} falhou.", pedido.pedidoId(), ex);
+                falhas.incrementAndGet();
+            }
+        });
+
+        logger.info("Retentativas por conflito de trava: {}", contar("estoque.transacao.retentativas"));
+        assertEquals(0, falhas.get());
+        assertEquals(abortadasAntes, contar("estoque.transacao.abortadas"));
+        List<ReservaEstoque> reservas = reservaRepository.findAll().stream()
+                .filter(r -> r.getProductSKU().startsWith(prefixo)).toList();
+        assertEquals(PEDIDOS * 3, reservas.size());
+        for (String sku : skus) {
+            int confirmadas = reservas.stream()
+                    .filter(r -> r.getProductSKU().equals(sku) && r.getStatus() == ReservaStatus.CONFIRMADA)
+                    .mapToInt(ReservaEstoque::getQuantidadeReservada).sum();
+            Estoque estoque = estoqueRepository.findById(sku).orElseThrow();
+            assertEquals(PEDIDOS * ITENS_POR_PEDIDO - confirmadas, estoque.getQuantidadeDisponivel());
+            assertEquals(PEDIDOS * ITENS_POR_PEDIDO - confirmadas, estoque.getQuantidadeReal());
+        }
+    }
+
+    private PedidoDTO novoPedido(int quantidadeItens) {
+        List<ItemPedidoDTO> itens = ThreadLocalRandom.current().ints(0, skus.size())
+                .distinct()
+                .limit(quantidadeItens)
+                .mapToObj(i -> new ItemPedidoDTO(skus.get(i), 1))
+                .toList();
+        return new PedidoDTO(itens, UUID.randomUUID().toString());
+    }
+
+    private double contar(String metrica) {
+        return meterRegistry.find(metrica).counters().stream().mapToDouble(Counter::count).sum();
+    }
+
+    private String criarEstoque(String sufixo, int quantidade) {
+        String productSKU = prefixo + sufixo;
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(quantidade)
+                .quantidadeReal(quantidade)
+                .updatedAt(LocalDateTime.now())
+                .build());
+        skus.add(productSKU);
+        return productSKU;
+    }
+
+    private void executarConcorrente(int pedidos, Runnable pedido) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch largada = new CountDownLatch(1);
+        CountDownLatch fim = new CountDownLatch(pedidos);
+        for (int i = 0; i < pedidos; i++) {
+            executor.submit(() -> {
+                try {
+                    largada.await();
+                    pedido.run();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    fim.countDown();
+                }
+            });
+        }
+        largada.countDown();
+        fim.await(60, TimeUnit.SECONDS);
+        executor.shutdownNow();
+    }
+}
@@ -1,5 +1,6 @@
 package com.tech_challenge.fiap_estoque_service.usecase;
 
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
 import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
 import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
 import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
@@ -9,17 +10,19 @@ import com.tech_challenge.fiap_estoque_service.exception.OutOfStockException;
 import com.tech_challenge.fiap_estoque_service.exception.ProductNotFoundException;
 import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
 import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.metricas.SkusQuentes;
+import com.tech_challenge.fiap_estoque_service.scheduler.RodaDeExpiracao;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -34,46 +37,46 @@ class ReservaEstoqueUseCaseImplTest {
     @Mock
     private ReservaEstoqueRepository reservaRepository;
 
-    @InjectMocks
+    @Mock
+    private RodaDeExpiracao rodaDeExpiracao;
+
+    @Mock
+    private EstoqueCache estoqueCache;
+
+    @Mock
+    private SkusQuentes skusQuentes;
+
+    @Mock
+    private IdempotenciaReserva idempotenciaReserva;
+
     private ReservaEstoqueUseCaseImpl reservaEstoqueUseCase;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        reservaEstoqueUseCase = new ReservaEstoqueUseCaseImpl(estoqueRepository, reservaRepository, rodaDeExpiracao,
+                estoqueCache, skusQuentes, idempotenciaReserva, Duration.ofMinutes(1), 4);
+        when(idempotenciaReserva.registrar(anyString(), any(LocalDateTime.class))).thenReturn(true);
     }
 
     @Test
     void updateEstoque_ShouldSuccessfullyUpdateStockAndCreateReservations() {
         String productSKU1 = "PROD001";
         String productSKU2 = "PROD002";
-        int initialQtd1 = 10;
-        int initialQtd2 = 5;
-        int reservedQtd1 = 2;
-        int reservedQtd2 = 3;
-
-        Estoque estoque1 = new Estoque();
-        estoque1.setProductSKU(productSKU1);
-        estoque1.setQuantidadeDisponivel(initialQtd1);
-
-        Estoque estoque2 = new Estoque();
-        estoque2.setProductSKU(productSKU2);
-        estoque2.setQuantidadeDisponivel(initialQtd2);
 
-        ItemPedidoDTO item1 = new ItemPedidoDTO(productSKU1, reservedQtd1);
-        ItemPedidoDTO item2 = new ItemPedidoDTO(productSKU2, reservedQtd2);
+        ItemPedidoDTO item1 = new ItemPedidoDTO(productSKU1, 2);
+        ItemPedidoDTO item2 = new ItemPedidoDTO(productSKU2, 3);
         String pedidoId = UUID.randomUUID().toString();
         PedidoDTO pedidoDTO = new PedidoDTO(Arrays.asList(item1, item2), pedidoId);
 
-        when(estoqueRepository.findAllById(Arrays.asList(productSKU1, productSKU2)))
-                .thenReturn(Arrays.asList(estoque1, estoque2));
+        when(estoqueRepository.reservarQuantidade(anyString(), anyInt(), any(LocalDateTime.class))).thenReturn(1);
 
         reservaEstoqueUseCase.updateEstoque(pedidoDTO);
 
-        assertEquals(initialQtd1 - reservedQtd1, estoque1.getQuantidadeDisponivel());
-        assertEquals(initialQtd2 - reservedQtd2, estoque2.getQuantidadeDisponivel());
-
-        verify(estoqueRepository, times(1)).saveAll(anyList());
-        verify(reservaRepository, times(1)).saveAll(anyList());
+        verify(estoqueRepository, times(1)).reservarQuantidade(eq(productSKU1), eq(2), any(LocalDateTime.class));
+        verify(estoqueRepository, times(1)).reservarQuantidade(eq(productSKU2), eq(3), any(LocalDateTime.class));
+        verify(estoqueRepository, never()).findAllById(anyList());
+        verify(estoqueRepository, never()).saveAll(anyList());
 
         // Verify that reservations were created with correct status and pedidoId
         verify(reservaRepository, times(1)).saveAll(argThat(reservas -> {
@@ -83,103 +86,117 @@ class ReservaEstoqueUseCaseImplTest {
             assertTrue(reservaList.stream().allMatch(r -> r.getPedidoId().equals(pedidoId)));
             return true;
         }));
+
+        // Reservations of the same order share a single expiry and are scheduled on the timing wheel
+        verify(rodaDeExpiracao, times(1)).agendar(argThat(reservas -> reservas.stream()
+                .map(ReservaEstoque::getExpiresAt).distinct().count() == 1));
     }
 
     @Test
-    void updateEstoque_ShouldThrowProductNotFoundException_WhenProductSKUMismatch() {
+    void updateEstoque_ShouldThrowProductNotFoundException_WhenProductSKUDoesNotExist() {
         String productSKU1 = "PROD001";
-        String productSKU2 = "PROD002";
-
-        Estoque estoque1 = new Estoque();
-        estoque1.setProductSKU(productSKU1);
-        estoque1.setQuantidadeDisponivel(10);
 
         ItemPedidoDTO item1 = new ItemPedidoDTO(productSKU1, 2);
-        ItemPedidoDTO item2 = new ItemPedidoDTO(productSKU2, 3);
-        PedidoDTO pedidoDTO = new PedidoDTO(Arrays.asList(item1, item2), UUID.randomUUID().toString());
+        PedidoDTO pedidoDTO = new PedidoDTO(Collections.singletonList(item1), UUID.randomUUID().toString());
 
-        // Simulate only one product found, even though two were requested
-        when(estoqueRepository.findAllById(Arrays.asList(productSKU1, productSKU2)))
-                .thenReturn(Collections.singletonList(estoque1));
+        when(estoqueRepository.reservarQuantidade(eq(productSKU1), eq(2), any(LocalDateTime.class))).thenReturn(0);
+        when(estoqueRepository.existsById(productSKU1)).thenReturn(false);
 
         assertThrows(ProductNotFoundException.class, () -> reservaEstoqueUseCase.updateEstoque(pedidoDTO));
 
-        verify(estoqueRepository, times(1)).findAllById(anyList());
-        verify(estoqueRepository, never()).saveAll(anyList());
         verify(reservaRepository, never()).saveAll(anyList());
     }
 
     @Test
-    void updateEstoque_ShouldThrowProductNotFoundException_WhenProductSKUDoesNotExist() {
+    void updateEstoque_ShouldThrowOutOfStockException_WhenQuantityIsInsufficient() {
         String productSKU1 = "PROD001";
 
-        ItemPedidoDTO item1 = new ItemPedidoDTO(productSKU1, 2);
+        ItemPedidoDTO item1 = new ItemPedidoDTO(productSKU1, 12);
         PedidoDTO pedidoDTO = new PedidoDTO(Collections.singletonList(item1), UUID.randomUUID().toString());
 
-        when(estoqueRepository.findAllById(Collections.singletonList(productSKU1)))
-                .thenReturn(Collections.emptyList());
+        when(estoqueRepository.reservarQuantidade(eq(productSKU1), eq(12), any(LocalDateTime.class))).thenReturn(0);
+        when(estoqueRepository.existsById(productSKU1)).thenReturn(true);
 
-        assertThrows(ProductNotFoundException.class, () -> reservaEstoqueUseCase.updateEstoque(pedidoDTO));
+        assertThrows(OutOfStockException.class, () -> reservaEstoqueUseCase.updateEstoque(pedidoDTO));
 
-        verify(estoqueRepository, times(1)).findAllById(anyList());
-        verify(estoqueRepository, never()).saveAll(anyList());
         verify(reservaRepository, never()).saveAll(anyList());
     }
 
     @Test
-    void updateEstoque_ShouldThrowOutOfStockException_WhenQuantityIsInsufficient() {
-        String productSKU1 = "PROD001";
-        int initialQtd1 = 10;
-        int reservedQtd1 = 12; // More than available
-
-        Estoque estoque1 = new Estoque();
-        estoque1.setProductSKU(productSKU1);
-        estoque1.setQuantidadeDisponivel(initialQtd1);
-
-        ItemPedidoDTO item1 = new ItemPedidoDTO(productSKU1, reservedQtd1);
-        PedidoDTO pedidoDTO = new PedidoDTO(Collections.singletonList(item1), UUID.randomUUID().toString());
+    void updateEstoque_ShouldStopAtFirstFailingProduct() {
+        ItemPedidoDTO item1 = new ItemPedidoDTO("PROD001", 2);
+        ItemPedidoDTO item2 = new ItemPedidoDTO("PROD002", 3);
+        ItemPedidoDTO item3 = new ItemPedidoDTO("PROD003", 1);
+        PedidoDTO pedidoDTO = new PedidoDTO(Arrays.asList(item1, item2, item3), UUID.randomUUID().toString());
 
-        when(estoqueRepository.findAllById(Collections.singletonList(productSKU1)))
-                .thenReturn(Collections.singletonList(estoque1));
+        when(estoqueRepository.reservarQuantidade(eq("PROD001"), eq(2), any(LocalDateTime.class))).thenReturn(1);
+        when(estoqueRepository.reservarQuantidade(eq("PROD002"), eq(3), any(LocalDateTime.class))).thenReturn(0);
+        when(estoqueRepository.existsById("PROD002")).thenReturn(true);
 
         assertThrows(OutOfStockException.class, () -> reservaEstoqueUseCase.updateEstoque(pedidoDTO));
 
-        verify(estoqueRepository, times(1)).findAllById(anyList());
-        verify(estoqueRepository, never()).saveAll(anyList());
+        verify(estoqueRepository, never()).reservarQuantidade(eq("PROD003"), anyInt(), any(LocalDateTime.class));
         verify(reservaRepository, never()).saveAll(anyList());
     }
 
     @Test
-    void updateEstoque_ShouldHandleMultipleItemsCorrectly() {
-        String productSKU1 = "PROD001";
-        String productSKU2 = "PROD002";
-        int initialQtd1 = 10;
-        int initialQtd2 = 5;
-        int reservedQtd1 = 2;
-        int reservedQtd2 = 3;
+    void updateEstoque_ShouldAggregateItemsOfSameProductAndReserveInSkuOrder() {
+        ItemPedidoDTO item1 = new ItemPedidoDTO("PROD002", 2);
+        ItemPedidoDTO item2 = new ItemPedidoDTO("PROD001", 1);
+        ItemPedidoDTO item3 = new ItemPedidoDTO("PROD002", 4);
+        PedidoDTO pedidoDTO = new PedidoDTO(Arrays.asList(item1, item2, item3), UUID.randomUUID().toString());
 
-        Estoque estoque1 = new Estoque();
-        estoque1.setProductSKU(productSKU1);
-        estoque1.setQuantidadeDisponivel(initialQtd1);
+        when(estoqueRepository.reservarQuantidade(anyString(), anyInt(), any(LocalDateTime.class))).thenReturn(1);
 
-        Estoque estoque2 = new Estoque();
-        estoque2.setProductSKU(productSKU2);
-        estoque2.setQuantidadeDisponivel(initialQtd2);
+        reservaEstoqueUseCase.updateEstoque(pedidoDTO);
 
-        ItemPedidoDTO item1 = new ItemPedidoDTO(productSKU1, reservedQtd1);
-        ItemPedidoDTO item2 = new ItemPedidoDTO(productSKU2, reservedQtd2);
-        String pedidoId = UUID.randomUUID().toString();
-        PedidoDTO pedidoDTO = new PedidoDTO(Arrays.asList(item1, item2), pedidoId);
+        InOrder inOrder = inOrder(estoqueRepository);
+        inOrder.verify(estoqueRepository).reservarQuantidade(eq("PROD001"), eq(1), any(LocalDateTime.class));
+        inOrder.verify(estoqueRepository).reservarQuantidade(eq("PROD002"), eq(6), any(LocalDateTime.class));
+        verify(reservaRepository, times(1)).saveAll(argThat(reservas -> ((List<ReservaEstoque>) reservas).size() == 3));
+    }
+
+    @Test
+    void updateEstoque_ShouldLockRowsOnceAndDecrementEntities_WhenOrderHasManySkus() {
+        List<ItemPedidoDTO> itens = List.of(new ItemPedidoDTO("PROD004", 1), new ItemPedidoDTO("PROD002", 2),
+                new ItemPedidoDTO("PROD003", 3), new ItemPedidoDTO("PROD001", 4));
+        List<Estoque> estoques = List.of(estoque("PROD001", 10), estoque("PROD002", 10), estoque("PROD003", 10),
+                estoque("PROD004", 10));
+        when(estoqueRepository.travarPorSkus(any())).thenReturn(estoques);
+
+        reservaEstoqueUseCase.updateEstoque(new PedidoDTO(itens, UUID.randomUUID().toString()));
+
+        assertEquals(List.of(6, 8, 7, 9), estoques.stream().map(Estoque::getQuantidadeDisponivel).toList());
+        verify(estoqueRepository, times(1)).travarPorSkus(any());
+        verify(estoqueRepository, never()).reservarQuantidade(anyString(), anyInt(), any(LocalDateTime.class));
+        verify(reservaRepository, times(1)).saveAll(argThat(reservas -> ((List<ReservaEstoque>) reservas).size() == 4));
+    }
+
+    @Test
+    void updateEstoque_ShouldFailAtFirstSkuInOrder_WhenOrderHasManySkus() {
+        List<ItemPedidoDTO> itens = List.of(new ItemPedidoDTO("PROD004", 1), new ItemPedidoDTO("PROD002", 20),
+                new ItemPedidoDTO("PROD003", 1), new ItemPedidoDTO("PROD001", 1));
+        when(estoqueRepository.travarPorSkus(any()))
+                .thenReturn(List.of(estoque("PROD001", 10), estoque("PROD002", 10), estoque("PROD004", 10)));
 
-        when(estoqueRepository.findAllById(Arrays.asList(productSKU1, productSKU2)))
-                .thenReturn(Arrays.asList(estoque1, estoque2));
+        OutOfStockException ex = assertThrows(OutOfStockException.class,
+                () -> reservaEstoqueUseCase.updateEstoque(new PedidoDTO(itens, UUID.randomUUID().toString())));
+
+        assertTrue(ex.getMessage().contains("PROD002"));
+        verify(reservaRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void updateEstoque_ShouldNotTouchStock_WhenOrderWasAlreadyReserved() {
+        PedidoDTO pedidoDTO = new PedidoDTO(List.of(new ItemPedidoDTO("PROD001", 2)), "pedido-repetido");
+        when(idempotenciaReserva.registrar(eq("pedido-repetido"), any(LocalDateTime.class))).thenReturn(false);
 
         reservaEstoqueUseCase.updateEstoque(pedidoDTO);
 
-        assertEquals(initialQtd1 - reservedQtd1, estoque1.getQuantidadeDisponivel());
-        assertEquals(initialQtd2 - reservedQtd2, estoque2.getQuantidadeDisponivel());
+        verifyNoInteractions(estoqueRepository, reservaRepository, rodaDeExpiracao, estoqueCache);
+    }
 
-        verify(estoqueRepository, times(1)).saveAll(anyList());
-        verify(reservaRepository, times(1)).saveAll(anyList());
+    private Estoque estoque(String productSKU, int quantidadeDisponivel) {
+        return Estoque.builder().productSKU(productSKU).quantidadeDisponivel(quantidadeDisponivel).build();
     }
 }
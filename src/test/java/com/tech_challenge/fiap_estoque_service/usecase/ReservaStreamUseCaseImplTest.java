@@ -0,0 +1,139 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ResultadoPedidoStatus;
+import com.tech_challenge.fiap_estoque_service.metricas.EstoqueMetricas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class ReservaStreamUseCaseImplTest {
+
+    @Mock
+    private EstoqueUseCase estoqueUseCase;
+
+    private ReservaStreamUseCaseImpl reservaStreamUseCase;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        reservaStreamUseCase = new ReservaStreamUseCaseImpl(estoqueUseCase,
+                new EstoqueMetricas(new SimpleMeterRegistry()), new ObjectMapper(), 2, 200);
+        when(estoqueUseCase.updateEstoqueEmLote(anyList())).thenAnswer(invocation -> invocation
+                .<List<PedidoDTO>>getArgument(0).stream()
+                .map(pedido -> ResultadoPedidoDTO.sucesso(pedido.pedidoId()))
+                .toList());
+    }
+
+    @Test
+    void reservar_ShouldGroupBufferedLinesUpToChunkSizeAndAnswerInOrder() throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+
+        reservaStreamUseCase.reservar(entrada(pedido("p1") + "\n" + pedido("p2") + "\n\n" + pedido("p3") + "\n"),
+                saida);
+
+        verify(estoqueUseCase).updateEstoqueEmLote(List.of(pedidoDTO("p1"), pedidoDTO("p2")));
+        verify(estoqueUseCase).updateEstoqueEmLote(List.of(pedidoDTO("p3")));
+        assertEquals("""
+                {"pedidoId":"p1","status":"SUCESSO","mensagem":null}
+                {"pedidoId":"p2","status":"SUCESSO","mensagem":null}
+                {"pedidoId":"p3","status":"SUCESSO","mensagem":null}
+                """, saida.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void reservar_ShouldAnswerInvalidLineInPlaceAndKeepGoing() throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+
+        reservaStreamUseCase.reservar(entrada("{quebrado\n" + pedido("p1") + "\n"), saida);
+
+        String[] linhas = saida.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, linhas.length);
+        assertTrue(linhas[0].startsWith("{\"pedidoId\":null,\"status\":\"ERRO\""));
+        assertEquals("{\"pedidoId\":\"p1\",\"status\":\"SUCESSO\",\"mensagem\":null}", linhas[1]);
+        verify(estoqueUseCase).updateEstoqueEmLote(List.of(pedidoDTO("p1")));
+    }
+
+    @Test
+    void reservar_ShouldEndStream_WhenLineExceedsMaximumLength() throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+
+        // Uma linha sem quebra bem maior que o limite, depois de um pedido válido: nada dela é guardado ou lido.
+        String longa = "x".repeat(100_000);
+        reservaStreamUseCase.reservar(entrada(pedido("p1") + "\n" + longa + "\n" + pedido("p2") + "\n"), saida);
+
+        assertEquals("""
+                {"pedidoId":"p1","status":"SUCESSO","mensagem":null}
+                {"pedidoId":null,"status":"ERRO","mensagem":"Linha maior que 200 bytes; fluxo encerrado."}
+                """, saida.toString(StandardCharsets.UTF_8));
+        verify(estoqueUseCase, times(1)).updateEstoqueEmLote(anyList());
+    }
+
+    @Test
+    void reservar_ShouldAnswerEachOrderBeforeTheNextOneArrives() throws Exception {
+        PipedOutputStream cliente = new PipedOutputStream();
+        PipedInputStream entrada = new PipedInputStream(cliente);
+        PipedInputStream respostas = new PipedInputStream();
+        PipedOutputStream saida = new PipedOutputStream(respostas);
+
+        CompletableFuture<Void> fluxo = CompletableFuture.runAsync(() -> {
+            try {
+                reservaStreamUseCase.reservar(entrada, saida);
+                saida.close();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+
+        // O resultado do primeiro pedido chega com o corpo ainda aberto.
+        cliente.write((pedido("p1") + "\n").getBytes(StandardCharsets.UTF_8));
+        cliente.flush();
+        assertEquals("{\"pedidoId\":\"p1\",\"status\":\"SUCESSO\",\"mensagem\":null}", lerLinha(respostas));
+
+        cliente.write((pedido("p2") + "\n").getBytes(StandardCharsets.UTF_8));
+        cliente.close();
+        assertEquals("{\"pedidoId\":\"p2\",\"status\":\"SUCESSO\",\"mensagem\":null}", lerLinha(respostas));
+        fluxo.get(5, TimeUnit.SECONDS);
+    }
+
+    private static String lerLinha(InputStream entrada) throws IOException {
+        ByteArrayOutputStream linha = new ByteArrayOutputStream();
+        int b;
+        while ((b = entrada.read()) != -1 && b != '\n') {
+            linha.write(b);
+        }
+        return linha.toString(StandardCharsets.UTF_8);
+    }
+
+    private static InputStream entrada(String corpo) {
+        return new ByteArrayInputStream(corpo.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String pedido(String pedidoId) {
+        return "{\"pedidoId\":\"" + pedidoId + "\",\"pedidos\":[{\"productSKU\":\"PROD001\",\"qtd\":1}]}";
+    }
+
+    private static PedidoDTO pedidoDTO(String pedidoId) {
+        return new PedidoDTO(List.of(new ItemPedidoDTO("PROD001", 1)), pedidoId);
+    }
+}
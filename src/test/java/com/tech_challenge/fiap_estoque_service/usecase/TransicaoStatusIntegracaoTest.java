@@ -0,0 +1,175 @@
+package com.tech_challenge.fiap_estoque_service.usecase;
+
+import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.dto.ItemPedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.PedidoDTO;
+import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.exception.ReservationCannotBeCancelledException;
+import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Cancelamento e confirmação feitos direto no banco: quantidades somadas por SKU e número fixo de statements.
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.tech_challenge.fiap_estoque_service.usecase.ContadorStatements")
+class TransicaoStatusIntegracaoTest {
+
+    private static final int SKUS = 100;
+
+    @Autowired
+    private ReservaEstoqueUseCase reservaEstoqueUseCase;
+
+    @Autowired
+    private UpdateStatusToCancelUseCase cancelStatusUseCase;
+
+    @Autowired
+    private UpdateStatusToConfirmedUseCase confirmedStatusUseCase;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private ReservaEstoqueRepository reservaRepository;
+
+    private final String pedidoId = "transicao-" + UUID.randomUUID();
+    private final List<String> pedidos = new ArrayList<>(List.of(pedidoId));
+    private final List<String> skus = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < SKUS; i++) {
+            novoSku(10);
+        }
+
+        // Duas linhas por SKU (1 + 2), para a soma por SKU aparecer no resultado.
+        reservaEstoqueUseCase.updateEstoque(new PedidoDTO(skus.stream()
+                .flatMap(sku -> Stream.of(new ItemPedidoDTO(sku, 1), new ItemPedidoDTO(sku, 2)))
+                .toList(), pedidoId));
+        ContadorStatements.zerar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reservaRepository.deleteAll(reservaRepository.findByPedidoIdIn(pedidos));
+        estoqueRepository.deleteAllById(skus);
+    }
+
+    @Test
+    void updateStatusToCancel_ShouldReturnSummedStockWithFixedNumberOfStatements() {
+        cancelStatusUseCase.updateStatusToCancel(pedidoId);
+
+        // Leitura travada das situações, MERGE no estoque e UPDATE das reservas, para 200 reservas.
+        assertEquals(3, ContadorStatements.contagem());
+        assertTrue(estoqueRepository.findAllById(skus).stream().allMatch(e -> e.getQuantidadeDisponivel() == 10
+                && e.getQuantidadeReal() == 10));
+        assertTrue(status().allMatch(ReservaStatus.CANCELADA::equals));
+
+        // Repetição: só a leitura, sem devolver de novo.
+        ContadorStatements.zerar();
+        cancelStatusUseCase.updateStatusToCancel(pedidoId);
+        assertEquals(1, ContadorStatements.contagem());
+        assertTrue(estoqueRepository.findAllById(skus).stream().allMatch(e -> e.getQuantidadeDisponivel() == 10));
+    }
+
+    @Test
+    void updateStatusToConfirmed_ShouldSubtractSummedStockWithFixedNumberOfStatements() {
+        confirmedStatusUseCase.updateStatusToConfirmed(pedidoId);
+
+        // Leitura travada, MERGE, UPDATE e o registro da notificação no outbox (trava do pedido, SELECT e INSERT).
+        assertEquals(6, ContadorStatements.contagem());
+        assertTrue(estoqueRepository.findAllById(skus).stream().allMatch(e -> e.getQuantidadeDisponivel() == 7
+                && e.getQuantidadeReal() == 7));
+        assertTrue(status().allMatch(ReservaStatus.CONFIRMADA::equals));
+        assertThrows(ReservationCannotBeCancelledException.class,
+                () -> cancelStatusUseCase.updateStatusToCancel(pedidoId));
+    }
+
+    @Test
+    void updateStatusToCancel_ShouldReturnOnlyPendingReservations() {
+        List<ReservaEstoque> reservas = reservaRepository.findByPedidoId(pedidoId);
+        String sku = skus.get(0);
+        List<ReservaEstoque> doSku = reservas.stream().filter(r -> r.getProductSKU().equals(sku)).toList();
+        ReservaEstoque expirada = doSku.get(0);
+        ReservaEstoque cancelada = doSku.get(1);
+        expirada.setStatus(ReservaStatus.EXPIRADA);
+        cancelada.setStatus(ReservaStatus.CANCELADA);
+        reservaRepository.saveAll(doSku);
+        // Expiração e cancelamento anteriores já devolveram o estoque dessas duas reservas.
+        Estoque estoque = estoqueRepository.findById(sku).orElseThrow();
+        estoque.setQuantidadeDisponivel(10);
+        estoqueRepository.save(estoque);
+
+        cancelStatusUseCase.updateStatusToCancel(pedidoId);
+
+        assertEquals(10, estoqueRepository.findById(sku).orElseThrow().getQuantidadeDisponivel());
+        assertEquals(ReservaStatus.EXPIRADA, reservaRepository.findById(expirada.getId()).orElseThrow().getStatus());
+        assertEquals(ReservaStatus.CANCELADA, reservaRepository.findById(cancelada.getId()).orElseThrow().getStatus());
+        assertTrue(estoqueRepository.findAllById(skus).stream().allMatch(e -> e.getQuantidadeDisponivel() == 10));
+    }
+
+    @Test
+    void updateStatusToConfirmed_ShouldSubtractEveryReservation_WhenOrderHasSeveralForTheSameSku() {
+        String productSKU = novoSku(10);
+        String outroPedido = novoPedido(new ItemPedidoDTO(productSKU, 2), new ItemPedidoDTO(productSKU, 3));
+
+        confirmedStatusUseCase.updateStatusToConfirmed(outroPedido);
+
+        Estoque estoque = estoqueRepository.findById(productSKU).orElseThrow();
+        assertEquals(10 - (2 + 3), estoque.getQuantidadeReal());
+        assertEquals(10 - (2 + 3), estoque.getQuantidadeDisponivel());
+        assertEquals(List.of(ReservaStatus.CONFIRMADA, ReservaStatus.CONFIRMADA), status(outroPedido).toList());
+    }
+
+    @Test
+    void updateStatusToConfirmed_ShouldSubtractEachSkuOnItsOwnRow_WhenOrderHasDifferentSkus() {
+        String productSKU1 = novoSku(10);
+        String productSKU2 = novoSku(15);
+        String outroPedido = novoPedido(new ItemPedidoDTO(productSKU1, 2), new ItemPedidoDTO(productSKU2, 3));
+
+        confirmedStatusUseCase.updateStatusToConfirmed(outroPedido);
+
+        assertEquals(10 - 2, estoqueRepository.findById(productSKU1).orElseThrow().getQuantidadeReal());
+        assertEquals(15 - 3, estoqueRepository.findById(productSKU2).orElseThrow().getQuantidadeReal());
+        assertEquals(List.of(ReservaStatus.CONFIRMADA, ReservaStatus.CONFIRMADA), status(outroPedido).toList());
+    }
+
+    private String novoSku(int quantidade) {
+        String productSKU = "transicao-" + UUID.randomUUID();
+        skus.add(productSKU);
+        estoqueRepository.save(Estoque.builder()
+                .productSKU(productSKU)
+                .quantidadeDisponivel(quantidade)
+                .quantidadeReal(quantidade)
+                .updatedAt(LocalDateTime.now())
+                .build());
+        return productSKU;
+    }
+
+    private String novoPedido(ItemPedidoDTO... itens) {
+        String outroPedido = "transicao-" + UUID.randomUUID();
+        pedidos.add(outroPedido);
+        reservaEstoqueUseCase.updateEstoque(new PedidoDTO(List.of(itens), outroPedido));
+        return outroPedido;
+    }
+
+    private Stream<ReservaStatus> status(String pedidoId) {
+        return reservaRepository.findByPedidoId(pedidoId).stream().map(ReservaEstoque::getStatus);
+    }
+
+    private Stream<ReservaStatus> status() {
+        return status(pedidoId);
+    }
+}
@@ -1,15 +1,17 @@
 package com.tech_challenge.fiap_estoque_service.usecase;
 
-import com.tech_challenge.fiap_estoque_service.domain.entity.Estoque;
-import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoque;
+import com.tech_challenge.fiap_estoque_service.cache.EstoqueCache;
+import com.tech_challenge.fiap_estoque_service.domain.entity.ReservaEstoqueHistorico;
 import com.tech_challenge.fiap_estoque_service.dto.ReservaStatus;
+import com.tech_challenge.fiap_estoque_service.dto.SituacaoReservaDTO;
 import com.tech_challenge.fiap_estoque_service.exception.ReservationCannotBeCancelledException;
 import com.tech_challenge.fiap_estoque_service.exception.ReservationNotFoundException;
 import com.tech_challenge.fiap_estoque_service.gateway.EstoqueRepository;
+import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueHistoricoRepository;
 import com.tech_challenge.fiap_estoque_service.gateway.ReservaEstoqueRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -17,10 +19,10 @@ import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 class UpdateStatusToCancelUseCaseImplTest {
@@ -31,206 +33,144 @@ class UpdateStatusToCancelUseCaseImplTest {
     @Mock
     private EstoqueRepository estoqueRepository;
 
-    @InjectMocks
+    @Mock
+    private EstoqueCache estoqueCache;
+
+    @Mock
+    private ReservaEstoqueHistoricoRepository historicoRepository;
+
     private UpdateStatusToCancelUseCaseImpl updateStatusToCancelUseCase;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        updateStatusToCancelUseCase = new UpdateStatusToCancelUseCaseImpl(reservaRepository, estoqueRepository,
+                estoqueCache, new HistoricoReservas(historicoRepository));
     }
 
     @Test
     void updateStatusToCancel_ShouldCancelPendingReservationsAndReturnStock() {
         String pedidoId = UUID.randomUUID().toString();
-        String productSKU = "PROD001";
-        int reservedQuantity = 5;
+        when(reservaRepository.travarSituacaoPorPedido(pedidoId))
+                .thenReturn(List.of(new SituacaoReservaDTO("PROD001", ReservaStatus.PENDENTE)));
 
-        ReservaEstoque reserva = ReservaEstoque.builder()
-                .pedidoId(pedidoId)
-                .productSKU(productSKU)
-                .quantidadeReservada(reservedQuantity)
-                .status(ReservaStatus.PENDENTE)
-                .expiresAt(LocalDateTime.now().plusMinutes(1))
-                .build();
+        updateStatusToCancelUseCase.updateStatusToCancel(pedidoId);
 
-        Estoque estoque = new Estoque();
-        estoque.setProductSKU(productSKU);
-        estoque.setQuantidadeDisponivel(10);
+        // Reservas travadas antes do estoque; devolução e troca de status em um statement cada.
+        InOrder ordem = inOrder(reservaRepository, estoqueRepository);
+        ordem.verify(reservaRepository).travarSituacaoPorPedido(pedidoId);
+        ordem.verify(estoqueRepository).devolverReservasDoPedido(eq(pedidoId), any(LocalDateTime.class));
+        ordem.verify(reservaRepository).atualizarStatusDoPedido(pedidoId,
+                Set.of(ReservaStatus.PENDENTE), ReservaStatus.CANCELADA);
+        verify(estoqueCache).invalidar(Set.of("PROD001"));
+    }
 
-        when(reservaRepository.findByPedidoId(pedidoId)).thenReturn(Collections.singletonList(reserva));
-        when(estoqueRepository.findAllById(Collections.singletonList(productSKU))).thenReturn(Collections.singletonList(estoque));
+    @Test
+    void updateStatusToCancel_ShouldDoNothing_WhenOrderHasExpired() {
+        String pedidoId = UUID.randomUUID().toString();
+        when(reservaRepository.travarSituacaoPorPedido(pedidoId))
+                .thenReturn(List.of(new SituacaoReservaDTO("PROD001", ReservaStatus.EXPIRADA)));
 
         updateStatusToCancelUseCase.updateStatusToCancel(pedidoId);
 
-        assertEquals(ReservaStatus.CANCELADA, reserva.getStatus());
-        assertEquals(10 + reservedQuantity, estoque.getQuantidadeDisponivel());
-        verify(estoqueRepository, times(1)).saveAll(anyList());
-        verify(reservaRepository, times(1)).saveAll(anyList());
+        // O estoque já voltou na expiração, como acontece com o pedido expirado e arquivado.
+        verifyNoChanges(pedidoId);
     }
 
     @Test
-    void updateStatusToCancel_ShouldCancelExpiredReservationsAndReturnStock() {
+    void updateStatusToCancel_ShouldThrowReservationNotFoundException_WhenNoReservationsFound() {
         String pedidoId = UUID.randomUUID().toString();
-        String productSKU = "PROD001";
-        int reservedQuantity = 5;
 
-        ReservaEstoque reserva = ReservaEstoque.builder()
-                .pedidoId(pedidoId)
-                .productSKU(productSKU)
-                .quantidadeReservada(reservedQuantity)
-                .status(ReservaStatus.EXPIRADA)
-                .expiresAt(LocalDateTime.now().minusMinutes(1))
-                .build();
+        when(reservaRepository.travarSituacaoPorPedido(pedidoId)).thenReturn(Collections.emptyList());
 
-        Estoque estoque = new Estoque();
-        estoque.setProductSKU(productSKU);
-        estoque.setQuantidadeDisponivel(10);
+        assertThrows(ReservationNotFoundException.class, () -> updateStatusToCancelUseCase.updateStatusToCancel(pedidoId));
+        verifyNoChanges(pedidoId);
+    }
 
-        when(reservaRepository.findByPedidoId(pedidoId)).thenReturn(Collections.singletonList(reserva));
-        when(estoqueRepository.findAllById(Collections.singletonList(productSKU))).thenReturn(Collections.singletonList(estoque));
+    @Test
+    void updateStatusToCancel_ShouldDoNothing_WhenOrderWasArchivedAfterExpiring() {
+        String pedidoId = UUID.randomUUID().toString();
+        when(reservaRepository.travarSituacaoPorPedido(pedidoId)).thenReturn(Collections.emptyList());
+        when(historicoRepository.findByPedidoId(pedidoId)).thenReturn(List.of(arquivada(pedidoId, ReservaStatus.EXPIRADA)));
 
         updateStatusToCancelUseCase.updateStatusToCancel(pedidoId);
 
-        assertEquals(ReservaStatus.CANCELADA, reserva.getStatus());
-        assertEquals(10 + reservedQuantity, estoque.getQuantidadeDisponivel());
-        verify(estoqueRepository, times(1)).saveAll(anyList());
-        verify(reservaRepository, times(1)).saveAll(anyList());
+        verifyNoChanges(pedidoId);
     }
 
     @Test
-    void updateStatusToCancel_ShouldThrowReservationNotFoundException_WhenNoReservationsFound() {
+    void updateStatusToCancel_ShouldThrowReservationCannotBeCancelledException_WhenArchivedOrderWasConfirmed() {
         String pedidoId = UUID.randomUUID().toString();
+        when(reservaRepository.travarSituacaoPorPedido(pedidoId)).thenReturn(Collections.emptyList());
+        when(historicoRepository.findByPedidoId(pedidoId)).thenReturn(List.of(arquivada(pedidoId, ReservaStatus.CONFIRMADA)));
 
-        when(reservaRepository.findByPedidoId(pedidoId)).thenReturn(Collections.emptyList());
-
-        assertThrows(ReservationNotFoundException.class, () -> updateStatusToCancelUseCase.updateStatusToCancel(pedidoId));
-        verify(estoqueRepository, never()).saveAll(anyList());
-        verify(reservaRepository, never()).saveAll(anyList());
+        assertThrows(ReservationCannotBeCancelledException.class, () -> updateStatusToCancelUseCase.updateStatusToCancel(pedidoId));
+        verifyNoChanges(pedidoId);
     }
 
     @Test
     void updateStatusToCancel_ShouldThrowReservationCannotBeCancelledException_WhenReservationIsFinalized() {
         String pedidoId = UUID.randomUUID().toString();
-        ReservaEstoque reserva = ReservaEstoque.builder()
-                .pedidoId(pedidoId)
-                .productSKU("PROD001")
-                .quantidadeReservada(5)
-                .status(ReservaStatus.FINALIZADO)
-                .build();
-
-        when(reservaRepository.findByPedidoId(pedidoId)).thenReturn(Collections.singletonList(reserva));
+        when(reservaRepository.travarSituacaoPorPedido(pedidoId))
+                .thenReturn(List.of(new SituacaoReservaDTO("PROD001", ReservaStatus.FINALIZADO)));
 
         assertThrows(ReservationCannotBeCancelledException.class, () -> updateStatusToCancelUseCase.updateStatusToCancel(pedidoId));
-        verify(estoqueRepository, never()).saveAll(anyList());
-        verify(reservaRepository, never()).saveAll(anyList());
+        verifyNoChanges(pedidoId);
     }
 
     @Test
     void updateStatusToCancel_ShouldThrowReservationCannotBeCancelledException_WhenReservationIsConfirmed() {
         String pedidoId = UUID.randomUUID().toString();
-        ReservaEstoque reserva = ReservaEstoque.builder()
-                .pedidoId(pedidoId)
-                .productSKU("PROD001")
-                .quantidadeReservada(5)
-                .status(ReservaStatus.CONFIRMADA)
-                .build();
-
-        when(reservaRepository.findByPedidoId(pedidoId)).thenReturn(Collections.singletonList(reserva));
+        when(reservaRepository.travarSituacaoPorPedido(pedidoId)).thenReturn(Arrays.asList(
+                new SituacaoReservaDTO("PROD001", ReservaStatus.PENDENTE),
+                new SituacaoReservaDTO("PROD002", ReservaStatus.CONFIRMADA)));
 
         assertThrows(ReservationCannotBeCancelledException.class, () -> updateStatusToCancelUseCase.updateStatusToCancel(pedidoId));
-        verify(estoqueRepository, never()).saveAll(anyList());
-        verify(reservaRepository, never()).saveAll(anyList());
+        verifyNoChanges(pedidoId);
     }
 
     @Test
     void updateStatusToCancel_ShouldDoNothing_WhenAllReservationsAreAlreadyCancelled() {
         String pedidoId = UUID.randomUUID().toString();
-        ReservaEstoque reserva = ReservaEstoque.builder()
-                .pedidoId(pedidoId)
-                .productSKU("PROD001")
-                .quantidadeReservada(5)
-                .status(ReservaStatus.CANCELADA)
-                .build();
-
-        when(reservaRepository.findByPedidoId(pedidoId)).thenReturn(Collections.singletonList(reserva));
+        when(reservaRepository.travarSituacaoPorPedido(pedidoId))
+                .thenReturn(List.of(new SituacaoReservaDTO("PROD001", ReservaStatus.CANCELADA)));
 
         updateStatusToCancelUseCase.updateStatusToCancel(pedidoId);
 
-        verify(estoqueRepository, never()).saveAll(anyList());
-        verify(reservaRepository, never()).saveAll(anyList());
+        verifyNoChanges(pedidoId);
     }
 
     @Test
-    void updateStatusToCancel_ShouldHandleMultipleReservationsForSameProductSKU() {
+    void updateStatusToCancel_ShouldInvalidateOnlySkusWithReturnedStock() {
         String pedidoId = UUID.randomUUID().toString();
-        String productSKU = "PROD001";
-
-        ReservaEstoque reserva1 = ReservaEstoque.builder()
-                .pedidoId(pedidoId)
-                .productSKU(productSKU)
-                .quantidadeReservada(2)
-                .status(ReservaStatus.PENDENTE)
-                .build();
-        ReservaEstoque reserva2 = ReservaEstoque.builder()
-                .pedidoId(pedidoId)
-                .productSKU(productSKU)
-                .quantidadeReservada(3)
-                .status(ReservaStatus.EXPIRADA)
-                .build();
-
-        Estoque estoque = new Estoque();
-        estoque.setProductSKU(productSKU);
-        estoque.setQuantidadeDisponivel(10);
-
-        when(reservaRepository.findByPedidoId(pedidoId)).thenReturn(Arrays.asList(reserva1, reserva2));
-        when(estoqueRepository.findAllById(Collections.singletonList(productSKU))).thenReturn(Collections.singletonList(estoque));
+        when(reservaRepository.travarSituacaoPorPedido(pedidoId)).thenReturn(Arrays.asList(
+                new SituacaoReservaDTO("PROD001", ReservaStatus.PENDENTE),
+                new SituacaoReservaDTO("PROD001", ReservaStatus.EXPIRADA),
+                new SituacaoReservaDTO("PROD002", ReservaStatus.PENDENTE),
+                new SituacaoReservaDTO("PROD003", ReservaStatus.CANCELADA)));
 
         updateStatusToCancelUseCase.updateStatusToCancel(pedidoId);
 
-        assertEquals(ReservaStatus.CANCELADA, reserva1.getStatus());
-        assertEquals(ReservaStatus.CANCELADA, reserva2.getStatus());
-        assertEquals(10 + 2 + 3, estoque.getQuantidadeDisponivel());
-        verify(estoqueRepository, times(1)).saveAll(anyList());
-        verify(reservaRepository, times(1)).saveAll(anyList());
+        // Um único statement de estoque, qualquer que seja o número de reservas.
+        verify(estoqueRepository, times(1)).devolverReservasDoPedido(eq(pedidoId), any(LocalDateTime.class));
+        verify(estoqueCache).invalidar(Set.of("PROD001", "PROD002"));
     }
 
-    @Test
-    void updateStatusToCancel_ShouldHandleMultipleReservationsForDifferentProductSKUs() {
-        String pedidoId = UUID.randomUUID().toString();
-        String productSKU1 = "PROD001";
-        String productSKU2 = "PROD002";
+    private void verifyNoChanges(String pedidoId) {
+        verify(estoqueRepository, never()).devolverReservasDoPedido(anyString(), any(LocalDateTime.class));
+        verify(reservaRepository, never()).atualizarStatusDoPedido(anyString(), anyCollection(),
+                any(ReservaStatus.class));
+    }
 
-        ReservaEstoque reserva1 = ReservaEstoque.builder()
+    private ReservaEstoqueHistorico arquivada(String pedidoId, ReservaStatus status) {
+        return ReservaEstoqueHistorico.builder()
+                .id(UUID.randomUUID().toString())
                 .pedidoId(pedidoId)
-                .productSKU(productSKU1)
-                .quantidadeReservada(2)
-                .status(ReservaStatus.PENDENTE)
-                .build();
-        ReservaEstoque reserva2 = ReservaEstoque.builder()
-                .pedidoId(pedidoId)
-                .productSKU(productSKU2)
-                .quantidadeReservada(3)
-                .status(ReservaStatus.EXPIRADA)
+                .productSKU("PROD001")
+                .quantidadeReservada(5)
+                .status(status)
+                .expiresAt(LocalDateTime.now().minusDays(2))
+                .arquivadaEm(LocalDateTime.now())
                 .build();
-
-        Estoque estoque1 = new Estoque();
-        estoque1.setProductSKU(productSKU1);
-        estoque1.setQuantidadeDisponivel(10);
-
-        Estoque estoque2 = new Estoque();
-        estoque2.setProductSKU(productSKU2);
-        estoque2.setQuantidadeDisponivel(15);
-
-        when(reservaRepository.findByPedidoId(pedidoId)).thenReturn(Arrays.asList(reserva1, reserva2));
-        when(estoqueRepository.findAllById(Arrays.asList(productSKU1, productSKU2))).thenReturn(Arrays.asList(estoque1, estoque2));
-
-        updateStatusToCancelUseCase.updateStatusToCancel(pedidoId);
-
-        assertEquals(ReservaStatus.CANCELADA, reserva1.getStatus());
-        assertEquals(ReservaStatus.CANCELADA, reserva2.getStatus());
-        assertEquals(10 + 2, estoque1.getQuantidadeDisponivel());
-        assertEquals(15 + 3, estoque2.getQuantidadeDisponivel());
-        verify(estoqueRepository, times(1)).saveAll(anyList());
-        verify(reservaRepository, times(1)).saveAll(anyList());
     }
 }